@@ -0,0 +1,105 @@
+package com.vendas.postes.config;
+
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.PosteRepository;
+import com.vendas.postes.service.ArquivoMovimentosService;
+import com.vendas.postes.service.EstoqueConsolidadoService;
+import com.vendas.postes.service.EstoqueMemoriaService;
+import com.vendas.postes.service.IndiceSaldoDiario;
+import com.vendas.postes.service.VendaResumoMensalService;
+import com.vendas.postes.service.VendasColunares;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Component;
+
+import java.sql.DatabaseMetaData;
+import java.util.List;
+
+/**
+ * Ajustes de dados executados na subida, antes do servidor aceitar requisições.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class InicializacaoDados implements SmartInitializingSingleton {
+
+    private final PosteRepository posteRepository;
+    private final EstoqueConsolidadoService estoqueConsolidadoService;
+    private final VendaResumoMensalService vendaResumoMensalService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ArquivoMovimentosService arquivoMovimentosService;
+    private final EstoqueMemoriaService estoqueMemoriaService;
+    private final IndiceSaldoDiario indiceSaldoDiario;
+    private final VendasColunares vendasColunares;
+
+    private static final List<String> TABELAS_COM_SEQUENCE = List.of(
+            "postes", "estoque", "estoque_consolidado", "movimento_estoque", "vendas", "despesas");
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        ajustarSequencias();
+        preencherCodigoBase();
+        estoqueConsolidadoService.reconstruirSeVazio();
+        vendaResumoMensalService.reconstruirSeVazio();
+        arquivoMovimentosService.carregarArquivos();
+        estoqueMemoriaService.carregar();
+        indiceSaldoDiario.carregar();
+        vendasColunares.carregar();
+    }
+
+    /**
+     * Preenche o código base dos postes cadastrados antes da coluna existir,
+     * para que a consolidação nunca encontre postes sem código base.
+     */
+    private void preencherCodigoBase() {
+        List<Poste> postesSemCodigoBase = posteRepository.findByCodigoBaseIsNull();
+        if (postesSemCodigoBase.isEmpty()) {
+            return;
+        }
+
+        postesSemCodigoBase.forEach(poste -> poste.setCodigo(poste.getCodigo()));
+        posteRepository.saveAll(postesSemCodigoBase);
+
+        log.info("✅ Código base preenchido para {} postes", postesSemCodigoBase.size());
+    }
+
+    /**
+     * Os IDs passaram de IDENTITY para sequence. Em bancos PostgreSQL que já tinham
+     * registros, a sequence nova começa em 1 e colidiria com os IDs existentes:
+     * avança cada sequence para depois do maior ID da tabela. Só mexe em sequences
+     * que nunca foram usadas ou que ficaram atrás dos dados, nunca volta uma
+     * sequence que outra instância possa estar usando.
+     */
+    private void ajustarSequencias() {
+        if (!isPostgres()) {
+            return;
+        }
+
+        for (String tabela : TABELAS_COM_SEQUENCE) {
+            String sequence = tabela + "_seq";
+            List<Long> ajustada = jdbcTemplate.queryForList(
+                    "SELECT setval('" + sequence + "', m.proximo, false) " +
+                    "FROM (SELECT COALESCE(MAX(id), 0) + 1 AS proximo FROM " + tabela + ") m, " + sequence + " s " +
+                    "WHERE NOT s.is_called OR s.last_value + 50 < m.proximo",
+                    Long.class);
+
+            if (!ajustada.isEmpty()) {
+                log.info("✅ Sequence {} ajustada para {}", sequence, ajustada.get(0));
+            }
+        }
+    }
+
+    private boolean isPostgres() {
+        try {
+            String banco = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(),
+                    DatabaseMetaData::getDatabaseProductName);
+            return "PostgreSQL".equalsIgnoreCase(banco);
+        } catch (Exception e) {
+            log.warn("⚠️ Não foi possível identificar o banco: {}", e.getMessage());
+            return false;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.vendas.postes.controller;
 
 import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.DespesaDTO;
+import com.vendas.postes.dto.PaginaDTO;
 import com.vendas.postes.model.Despesa;
 import com.vendas.postes.repository.DespesaRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -19,22 +22,46 @@ public class DespesaController {
 
     private final DespesaRepository despesaRepository;
 
+    /**
+     * Lista as despesas em páginas (cursor e limite), da mais recente para a mais antiga.
+     * Com todos=true devolve a lista completa, sem paginação.
+     */
     @GetMapping
-    public List<Despesa> listarTodas(
+    public Object listarTodas(
             @RequestParam(value = "dataInicio", required = false)
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataInicio,
             @RequestParam(value = "dataFim", required = false)
-            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataFim) {
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataFim,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limite", required = false) Integer limite,
+            @RequestParam(value = "todos", defaultValue = "false") boolean todos) {
 
         String tenantId = TenantContext.getCurrentTenantValue();
 
+        if (!todos) {
+            int tamanho = PaginaDTO.limiteValido(limite);
+            LocalDate inicio = dataInicio != null ? dataInicio : LocalDate.of(1900, 1, 1);
+            LocalDate cursorData = dataFim != null ? dataFim : LocalDate.of(9999, 12, 31);
+            Long cursorId = Long.MAX_VALUE;
+            if (cursor != null) {
+                PaginaDTO.Cursor posicao = PaginaDTO.decodificarCursor(cursor);
+                cursorData = posicao.chaveComoData();
+                cursorId = posicao.getId();
+            }
+
+            List<DespesaDTO> despesas = despesaRepository.buscarPagina(
+                    tenantId, inicio, cursorData, cursorId, Limit.of(tamanho + 1));
+            return PaginaDTO.montar(despesas, tamanho,
+                    despesa -> PaginaDTO.codificarCursor(despesa.getDataDespesa(), despesa.getId()));
+        }
+
         if (dataInicio != null || dataFim != null) {
             LocalDate inicio = dataInicio != null ? dataInicio : LocalDate.of(1900, 1, 1);
             LocalDate fim = dataFim != null ? dataFim : LocalDate.now();
-            return despesaRepository.findByTenantIdAndDataDespesaBetween(tenantId, inicio, fim);
+            return despesaRepository.listarDTOsNoPeriodo(tenantId, inicio, fim);
         }
 
-        return despesaRepository.findByTenantId(tenantId);
+        return despesaRepository.listarDTOs(tenantId);
     }
 
     @PostMapping
@@ -1,7 +1,13 @@
 package com.vendas.postes.controller;
 
 import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.EntradaEstoqueLoteDTO;
 import com.vendas.postes.dto.EstoqueDTO;
+import com.vendas.postes.dto.ResultadoEntradaLoteDTO;
+import com.vendas.postes.service.EstoqueConsolidadoService;
+import com.vendas.postes.service.EstoqueListagemCache;
+import com.vendas.postes.service.EstoqueLockManager;
+import com.vendas.postes.service.EstoqueMemoriaService;
 import com.vendas.postes.service.EstoqueService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,6 +15,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -20,6 +27,10 @@ import java.util.Map;
 public class EstoqueController {
 
     private final EstoqueService estoqueService;
+    private final EstoqueConsolidadoService estoqueConsolidadoService;
+    private final EstoqueLockManager estoqueLockManager;
+    private final EstoqueListagemCache estoqueListagemCache;
+    private final EstoqueMemoriaService estoqueMemoriaService;
 
     /**
      * Lista todo o estoque - consolidado para Jefferson, específico por tenant para outros
@@ -117,6 +128,38 @@ public class EstoqueController {
         }
     }
 
+    /**
+     * Adiciona estoque de vários postes de uma vez (descarga do caminhão).
+     * Itens inválidos voltam como falha no resultado, sem impedir os demais.
+     */
+    @PostMapping("/adicionar-lote")
+    public ResponseEntity<Map<String, Object>> adicionarEstoqueEmLote(@RequestBody List<EntradaEstoqueLoteDTO> itens) {
+        try {
+            if (itens == null || itens.isEmpty()) {
+                log.warn("⚠️ Lote de estoque vazio");
+                return ResponseEntity.badRequest().build();
+            }
+
+            log.info("➕ Adicionando estoque em lote: {} itens (tenant: {})",
+                    itens.size(), TenantContext.getCurrentTenantValue());
+
+            List<ResultadoEntradaLoteDTO> resultados = estoqueService.adicionarEstoqueEmLote(itens);
+            long sucessos = resultados.stream().filter(ResultadoEntradaLoteDTO::getSucesso).count();
+
+            Map<String, Object> resposta = new LinkedHashMap<>();
+            resposta.put("totalItens", resultados.size());
+            resposta.put("sucessos", sucessos);
+            resposta.put("falhas", resultados.size() - sucessos);
+            resposta.put("resultados", resultados);
+
+            return ResponseEntity.ok(resposta);
+
+        } catch (Exception e) {
+            log.error("❌ Erro interno ao adicionar estoque em lote: ", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * Remove estoque manualmente (para ajustes) - AGORA COM DATA
      */
@@ -202,4 +245,48 @@ public class EstoqueController {
             return ResponseEntity.internalServerError().build();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Recalcula o estoque consolidado a partir da tabela de estoque e informa as divergências.
+     * Com corrigir=true as divergências encontradas são corrigidas.
+     */
+    @PostMapping("/consolidado/verificar")
+    public ResponseEntity<Map<String, Object>> verificarEstoqueConsolidado(
+            @RequestParam(value = "corrigir", defaultValue = "false") boolean corrigir) {
+        try {
+            log.info("🔎 Verificando estoque consolidado (corrigir={})", corrigir);
+
+            Map<String, Object> resultado = estoqueConsolidadoService.verificar(corrigir);
+
+            return ResponseEntity.ok(resultado);
+
+        } catch (Exception e) {
+            log.error("❌ Erro ao verificar estoque consolidado: ", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Métricas dos locks por código base (aquisições, contenção e tempo de espera)
+     */
+    @GetMapping("/locks/metricas")
+    public ResponseEntity<Map<String, Object>> obterMetricasLocks() {
+        return ResponseEntity.ok(estoqueLockManager.obterMetricas());
+    }
+
+    /**
+     * Acertos, faltas, despejos e invalidações do cache das listagens de estoque
+     */
+    @GetMapping("/cache/metricas")
+    public ResponseEntity<Map<String, Object>> obterMetricasCache() {
+        return ResponseEntity.ok(estoqueListagemCache.obterMetricas());
+    }
+
+    /**
+     * Movimentos pendentes e lotes descarregados pelo estoque em memória
+     */
+    @GetMapping("/memoria/metricas")
+    public ResponseEntity<Map<String, Object>> obterMetricasMemoria() {
+        return ResponseEntity.ok(estoqueMemoriaService.obterMetricas());
+    }
+}
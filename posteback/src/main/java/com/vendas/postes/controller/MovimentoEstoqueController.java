@@ -1,13 +1,20 @@
 package com.vendas.postes.controller;
 
 import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.EstoqueNaDataDTO;
 import com.vendas.postes.dto.MovimentoEstoqueDTO;
+import com.vendas.postes.dto.PaginaDTO;
+import com.vendas.postes.dto.VariacaoEstoqueDTO;
+import com.vendas.postes.service.GravadorMovimentosEmGrupo;
+import com.vendas.postes.service.IndiceSaldoDiario;
 import com.vendas.postes.service.MovimentoEstoqueService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -21,23 +28,34 @@ import java.util.Map;
 public class MovimentoEstoqueController {
 
     private final MovimentoEstoqueService movimentoEstoqueService;
+    private final GravadorMovimentosEmGrupo gravadorMovimentosEmGrupo;
+    private final IndiceSaldoDiario indiceSaldoDiario;
 
     /**
-     * Lista todos os movimentos de estoque com filtros opcionais
+     * Lista os movimentos de estoque em páginas (cursor e limite), com filtros opcionais.
+     * Com todos=true devolve a lista sem paginação.
      */
     @GetMapping
-    public ResponseEntity<List<MovimentoEstoqueDTO>> listarMovimentos(
+    public ResponseEntity<?> listarMovimentos(
             @RequestParam(value = "dataInicio", required = false)
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataInicio,
             @RequestParam(value = "dataFim", required = false)
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataFim,
             @RequestParam(value = "posteId", required = false) Long posteId,
-            @RequestParam(value = "tipoMovimento", required = false) String tipoMovimento) {
+            @RequestParam(value = "tipoMovimento", required = false) String tipoMovimento,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limite", required = false) Integer limite,
+            @RequestParam(value = "todos", defaultValue = "false") boolean todos) {
 
         try {
             String tenantId = TenantContext.getCurrentTenantValue();
             log.info("📋 Listando movimentos de estoque para tenant: {}", tenantId);
 
+            if (!todos) {
+                return ResponseEntity.ok(movimentoEstoqueService.listarMovimentosPaginados(
+                        posteId, dataInicio, dataFim, cursor, limite));
+            }
+
             List<MovimentoEstoqueDTO> movimentos;
 
             if (posteId != null) {
@@ -54,24 +72,59 @@ public class MovimentoEstoqueController {
             log.info("📊 Retornando {} movimentos de estoque", movimentos.size());
             return ResponseEntity.ok(movimentos);
 
+        } catch (PaginaDTO.CursorInvalidoException e) {
+            log.warn("⚠️ Parâmetros inválidos ao listar movimentos de estoque: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("❌ Erro ao listar movimentos de estoque: ", e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    /**
+     * Exporta os movimentos do período como array JSON escrito à medida que as linhas são lidas,
+     * com memória constante para qualquer tamanho de período
+     */
+    @GetMapping("/exportar")
+    public ResponseEntity<StreamingResponseBody> exportarMovimentos(
+            @RequestParam(value = "dataInicio", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataInicio,
+            @RequestParam(value = "dataFim", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataFim) {
+
+        // O corpo é escrito em outra thread, sem o TenantContext da requisição
+        String tenantId = TenantContext.getCurrentTenantValue();
+        log.info("📤 Exportando movimentos de estoque do tenant {}: {} até {}", tenantId, dataInicio, dataFim);
+
+        StreamingResponseBody corpo = saida ->
+                movimentoEstoqueService.exportarMovimentos(tenantId, dataInicio, dataFim, saida);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(corpo);
+    }
+
     /**
      * Busca histórico de movimentos de um poste específico
      */
     @GetMapping("/poste/{posteId}")
-    public ResponseEntity<List<MovimentoEstoqueDTO>> obterHistoricoPoste(@PathVariable Long posteId) {
+    public ResponseEntity<?> obterHistoricoPoste(
+            @PathVariable Long posteId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limite", required = false) Integer limite,
+            @RequestParam(value = "todos", defaultValue = "false") boolean todos) {
         try {
             log.info("📈 Buscando histórico do poste ID: {}", posteId);
 
+            if (!todos) {
+                return ResponseEntity.ok(movimentoEstoqueService.listarMovimentosPaginados(
+                        posteId, null, null, cursor, limite));
+            }
+
             List<MovimentoEstoqueDTO> historico = movimentoEstoqueService.listarMovimentosPorPoste(posteId);
 
             return ResponseEntity.ok(historico);
 
+        } catch (PaginaDTO.CursorInvalidoException e) {
+            log.warn("⚠️ Parâmetros inválidos ao buscar histórico do poste {}: {}", posteId, e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("❌ Erro ao buscar histórico do poste {}: ", posteId, e);
             return ResponseEntity.internalServerError().build();
@@ -105,6 +158,49 @@ public class MovimentoEstoqueController {
         }
     }
 
+    /**
+     * Calcula o estoque em uma data para todos os postes do tenant
+     */
+    @GetMapping("/estoque-data/todos")
+    public ResponseEntity<List<EstoqueNaDataDTO>> calcularEstoqueNaDataTodosPostes(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataReferencia) {
+
+        try {
+            log.info("🔍 Calculando estoque de todos os postes na data {}", dataReferencia);
+
+            List<EstoqueNaDataDTO> estoques = movimentoEstoqueService.calcularEstoqueNaDataTodosPostes(dataReferencia);
+
+            return ResponseEntity.ok(estoques);
+
+        } catch (Exception e) {
+            log.error("❌ Erro ao calcular estoque na data: ", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Variação do estoque de todos os postes do tenant entre duas datas, inclusive
+     */
+    @GetMapping("/variacao/todos")
+    public ResponseEntity<List<VariacaoEstoqueDTO>> calcularVariacaoEntreDatasTodosPostes(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataInicio,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataFim) {
+
+        if (dataFim.isBefore(dataInicio)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            log.info("🔍 Calculando variação de estoque de todos os postes entre {} e {}", dataInicio, dataFim);
+
+            return ResponseEntity.ok(movimentoEstoqueService.calcularVariacaoEntreDatasTodosPostes(dataInicio, dataFim));
+
+        } catch (Exception e) {
+            log.error("❌ Erro ao calcular variação de estoque: ", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * Relatório de movimentos por período e tipo
      */
@@ -241,4 +337,20 @@ public class MovimentoEstoqueController {
             return ResponseEntity.internalServerError().build();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Commits, latência e linhas por lote da gravação de movimentos em grupo
+     */
+    @GetMapping("/grupo/metricas")
+    public ResponseEntity<Map<String, Object>> obterMetricasGravacaoEmGrupo() {
+        return ResponseEntity.ok(gravadorMovimentosEmGrupo.obterMetricas());
+    }
+
+    /**
+     * Postes, dias cobertos e memória do índice de saldo diário
+     */
+    @GetMapping("/indice/metricas")
+    public ResponseEntity<Map<String, Object>> obterMetricasIndice() {
+        return ResponseEntity.ok(indiceSaldoDiario.obterMetricas());
+    }
+}
@@ -1,10 +1,17 @@
 package com.vendas.postes.controller;
 
 import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.PaginaDTO;
+import com.vendas.postes.dto.PosteDTO;
 import com.vendas.postes.model.Poste;
 import com.vendas.postes.repository.PosteRepository;
+import com.vendas.postes.service.EstoqueListagemCache;
+import com.vendas.postes.service.EstoqueMemoriaService;
+import com.vendas.postes.service.IndiceSaldoDiario;
+import com.vendas.postes.service.PosteService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,9 +27,20 @@ import java.util.Optional;
 public class PosteController {
 
     private final PosteRepository posteRepository;
-
+    private final PosteService posteService;
+    private final EstoqueListagemCache estoqueListagemCache;
+    private final EstoqueMemoriaService estoqueMemoriaService;
+    private final IndiceSaldoDiario indiceSaldoDiario;
+
+    /**
+     * Lista os postes em páginas (cursor e limite), ordenados por código.
+     * Com todos=true devolve a lista completa, sem paginação.
+     */
     @GetMapping
-    public ResponseEntity<List<Poste>> listarTodos() {
+    public ResponseEntity<?> listarTodos(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limite", required = false) Integer limite,
+            @RequestParam(value = "todos", defaultValue = "false") boolean todos) {
         try {
             String tenantId = TenantContext.getCurrentTenantValue();
             log.info("Buscando postes para tenant: {}", tenantId);
@@ -33,7 +51,22 @@ public class PosteController {
                 return ResponseEntity.badRequest().build();
             }
 
-            List<Poste> postes = posteRepository.findByTenantId(tenantId);
+            if (!todos) {
+                int tamanho = PaginaDTO.limiteValido(limite);
+                String cursorCodigo = "";
+                Long cursorId = Long.MIN_VALUE;
+                if (cursor != null) {
+                    PaginaDTO.Cursor posicao = PaginaDTO.decodificarCursor(cursor);
+                    cursorCodigo = posicao.getChave();
+                    cursorId = posicao.getId();
+                }
+
+                List<PosteDTO> pagina = posteRepository.buscarPagina(tenantId, cursorCodigo, cursorId, Limit.of(tamanho + 1));
+                return ResponseEntity.ok(PaginaDTO.montar(pagina, tamanho,
+                        poste -> PaginaDTO.codificarCursor(poste.getCodigo(), poste.getId())));
+            }
+
+            List<PosteDTO> postes = posteRepository.listarDTOs(tenantId);
 
             if (postes == null) {
                 log.warn("Repository retornou null para tenant: {}", tenantId);
@@ -44,6 +77,9 @@ public class PosteController {
 
             return ResponseEntity.ok(postes);
 
+        } catch (PaginaDTO.CursorInvalidoException e) {
+            log.warn("Parâmetros inválidos ao buscar postes: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Erro ao buscar postes: ", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -51,7 +87,7 @@ public class PosteController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Poste> buscarPorId(@PathVariable Long id) {
+    public ResponseEntity<PosteDTO> buscarPorId(@PathVariable Long id) {
         try {
             if (id == null || id <= 0) {
                 log.warn("ID inválido fornecido: {}", id);
@@ -61,7 +97,7 @@ public class PosteController {
             String tenantId = TenantContext.getCurrentTenantValue();
             log.debug("Buscando poste ID {} para tenant: {}", id, tenantId);
 
-            Optional<Poste> poste = posteRepository.findByIdAndTenantId(id, tenantId);
+            Optional<PosteDTO> poste = posteRepository.buscarDTO(id, tenantId);
 
             if (poste.isPresent()) {
                 return ResponseEntity.ok(poste.get());
@@ -107,6 +143,9 @@ public class PosteController {
             log.debug("Criando poste para tenant {}: {}", tenantId, poste.getCodigo());
 
             Poste savedPoste = posteRepository.save(poste);
+            estoqueListagemCache.posteAlterado(tenantId, savedPoste.getCodigoBase());
+            estoqueMemoriaService.atualizarPoste(savedPoste);
+            indiceSaldoDiario.atualizarPoste(savedPoste);
             log.info("Poste criado com sucesso para tenant {}: ID={}, codigo={}",
                     tenantId, savedPoste.getId(), savedPoste.getCodigo());
 
@@ -134,33 +173,14 @@ public class PosteController {
             String tenantId = TenantContext.getCurrentTenantValue();
             log.debug("Atualizando poste ID {} para tenant: {}", id, tenantId);
 
-            Optional<Poste> posteOpt = posteRepository.findByIdAndTenantId(id, tenantId);
+            Optional<Poste> savedPoste = posteService.atualizar(id, tenantId, posteAtualizado);
 
-            if (posteOpt.isEmpty()) {
+            if (savedPoste.isEmpty()) {
                 log.warn("Poste não encontrado para atualização: ID={}, tenant={}", id, tenantId);
                 return ResponseEntity.notFound().build();
             }
 
-            Poste poste = posteOpt.get();
-
-            // Atualizar apenas campos não nulos
-            if (posteAtualizado.getCodigo() != null) {
-                poste.setCodigo(posteAtualizado.getCodigo());
-            }
-            if (posteAtualizado.getDescricao() != null) {
-                poste.setDescricao(posteAtualizado.getDescricao());
-            }
-            if (posteAtualizado.getPreco() != null) {
-                poste.setPreco(posteAtualizado.getPreco());
-            }
-            if (posteAtualizado.getAtivo() != null) {
-                poste.setAtivo(posteAtualizado.getAtivo());
-            }
-
-            Poste savedPoste = posteRepository.save(poste);
-            log.info("Poste atualizado com sucesso: ID={}, tenant={}", id, tenantId);
-
-            return ResponseEntity.ok(savedPoste);
+            return ResponseEntity.ok(savedPoste.get());
 
         } catch (Exception e) {
             log.error("Erro ao atualizar poste ID {}: ", id, e);
@@ -179,18 +199,11 @@ public class PosteController {
             String tenantId = TenantContext.getCurrentTenantValue();
             log.debug("Inativando poste ID {} para tenant: {}", id, tenantId);
 
-            Optional<Poste> posteOpt = posteRepository.findByIdAndTenantId(id, tenantId);
-
-            if (posteOpt.isEmpty()) {
+            if (!posteService.inativar(id, tenantId)) {
                 log.warn("Poste não encontrado para exclusão: ID={}, tenant={}", id, tenantId);
                 return ResponseEntity.notFound().build();
             }
 
-            Poste poste = posteOpt.get();
-            poste.setAtivo(false);
-            posteRepository.save(poste);
-
-            log.info("Poste inativado com sucesso: ID={}, tenant={}", id, tenantId);
             return ResponseEntity.noContent().build();
 
         } catch (Exception e) {
@@ -1,18 +1,33 @@
 package com.vendas.postes.controller;
 
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.ImportacaoVendasDTO;
+import com.vendas.postes.dto.PaginaDTO;
 import com.vendas.postes.dto.VendaCreateDTO;
 import com.vendas.postes.dto.VendaDTO;
 import com.vendas.postes.dto.ResumoVendasDTO;
+import com.vendas.postes.dto.TotalVendasDTO;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.model.VendaResumoMensal;
+import com.vendas.postes.service.EstoqueLockManager;
+import com.vendas.postes.service.VendaImportacaoService;
 import com.vendas.postes.service.VendaService;
+import com.vendas.postes.service.VendasColunares;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/vendas")
@@ -22,18 +37,29 @@ import java.util.List;
 public class VendaController {
 
     private final VendaService vendaService;
+    private final VendaImportacaoService vendaImportacaoService;
 
     /**
-     * Lista todas as vendas com filtros opcionais por período
+     * Lista as vendas em páginas (cursor e limite), com filtro opcional por período.
+     * Com todos=true devolve a lista completa, sem paginação.
      */
     @GetMapping
-    public ResponseEntity<List<VendaDTO>> listarTodas(
+    public ResponseEntity<?> listarTodas(
             @RequestParam(value = "dataInicio", required = false)
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataInicio,
             @RequestParam(value = "dataFim", required = false)
-            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataFim) {
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataFim,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limite", required = false) Integer limite,
+            @RequestParam(value = "todos", defaultValue = "false") boolean todos) {
 
         try {
+            if (!todos) {
+                PaginaDTO<VendaDTO> pagina = vendaService.listarVendasPaginadas(dataInicio, dataFim, cursor, limite);
+                log.info("📋 Listando página de {} vendas", pagina.getItens().size());
+                return ResponseEntity.ok(pagina);
+            }
+
             List<VendaDTO> vendas;
 
             if (dataInicio != null || dataFim != null) {
@@ -46,12 +72,34 @@ public class VendaController {
 
             return ResponseEntity.ok(vendas);
 
+        } catch (PaginaDTO.CursorInvalidoException e) {
+            log.warn("⚠️ Parâmetros inválidos ao listar vendas: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("❌ Erro ao listar vendas: ", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Exporta as vendas do período como array JSON escrito à medida que as linhas são lidas,
+     * com memória constante para qualquer tamanho de período
+     */
+    @GetMapping("/exportar")
+    public ResponseEntity<StreamingResponseBody> exportar(
+            @RequestParam(value = "dataInicio", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataInicio,
+            @RequestParam(value = "dataFim", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataFim) {
+
+        // O corpo é escrito em outra thread, sem o TenantContext da requisição
+        String tenantId = TenantContext.getCurrentTenantValue();
+        log.info("📤 Exportando vendas do tenant {}: {} até {}", tenantId, dataInicio, dataFim);
+
+        StreamingResponseBody corpo = saida -> vendaService.exportarVendas(tenantId, dataInicio, dataFim, saida);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(corpo);
+    }
+
     /**
      * Busca uma venda específica por ID
      */
@@ -108,6 +156,54 @@ public class VendaController {
         }
     }
 
+    /**
+     * Totais de vendas mês a mês, por tipo, lidos do resumo mensal
+     */
+    @GetMapping("/resumo/mensal")
+    public ResponseEntity<List<VendaResumoMensal>> obterResumoMensal() {
+        try {
+            return ResponseEntity.ok(vendaService.listarResumoMensal());
+        } catch (Exception e) {
+            log.error("❌ Erro ao buscar resumo mensal de vendas: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Totais de vendas agrupados por tipo, semana, poste ou tenant, com filtros opcionais.
+     * Lidos do armazém colunar em memória; 503 se ele estiver desligado.
+     */
+    @GetMapping("/totais")
+    public ResponseEntity<List<TotalVendasDTO>> obterTotais(
+            @RequestParam(value = "agrupamento", defaultValue = "TIPO") VendasColunares.Agrupamento agrupamento,
+            @RequestParam(value = "dataInicio", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataInicio,
+            @RequestParam(value = "dataFim", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dataFim,
+            @RequestParam(value = "tipoVenda", required = false) Venda.TipoVenda tipoVenda,
+            @RequestParam(value = "posteId", required = false) Long posteId,
+            @RequestParam(value = "consolidado", defaultValue = "false") boolean consolidado) {
+
+        try {
+            return ResponseEntity.ok(vendaService.agregarVendas(agrupamento, dataInicio, dataFim, tipoVenda,
+                    posteId, consolidado));
+        } catch (IllegalStateException e) {
+            log.warn("⚠️ {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (Exception e) {
+            log.error("❌ Erro ao calcular totais de vendas: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Vendas, postes e memória do armazém colunar de vendas
+     */
+    @GetMapping("/colunar/metricas")
+    public ResponseEntity<Map<String, Object>> obterMetricasColunares() {
+        return ResponseEntity.ok(vendaService.obterMetricasColunares());
+    }
+
     /**
      * Cria uma nova venda - ATUALIZA ESTOQUE CONSOLIDADO
      */
@@ -137,6 +233,9 @@ public class VendaController {
             log.info("✅ Venda criada com sucesso: ID {}", vendaCriada.getId());
             return ResponseEntity.status(HttpStatus.CREATED).body(vendaCriada);
 
+        } catch (EstoqueLockManager.TempoEsgotadoException e) {
+            log.warn("⏳ Estoque ocupado ao criar venda: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (RuntimeException e) {
             log.error("❌ Erro de negócio ao criar venda: {}", e.getMessage());
             return ResponseEntity.badRequest().build();
@@ -169,6 +268,9 @@ public class VendaController {
             log.info("✅ Venda atualizada com sucesso: ID {}", id);
             return ResponseEntity.ok(vendaAtualizada);
 
+        } catch (EstoqueLockManager.TempoEsgotadoException e) {
+            log.warn("⏳ Estoque ocupado ao atualizar venda ID {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (RuntimeException e) {
             log.error("❌ Erro de negócio ao atualizar venda ID {}: {}", id, e.getMessage());
             return ResponseEntity.badRequest().build();
@@ -196,6 +298,9 @@ public class VendaController {
             log.info("✅ Venda excluída com sucesso: ID {}", id);
             return ResponseEntity.noContent().build();
 
+        } catch (EstoqueLockManager.TempoEsgotadoException e) {
+            log.warn("⏳ Estoque ocupado ao excluir venda ID {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (RuntimeException e) {
             log.error("❌ Erro de negócio ao excluir venda ID {}: {}", id, e.getMessage());
             return ResponseEntity.notFound().build();
@@ -205,6 +310,43 @@ public class VendaController {
         }
     }
 
+    /**
+     * Importa vendas históricas de um arquivo CSV. O processamento é feito em segundo plano;
+     * a resposta traz o ID para acompanhar o progresso em /api/vendas/importar/{id}.
+     */
+    @PostMapping("/importar")
+    public ResponseEntity<ImportacaoVendasDTO> importar(@RequestParam("arquivo") MultipartFile arquivo) {
+        try {
+            if (arquivo == null || arquivo.isEmpty()) {
+                log.warn("⚠️ Arquivo de importação vazio");
+                return ResponseEntity.badRequest().build();
+            }
+
+            // O upload é copiado para um arquivo temporário e lido linha a linha pela importação
+            Path temporario = Files.createTempFile("importacao-vendas-", ".csv");
+            arquivo.transferTo(temporario);
+
+            ImportacaoVendasDTO importacao = vendaImportacaoService.iniciarImportacao(
+                    temporario, arquivo.getOriginalFilename());
+
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(importacao);
+
+        } catch (Exception e) {
+            log.error("❌ Erro ao iniciar importação de vendas: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Progresso e erros por linha de uma importação de vendas
+     */
+    @GetMapping("/importar/{id}")
+    public ResponseEntity<ImportacaoVendasDTO> acompanharImportacao(@PathVariable String id) {
+        return vendaImportacaoService.buscarImportacao(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     /**
      * Endpoint específico para análise de impacto no estoque
      */
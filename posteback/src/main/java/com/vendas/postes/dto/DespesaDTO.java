@@ -0,0 +1,25 @@
+package com.vendas.postes.dto;
+
+import com.vendas.postes.model.Despesa;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Despesa para leitura, montada direto pela consulta (sem entidade gerenciada).
+ * Tem os mesmos campos JSON da entidade Despesa.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DespesaDTO {
+    private Long id;
+    private String descricao;
+    private BigDecimal valor;
+    private Despesa.TipoDespesa tipo;
+    private LocalDate dataDespesa;
+    private String tenantId;
+}
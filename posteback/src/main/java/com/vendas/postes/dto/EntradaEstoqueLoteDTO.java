@@ -0,0 +1,13 @@
+package com.vendas.postes.dto;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+public class EntradaEstoqueLoteDTO {
+    private Long posteId;
+    private Integer quantidade;
+    private LocalDate dataEstoque;
+    private String observacao;
+}
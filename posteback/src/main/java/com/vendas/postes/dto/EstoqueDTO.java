@@ -1,11 +1,13 @@
 package com.vendas.postes.dto;
 
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Data
+@NoArgsConstructor
 public class EstoqueDTO {
     private Long id;
     private Long posteId;
@@ -17,4 +19,38 @@ public class EstoqueDTO {
     private Integer quantidadeMinima;
     private LocalDateTime dataAtualizacao;
     private Boolean estoqueAbaixoMinimo;
-}
\ No newline at end of file
+
+    /**
+     * Usado pelas consultas de leitura (SELECT new ...), sem carregar a entidade
+     */
+    public EstoqueDTO(Long id, Long posteId, String codigoPoste, String descricaoPoste, BigDecimal precoPoste,
+                      Boolean posteAtivo, Integer quantidadeAtual, Integer quantidadeMinima,
+                      LocalDateTime dataAtualizacao) {
+        this.id = id;
+        this.posteId = posteId;
+        this.codigoPoste = codigoPoste;
+        this.descricaoPoste = descricaoPoste;
+        this.precoPoste = precoPoste;
+        this.posteAtivo = posteAtivo;
+        this.quantidadeAtual = quantidadeAtual;
+        this.quantidadeMinima = quantidadeMinima;
+        this.dataAtualizacao = dataAtualizacao;
+        this.estoqueAbaixoMinimo = quantidadeAtual <= quantidadeMinima;
+    }
+
+    /**
+     * Cópia usada pelo cache das listagens, que não entrega as próprias instâncias a quem chama
+     */
+    public EstoqueDTO(EstoqueDTO outro) {
+        this.id = outro.id;
+        this.posteId = outro.posteId;
+        this.codigoPoste = outro.codigoPoste;
+        this.descricaoPoste = outro.descricaoPoste;
+        this.precoPoste = outro.precoPoste;
+        this.posteAtivo = outro.posteAtivo;
+        this.quantidadeAtual = outro.quantidadeAtual;
+        this.quantidadeMinima = outro.quantidadeMinima;
+        this.dataAtualizacao = outro.dataAtualizacao;
+        this.estoqueAbaixoMinimo = outro.estoqueAbaixoMinimo;
+    }
+}
@@ -0,0 +1,18 @@
+package com.vendas.postes.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EstoqueNaDataDTO {
+    private Long posteId;
+    private String codigoPoste;
+    private String descricaoPoste;
+    private LocalDate dataReferencia;
+    private Integer quantidadeCalculada;
+}
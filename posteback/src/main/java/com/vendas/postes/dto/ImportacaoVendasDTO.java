@@ -0,0 +1,102 @@
+package com.vendas.postes.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Situação de uma importação de vendas por CSV. É atualizada pela thread da importação
+ * enquanto o arquivo é lido; o endpoint de progresso recebe uma cópia tirada com o mesmo
+ * lock das atualizações, para que os contadores e o status de uma resposta sejam do mesmo momento.
+ */
+@Data
+public class ImportacaoVendasDTO {
+
+    public enum Status { PROCESSANDO, CONCLUIDA, FALHOU }
+
+    private String id;
+    private String nomeArquivo;
+    private String tenantId;
+    private Status status = Status.PROCESSANDO;
+    private long tamanhoArquivo;
+    private long bytesLidos;
+    private long linhasLidas;
+    private long vendasImportadas;
+    private long linhasComErro;
+    private String mensagem;
+    private LocalDateTime dataInicio = LocalDateTime.now();
+    private LocalDateTime dataFim;
+
+    // Só os primeiros erros são guardados, o total fica em linhasComErro
+    private final List<ErroLinha> erros = new ArrayList<>();
+
+    public synchronized Double getPercentual() {
+        if (status != Status.PROCESSANDO) {
+            return 100.0;
+        }
+        return tamanhoArquivo > 0 ? Math.min(99.9, bytesLidos * 100.0 / tamanhoArquivo) : 0.0;
+    }
+
+    public synchronized List<ErroLinha> getErros() {
+        return new ArrayList<>(erros);
+    }
+
+    public synchronized void adicionarBytesLidos(long bytes) {
+        bytesLidos += bytes;
+    }
+
+    public synchronized void contarLinhaLida() {
+        linhasLidas++;
+    }
+
+    public synchronized void adicionarVendasImportadas(int quantidade) {
+        vendasImportadas += quantidade;
+    }
+
+    public synchronized void registrarErro(long linha, String mensagem, int maximoErros) {
+        linhasComErro++;
+        if (erros.size() < maximoErros) {
+            erros.add(new ErroLinha(linha, mensagem));
+        }
+    }
+
+    /**
+     * Status, mensagem e data de fim mudam juntos: nenhuma cópia vê a importação concluída sem a mensagem
+     */
+    public synchronized void finalizar(Status status, String mensagem) {
+        this.status = status;
+        this.mensagem = mensagem;
+        this.dataFim = LocalDateTime.now();
+    }
+
+    /**
+     * Cópia da situação atual, entregue a quem consulta o progresso
+     */
+    public synchronized ImportacaoVendasDTO copiar() {
+        ImportacaoVendasDTO copia = new ImportacaoVendasDTO();
+        copia.id = id;
+        copia.nomeArquivo = nomeArquivo;
+        copia.tenantId = tenantId;
+        copia.status = status;
+        copia.tamanhoArquivo = tamanhoArquivo;
+        copia.bytesLidos = bytesLidos;
+        copia.linhasLidas = linhasLidas;
+        copia.vendasImportadas = vendasImportadas;
+        copia.linhasComErro = linhasComErro;
+        copia.mensagem = mensagem;
+        copia.dataInicio = dataInicio;
+        copia.dataFim = dataFim;
+        copia.erros.addAll(erros);
+        return copia;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class ErroLinha {
+        private long linha;
+        private String mensagem;
+    }
+}
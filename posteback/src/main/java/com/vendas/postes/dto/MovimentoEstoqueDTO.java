@@ -38,20 +38,34 @@ public class MovimentoEstoqueDTO {
     public MovimentoEstoqueDTO() {}
 
     public MovimentoEstoqueDTO(MovimentoEstoque movimento) {
-        this.id = movimento.getId();
-        this.posteId = movimento.getPoste().getId();
-        this.codigoPoste = movimento.getPoste().getCodigo();
-        this.descricaoPoste = movimento.getPoste().getDescricao();
-        this.precoPoste = movimento.getPoste().getPreco();
-        this.tipoMovimento = movimento.getTipoMovimento();
-        this.tipoMovimentoDescricao = movimento.getTipoMovimento().getDescricao();
-        this.quantidade = movimento.getQuantidade();
-        this.dataMovimento = movimento.getDataMovimento();
-        this.dataRegistro = movimento.getDataRegistro();
-        this.observacao = movimento.getObservacao();
-        this.quantidadeAnterior = movimento.getQuantidadeAnterior();
-        this.quantidadeAtual = movimento.getQuantidadeAtual();
-        this.tenantId = movimento.getTenantId();
+        this(movimento.getId(), movimento.getPoste().getId(), movimento.getPoste().getCodigo(),
+                movimento.getPoste().getDescricao(), movimento.getPoste().getPreco(), movimento.getTipoMovimento(),
+                movimento.getQuantidade(), movimento.getDataMovimento(), movimento.getDataRegistro(),
+                movimento.getObservacao(), movimento.getQuantidadeAnterior(), movimento.getQuantidadeAtual(),
+                movimento.getTenantId());
+    }
+
+    /**
+     * Usado pelas consultas de leitura (SELECT new ...), sem carregar a entidade
+     */
+    public MovimentoEstoqueDTO(Long id, Long posteId, String codigoPoste, String descricaoPoste, BigDecimal precoPoste,
+                               MovimentoEstoque.TipoMovimento tipoMovimento, Integer quantidade,
+                               LocalDate dataMovimento, LocalDateTime dataRegistro, String observacao,
+                               Integer quantidadeAnterior, Integer quantidadeAtual, String tenantId) {
+        this.id = id;
+        this.posteId = posteId;
+        this.codigoPoste = codigoPoste;
+        this.descricaoPoste = descricaoPoste;
+        this.precoPoste = precoPoste;
+        this.tipoMovimento = tipoMovimento;
+        this.tipoMovimentoDescricao = tipoMovimento != null ? tipoMovimento.getDescricao() : null;
+        this.quantidade = quantidade;
+        this.dataMovimento = dataMovimento;
+        this.dataRegistro = dataRegistro;
+        this.observacao = observacao;
+        this.quantidadeAnterior = quantidadeAnterior;
+        this.quantidadeAtual = quantidadeAtual;
+        this.tenantId = tenantId;
 
         // Campos calculados
         this.calcularCamposDerivedos();
@@ -0,0 +1,106 @@
+package com.vendas.postes.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página de uma listagem paginada por chave (keyset). O cursor é opaco para o cliente:
+ * guarda a chave de ordenação (data ou código) e o ID do último item da página, e a
+ * próxima página começa logo depois dele, sem OFFSET.
+ */
+@Data
+@AllArgsConstructor
+public class PaginaDTO<T> {
+
+    public static final int LIMITE_PADRAO = 50;
+    public static final int LIMITE_MAXIMO = 500;
+
+    private List<T> itens;
+    private int limite;
+    private String proximoCursor;
+
+    public boolean isTemMais() {
+        return proximoCursor != null;
+    }
+
+    /**
+     * Limite pedido pelo cliente, entre 1 e LIMITE_MAXIMO
+     */
+    public static int limiteValido(Integer limite) {
+        if (limite == null) {
+            return LIMITE_PADRAO;
+        }
+        return Math.max(1, Math.min(limite, LIMITE_MAXIMO));
+    }
+
+    /**
+     * Monta a página a partir de uma consulta que buscou limite + 1 itens:
+     * o item extra só indica que existe próxima página.
+     */
+    public static <T> PaginaDTO<T> montar(List<T> itens, int limite, Function<T, String> cursorDoItem) {
+        if (itens.size() <= limite) {
+            return new PaginaDTO<>(itens, limite, null);
+        }
+
+        List<T> pagina = itens.subList(0, limite);
+        return new PaginaDTO<>(pagina, limite, cursorDoItem.apply(pagina.get(limite - 1)));
+    }
+
+    public static String codificarCursor(Object chave, Long id) {
+        String cursor = chave + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodifica um cursor gerado por codificarCursor. Cursor inválido gera CursorInvalidoException (400).
+     */
+    public static Cursor decodificarCursor(String cursor) {
+        try {
+            String texto = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separador = texto.lastIndexOf('|');
+            return new Cursor(texto.substring(0, separador), Long.parseLong(texto.substring(separador + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new CursorInvalidoException();
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Cursor {
+        private String chave;
+        private Long id;
+
+        public LocalDate chaveComoData() {
+            try {
+                return LocalDate.parse(chave);
+            } catch (DateTimeParseException e) {
+                throw new CursorInvalidoException();
+            }
+        }
+
+        public LocalDateTime chaveComoDataHora() {
+            try {
+                return LocalDateTime.parse(chave);
+            } catch (DateTimeParseException e) {
+                throw new CursorInvalidoException();
+            }
+        }
+    }
+
+    /**
+     * Cursor que não foi gerado por codificarCursor: erro do cliente, respondido com 400
+     */
+    public static class CursorInvalidoException extends IllegalArgumentException {
+        public CursorInvalidoException() {
+            super("Cursor de paginação inválido");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.vendas.postes.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Poste para leitura, montado direto pela consulta (sem entidade gerenciada).
+ * Tem os mesmos campos JSON da entidade Poste.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PosteDTO {
+    private Long id;
+    private String codigo;
+    private String descricao;
+    private BigDecimal preco;
+    private Boolean ativo;
+    private String tenantId;
+}
@@ -0,0 +1,25 @@
+package com.vendas.postes.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class ResultadoEntradaLoteDTO {
+    private Integer indice;
+    private Long posteId;
+    private String codigoPoste;
+    private Boolean sucesso;
+    private String erro;
+    private Integer quantidadeAnterior;
+    private Integer quantidadeAtual;
+
+    public static ResultadoEntradaLoteDTO falha(int indice, Long posteId, String erro) {
+        ResultadoEntradaLoteDTO resultado = new ResultadoEntradaLoteDTO();
+        resultado.setIndice(indice);
+        resultado.setPosteId(posteId);
+        resultado.setSucesso(false);
+        resultado.setErro(erro);
+        return resultado;
+    }
+}
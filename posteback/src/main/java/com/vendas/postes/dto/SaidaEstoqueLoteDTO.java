@@ -0,0 +1,17 @@
+package com.vendas.postes.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SaidaEstoqueLoteDTO {
+    private Long posteId;
+    private Integer quantidade;
+    private LocalDate dataEstoque;
+    private String observacao;
+}
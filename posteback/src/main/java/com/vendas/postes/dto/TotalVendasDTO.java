@@ -0,0 +1,24 @@
+package com.vendas.postes.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Totais de um grupo de vendas. A chave depende do agrupamento: tipo de venda, segunda-feira
+ * da semana (yyyy-MM-dd), ID do poste ("sem-poste" para vendas sem poste) ou tenant.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TotalVendasDTO {
+    private String chave;
+    private Long quantidadeVendas;
+    private Long quantidadePostes;
+    private BigDecimal valorVenda;
+    private BigDecimal freteEletrons;
+    private BigDecimal valorExtra;
+    private BigDecimal custoPostes;
+}
@@ -0,0 +1,19 @@
+package com.vendas.postes.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VariacaoEstoqueDTO {
+    private Long posteId;
+    private String codigoPoste;
+    private String descricaoPoste;
+    private LocalDate dataInicio;
+    private LocalDate dataFim;
+    private Integer variacao;
+}
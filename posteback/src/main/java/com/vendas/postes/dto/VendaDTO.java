@@ -1,12 +1,16 @@
 package com.vendas.postes.dto;
 
 import com.vendas.postes.model.Venda;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class VendaDTO {
     private Long id;
     private LocalDateTime dataVenda;
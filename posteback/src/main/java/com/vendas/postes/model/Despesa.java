@@ -14,7 +14,8 @@ import java.time.LocalDate;
 public class Despesa {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "despesas_seq")
+    @SequenceGenerator(name = "despesas_seq", sequenceName = "despesas_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, length = 500)
@@ -13,7 +13,8 @@ import java.time.LocalDateTime;
 public class Estoque {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "estoque_seq")
+    @SequenceGenerator(name = "estoque_seq", sequenceName = "estoque_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,50 @@
+package com.vendas.postes.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Saldo de um poste no fim de um mês fechado, calculado a partir dos movimentos.
+ * O estoque em uma data é o checkpoint mais próximo antes dela mais os movimentos seguintes.
+ */
+@Entity
+@Table(name = "estoque_checkpoint",
+        uniqueConstraints = @UniqueConstraint(name = "uk_checkpoint_poste_tenant_data",
+                columnNames = {"poste_id", "tenant_id", "data_referencia"}))
+@Data
+@NoArgsConstructor
+public class EstoqueCheckpoint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "estoque_checkpoint_seq")
+    @SequenceGenerator(name = "estoque_checkpoint_seq", sequenceName = "estoque_checkpoint_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "poste_id", nullable = false)
+    private Long posteId;
+
+    @Column(name = "tenant_id", nullable = false, length = 20)
+    private String tenantId;
+
+    // Último dia do mês
+    @Column(name = "data_referencia", nullable = false)
+    private LocalDate dataReferencia;
+
+    @Column(name = "quantidade", nullable = false)
+    private Integer quantidade = 0;
+
+    @Column(name = "data_calculo", nullable = false)
+    private LocalDateTime dataCalculo = LocalDateTime.now();
+
+    public EstoqueCheckpoint(Long posteId, String tenantId, LocalDate dataReferencia, Integer quantidade) {
+        this.posteId = posteId;
+        this.tenantId = tenantId;
+        this.dataReferencia = dataReferencia;
+        this.quantidade = quantidade;
+        this.dataCalculo = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,43 @@
+package com.vendas.postes.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estoque consolidado por código base (soma das variantes dos dois caminhões).
+ * É mantido na mesma transação das entradas e saídas de estoque.
+ */
+@Entity
+@Table(name = "estoque_consolidado")
+@Data
+@NoArgsConstructor
+public class EstoqueConsolidado {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "estoque_consolidado_seq")
+    @SequenceGenerator(name = "estoque_consolidado_seq", sequenceName = "estoque_consolidado_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "codigo_base", nullable = false, unique = true)
+    private String codigoBase;
+
+    @Column(name = "quantidade_total", nullable = false)
+    private Integer quantidadeTotal = 0;
+
+    @Column(name = "quantidade_vermelho", nullable = false)
+    private Integer quantidadeVermelho = 0;
+
+    @Column(name = "quantidade_branco", nullable = false)
+    private Integer quantidadeBranco = 0;
+
+    @Column(name = "data_atualizacao", nullable = false)
+    private LocalDateTime dataAtualizacao = LocalDateTime.now();
+
+    public EstoqueConsolidado(String codigoBase) {
+        this.codigoBase = codigoBase;
+        this.dataAtualizacao = LocalDateTime.now();
+    }
+}
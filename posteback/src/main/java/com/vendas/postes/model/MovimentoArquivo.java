@@ -0,0 +1,46 @@
+package com.vendas.postes.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Registro de um segmento de movimentos arquivados em disco. Só segmentos registrados são
+ * lidos: o registro é gravado na mesma transação que apaga os movimentos do banco.
+ */
+@Entity
+@Table(name = "movimento_arquivo")
+@Data
+@NoArgsConstructor
+public class MovimentoArquivo {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movimento_arquivo_seq")
+    @SequenceGenerator(name = "movimento_arquivo_seq", sequenceName = "movimento_arquivo_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "tenant_id", nullable = false, length = 20)
+    private String tenantId;
+
+    @Column(name = "ano", nullable = false)
+    private Integer ano;
+
+    // Nome do arquivo dentro do diretório de arquivamento
+    @Column(name = "arquivo", nullable = false, unique = true)
+    private String arquivo;
+
+    @Column(name = "linhas", nullable = false)
+    private Long linhas;
+
+    @Column(name = "data_inicial", nullable = false)
+    private LocalDate dataInicial;
+
+    @Column(name = "data_final", nullable = false)
+    private LocalDate dataFinal;
+
+    @Column(name = "data_arquivamento", nullable = false)
+    private LocalDateTime dataArquivamento = LocalDateTime.now();
+}
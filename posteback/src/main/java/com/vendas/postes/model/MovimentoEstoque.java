@@ -17,7 +17,8 @@ import java.time.LocalDateTime;
 public class MovimentoEstoque {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movimento_estoque_seq")
+    @SequenceGenerator(name = "movimento_estoque_seq", sequenceName = "movimento_estoque_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -49,6 +50,10 @@ public class MovimentoEstoque {
     @Column(name = "tenant_id", length = 20)
     private String tenantId = "vermelho";
 
+    // false enquanto o estoque em memória ainda não aplicou o movimento à tabela estoque
+    @Column(name = "estoque_aplicado", nullable = false)
+    private Boolean estoqueAplicado = true;
+
     @PrePersist
     @PreUpdate
     public void ensureTenantId() {
@@ -0,0 +1,53 @@
+package com.vendas.postes.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Movimentos arquivados de um poste em um dia, somados por tipo. Fica no banco depois que os
+ * movimentos vão para os segmentos em disco, para que estoque na data e relatórios continuem
+ * sendo calculados por consulta.
+ */
+@Entity
+@Table(name = "movimento_resumo_diario",
+        uniqueConstraints = @UniqueConstraint(name = "uk_resumo_diario_tenant_poste_data_tipo",
+                columnNames = {"tenant_id", "poste_id", "data_movimento", "tipo_movimento"}))
+@Data
+@NoArgsConstructor
+public class MovimentoResumoDiario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movimento_resumo_diario_seq")
+    @SequenceGenerator(name = "movimento_resumo_diario_seq", sequenceName = "movimento_resumo_diario_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "tenant_id", nullable = false, length = 20)
+    private String tenantId;
+
+    @Column(name = "poste_id", nullable = false)
+    private Long posteId;
+
+    @Column(name = "data_movimento", nullable = false)
+    private LocalDate dataMovimento;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "tipo_movimento", nullable = false)
+    private MovimentoEstoque.TipoMovimento tipoMovimento;
+
+    @Column(name = "movimentos", nullable = false)
+    private Long movimentos = 0L;
+
+    @Column(name = "quantidade", nullable = false)
+    private Long quantidade = 0L;
+
+    public MovimentoResumoDiario(String tenantId, Long posteId, LocalDate dataMovimento,
+                                 MovimentoEstoque.TipoMovimento tipoMovimento) {
+        this.tenantId = tenantId;
+        this.posteId = posteId;
+        this.dataMovimento = dataMovimento;
+        this.tipoMovimento = tipoMovimento;
+    }
+}
@@ -1,5 +1,6 @@
 package com.vendas.postes.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,12 +14,21 @@ import java.math.BigDecimal;
 public class Poste {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "postes_seq")
+    @SequenceGenerator(name = "postes_seq", sequenceName = "postes_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
     private String codigo;
 
+    /**
+     * Código sem o sufixo de variante (-B, -C). Agrupa as variantes do mesmo
+     * poste nos dois caminhões e é a chave usada na consolidação do estoque.
+     */
+    @JsonIgnore
+    @Column(name = "codigo_base")
+    private String codigoBase;
+
     @Column(nullable = false, length = 500)
     private String descricao;
 
@@ -32,11 +42,31 @@ public class Poste {
     @Column(name = "tenant_id", length = 20)
     private String tenantId = "vermelho";
 
+    public void setCodigo(String codigo) {
+        this.codigo = codigo;
+        this.codigoBase = extrairCodigoBase(codigo);
+    }
+
     @PrePersist
     @PreUpdate
+    public void prepararParaSalvar() {
+        ensureTenantId();
+        this.codigoBase = extrairCodigoBase(this.codigo);
+    }
+
     public void ensureTenantId() {
         if (this.tenantId == null || this.tenantId.trim().isEmpty()) {
             this.tenantId = "vermelho";
         }
     }
+
+    /**
+     * Extrai o código base removendo sufixos como -B, -C, etc.
+     */
+    public static String extrairCodigoBase(String codigo) {
+        if (codigo == null) return "";
+
+        // Remover sufixos comuns como -B, -C
+        return codigo.replaceAll("-[BC]$", "");
+    }
 }
\ No newline at end of file
@@ -14,7 +14,8 @@ import java.time.LocalDateTime;
 public class Venda {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vendas_seq")
+    @SequenceGenerator(name = "vendas_seq", sequenceName = "vendas_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "data_venda", nullable = false)
@@ -0,0 +1,65 @@
+package com.vendas.postes.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Totais das vendas de um tenant em um mês, por tipo de venda. É mantido na mesma
+ * transação que cria, altera ou exclui a venda, para que os resumos por mês não
+ * precisem reler as vendas.
+ */
+@Entity
+@Table(name = "venda_resumo_mensal",
+        uniqueConstraints = @UniqueConstraint(name = "uk_venda_resumo_tenant_mes_tipo",
+                columnNames = {"tenant_id", "mes_referencia", "tipo_venda"}))
+@Data
+@NoArgsConstructor
+public class VendaResumoMensal {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "venda_resumo_mensal_seq")
+    @SequenceGenerator(name = "venda_resumo_mensal_seq", sequenceName = "venda_resumo_mensal_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "tenant_id", nullable = false, length = 20)
+    private String tenantId;
+
+    // Primeiro dia do mês
+    @Column(name = "mes_referencia", nullable = false)
+    private LocalDate mesReferencia;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "tipo_venda", nullable = false)
+    private Venda.TipoVenda tipoVenda;
+
+    @Column(name = "quantidade_vendas", nullable = false)
+    private Long quantidadeVendas = 0L;
+
+    @Column(name = "valor_venda", nullable = false, precision = 15, scale = 2)
+    private BigDecimal valorVenda = BigDecimal.ZERO;
+
+    @Column(name = "frete_eletrons", nullable = false, precision = 15, scale = 2)
+    private BigDecimal freteEletrons = BigDecimal.ZERO;
+
+    @Column(name = "valor_extra", nullable = false, precision = 15, scale = 2)
+    private BigDecimal valorExtra = BigDecimal.ZERO;
+
+    // Preço do poste × quantidade, com o preço atual do poste
+    @Column(name = "custo_postes", nullable = false, precision = 15, scale = 2)
+    private BigDecimal custoPostes = BigDecimal.ZERO;
+
+    @Column(name = "data_atualizacao", nullable = false)
+    private LocalDateTime dataAtualizacao = LocalDateTime.now();
+
+    public VendaResumoMensal(String tenantId, LocalDate mesReferencia, Venda.TipoVenda tipoVenda) {
+        this.tenantId = tenantId;
+        this.mesReferencia = mesReferencia;
+        this.tipoVenda = tipoVenda;
+        this.dataAtualizacao = LocalDateTime.now();
+    }
+}
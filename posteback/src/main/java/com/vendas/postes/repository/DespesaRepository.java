@@ -1,14 +1,48 @@
 package com.vendas.postes.repository;
 
+import com.vendas.postes.dto.DespesaDTO;
 import com.vendas.postes.model.Despesa;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.List;
 
 @Repository
 public interface DespesaRepository extends JpaRepository<Despesa, Long> {
-    List<Despesa> findByTenantId(String tenantId);
-    List<Despesa> findByTenantIdAndDataDespesaBetween(String tenantId, LocalDate inicio, LocalDate fim);
+
+    String DTO_SELECT = "SELECT new com.vendas.postes.dto.DespesaDTO(d.id, d.descricao, d.valor, d.tipo, " +
+            "d.dataDespesa, d.tenantId) FROM Despesa d ";
+
+    /**
+     * Despesas do tenant para leitura, sem carregar entidades
+     */
+    @Transactional(readOnly = true)
+    @Query(DTO_SELECT + "WHERE d.tenantId = :tenantId")
+    List<DespesaDTO> listarDTOs(@Param("tenantId") String tenantId);
+
+    @Transactional(readOnly = true)
+    @Query(DTO_SELECT + "WHERE d.tenantId = :tenantId AND d.dataDespesa BETWEEN :inicio AND :fim")
+    List<DespesaDTO> listarDTOsNoPeriodo(@Param("tenantId") String tenantId,
+                                         @Param("inicio") LocalDate inicio,
+                                         @Param("fim") LocalDate fim);
+
+    /**
+     * Página de despesas do tenant, da mais recente para a mais antiga, a partir de inicio.
+     * Começa depois do cursor (cursorData, cursorId) e usa o índice (tenant_id, data_despesa, id).
+     */
+    @Transactional(readOnly = true)
+    @Query(DTO_SELECT + "WHERE d.tenantId = :tenantId " +
+            "AND d.dataDespesa >= :inicio AND d.dataDespesa <= :cursorData " +
+            "AND (d.dataDespesa < :cursorData OR d.id < :cursorId) " +
+            "ORDER BY d.dataDespesa DESC, d.id DESC")
+    List<DespesaDTO> buscarPagina(@Param("tenantId") String tenantId,
+                                  @Param("inicio") LocalDate inicio,
+                                  @Param("cursorData") LocalDate cursorData,
+                                  @Param("cursorId") Long cursorId,
+                                  Limit limite);
 }
\ No newline at end of file
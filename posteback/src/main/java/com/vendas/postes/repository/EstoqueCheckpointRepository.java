@@ -0,0 +1,63 @@
+package com.vendas.postes.repository;
+
+import com.vendas.postes.model.EstoqueCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface EstoqueCheckpointRepository extends JpaRepository<EstoqueCheckpoint, Long> {
+
+    /**
+     * Data do último checkpoint gerado (de qualquer tenant)
+     */
+    @Query("SELECT MAX(c.dataReferencia) FROM EstoqueCheckpoint c")
+    Optional<LocalDate> findUltimaDataReferencia();
+
+    /**
+     * Data do checkpoint mais recente até a data informada
+     */
+    @Query("SELECT MAX(c.dataReferencia) FROM EstoqueCheckpoint c WHERE c.dataReferencia <= :data")
+    Optional<LocalDate> findUltimaDataReferenciaAte(@Param("data") LocalDate data);
+
+    Optional<EstoqueCheckpoint> findByPosteIdAndTenantIdAndDataReferencia(Long posteId, String tenantId,
+                                                                          LocalDate dataReferencia);
+
+    List<EstoqueCheckpoint> findByDataReferencia(LocalDate dataReferencia);
+
+    List<EstoqueCheckpoint> findByTenantIdAndDataReferencia(String tenantId, LocalDate dataReferencia);
+
+    /**
+     * Datas de checkpoint já geradas a partir de uma data
+     */
+    @Query("SELECT DISTINCT c.dataReferencia FROM EstoqueCheckpoint c WHERE c.dataReferencia >= :data")
+    List<LocalDate> findDatasReferenciaAPartirDe(@Param("data") LocalDate data);
+
+    /**
+     * Datas de checkpoint do poste no tenant a partir de uma data
+     */
+    @Query("SELECT c.dataReferencia FROM EstoqueCheckpoint c WHERE c.posteId = :posteId " +
+            "AND c.tenantId = :tenantId AND c.dataReferencia >= :data")
+    List<LocalDate> findDatasReferenciaDoPosteAPartirDe(@Param("posteId") Long posteId,
+                                                        @Param("tenantId") String tenantId,
+                                                        @Param("data") LocalDate data);
+
+    /**
+     * Soma a variação aos checkpoints do poste a partir de uma data, de forma atômica no banco
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE EstoqueCheckpoint c SET c.quantidade = c.quantidade + :variacao, c.dataCalculo = :dataCalculo " +
+            "WHERE c.posteId = :posteId AND c.tenantId = :tenantId AND c.dataReferencia >= :data")
+    int somarQuantidadeAPartirDe(@Param("posteId") Long posteId,
+                                 @Param("tenantId") String tenantId,
+                                 @Param("data") LocalDate data,
+                                 @Param("variacao") int variacao,
+                                 @Param("dataCalculo") LocalDateTime dataCalculo);
+}
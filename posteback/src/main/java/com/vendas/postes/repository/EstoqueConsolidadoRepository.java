@@ -0,0 +1,52 @@
+package com.vendas.postes.repository;
+
+import com.vendas.postes.model.EstoqueConsolidado;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface EstoqueConsolidadoRepository extends JpaRepository<EstoqueConsolidado, Long> {
+
+    Optional<EstoqueConsolidado> findByCodigoBase(String codigoBase);
+
+    /**
+     * Aplica uma variação de quantidade ao código base. Retorna 0 se ainda não existe linha para ele.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE EstoqueConsolidado c SET " +
+            "c.quantidadeTotal = c.quantidadeTotal + :deltaVermelho + :deltaBranco, " +
+            "c.quantidadeVermelho = c.quantidadeVermelho + :deltaVermelho, " +
+            "c.quantidadeBranco = c.quantidadeBranco + :deltaBranco, " +
+            "c.dataAtualizacao = :dataAtualizacao " +
+            "WHERE c.codigoBase = :codigoBase")
+    int aplicarDelta(@Param("codigoBase") String codigoBase,
+                     @Param("deltaVermelho") int deltaVermelho,
+                     @Param("deltaBranco") int deltaBranco,
+                     @Param("dataAtualizacao") LocalDateTime dataAtualizacao);
+
+    /**
+     * Postes ativos do tenant com o estoque consolidado do seu código base.
+     * Cada linha contém [Poste, EstoqueConsolidado ou null, ID do estoque do poste ou null].
+     */
+    @Query("SELECT p, c, e.id FROM Poste p LEFT JOIN EstoqueConsolidado c ON c.codigoBase = p.codigoBase " +
+            "LEFT JOIN Estoque e ON e.poste = p " +
+            "WHERE p.tenantId = :tenantId AND p.ativo = true")
+    List<Object[]> findPostesComConsolidadoPorTenant(@Param("tenantId") String tenantId);
+
+    /**
+     * Estoque consolidado de cada código base com o poste ativo de menor ID do código, ordenado
+     * pelo código base. Cada linha contém [Poste, EstoqueConsolidado ou null].
+     */
+    @Query("SELECT p, c FROM Poste p LEFT JOIN EstoqueConsolidado c ON c.codigoBase = p.codigoBase " +
+            "WHERE p.ativo = true AND p.id = (SELECT MIN(p2.id) FROM Poste p2 " +
+            "WHERE p2.codigoBase = p.codigoBase AND p2.ativo = true) " +
+            "ORDER BY p.codigoBase")
+    List<Object[]> findConsolidadoComPosteRepresentativo();
+}
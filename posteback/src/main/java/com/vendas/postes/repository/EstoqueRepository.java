@@ -1,11 +1,16 @@
 package com.vendas.postes.repository;
 
+import com.vendas.postes.dto.EstoqueDTO;
 import com.vendas.postes.model.Estoque;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,24 +20,67 @@ public interface EstoqueRepository extends JpaRepository<Estoque, Long> {
     /**
      * Busca estoque por ID do poste específico
      */
+    @EntityGraph(attributePaths = "poste")
     Optional<Estoque> findByPosteId(Long posteId);
 
+    /**
+     * Busca os estoques de vários postes de uma vez
+     */
+    @EntityGraph(attributePaths = "poste")
+    List<Estoque> findByPosteIdIn(Collection<Long> posteIds);
+
+    /**
+     * Saldo de todos os estoques, sem carregar entidades. Cada linha contém [posteId, quantidadeAtual].
+     */
+    @Query("SELECT e.poste.id, e.quantidadeAtual FROM Estoque e")
+    List<Object[]> listarSaldosPorPoste();
+
+    /**
+     * Lê a quantidade atual direto do banco, sem passar pelo contexto de persistência
+     */
+    @Query("SELECT e.quantidadeAtual FROM Estoque e WHERE e.id = :id")
+    Integer findQuantidadeAtualById(@Param("id") Long id);
+
+    /**
+     * Soma (ou subtrai, com delta negativo) a quantidade de forma atômica no banco
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Estoque e SET e.quantidadeAtual = e.quantidadeAtual + :delta, " +
+            "e.dataAtualizacao = :dataAtualizacao WHERE e.id = :id")
+    int somarQuantidade(@Param("id") Long id,
+                        @Param("delta") int delta,
+                        @Param("dataAtualizacao") LocalDateTime dataAtualizacao);
+
+    /**
+     * Subtrai a quantidade somente se houver saldo suficiente no momento da atualização.
+     * Retorna 0 quando outra transação consumiu o saldo antes.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Estoque e SET e.quantidadeAtual = e.quantidadeAtual - :quantidade, " +
+            "e.dataAtualizacao = :dataAtualizacao WHERE e.id = :id AND e.quantidadeAtual >= :quantidade")
+    int subtrairSeDisponivel(@Param("id") Long id,
+                             @Param("quantidade") int quantidade,
+                             @Param("dataAtualizacao") LocalDateTime dataAtualizacao);
+
     /**
      * Busca estoque por tenant (para compatibilidade)
      */
+    @EntityGraph(attributePaths = "poste")
     List<Estoque> findByTenantId(String tenantId);
 
     /**
-     * Busca estoques com quantidade > 0 por tenant
+     * Estoques com quantidade > 0 do tenant para leitura, sem carregar entidades
      */
-    @Query("SELECT e FROM Estoque e WHERE e.tenantId = :tenantId AND e.quantidadeAtual > 0")
-    List<Estoque> findEstoquesComQuantidadePorTenant(@Param("tenantId") String tenantId);
+    @Query("SELECT new com.vendas.postes.dto.EstoqueDTO(e.id, p.id, p.codigo, p.descricao, p.preco, p.ativo, " +
+            "e.quantidadeAtual, e.quantidadeMinima, e.dataAtualizacao) FROM Estoque e JOIN e.poste p " +
+            "WHERE e.tenantId = :tenantId AND e.quantidadeAtual > 0")
+    List<EstoqueDTO> listarDTOsComQuantidade(@Param("tenantId") String tenantId);
 
     /**
      * Busca estoque por código de poste (aproximado)
      * Usado para encontrar postes relacionados (ex: 4199 e 4199-B)
      */
-    @Query("SELECT e FROM Estoque e JOIN e.poste p WHERE " +
+    @Query("SELECT e FROM Estoque e JOIN FETCH e.poste p WHERE " +
             "(p.codigo = :codigo OR p.codigo = :codigoVariante1 OR p.codigo = :codigoVariante2) " +
             "AND p.ativo = true")
     List<Estoque> findByCodigoPosteVariants(
@@ -48,62 +96,74 @@ public interface EstoqueRepository extends JpaRepository<Estoque, Long> {
     List<Estoque> findAllEstoqueConsolidado();
 
     /**
-     * Busca estoques por padrão de código (para consolidação)
+     * Busca estoques dos postes ativos de um código base (para consolidação)
      */
-    @Query("SELECT e FROM Estoque e JOIN e.poste p WHERE " +
-            "p.codigo LIKE :codigoPattern AND p.ativo = true ORDER BY p.codigo")
-    List<Estoque> findByCodigoPattern(@Param("codigoPattern") String codigoPattern);
+    @Query("SELECT e FROM Estoque e JOIN FETCH e.poste p WHERE " +
+            "p.codigoBase = :codigoBase AND p.ativo = true ORDER BY p.id")
+    List<Estoque> findByCodigoBase(@Param("codigoBase") String codigoBase);
+
+    /**
+     * Busca estoques dos postes ativos de vários códigos base de uma vez
+     */
+    @Query("SELECT e FROM Estoque e JOIN FETCH e.poste p WHERE " +
+            "p.codigoBase IN :codigosBase AND p.ativo = true ORDER BY p.id")
+    List<Estoque> findByCodigoBaseIn(@Param("codigosBase") Collection<String> codigosBase);
 
     /**
      * Soma quantidade total por código base
      */
     @Query("SELECT SUM(e.quantidadeAtual) FROM Estoque e JOIN e.poste p WHERE " +
-            "(p.codigo = :codigoBase OR p.codigo LIKE :codigoBasePattern) AND p.ativo = true")
-    Integer sumQuantidadeByCodigoBase(
-            @Param("codigoBase") String codigoBase,
-            @Param("codigoBasePattern") String codigoBasePattern
-    );
+            "p.codigoBase = :codigoBase AND p.ativo = true")
+    Integer sumQuantidadeByCodigoBase(@Param("codigoBase") String codigoBase);
+
+    /**
+     * Soma as quantidades dos postes ativos agrupadas por código base e tenant do poste.
+     * Cada linha contém [codigoBase, tenantId, quantidade, dataUltimaAtualizacao].
+     */
+    @Query("SELECT p.codigoBase, p.tenantId, SUM(e.quantidadeAtual), MAX(e.dataAtualizacao) " +
+            "FROM Estoque e JOIN e.poste p WHERE p.ativo = true GROUP BY p.codigoBase, p.tenantId")
+    List<Object[]> sumQuantidadeAgrupadaPorCodigoBaseETenant();
+
+    /**
+     * Mesma soma da consulta anterior restrita a um código base.
+     * Cada linha contém [codigoBase, tenantId, quantidade, dataUltimaAtualizacao].
+     */
+    @Query("SELECT p.codigoBase, p.tenantId, SUM(e.quantidadeAtual), MAX(e.dataAtualizacao) " +
+            "FROM Estoque e JOIN e.poste p WHERE p.ativo = true AND p.codigoBase = :codigoBase " +
+            "GROUP BY p.codigoBase, p.tenantId")
+    List<Object[]> sumQuantidadePorTenantDoCodigoBase(@Param("codigoBase") String codigoBase);
 
     /**
      * Busca estoques negativos (para alertas)
      */
-    @Query("SELECT e FROM Estoque e WHERE e.quantidadeAtual < 0 ORDER BY e.quantidadeAtual")
+    @Query("SELECT e FROM Estoque e JOIN FETCH e.poste WHERE e.quantidadeAtual < 0 ORDER BY e.quantidadeAtual")
     List<Estoque> findEstoquesNegativos();
 
     /**
      * Busca estoque baixo (quantidade entre 1 e 5)
      */
-    @Query("SELECT e FROM Estoque e WHERE e.quantidadeAtual > 0 AND e.quantidadeAtual <= 5 ORDER BY e.quantidadeAtual")
+    @Query("SELECT e FROM Estoque e JOIN FETCH e.poste " +
+            "WHERE e.quantidadeAtual > 0 AND e.quantidadeAtual <= 5 ORDER BY e.quantidadeAtual")
     List<Estoque> findEstoqueBaixo();
 
     /**
      * Busca primeiro estoque disponível para um código base
      * Usado para encontrar onde reduzir estoque prioritariamente
      */
-    @Query("SELECT e FROM Estoque e JOIN e.poste p WHERE " +
-            "(p.codigo = :codigoBase OR p.codigo LIKE :codigoPattern) " +
-            "AND e.quantidadeAtual > 0 AND p.ativo = true " +
+    @Query("SELECT e FROM Estoque e JOIN FETCH e.poste p WHERE " +
+            "p.codigoBase = :codigoBase AND e.quantidadeAtual > 0 AND p.ativo = true " +
             "ORDER BY e.quantidadeAtual DESC")
-    List<Estoque> findPrimeiroEstoqueDisponivelPorCodigo(
-            @Param("codigoBase") String codigoBase,
-            @Param("codigoPattern") String codigoPattern
-    );
+    List<Estoque> findPrimeiroEstoqueDisponivelPorCodigo(@Param("codigoBase") String codigoBase);
 
     /**
      * Conta total de tipos de postes únicos
      */
-    @Query("SELECT COUNT(DISTINCT " +
-            "CASE " +
-            "  WHEN p.codigo LIKE '%-B' THEN SUBSTRING(p.codigo, 1, LENGTH(p.codigo) - 2) " +
-            "  WHEN p.codigo LIKE '%-C' THEN SUBSTRING(p.codigo, 1, LENGTH(p.codigo) - 2) " +
-            "  ELSE p.codigo " +
-            "END) " +
-            "FROM Estoque e JOIN e.poste p WHERE p.ativo = true")
+    @Query("SELECT COUNT(DISTINCT p.codigoBase) FROM Estoque e JOIN e.poste p WHERE p.ativo = true")
     Long countTiposPostesUnicos();
 
     /**
      * Busca último estoque atualizado
      */
-    @Query("SELECT e FROM Estoque e ORDER BY e.dataAtualizacao DESC")
+    @Query("SELECT e FROM Estoque e JOIN FETCH e.poste ORDER BY e.dataAtualizacao DESC")
     List<Estoque> findUltimosEstoquesAtualizados();
 }
\ No newline at end of file
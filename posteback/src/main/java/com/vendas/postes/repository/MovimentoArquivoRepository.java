@@ -0,0 +1,11 @@
+package com.vendas.postes.repository;
+
+import com.vendas.postes.model.MovimentoArquivo;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MovimentoArquivoRepository extends JpaRepository<MovimentoArquivo, Long> {
+
+    long countByTenantIdAndAno(String tenantId, Integer ano);
+}
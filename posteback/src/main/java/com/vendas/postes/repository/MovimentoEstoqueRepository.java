@@ -1,51 +1,242 @@
 package com.vendas.postes.repository;
 
+import com.vendas.postes.dto.MovimentoEstoqueDTO;
 import com.vendas.postes.model.MovimentoEstoque;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface MovimentoEstoqueRepository extends JpaRepository<MovimentoEstoque, Long> {
 
-    /**
-     * Busca movimentos por tenant
-     */
-    List<MovimentoEstoque> findByTenantIdOrderByDataRegistroDesc(String tenantId);
+    String DTO_SELECT = "SELECT new com.vendas.postes.dto.MovimentoEstoqueDTO(m.id, p.id, p.codigo, p.descricao, " +
+            "p.preco, m.tipoMovimento, m.quantidade, m.dataMovimento, m.dataRegistro, m.observacao, " +
+            "m.quantidadeAnterior, m.quantidadeAtual, m.tenantId) FROM MovimentoEstoque m JOIN m.poste p ";
 
     /**
      * Busca movimentos por período
      */
+    @EntityGraph(attributePaths = "poste")
     List<MovimentoEstoque> findByTenantIdAndDataMovimentoBetweenOrderByDataRegistroDesc(
             String tenantId, LocalDate dataInicio, LocalDate dataFim);
 
     /**
-     * Busca movimentos por poste
+     * Movimentos do tenant no período para leitura, do último registrado para o primeiro
+     */
+    @Query(DTO_SELECT + "WHERE m.tenantId = :tenantId AND m.dataMovimento BETWEEN :inicio AND :fim " +
+            "ORDER BY m.dataRegistro DESC")
+    List<MovimentoEstoqueDTO> listarDTOsNoPeriodo(@Param("tenantId") String tenantId,
+                                                  @Param("inicio") LocalDate inicio,
+                                                  @Param("fim") LocalDate fim);
+
+    /**
+     * Movimentos de um poste para leitura, do último registrado para o primeiro
+     */
+    @Query(DTO_SELECT + "WHERE p.id = :posteId AND m.tenantId = :tenantId ORDER BY m.dataRegistro DESC")
+    List<MovimentoEstoqueDTO> listarDTOsDoPoste(@Param("posteId") Long posteId, @Param("tenantId") String tenantId);
+
+    /**
+     * Página de movimentos do tenant entre inicio e fim, do mais recente para o mais antigo,
+     * começando depois do cursor (cursorData, cursorId). Usa o índice (tenant_id, data_movimento, id).
+     */
+    @Query(DTO_SELECT + "WHERE m.tenantId = :tenantId " +
+            "AND m.dataMovimento >= :inicio AND m.dataMovimento <= :cursorData " +
+            "AND (m.dataMovimento < :cursorData OR m.id < :cursorId) " +
+            "ORDER BY m.dataMovimento DESC, m.id DESC")
+    List<MovimentoEstoqueDTO> buscarPagina(@Param("tenantId") String tenantId,
+                                           @Param("inicio") LocalDate inicio,
+                                           @Param("cursorData") LocalDate cursorData,
+                                           @Param("cursorId") Long cursorId,
+                                           Limit limite);
+
+    /**
+     * Mesma página de buscarPagina, só de um poste. Usa o índice (poste_id, tenant_id, data_movimento, id).
+     */
+    @Query(DTO_SELECT + "WHERE p.id = :posteId " +
+            "AND m.tenantId = :tenantId " +
+            "AND m.dataMovimento >= :inicio AND m.dataMovimento <= :cursorData " +
+            "AND (m.dataMovimento < :cursorData OR m.id < :cursorId) " +
+            "ORDER BY m.dataMovimento DESC, m.id DESC")
+    List<MovimentoEstoqueDTO> buscarPaginaDoPoste(@Param("posteId") Long posteId,
+                                                  @Param("tenantId") String tenantId,
+                                                  @Param("inicio") LocalDate inicio,
+                                                  @Param("cursorData") LocalDate cursorData,
+                                                  @Param("cursorId") Long cursorId,
+                                                  Limit limite);
+
+    /**
+     * Movimentos do tenant entre as datas (inclusive), em ordem cronológica, lidos do banco
+     * em blocos pelo cursor JDBC já como DTO, sem entidades no contexto de persistência.
+     * O Stream precisa ser consumido e fechado dentro de uma transação.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(DTO_SELECT + "WHERE m.tenantId = :tenantId " +
+            "AND m.dataMovimento BETWEEN :inicio AND :fim ORDER BY m.dataMovimento, m.id")
+    Stream<MovimentoEstoqueDTO> streamPorPeriodo(@Param("tenantId") String tenantId,
+                                                 @Param("inicio") LocalDate inicio,
+                                                 @Param("fim") LocalDate fim);
+
+    /**
+     * Movimentos do tenant entre as datas agrupados por tipo, data e poste, para o relatório.
+     * Cada linha contém [tipoMovimento, dataMovimento, código do poste, quantidade de movimentos,
+     * soma das quantidades, soma de preco do poste × quantidade].
+     */
+    @Query("SELECT m.tipoMovimento, m.dataMovimento, p.codigo, COUNT(m), SUM(m.quantidade), " +
+            "SUM(p.preco * m.quantidade) FROM MovimentoEstoque m JOIN m.poste p " +
+            "WHERE m.tenantId = :tenantId AND m.dataMovimento BETWEEN :inicio AND :fim " +
+            "GROUP BY m.tipoMovimento, m.dataMovimento, p.codigo")
+    List<Object[]> agruparParaRelatorio(@Param("tenantId") String tenantId,
+                                        @Param("inicio") LocalDate inicio,
+                                        @Param("fim") LocalDate fim);
+
+    /**
+     * Variação do saldo de um poste entre duas datas: soma das entradas e ajustes menos
+     * saídas e vendas com data de movimento depois de depoisDe e até ate.
+     * Transferências não alteram o saldo.
+     */
+    @Query("SELECT COALESCE(SUM(CASE " +
+            "WHEN m.tipoMovimento IN (com.vendas.postes.model.MovimentoEstoque$TipoMovimento.ENTRADA, " +
+            "com.vendas.postes.model.MovimentoEstoque$TipoMovimento.AJUSTE) THEN m.quantidade " +
+            "WHEN m.tipoMovimento IN (com.vendas.postes.model.MovimentoEstoque$TipoMovimento.SAIDA, " +
+            "com.vendas.postes.model.MovimentoEstoque$TipoMovimento.VENDA) THEN -m.quantidade " +
+            "ELSE 0 END), 0) " +
+            "FROM MovimentoEstoque m WHERE m.poste.id = :posteId AND m.tenantId = :tenantId " +
+            "AND m.dataMovimento > :depoisDe AND m.dataMovimento <= :ate")
+    Long calcularSaldoEntreDatas(@Param("posteId") Long posteId,
+                                 @Param("tenantId") String tenantId,
+                                 @Param("depoisDe") LocalDate depoisDe,
+                                 @Param("ate") LocalDate ate);
+
+    /**
+     * Mesma variação da consulta anterior para todos os postes ativos do tenant, em uma consulta.
+     * Cada linha contém [posteId, codigo, descricao, variacao].
      */
-    List<MovimentoEstoque> findByPosteIdAndTenantIdOrderByDataRegistroDesc(Long posteId, String tenantId);
+    @Query("SELECT p.id, p.codigo, p.descricao, COALESCE(SUM(CASE " +
+            "WHEN m.tipoMovimento IN (com.vendas.postes.model.MovimentoEstoque$TipoMovimento.ENTRADA, " +
+            "com.vendas.postes.model.MovimentoEstoque$TipoMovimento.AJUSTE) THEN m.quantidade " +
+            "WHEN m.tipoMovimento IN (com.vendas.postes.model.MovimentoEstoque$TipoMovimento.SAIDA, " +
+            "com.vendas.postes.model.MovimentoEstoque$TipoMovimento.VENDA) THEN -m.quantidade " +
+            "ELSE 0 END), 0) " +
+            "FROM Poste p LEFT JOIN MovimentoEstoque m ON m.poste = p AND m.tenantId = :tenantId " +
+            "AND m.dataMovimento > :depoisDe AND m.dataMovimento <= :ate " +
+            "WHERE p.tenantId = :tenantId AND p.ativo = true " +
+            "GROUP BY p.id, p.codigo, p.descricao ORDER BY p.codigo")
+    List<Object[]> calcularSaldosEntreDatasPorTenant(@Param("tenantId") String tenantId,
+                                                     @Param("depoisDe") LocalDate depoisDe,
+                                                     @Param("ate") LocalDate ate);
+
+    /**
+     * Variação do saldo entre duas datas agrupada por poste e tenant, para gerar checkpoints.
+     * Cada linha contém [posteId, tenantId, variacao].
+     */
+    @Query("SELECT m.poste.id, m.tenantId, COALESCE(SUM(CASE " +
+            "WHEN m.tipoMovimento IN (com.vendas.postes.model.MovimentoEstoque$TipoMovimento.ENTRADA, " +
+            "com.vendas.postes.model.MovimentoEstoque$TipoMovimento.AJUSTE) THEN m.quantidade " +
+            "WHEN m.tipoMovimento IN (com.vendas.postes.model.MovimentoEstoque$TipoMovimento.SAIDA, " +
+            "com.vendas.postes.model.MovimentoEstoque$TipoMovimento.VENDA) THEN -m.quantidade " +
+            "ELSE 0 END), 0) " +
+            "FROM MovimentoEstoque m WHERE m.dataMovimento > :depoisDe AND m.dataMovimento <= :ate " +
+            "GROUP BY m.poste.id, m.tenantId")
+    List<Object[]> calcularVariacaoPorPosteETenant(@Param("depoisDe") LocalDate depoisDe,
+                                                  @Param("ate") LocalDate ate);
+
+    /**
+     * Variação do saldo somada por poste, tenant e dia, para montar o índice em memória.
+     * Cada linha contém [posteId, tenantId, dataMovimento, variacao].
+     */
+    @Query("SELECT m.poste.id, m.tenantId, m.dataMovimento, COALESCE(SUM(CASE " +
+            "WHEN m.tipoMovimento IN (com.vendas.postes.model.MovimentoEstoque$TipoMovimento.ENTRADA, " +
+            "com.vendas.postes.model.MovimentoEstoque$TipoMovimento.AJUSTE) THEN m.quantidade " +
+            "WHEN m.tipoMovimento IN (com.vendas.postes.model.MovimentoEstoque$TipoMovimento.SAIDA, " +
+            "com.vendas.postes.model.MovimentoEstoque$TipoMovimento.VENDA) THEN -m.quantidade " +
+            "ELSE 0 END), 0) " +
+            "FROM MovimentoEstoque m GROUP BY m.poste.id, m.tenantId, m.dataMovimento")
+    List<Object[]> somarVariacaoPorPosteEDia();
+
+    /**
+     * Pares [tenantId, ano] que ainda têm movimentos no banco com data até a informada
+     */
+    @Query("SELECT DISTINCT m.tenantId, YEAR(m.dataMovimento) FROM MovimentoEstoque m " +
+            "WHERE m.tenantId IS NOT NULL AND m.dataMovimento <= :ate")
+    List<Object[]> findTenantsEAnosAte(@Param("ate") LocalDate ate);
+
+    /**
+     * Colunas dos movimentos do tenant no período, em ordem de data e id, para o arquivamento.
+     * Cada linha contém [id, posteId, tipo, quantidade, dataMovimento, dataRegistro, observacao,
+     * quantidadeAnterior, quantidadeAtual]. Precisa de uma transação aberta enquanto é consumido.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT m.id, m.poste.id, m.tipoMovimento, m.quantidade, m.dataMovimento, m.dataRegistro, " +
+            "m.observacao, m.quantidadeAnterior, m.quantidadeAtual FROM MovimentoEstoque m " +
+            "WHERE m.tenantId = :tenantId AND m.dataMovimento BETWEEN :inicio AND :fim " +
+            "AND m.estoqueAplicado = true ORDER BY m.dataMovimento, m.id")
+    Stream<Object[]> streamColunasPorPeriodo(@Param("tenantId") String tenantId,
+                                             @Param("inicio") LocalDate inicio,
+                                             @Param("fim") LocalDate fim);
+
+    @Modifying
+    @Query("DELETE FROM MovimentoEstoque m WHERE m.id IN :ids")
+    int apagarPorIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Movimentos gravados pelo estoque em memória que ainda não chegaram à tabela estoque,
+     * em ordem de id. Cada linha contém [id, posteId, tipo, quantidade].
+     */
+    @Query("SELECT m.id, m.poste.id, m.tipoMovimento, m.quantidade FROM MovimentoEstoque m " +
+            "WHERE m.estoqueAplicado = false ORDER BY m.id")
+    List<Object[]> findPendentesDeEstoque();
+
+    @Modifying
+    @Query("UPDATE MovimentoEstoque m SET m.estoqueAplicado = true WHERE m.id IN :ids")
+    int marcarEstoqueAplicado(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Data do movimento mais antigo
+     */
+    @Query("SELECT MIN(m.dataMovimento) FROM MovimentoEstoque m")
+    Optional<LocalDate> findPrimeiraDataMovimento();
 
     /**
      * Busca movimentos por tipo
      */
+    @EntityGraph(attributePaths = "poste")
     List<MovimentoEstoque> findByTenantIdAndTipoMovimentoOrderByDataRegistroDesc(
             String tenantId, MovimentoEstoque.TipoMovimento tipoMovimento);
 
     /**
-     * Busca últimos movimentos
+     * Últimos movimentos registrados no tenant. Lê só o limite pedido pelo índice
+     * (tenant_id, data_registro, id).
+     */
+    @Query(DTO_SELECT + "WHERE m.tenantId = :tenantId ORDER BY m.dataRegistro DESC, m.id DESC")
+    List<MovimentoEstoqueDTO> findUltimosMovimentos(@Param("tenantId") String tenantId, Limit limite);
+
+    /**
+     * Últimos movimentos registrados de todos os tenants (para Jefferson), pelo índice (data_registro, id)
      */
-    @Query("SELECT m FROM MovimentoEstoque m WHERE m.tenantId = :tenantId ORDER BY m.dataRegistro DESC")
-    List<MovimentoEstoque> findUltimosMovimentos(@Param("tenantId") String tenantId);
+    @Query(DTO_SELECT + "ORDER BY m.dataRegistro DESC, m.id DESC")
+    List<MovimentoEstoqueDTO> findUltimosMovimentosConsolidados(Limit limite);
 
     /**
-     * Busca movimentos consolidados (para Jefferson)
+     * Últimos movimentos registrados de todos os tenants com data de movimento entre as datas
      */
-    @Query("SELECT m FROM MovimentoEstoque m ORDER BY m.dataRegistro DESC")
-    List<MovimentoEstoque> findAllMovimentosConsolidados();
+    @Query(DTO_SELECT + "WHERE m.dataMovimento BETWEEN :inicio AND :fim ORDER BY m.dataRegistro DESC, m.id DESC")
+    List<MovimentoEstoqueDTO> findUltimosMovimentosConsolidadosNoPeriodo(@Param("inicio") LocalDate inicio,
+                                                                         @Param("fim") LocalDate fim,
+                                                                         Limit limite);
 
     /**
      * Conta movimentos por período e tipo
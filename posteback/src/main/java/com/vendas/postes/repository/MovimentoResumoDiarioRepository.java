@@ -0,0 +1,64 @@
+package com.vendas.postes.repository;
+
+import com.vendas.postes.model.MovimentoResumoDiario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface MovimentoResumoDiarioRepository extends JpaRepository<MovimentoResumoDiario, Long> {
+
+    // Mesma regra de saldo de MovimentoEstoqueRepository: entradas e ajustes somam, saídas e vendas subtraem
+    String VARIACAO = "COALESCE(SUM(CASE " +
+            "WHEN r.tipoMovimento IN (com.vendas.postes.model.MovimentoEstoque$TipoMovimento.ENTRADA, " +
+            "com.vendas.postes.model.MovimentoEstoque$TipoMovimento.AJUSTE) THEN r.quantidade " +
+            "WHEN r.tipoMovimento IN (com.vendas.postes.model.MovimentoEstoque$TipoMovimento.SAIDA, " +
+            "com.vendas.postes.model.MovimentoEstoque$TipoMovimento.VENDA) THEN -r.quantidade " +
+            "ELSE 0 END), 0)";
+
+    List<MovimentoResumoDiario> findByTenantIdAndDataMovimentoBetween(String tenantId, LocalDate inicio, LocalDate fim);
+
+    /**
+     * Variação do saldo de um poste nos dias arquivados depois de depoisDe e até ate
+     */
+    @Query("SELECT " + VARIACAO + " FROM MovimentoResumoDiario r " +
+            "WHERE r.tenantId = :tenantId AND r.posteId = :posteId " +
+            "AND r.dataMovimento > :depoisDe AND r.dataMovimento <= :ate")
+    Long calcularSaldoEntreDatas(@Param("posteId") Long posteId,
+                                 @Param("tenantId") String tenantId,
+                                 @Param("depoisDe") LocalDate depoisDe,
+                                 @Param("ate") LocalDate ate);
+
+    /**
+     * Mesma variação para todos os postes do tenant. Cada linha contém [posteId, variacao].
+     */
+    @Query("SELECT r.posteId, " + VARIACAO + " FROM MovimentoResumoDiario r " +
+            "WHERE r.tenantId = :tenantId AND r.dataMovimento > :depoisDe AND r.dataMovimento <= :ate " +
+            "GROUP BY r.posteId")
+    List<Object[]> calcularSaldosEntreDatasPorTenant(@Param("tenantId") String tenantId,
+                                                     @Param("depoisDe") LocalDate depoisDe,
+                                                     @Param("ate") LocalDate ate);
+
+    /**
+     * Variação dos dias arquivados por poste, tenant e dia: [posteId, tenantId, dataMovimento, variacao]
+     */
+    @Query("SELECT r.posteId, r.tenantId, r.dataMovimento, " + VARIACAO + " FROM MovimentoResumoDiario r " +
+            "GROUP BY r.posteId, r.tenantId, r.dataMovimento")
+    List<Object[]> somarVariacaoPorPosteEDia();
+
+    /**
+     * Mesmas linhas de MovimentoEstoqueRepository.agruparParaRelatorio para os dias arquivados:
+     * [tipo, data, codigo do poste, movimentos, quantidade, valor]
+     */
+    @Query("SELECT r.tipoMovimento, r.dataMovimento, p.codigo, SUM(r.movimentos), SUM(r.quantidade), " +
+            "SUM(p.preco * r.quantidade) FROM MovimentoResumoDiario r JOIN Poste p ON p.id = r.posteId " +
+            "WHERE r.tenantId = :tenantId AND r.dataMovimento BETWEEN :inicio AND :fim " +
+            "GROUP BY r.tipoMovimento, r.dataMovimento, p.codigo")
+    List<Object[]> agruparParaRelatorio(@Param("tenantId") String tenantId,
+                                        @Param("inicio") LocalDate inicio,
+                                        @Param("fim") LocalDate fim);
+}
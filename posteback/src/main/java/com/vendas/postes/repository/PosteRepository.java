@@ -1,10 +1,13 @@
 package com.vendas.postes.repository;
 
+import com.vendas.postes.dto.PosteDTO;
 import com.vendas.postes.model.Poste;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -15,9 +18,50 @@ public interface PosteRepository extends JpaRepository<Poste, Long> {
     @Query("SELECT p FROM Poste p WHERE p.tenantId = :tenantId AND p.ativo = true")
     List<Poste> findByTenantIdAndAtivoTrue(@Param("tenantId") String tenantId);
 
-    @Query("SELECT p FROM Poste p WHERE p.tenantId = :tenantId")
-    List<Poste> findByTenantId(@Param("tenantId") String tenantId);
+    String DTO_SELECT = "SELECT new com.vendas.postes.dto.PosteDTO(p.id, p.codigo, p.descricao, p.preco, " +
+            "p.ativo, p.tenantId) FROM Poste p ";
+
+    /**
+     * Postes do tenant para leitura, sem carregar entidades
+     */
+    @Transactional(readOnly = true)
+    @Query(DTO_SELECT + "WHERE p.tenantId = :tenantId")
+    List<PosteDTO> listarDTOs(@Param("tenantId") String tenantId);
+
+    /**
+     * Página de postes do tenant por código, começando depois do cursor (cursorCodigo, cursorId).
+     * Usa o índice (tenant_id, codigo, id).
+     */
+    @Transactional(readOnly = true)
+    @Query(DTO_SELECT + "WHERE p.tenantId = :tenantId AND p.codigo >= :cursorCodigo " +
+            "AND (p.codigo > :cursorCodigo OR p.id > :cursorId) ORDER BY p.codigo, p.id")
+    List<PosteDTO> buscarPagina(@Param("tenantId") String tenantId,
+                                @Param("cursorCodigo") String cursorCodigo,
+                                @Param("cursorId") Long cursorId,
+                                Limit limite);
+
+    @Query("SELECT p FROM Poste p WHERE p.codigoBase = :codigoBase AND p.ativo = true")
+    List<Poste> findByCodigoBaseAndAtivoTrue(@Param("codigoBase") String codigoBase);
+
+    List<Poste> findByCodigoBaseIsNull();
+
+    /**
+     * Código, ID e situação de todos os postes do tenant, sem carregar as entidades.
+     * Cada linha contém [codigo, id, ativo].
+     */
+    @Query("SELECT p.codigo, p.id, p.ativo FROM Poste p WHERE p.tenantId = :tenantId")
+    List<Object[]> findCodigosPorTenant(@Param("tenantId") String tenantId);
+
+    /**
+     * Código base do poste, sem carregar a entidade
+     */
+    @Query("SELECT p.codigoBase FROM Poste p WHERE p.id = :id")
+    Optional<String> findCodigoBaseById(@Param("id") Long id);
 
     @Query("SELECT p FROM Poste p WHERE p.id = :id AND p.tenantId = :tenantId")
     Optional<Poste> findByIdAndTenantId(@Param("id") Long id, @Param("tenantId") String tenantId);
+
+    @Transactional(readOnly = true)
+    @Query(DTO_SELECT + "WHERE p.id = :id AND p.tenantId = :tenantId")
+    Optional<PosteDTO> buscarDTO(@Param("id") Long id, @Param("tenantId") String tenantId);
 }
\ No newline at end of file
@@ -1,15 +1,134 @@
 package com.vendas.postes.repository;
 
+import com.vendas.postes.dto.VendaDTO;
 import com.vendas.postes.model.Venda;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface VendaRepository extends JpaRepository<Venda, Long> {
-    List<Venda> findByTenantIdOrderByDataVendaDesc(String tenantId);
-    List<Venda> findByTenantIdAndDataVendaBetween(String tenantId, LocalDateTime inicio, LocalDateTime fim);
+
+    String RESUMO_SELECT = "SELECT v.tipoVenda, COUNT(v), SUM(v.valorVenda), SUM(v.freteEletrons), " +
+            "SUM(v.valorExtra), SUM(p.preco * v.quantidade) FROM Venda v LEFT JOIN v.poste p ";
+
+    String RESUMO_GROUP_BY = "GROUP BY v.tipoVenda";
+
+    String RESUMO_MENSAL_SELECT = "SELECT v.tenantId, YEAR(v.dataVenda), MONTH(v.dataVenda), v.tipoVenda, COUNT(v), " +
+            "SUM(v.valorVenda), SUM(v.freteEletrons), SUM(v.valorExtra), SUM(p.preco * v.quantidade) " +
+            "FROM Venda v LEFT JOIN v.poste p ";
+
+    String RESUMO_MENSAL_GROUP_BY = "GROUP BY v.tenantId, YEAR(v.dataVenda), MONTH(v.dataVenda), v.tipoVenda";
+
+    String COLUNAS_SELECT = "SELECT v.id, v.dataVenda, v.tipoVenda, p.id, p.preco, v.tenantId, v.quantidade, " +
+            "v.valorVenda, v.freteEletrons, v.valorExtra FROM Venda v LEFT JOIN v.poste p ";
+
+    String DTO_SELECT = "SELECT new com.vendas.postes.dto.VendaDTO(v.id, v.dataVenda, v.tipoVenda, p.id, " +
+            "p.codigo, p.descricao, v.quantidade, v.freteEletrons, v.valorVenda, v.valorExtra, v.observacoes) " +
+            "FROM Venda v LEFT JOIN v.poste p ";
+
+    @EntityGraph(attributePaths = "poste")
     List<Venda> findByTenantId(String tenantId);
-}
\ No newline at end of file
+
+    /**
+     * Vendas do tenant para leitura, da mais recente para a mais antiga, sem carregar entidades
+     */
+    @Query(DTO_SELECT + "WHERE v.tenantId = :tenantId ORDER BY v.dataVenda DESC")
+    List<VendaDTO> listarDTOs(@Param("tenantId") String tenantId);
+
+    @Query(DTO_SELECT + "WHERE v.tenantId = :tenantId AND v.dataVenda BETWEEN :inicio AND :fim")
+    List<VendaDTO> listarDTOsNoPeriodo(@Param("tenantId") String tenantId,
+                                       @Param("inicio") LocalDateTime inicio,
+                                       @Param("fim") LocalDateTime fim);
+
+    /**
+     * Página de vendas do tenant, da mais recente para a mais antiga, a partir de inicio.
+     * Começa depois do cursor (cursorData, cursorId) e usa o índice (tenant_id, data_venda, id).
+     */
+    @Query(DTO_SELECT + "WHERE v.tenantId = :tenantId " +
+            "AND v.dataVenda >= :inicio AND v.dataVenda <= :cursorData " +
+            "AND (v.dataVenda < :cursorData OR v.id < :cursorId) " +
+            "ORDER BY v.dataVenda DESC, v.id DESC")
+    List<VendaDTO> buscarPagina(@Param("tenantId") String tenantId,
+                                @Param("inicio") LocalDateTime inicio,
+                                @Param("cursorData") LocalDateTime cursorData,
+                                @Param("cursorId") Long cursorId,
+                                Limit limite);
+
+    /**
+     * Vendas do tenant a partir de inicio e antes de fim, em ordem cronológica, lidas do banco
+     * em blocos pelo cursor JDBC. O Stream precisa ser consumido e fechado dentro de uma transação.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT v FROM Venda v LEFT JOIN FETCH v.poste WHERE v.tenantId = :tenantId " +
+            "AND v.dataVenda >= :inicio AND v.dataVenda < :fim ORDER BY v.dataVenda, v.id")
+    Stream<Venda> streamPorPeriodo(@Param("tenantId") String tenantId,
+                                   @Param("inicio") LocalDateTime inicio,
+                                   @Param("fim") LocalDateTime fim);
+
+    /**
+     * Totais das vendas do tenant a partir de inicio e antes de fim, agrupados por tipo.
+     * Cada linha contém [tipoVenda, quantidade de vendas, soma valorVenda, soma freteEletrons,
+     * soma valorExtra, soma preco do poste × quantidade].
+     */
+    @Query(RESUMO_SELECT + "WHERE v.tenantId = :tenantId AND v.dataVenda >= :inicio AND v.dataVenda < :fim " +
+            RESUMO_GROUP_BY)
+    List<Object[]> calcularResumoPorTipoNoPeriodo(@Param("tenantId") String tenantId,
+                                                  @Param("inicio") LocalDateTime inicio,
+                                                  @Param("fim") LocalDateTime fim);
+
+    /**
+     * Totais de todas as vendas por tenant, mês e tipo, para reconstruir o resumo mensal.
+     * Cada linha contém [tenantId, ano, mês, tipoVenda, quantidade de vendas, soma valorVenda,
+     * soma freteEletrons, soma valorExtra, soma preco do poste × quantidade].
+     */
+    @Query(RESUMO_MENSAL_SELECT + RESUMO_MENSAL_GROUP_BY)
+    List<Object[]> calcularResumoMensal();
+
+    /**
+     * Mesmos totais de calcularResumoMensal, só das vendas informadas
+     */
+    @Query(RESUMO_MENSAL_SELECT + "WHERE v.id IN :ids " + RESUMO_MENSAL_GROUP_BY)
+    List<Object[]> calcularResumoMensalDasVendas(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Quantidade vendida de um poste por tenant, mês e tipo.
+     * Cada linha contém [tenantId, ano, mês, tipoVenda, soma quantidade].
+     */
+    @Query("SELECT v.tenantId, YEAR(v.dataVenda), MONTH(v.dataVenda), v.tipoVenda, SUM(v.quantidade) " +
+            "FROM Venda v WHERE v.poste.id = :posteId AND v.quantidade IS NOT NULL " +
+            RESUMO_MENSAL_GROUP_BY)
+    List<Object[]> somarQuantidadeMensalDoPoste(@Param("posteId") Long posteId);
+
+    /**
+     * Campos de todas as vendas usados no armazém colunar, em ordem de ID.
+     * Cada linha contém [id, dataVenda, tipoVenda, posteId, preco do poste, tenantId, quantidade,
+     * valorVenda, freteEletrons, valorExtra].
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(COLUNAS_SELECT + "ORDER BY v.id")
+    Stream<Object[]> streamColunas();
+
+    /**
+     * Mesmos campos de streamColunas, só das vendas informadas
+     */
+    @Query(COLUNAS_SELECT + "WHERE v.id IN :ids ORDER BY v.id")
+    List<Object[]> listarColunasDasVendas(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,62 @@
+package com.vendas.postes.repository;
+
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.model.VendaResumoMensal;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface VendaResumoMensalRepository extends JpaRepository<VendaResumoMensal, Long> {
+
+    /**
+     * Soma as variações à linha do tenant, mês e tipo. Retorna 0 se ainda não existe linha para eles.
+     */
+    @Modifying
+    @Query("UPDATE VendaResumoMensal r SET " +
+            "r.quantidadeVendas = r.quantidadeVendas + :deltaQuantidade, " +
+            "r.valorVenda = r.valorVenda + :deltaValorVenda, " +
+            "r.freteEletrons = r.freteEletrons + :deltaFrete, " +
+            "r.valorExtra = r.valorExtra + :deltaExtra, " +
+            "r.custoPostes = r.custoPostes + :deltaCusto, " +
+            "r.dataAtualizacao = :dataAtualizacao " +
+            "WHERE r.tenantId = :tenantId AND r.mesReferencia = :mesReferencia AND r.tipoVenda = :tipoVenda")
+    int aplicarDelta(@Param("tenantId") String tenantId,
+                     @Param("mesReferencia") LocalDate mesReferencia,
+                     @Param("tipoVenda") Venda.TipoVenda tipoVenda,
+                     @Param("deltaQuantidade") long deltaQuantidade,
+                     @Param("deltaValorVenda") BigDecimal deltaValorVenda,
+                     @Param("deltaFrete") BigDecimal deltaFrete,
+                     @Param("deltaExtra") BigDecimal deltaExtra,
+                     @Param("deltaCusto") BigDecimal deltaCusto,
+                     @Param("dataAtualizacao") LocalDateTime dataAtualizacao);
+
+    /**
+     * Totais do tenant por tipo em um intervalo de meses, no mesmo formato de
+     * VendaRepository.calcularResumoPorTipoNoPeriodo
+     */
+    @Query("SELECT r.tipoVenda, SUM(r.quantidadeVendas), SUM(r.valorVenda), SUM(r.freteEletrons), " +
+            "SUM(r.valorExtra), SUM(r.custoPostes) FROM VendaResumoMensal r " +
+            "WHERE r.tenantId = :tenantId AND r.mesReferencia BETWEEN :mesInicio AND :mesFim " +
+            "GROUP BY r.tipoVenda")
+    List<Object[]> somarPorTipoEntreMeses(@Param("tenantId") String tenantId,
+                                          @Param("mesInicio") LocalDate mesInicio,
+                                          @Param("mesFim") LocalDate mesFim);
+
+    /**
+     * Totais de todos os meses do tenant por tipo
+     */
+    @Query("SELECT r.tipoVenda, SUM(r.quantidadeVendas), SUM(r.valorVenda), SUM(r.freteEletrons), " +
+            "SUM(r.valorExtra), SUM(r.custoPostes) FROM VendaResumoMensal r " +
+            "WHERE r.tenantId = :tenantId GROUP BY r.tipoVenda")
+    List<Object[]> somarPorTipo(@Param("tenantId") String tenantId);
+
+    List<VendaResumoMensal> findByTenantIdOrderByMesReferenciaAscTipoVendaAsc(String tenantId);
+}
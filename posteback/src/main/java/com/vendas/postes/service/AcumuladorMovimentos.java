@@ -0,0 +1,115 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.model.MovimentoEstoque.TipoMovimento;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Calcula em uma única passada todas as estatísticas do relatório de movimentos:
+ * contagem e quantidade por tipo, contagem por data, valor total e movimentos por poste.
+ * Recebe grupos já somados pelo banco (tipo, data, poste), então não precisa das entidades.
+ */
+public class AcumuladorMovimentos {
+
+    private static final TipoMovimento[] TIPOS = TipoMovimento.values();
+
+    private final long[] movimentosPorTipo = new long[TIPOS.length];
+    private final long[] quantidadePorTipo = new long[TIPOS.length];
+    private final Map<LocalDate, Long> movimentosPorData = new HashMap<>();
+    private final Map<String, Long> movimentosPorPoste = new HashMap<>();
+    private BigDecimal valorTotal = BigDecimal.ZERO;
+    private long totalMovimentos;
+
+    /**
+     * Acumula as linhas de MovimentoEstoqueRepository.agruparParaRelatorio
+     */
+    public static AcumuladorMovimentos deLinhas(List<Object[]> linhas) {
+        AcumuladorMovimentos acumulador = new AcumuladorMovimentos();
+        acumulador.adicionarLinhas(linhas);
+        return acumulador;
+    }
+
+    /**
+     * Soma linhas no mesmo formato [tipo, data, codigo do poste, movimentos, quantidade, valor]
+     */
+    public void adicionarLinhas(List<Object[]> linhas) {
+        for (Object[] linha : linhas) {
+            adicionar((TipoMovimento) linha[0], (LocalDate) linha[1], (String) linha[2],
+                    ((Number) linha[3]).longValue(),
+                    linha[4] != null ? ((Number) linha[4]).longValue() : 0L,
+                    (BigDecimal) linha[5]);
+        }
+    }
+
+    /**
+     * Soma um grupo de movimentos do mesmo tipo, data e poste. Um movimento isolado é um grupo de 1.
+     */
+    public void adicionar(TipoMovimento tipo, LocalDate data, String codigoPoste,
+                          long movimentos, long quantidade, BigDecimal valor) {
+        totalMovimentos += movimentos;
+        movimentosPorTipo[tipo.ordinal()] += movimentos;
+        quantidadePorTipo[tipo.ordinal()] += quantidade;
+        movimentosPorData.merge(data, movimentos, Long::sum);
+        movimentosPorPoste.merge(codigoPoste, movimentos, Long::sum);
+        if (valor != null) {
+            valorTotal = valorTotal.add(valor);
+        }
+    }
+
+    public long getTotalMovimentos() {
+        return totalMovimentos;
+    }
+
+    public long getMovimentos(TipoMovimento tipo) {
+        return movimentosPorTipo[tipo.ordinal()];
+    }
+
+    public long getQuantidade(TipoMovimento tipo) {
+        return quantidadePorTipo[tipo.ordinal()];
+    }
+
+    public BigDecimal getValorTotal() {
+        return valorTotal;
+    }
+
+    /**
+     * Contagem por tipo, só com os tipos que tiveram movimentos
+     */
+    public Map<TipoMovimento, Long> getMovimentosPorTipo() {
+        Map<TipoMovimento, Long> porTipo = new EnumMap<>(TipoMovimento.class);
+        for (TipoMovimento tipo : TIPOS) {
+            if (movimentosPorTipo[tipo.ordinal()] > 0) {
+                porTipo.put(tipo, movimentosPorTipo[tipo.ordinal()]);
+            }
+        }
+        return porTipo;
+    }
+
+    /**
+     * Contagem por data de movimento, em ordem cronológica
+     */
+    public Map<LocalDate, Long> getMovimentosPorData() {
+        return new TreeMap<>(movimentosPorData);
+    }
+
+    /**
+     * Os postes com mais movimentos, do maior para o menor (empate pelo código)
+     */
+    public Map<String, Long> getTopPostes(int limite) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        movimentosPorPoste.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limite)
+                .forEach(entrada -> top.put(entrada.getKey(), entrada.getValue()));
+        return top;
+    }
+}
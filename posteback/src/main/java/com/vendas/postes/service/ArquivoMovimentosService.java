@@ -0,0 +1,412 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.dto.MovimentoEstoqueDTO;
+import com.vendas.postes.model.MovimentoArquivo;
+import com.vendas.postes.model.MovimentoEstoque.TipoMovimento;
+import com.vendas.postes.model.MovimentoResumoDiario;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.MovimentoArquivoRepository;
+import com.vendas.postes.repository.MovimentoEstoqueRepository;
+import com.vendas.postes.repository.MovimentoResumoDiarioRepository;
+import com.vendas.postes.repository.PosteRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Arquivamento dos movimentos de anos fechados. Um job move os movimentos de cada tenant e
+ * ano para um segmento em disco (SegmentoMovimentos) e deixa no banco os movimentos somados
+ * por poste, dia e tipo (MovimentoResumoDiario). Só são arquivados anos cujos meses já têm
+ * checkpoint de estoque, porque a geração de checkpoints lê apenas os movimentos do banco.
+ *
+ * As consultas de histórico juntam os movimentos do banco com os dos segmentos registrados
+ * em movimento_arquivo; estoque na data e relatórios usam os resumos diários.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ArquivoMovimentosService {
+
+    private static final int IDS_POR_DELETE = 1_000;
+
+    private static final Comparator<MovimentoEstoqueDTO> POR_DATA_E_ID =
+            Comparator.comparing(MovimentoEstoqueDTO::getDataMovimento).thenComparing(MovimentoEstoqueDTO::getId);
+    private static final Comparator<SegmentoMovimentos.Linha> POR_DATA_DECRESCENTE =
+            Comparator.comparing(SegmentoMovimentos.Linha::getDataMovimento)
+                    .thenComparingLong(SegmentoMovimentos.Linha::getId).reversed();
+    private static final Comparator<SegmentoMovimentos.Linha> POR_REGISTRO_DECRESCENTE =
+            Comparator.comparing(SegmentoMovimentos.Linha::getDataRegistro)
+                    .thenComparingLong(SegmentoMovimentos.Linha::getId).reversed();
+
+    private final MovimentoEstoqueRepository movimentoEstoqueRepository;
+    private final MovimentoResumoDiarioRepository movimentoResumoDiarioRepository;
+    private final MovimentoArquivoRepository movimentoArquivoRepository;
+    private final PosteRepository posteRepository;
+    private final EstoqueCheckpointService estoqueCheckpointService;
+    private final TransactionTemplate transactionTemplate;
+
+    // Precisa ser um disco persistente: os movimentos arquivados deixam de existir no banco
+    @Value("${movimentos.arquivo.diretorio:arquivo-movimentos}")
+    private Path diretorio;
+
+    @Value("${movimentos.arquivo.habilitado:false}")
+    private boolean habilitado;
+
+    private final Map<String, SegmentoMovimentos> segmentosAbertos = new ConcurrentHashMap<>();
+
+    // Segmentos registrados no banco; null até a primeira leitura ou depois de um arquivamento
+    private volatile List<MovimentoArquivo> arquivos;
+
+    @Scheduled(initialDelayString = "${movimentos.arquivo.atraso-inicial:PT10M}",
+            fixedDelayString = "${movimentos.arquivo.intervalo:PT24H}")
+    public void arquivarAgendado() {
+        if (!habilitado) {
+            return;
+        }
+        try {
+            arquivarAnosFechados();
+        } catch (Exception e) {
+            log.error("❌ Erro ao arquivar movimentos de estoque: ", e);
+        }
+    }
+
+    /**
+     * Arquiva os movimentos de todos os anos fechados que já têm checkpoints até dezembro.
+     * Retorna quantos movimentos saíram do banco.
+     */
+    public synchronized long arquivarAnosFechados() {
+        LocalDate ultimoCheckpoint = estoqueCheckpointService.ultimaDataCheckpoint();
+        if (ultimoCheckpoint == null) {
+            return 0;
+        }
+
+        int ultimoAno = Math.min(Year.now().getValue() - 1, ultimoCheckpoint.plusDays(1).getYear() - 1);
+        long arquivados = 0;
+        for (Object[] linha : movimentoEstoqueRepository.findTenantsEAnosAte(LocalDate.of(ultimoAno, 12, 31))) {
+            arquivados += arquivarAno((String) linha[0], ((Number) linha[1]).intValue());
+        }
+        return arquivados;
+    }
+
+    /**
+     * Grava os movimentos do tenant no ano em um segmento novo e, em uma transação, soma os
+     * resumos diários, registra o segmento e apaga do banco exatamente os movimentos gravados.
+     * Movimentos retroativos inseridos no meio do processo, e os que o estoque em memória ainda não
+     * aplicou à tabela estoque, ficam no banco para o próximo arquivamento.
+     */
+    public synchronized long arquivarAno(String tenantId, int ano) {
+        LocalDate inicio = LocalDate.of(ano, 1, 1);
+        LocalDate fim = LocalDate.of(ano, 12, 31);
+
+        SegmentoMovimentos.Escritor escritor = new SegmentoMovimentos.Escritor(tenantId, ano);
+        Map<List<Object>, long[]> resumos = new HashMap<>();
+
+        TransactionTemplate leitura = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        leitura.setReadOnly(true);
+        leitura.executeWithoutResult(status -> {
+            try (Stream<Object[]> linhas = movimentoEstoqueRepository.streamColunasPorPeriodo(tenantId, inicio, fim)) {
+                linhas.forEach(linha -> {
+                    TipoMovimento tipo = (TipoMovimento) linha[2];
+                    int quantidade = (Integer) linha[3];
+                    LocalDate data = (LocalDate) linha[4];
+                    escritor.adicionar((Long) linha[0], (Long) linha[1], tipo, quantidade, data,
+                            (LocalDateTime) linha[5], (String) linha[6], (Integer) linha[7], (Integer) linha[8]);
+
+                    long[] resumo = resumos.computeIfAbsent(List.of(linha[1], data, tipo), k -> new long[2]);
+                    resumo[0]++;
+                    resumo[1] += quantidade;
+                });
+            }
+        });
+
+        if (escritor.getLinhas() == 0) {
+            return 0;
+        }
+
+        String nome = String.format("movimentos-%s-%d-%d.seg", tenantId, ano,
+                movimentoArquivoRepository.countByTenantIdAndAno(tenantId, ano) + 1);
+        Path arquivo = diretorio.resolve(nome);
+        try {
+            Files.createDirectories(diretorio);
+            escritor.gravar(arquivo);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao gravar o segmento " + arquivo, e);
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                somarResumos(tenantId, inicio, fim, resumos);
+
+                MovimentoArquivo registro = new MovimentoArquivo();
+                registro.setTenantId(tenantId);
+                registro.setAno(ano);
+                registro.setArquivo(nome);
+                registro.setLinhas((long) escritor.getLinhas());
+                registro.setDataInicial(escritor.getDataInicial());
+                registro.setDataFinal(escritor.getDataFinal());
+                movimentoArquivoRepository.save(registro);
+
+                long[] ids = escritor.getIds();
+                int apagados = 0;
+                for (int i = 0; i < ids.length; i += IDS_POR_DELETE) {
+                    List<Long> lote = Arrays.stream(ids, i, Math.min(ids.length, i + IDS_POR_DELETE))
+                            .boxed().collect(Collectors.toList());
+                    apagados += movimentoEstoqueRepository.apagarPorIds(lote);
+                }
+                if (apagados != ids.length) {
+                    throw new IllegalStateException("Esperava apagar " + ids.length + " movimentos de "
+                            + tenantId + "/" + ano + " e apagou " + apagados);
+                }
+
+                invalidarArquivosAoFimDaTransacao();
+            });
+        } catch (RuntimeException e) {
+            apagarSegmento(arquivo);
+            throw e;
+        }
+        invalidarArquivos();
+
+        log.info("📦 {} movimentos de {} em {} arquivados em {}", escritor.getLinhas(), tenantId, ano, nome);
+        return escritor.getLinhas();
+    }
+
+    /**
+     * Carrega o registro de segmentos. Chamado na subida para a primeira consulta não pagar a leitura.
+     */
+    public void carregarArquivos() {
+        arquivos = List.copyOf(movimentoArquivoRepository.findAll());
+    }
+
+    /**
+     * Se há algum segmento do tenant (ou de qualquer tenant, se null) que cruza o período
+     */
+    public boolean temArquivos(String tenantId, LocalDate inicio, LocalDate fim) {
+        return segmentos(tenantId, inicio, fim).findAny().isPresent();
+    }
+
+    /**
+     * Movimentos arquivados do tenant (ou de todos, se null), opcionalmente de um poste, com data
+     * entre inicio e fim, com os dados do poste como nas consultas do banco. Sem ordem definida.
+     */
+    public List<MovimentoEstoqueDTO> buscar(String tenantId, Long posteId, LocalDate inicio, LocalDate fim) {
+        List<SegmentoMovimentos.Linha> linhas = new ArrayList<>();
+        segmentos(tenantId, inicio, fim).forEach(registro -> abrir(registro).ler(posteId, inicio, fim, linhas::add));
+        return paraDTOs(linhas);
+    }
+
+    /**
+     * Página de movimentos arquivados na mesma ordem e com o mesmo cursor de
+     * MovimentoEstoqueRepository.buscarPagina: (data do movimento, id) decrescente, antes do cursor
+     */
+    public List<MovimentoEstoqueDTO> buscarPagina(String tenantId, Long posteId, LocalDate inicio,
+                                                  LocalDate cursorData, Long cursorId, int limite) {
+        return buscarPrimeiros(tenantId, posteId, inicio, cursorData,
+                linha -> linha.getDataMovimento().isBefore(cursorData) || linha.getId() < cursorId,
+                POR_DATA_DECRESCENTE, limite);
+    }
+
+    /**
+     * Últimos movimentos arquivados registrados de todos os tenants com data entre as datas,
+     * na ordem de MovimentoEstoqueRepository.findUltimosMovimentosConsolidadosNoPeriodo
+     */
+    public List<MovimentoEstoqueDTO> buscarUltimosRegistrados(LocalDate inicio, LocalDate fim, int limite) {
+        return buscarPrimeiros(null, null, inicio, fim, linha -> true, POR_REGISTRO_DECRESCENTE, limite);
+    }
+
+    /**
+     * Junta os movimentos do banco (em ordem de data e id) com os arquivados do tenant no período,
+     * mantendo a ordem. Os segmentos são descomprimidos um grupo de cada vez, à medida que o
+     * resultado é consumido. Fechar o Stream devolvido fecha o do banco.
+     */
+    public Stream<MovimentoEstoqueDTO> mesclarEmOrdemCronologica(String tenantId, LocalDate inicio, LocalDate fim,
+                                                                Stream<MovimentoEstoqueDTO> doBanco) {
+        List<MovimentoArquivo> registros = segmentos(tenantId, inicio, fim).collect(Collectors.toList());
+        if (registros.isEmpty()) {
+            return doBanco;
+        }
+
+        Map<Long, Poste> postes = new HashMap<>();
+        PriorityQueue<Map.Entry<MovimentoEstoqueDTO, Iterator<MovimentoEstoqueDTO>>> proximos =
+                new PriorityQueue<>(Map.Entry.comparingByKey(POR_DATA_E_ID));
+        List<Iterator<MovimentoEstoqueDTO>> fontes = new ArrayList<>();
+        fontes.add(doBanco.iterator());
+        for (MovimentoArquivo registro : registros) {
+            Iterator<SegmentoMovimentos.Linha> linhas = abrir(registro).iterar(null, inicio, fim);
+            fontes.add(new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return linhas.hasNext();
+                }
+
+                @Override
+                public MovimentoEstoqueDTO next() {
+                    SegmentoMovimentos.Linha linha = linhas.next();
+                    Poste poste = postes.computeIfAbsent(linha.getPosteId(),
+                            id -> posteRepository.findById(id).orElse(null));
+                    return paraDTO(linha, poste);
+                }
+            });
+        }
+        for (Iterator<MovimentoEstoqueDTO> fonte : fontes) {
+            if (fonte.hasNext()) {
+                proximos.add(Map.entry(fonte.next(), fonte));
+            }
+        }
+
+        Iterator<MovimentoEstoqueDTO> mesclado = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !proximos.isEmpty();
+            }
+
+            @Override
+            public MovimentoEstoqueDTO next() {
+                Map.Entry<MovimentoEstoqueDTO, Iterator<MovimentoEstoqueDTO>> menor = proximos.remove();
+                if (menor.getValue().hasNext()) {
+                    proximos.add(Map.entry(menor.getValue().next(), menor.getValue()));
+                }
+                return menor.getKey();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(mesclado, Spliterator.ORDERED), false)
+                .onClose(doBanco::close);
+    }
+
+    /**
+     * Os primeiros movimentos arquivados pela ordem informada, guardando só o limite em memória
+     */
+    private List<MovimentoEstoqueDTO> buscarPrimeiros(String tenantId, Long posteId, LocalDate inicio, LocalDate fim,
+                                                      Predicate<SegmentoMovimentos.Linha> filtro,
+                                                      Comparator<SegmentoMovimentos.Linha> ordem, int limite) {
+        // O topo da fila é o pior dos guardados, descartado quando aparece um melhor
+        PriorityQueue<SegmentoMovimentos.Linha> melhores = new PriorityQueue<>(ordem.reversed());
+        segmentos(tenantId, inicio, fim).forEach(registro -> abrir(registro).ler(posteId, inicio, fim, linha -> {
+            if (!filtro.test(linha)) {
+                return;
+            }
+            if (melhores.size() < limite) {
+                melhores.add(linha);
+            } else if (ordem.compare(linha, melhores.peek()) < 0) {
+                melhores.poll();
+                melhores.add(linha);
+            }
+        }));
+
+        List<SegmentoMovimentos.Linha> linhas = new ArrayList<>(melhores);
+        linhas.sort(ordem);
+        return paraDTOs(linhas);
+    }
+
+    private List<MovimentoEstoqueDTO> paraDTOs(List<SegmentoMovimentos.Linha> linhas) {
+        if (linhas.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Set<Long> posteIds = linhas.stream().map(SegmentoMovimentos.Linha::getPosteId).collect(Collectors.toSet());
+        Map<Long, Poste> postes = posteRepository.findAllById(posteIds).stream()
+                .collect(Collectors.toMap(Poste::getId, Function.identity()));
+
+        List<MovimentoEstoqueDTO> movimentos = new ArrayList<>(linhas.size());
+        for (SegmentoMovimentos.Linha linha : linhas) {
+            movimentos.add(paraDTO(linha, postes.get(linha.getPosteId())));
+        }
+        return movimentos;
+    }
+
+    private static MovimentoEstoqueDTO paraDTO(SegmentoMovimentos.Linha linha, Poste poste) {
+        return new MovimentoEstoqueDTO(linha.getId(), linha.getPosteId(),
+                poste != null ? poste.getCodigo() : null,
+                poste != null ? poste.getDescricao() : null,
+                poste != null ? poste.getPreco() : null,
+                linha.getTipoMovimento(), linha.getQuantidade(), linha.getDataMovimento(),
+                linha.getDataRegistro(), linha.getObservacao(), linha.getQuantidadeAnterior(),
+                linha.getQuantidadeAtual(), linha.getTenantId());
+    }
+
+    private Stream<MovimentoArquivo> segmentos(String tenantId, LocalDate inicio, LocalDate fim) {
+        List<MovimentoArquivo> registrados = arquivos;
+        if (registrados == null) {
+            carregarArquivos();
+            registrados = arquivos;
+        }
+        return registrados.stream()
+                .filter(registro -> tenantId == null || tenantId.equals(registro.getTenantId()))
+                .filter(registro -> !registro.getDataFinal().isBefore(inicio) && !registro.getDataInicial().isAfter(fim));
+    }
+
+    private SegmentoMovimentos abrir(MovimentoArquivo registro) {
+        return segmentosAbertos.computeIfAbsent(registro.getArquivo(), nome -> {
+            try {
+                return SegmentoMovimentos.abrir(diretorio.resolve(nome));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Segmento de movimentos indisponível: " + nome, e);
+            }
+        });
+    }
+
+    /**
+     * Soma os grupos arquivados aos resumos diários que já existirem (de um arquivamento anterior do mesmo ano)
+     */
+    private void somarResumos(String tenantId, LocalDate inicio, LocalDate fim, Map<List<Object>, long[]> resumos) {
+        Map<List<Object>, MovimentoResumoDiario> existentes = new HashMap<>();
+        for (MovimentoResumoDiario resumo : movimentoResumoDiarioRepository
+                .findByTenantIdAndDataMovimentoBetween(tenantId, inicio, fim)) {
+            existentes.put(List.of(resumo.getPosteId(), resumo.getDataMovimento(), resumo.getTipoMovimento()), resumo);
+        }
+
+        List<MovimentoResumoDiario> alterados = new ArrayList<>(resumos.size());
+        resumos.forEach((chave, valores) -> {
+            MovimentoResumoDiario resumo = existentes.computeIfAbsent(chave, k -> new MovimentoResumoDiario(
+                    tenantId, (Long) k.get(0), (LocalDate) k.get(1), (TipoMovimento) k.get(2)));
+            resumo.setMovimentos(resumo.getMovimentos() + valores[0]);
+            resumo.setQuantidade(resumo.getQuantidade() + valores[1]);
+            alterados.add(resumo);
+        });
+        movimentoResumoDiarioRepository.saveAll(alterados);
+    }
+
+    private void invalidarArquivos() {
+        arquivos = null;
+    }
+
+    // Quem recarregar o registro antes do commit não vê o segmento novo; recarrega de novo depois
+    private void invalidarArquivosAoFimDaTransacao() {
+        invalidarArquivos();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidarArquivos();
+                }
+            });
+        }
+    }
+
+    private void apagarSegmento(Path arquivo) {
+        try {
+            Files.deleteIfExists(arquivo);
+        } catch (IOException e) {
+            log.warn("⚠️ Não foi possível apagar o segmento {}: {}", arquivo, e.getMessage());
+        }
+    }
+}
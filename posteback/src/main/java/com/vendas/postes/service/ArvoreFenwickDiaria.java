@@ -0,0 +1,117 @@
+package com.vendas.postes.service;
+
+/**
+ * Árvore de Fenwick (binary indexed tree) com a variação de saldo de um poste por dia.
+ * Somar a variação de um dia e consultar a soma até um dia custam O(log dias).
+ *
+ * A árvore cobre os dias a partir do primeiro dia registrado, em uma capacidade potência de 2:
+ * cresce dobrando (O(capacidade)) quando chega um dia depois do fim, e é remontada a partir de um
+ * dia anterior quando chega um movimento retroativo mais antigo que todos. Ocupa 4 bytes por dia
+ * de capacidade mais o cabeçalho do vetor; as somas guardadas nos nós são int.
+ *
+ * Não é thread-safe: quem usa sincroniza o acesso.
+ */
+public class ArvoreFenwickDiaria {
+
+    private static final int CAPACIDADE_INICIAL = 64;
+
+    private long primeiroDia;
+    // Posição 0 não é usada; arvore.length - 1 é a capacidade
+    private int[] arvore;
+
+    /**
+     * Soma a variação ao dia informado (epoch day)
+     */
+    public void somar(long dia, int variacao) {
+        if (arvore == null) {
+            primeiroDia = dia;
+            arvore = new int[CAPACIDADE_INICIAL + 1];
+        } else if (dia < primeiroDia) {
+            remontarAPartirDe(dia);
+        }
+        while (dia - primeiroDia >= capacidade()) {
+            dobrar();
+        }
+
+        for (int i = (int) (dia - primeiroDia) + 1; i < arvore.length; i += i & -i) {
+            arvore[i] += variacao;
+        }
+    }
+
+    /**
+     * Soma das variações de todos os dias até o informado, inclusive
+     */
+    public long somaAte(long dia) {
+        if (arvore == null || dia < primeiroDia) {
+            return 0;
+        }
+
+        long soma = 0;
+        for (int i = (int) Math.min(dia - primeiroDia + 1, capacidade()); i > 0; i -= i & -i) {
+            soma += arvore[i];
+        }
+        return soma;
+    }
+
+    /**
+     * Soma das variações depois de depoisDe e até ate
+     */
+    public long somaEntre(long depoisDe, long ate) {
+        return ate > depoisDe ? somaAte(ate) - somaAte(depoisDe) : 0;
+    }
+
+    /**
+     * Memória ocupada pelo vetor, com o cabeçalho de 16 bytes
+     */
+    public long bytes() {
+        return arvore == null ? 0 : 16 + 4L * arvore.length;
+    }
+
+    public int capacidade() {
+        return arvore == null ? 0 : arvore.length - 1;
+    }
+
+    /**
+     * Com capacidade n potência de 2, as novas posições n+1..2n-1 cobrem só dias vazios
+     * e a posição 2n cobre todos, que é o que a posição n já guarda.
+     */
+    private void dobrar() {
+        int capacidade = capacidade();
+        int[] maior = new int[2 * capacidade + 1];
+        System.arraycopy(arvore, 0, maior, 0, arvore.length);
+        maior[2 * capacidade] = arvore[capacidade];
+        arvore = maior;
+    }
+
+    private void remontarAPartirDe(long novoPrimeiroDia) {
+        int capacidade = capacidade();
+        int deslocamento = (int) (primeiroDia - novoPrimeiroDia);
+
+        // Valores de cada dia a partir das somas acumuladas
+        int[] valores = new int[capacidade + 1];
+        long anterior = 0;
+        for (int i = 1; i <= capacidade; i++) {
+            long acumulado = somaAte(primeiroDia + i - 1);
+            valores[i] = (int) (acumulado - anterior);
+            anterior = acumulado;
+        }
+
+        int novaCapacidade = capacidade;
+        while (novaCapacidade < capacidade + deslocamento) {
+            novaCapacidade *= 2;
+        }
+
+        // Montagem em O(n): cada nó repassa a sua soma ao nó pai
+        int[] nova = new int[novaCapacidade + 1];
+        System.arraycopy(valores, 1, nova, 1 + deslocamento, capacidade);
+        for (int i = 1; i <= novaCapacidade; i++) {
+            int pai = i + (i & -i);
+            if (pai <= novaCapacidade) {
+                nova[pai] += nova[i];
+            }
+        }
+
+        primeiroDia = novoPrimeiroDia;
+        arvore = nova;
+    }
+}
@@ -0,0 +1,255 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.model.EstoqueCheckpoint;
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.repository.EstoqueCheckpointRepository;
+import com.vendas.postes.repository.MovimentoEstoqueRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.DatabaseMetaData;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Gera e mantém os checkpoints mensais de estoque. Um job agendado grava, para cada mês
+ * fechado, o saldo de cada poste a partir do checkpoint do mês anterior e dos movimentos
+ * do mês, sem reler meses já fechados. Movimentos com data até o último checkpoint
+ * corrigem os checkpoints seguintes na mesma transação em que são gravados.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EstoqueCheckpointService {
+
+    private static final long TEMPO_MAXIMO_ESPERA_MS = 30_000;
+
+    private final EstoqueCheckpointRepository estoqueCheckpointRepository;
+    private final MovimentoEstoqueRepository movimentoEstoqueRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+    // Transações com movimentos seguram a leitura até o fim; a geração de um mês segura a escrita,
+    // para que nenhum movimento retroativo fique fora do checkpoint que está sendo gerado
+    private final ReentrantReadWriteLock geracaoLock = new ReentrantReadWriteLock();
+
+    private volatile LocalDate ultimoCheckpoint;
+    private volatile boolean ultimoCheckpointCarregado;
+    private volatile Boolean postgres;
+
+    @Scheduled(initialDelayString = "${estoque.checkpoint.atraso-inicial:PT1M}",
+            fixedDelayString = "${estoque.checkpoint.intervalo:PT6H}")
+    public void gerarCheckpointsAgendado() {
+        try {
+            gerarCheckpointsPendentes(YearMonth.now().minusMonths(1));
+        } catch (Exception e) {
+            log.error("❌ Erro ao gerar checkpoints de estoque: ", e);
+        }
+    }
+
+    /**
+     * Gera os checkpoints dos meses fechados que ainda não têm checkpoint, até o mês informado.
+     * Retorna quantos meses foram gerados.
+     */
+    public int gerarCheckpointsPendentes(YearMonth ultimoMesFechado) {
+        Optional<LocalDate> ultimaData = estoqueCheckpointRepository.findUltimaDataReferencia();
+        Optional<YearMonth> proximoMes = ultimaData.isPresent()
+                ? ultimaData.map(data -> YearMonth.from(data).plusMonths(1))
+                : movimentoEstoqueRepository.findPrimeiraDataMovimento().map(YearMonth::from);
+
+        int mesesGerados = 0;
+        for (YearMonth mes = proximoMes.orElse(null); mes != null && !mes.isAfter(ultimoMesFechado); mes = mes.plusMonths(1)) {
+            gerarMes(mes);
+            mesesGerados++;
+        }
+
+        if (mesesGerados > 0) {
+            log.info("✅ Checkpoints de estoque gerados para {} meses, até {}", mesesGerados, ultimoMesFechado);
+        }
+        return mesesGerados;
+    }
+
+    /**
+     * Data do último checkpoint gerado, ou null se ainda não há checkpoints
+     */
+    public LocalDate ultimaDataCheckpoint() {
+        if (!ultimoCheckpointCarregado) {
+            ultimoCheckpoint = estoqueCheckpointRepository.findUltimaDataReferencia().orElse(null);
+            ultimoCheckpointCarregado = true;
+        }
+        return ultimoCheckpoint;
+    }
+
+    /**
+     * Deve ser chamado na transação que gravou os movimentos. Movimentos com data até o
+     * último checkpoint somam sua variação aos checkpoints a partir da data do movimento.
+     */
+    public void registrarMovimentos(Collection<MovimentoEstoque> movimentos) {
+        if (movimentos.isEmpty()) {
+            return;
+        }
+
+        bloquearGeracaoAteFimDaTransacao();
+
+        LocalDate ultimo = ultimaDataCheckpoint();
+        if (ultimo == null) {
+            return;
+        }
+
+        // Agrupa por poste, tenant e data para ajustar cada faixa de checkpoints uma vez só
+        Map<List<Object>, Integer> variacoes = new LinkedHashMap<>();
+        for (MovimentoEstoque movimento : movimentos) {
+            int variacao = variacaoDoSaldo(movimento);
+            if (variacao != 0 && !movimento.getDataMovimento().isAfter(ultimo)) {
+                variacoes.merge(List.of(movimento.getPoste().getId(), movimento.getTenantId(),
+                        movimento.getDataMovimento()), variacao, Integer::sum);
+            }
+        }
+
+        variacoes.forEach((chave, variacao) ->
+                ajustarCheckpoints((Long) chave.get(0), (String) chave.get(1), (LocalDate) chave.get(2), variacao));
+    }
+
+    public static int variacaoDoSaldo(MovimentoEstoque movimento) {
+        switch (movimento.getTipoMovimento()) {
+            case ENTRADA:
+            case AJUSTE:
+                return movimento.getQuantidade();
+            case SAIDA:
+            case VENDA:
+                return -movimento.getQuantidade();
+            default:
+                return 0;
+        }
+    }
+
+    private void ajustarCheckpoints(Long posteId, String tenantId, LocalDate dataMovimento, int variacao) {
+        criarCheckpointsAusentes(posteId, tenantId, dataMovimento);
+        int ajustados = estoqueCheckpointRepository.somarQuantidadeAPartirDe(posteId, tenantId, dataMovimento,
+                variacao, LocalDateTime.now());
+
+        log.info("🔁 Movimento retroativo de {} em {}: {} checkpoints ajustados para o poste {}",
+                variacao, dataMovimento, ajustados, posteId);
+    }
+
+    /**
+     * Sem checkpoint o poste não tinha movimentos até essa data, ou seja, saldo zero: as datas que
+     * faltam são criadas zeradas antes da soma, sem falhar se outra transação criar a mesma linha.
+     */
+    private void criarCheckpointsAusentes(Long posteId, String tenantId, LocalDate dataMovimento) {
+        Set<LocalDate> existentes = new HashSet<>(
+                estoqueCheckpointRepository.findDatasReferenciaDoPosteAPartirDe(posteId, tenantId, dataMovimento));
+
+        for (LocalDate data : estoqueCheckpointRepository.findDatasReferenciaAPartirDe(dataMovimento)) {
+            if (existentes.contains(data)) {
+                continue;
+            }
+            if (isPostgres()) {
+                jdbcTemplate.update("INSERT INTO estoque_checkpoint (id, poste_id, tenant_id, data_referencia, " +
+                                "quantidade, data_calculo) VALUES (nextval('estoque_checkpoint_seq'), ?, ?, ?, 0, ?) " +
+                                "ON CONFLICT (poste_id, tenant_id, data_referencia) DO NOTHING",
+                        posteId, tenantId, data, LocalDateTime.now());
+                continue;
+            }
+            try {
+                jdbcTemplate.update("INSERT INTO estoque_checkpoint (id, poste_id, tenant_id, data_referencia, " +
+                                "quantidade, data_calculo) SELECT nextval('estoque_checkpoint_seq'), ?, ?, ?, 0, ? " +
+                                "WHERE NOT EXISTS (SELECT 1 FROM estoque_checkpoint WHERE poste_id = ? " +
+                                "AND tenant_id = ? AND data_referencia = ?)",
+                        posteId, tenantId, data, LocalDateTime.now(), posteId, tenantId, data);
+            } catch (DuplicateKeyException e) {
+                // Criada por outra transação depois da verificação; no H2 o erro não desfaz a transação
+                log.debug("Checkpoint de {} do poste {} criado por outra transação", data, posteId);
+            }
+        }
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            try {
+                String banco = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(),
+                        DatabaseMetaData::getDatabaseProductName);
+                postgres = "PostgreSQL".equalsIgnoreCase(banco);
+            } catch (Exception e) {
+                log.warn("⚠️ Não foi possível identificar o banco: {}", e.getMessage());
+                postgres = false;
+            }
+        }
+        return postgres;
+    }
+
+    private void gerarMes(YearMonth mes) {
+        Lock escrita = geracaoLock.writeLock();
+        adquirir(escrita);
+        try {
+            LocalDate fimDoMes = mes.atEndOfMonth();
+            LocalDate fimDoMesAnterior = mes.minusMonths(1).atEndOfMonth();
+
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<List<Object>, EstoqueCheckpoint> checkpoints = new LinkedHashMap<>();
+
+                // Parte do saldo do mês anterior e soma só os movimentos do mês
+                for (EstoqueCheckpoint anterior : estoqueCheckpointRepository.findByDataReferencia(fimDoMesAnterior)) {
+                    checkpoints.put(List.of(anterior.getPosteId(), anterior.getTenantId()), new EstoqueCheckpoint(
+                            anterior.getPosteId(), anterior.getTenantId(), fimDoMes, anterior.getQuantidade()));
+                }
+
+                for (Object[] linha : movimentoEstoqueRepository.calcularVariacaoPorPosteETenant(fimDoMesAnterior, fimDoMes)) {
+                    Long posteId = (Long) linha[0];
+                    String tenantId = (String) linha[1];
+                    int variacao = ((Number) linha[2]).intValue();
+
+                    EstoqueCheckpoint checkpoint = checkpoints.computeIfAbsent(List.of(posteId, tenantId),
+                            k -> new EstoqueCheckpoint(posteId, tenantId, fimDoMes, 0));
+                    checkpoint.setQuantidade(checkpoint.getQuantidade() + variacao);
+                }
+
+                estoqueCheckpointRepository.saveAll(checkpoints.values());
+            });
+
+            ultimoCheckpoint = fimDoMes;
+            ultimoCheckpointCarregado = true;
+        } finally {
+            escrita.unlock();
+        }
+    }
+
+    private void bloquearGeracaoAteFimDaTransacao() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        Lock leitura = geracaoLock.readLock();
+        adquirir(leitura);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                leitura.unlock();
+            }
+        });
+    }
+
+    private void adquirir(Lock lock) {
+        try {
+            if (!lock.tryLock(TEMPO_MAXIMO_ESPERA_MS, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("Tempo esgotado aguardando a geração de checkpoints de estoque");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrompido aguardando a geração de checkpoints de estoque", e);
+        }
+    }
+}
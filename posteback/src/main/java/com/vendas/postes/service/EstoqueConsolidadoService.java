@@ -0,0 +1,226 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.model.EstoqueConsolidado;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.EstoqueConsolidadoRepository;
+import com.vendas.postes.repository.EstoqueRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Mantém a tabela estoque_consolidado, que guarda o estoque somado por código base
+ * para que a listagem não precise recalcular a consolidação a cada consulta.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EstoqueConsolidadoService {
+
+    private final EstoqueConsolidadoRepository estoqueConsolidadoRepository;
+    private final EstoqueRepository estoqueRepository;
+    private final EstoqueListagemCache estoqueListagemCache;
+
+    /**
+     * Aplica a variação de estoque de um poste ao seu código base.
+     * Deve ser chamado na mesma transação que alterou a tabela estoque.
+     */
+    @Transactional
+    public void aplicarDelta(Poste poste, int delta) {
+        if (delta == 0) {
+            return;
+        }
+
+        // A listagem com quantidade mostra também o estoque de postes inativos
+        estoqueListagemCache.estoqueAlterado(poste.getTenantId(), poste.getCodigoBase(), delta);
+
+        // Postes inativos não entram na consolidação
+        if (!Boolean.TRUE.equals(poste.getAtivo())) {
+            return;
+        }
+
+        int deltaBranco = "branco".equals(poste.getTenantId()) ? delta : 0;
+        aplicarDeltaAoCodigoBase(poste.getCodigoBase(), delta - deltaBranco, deltaBranco);
+    }
+
+    /**
+     * Aplica as variações de vários postes de um lote, somadas por código base.
+     * A linha de um código base ainda sem consolidado é recalculada do estoque, que já tem as
+     * variações de todos os postes do lote, então cada código base recebe uma única atualização.
+     */
+    @Transactional
+    public void aplicarDeltas(Map<Long, Integer> deltaPorPoste, Map<Long, Poste> postePorId) {
+        // Código base -> [vermelho, branco]
+        Map<String, int[]> deltaPorCodigoBase = new LinkedHashMap<>();
+
+        deltaPorPoste.forEach((posteId, delta) -> {
+            Poste poste = postePorId.get(posteId);
+            if (delta == 0) {
+                return;
+            }
+
+            estoqueListagemCache.estoqueAlterado(poste.getTenantId(), poste.getCodigoBase(), delta);
+            if (!Boolean.TRUE.equals(poste.getAtivo())) {
+                return;
+            }
+
+            int[] deltas = deltaPorCodigoBase.computeIfAbsent(poste.getCodigoBase(), k -> new int[2]);
+            deltas["branco".equals(poste.getTenantId()) ? 1 : 0] += delta;
+        });
+
+        deltaPorCodigoBase.forEach((codigoBase, deltas) ->
+                aplicarDeltaAoCodigoBase(codigoBase, deltas[0], deltas[1]));
+    }
+
+    private void aplicarDeltaAoCodigoBase(String codigoBase, int deltaVermelho, int deltaBranco) {
+        int atualizados = estoqueConsolidadoRepository.aplicarDelta(
+                codigoBase, deltaVermelho, deltaBranco, LocalDateTime.now());
+
+        if (atualizados == 0) {
+            // Primeira movimentação do código base: calcula a linha a partir do estoque
+            recalcularCodigoBase(codigoBase);
+        }
+    }
+
+    /**
+     * Recalcula a linha de um código base a partir da tabela estoque.
+     * Usado quando um poste muda de código ou é ativado/inativado.
+     */
+    @Transactional
+    public void recalcularCodigoBase(String codigoBase) {
+        if (codigoBase == null) {
+            return;
+        }
+
+        Map<String, Totais> esperado = somarPorCodigoBase(
+                estoqueRepository.sumQuantidadePorTenantDoCodigoBase(codigoBase));
+        Totais totais = esperado.getOrDefault(codigoBase, new Totais());
+
+        EstoqueConsolidado consolidado = estoqueConsolidadoRepository.findByCodigoBase(codigoBase)
+                .orElseGet(() -> new EstoqueConsolidado(codigoBase));
+        totais.aplicarEm(consolidado);
+        estoqueConsolidadoRepository.save(consolidado);
+        estoqueListagemCache.consolidadoRecalculado(codigoBase);
+    }
+
+    /**
+     * Recalcula toda a tabela a partir do estoque e informa as divergências encontradas.
+     * Com corrigir = true as linhas divergentes são reescritas.
+     */
+    @Transactional
+    public Map<String, Object> verificar(boolean corrigir) {
+        Map<String, Totais> esperado = somarPorCodigoBase(
+                estoqueRepository.sumQuantidadeAgrupadaPorCodigoBaseETenant());
+
+        Map<String, EstoqueConsolidado> registrado = new HashMap<>();
+        for (EstoqueConsolidado consolidado : estoqueConsolidadoRepository.findAll()) {
+            registrado.put(consolidado.getCodigoBase(), consolidado);
+        }
+
+        Set<String> codigos = new TreeSet<>(esperado.keySet());
+        codigos.addAll(registrado.keySet());
+
+        List<Map<String, Object>> divergencias = new ArrayList<>();
+        for (String codigoBase : codigos) {
+            Totais totais = esperado.getOrDefault(codigoBase, new Totais());
+            EstoqueConsolidado consolidado = registrado.get(codigoBase);
+
+            if (consolidado != null && totais.confere(consolidado)) {
+                continue;
+            }
+
+            Map<String, Object> divergencia = new LinkedHashMap<>();
+            divergencia.put("codigoBase", codigoBase);
+            divergencia.put("quantidadeEsperada", totais.total());
+            divergencia.put("quantidadeRegistrada", consolidado != null ? consolidado.getQuantidadeTotal() : null);
+            divergencia.put("vermelhoEsperado", totais.vermelho);
+            divergencia.put("brancoEsperado", totais.branco);
+            divergencias.add(divergencia);
+
+            if (corrigir) {
+                EstoqueConsolidado corrigido = consolidado != null ? consolidado : new EstoqueConsolidado(codigoBase);
+                totais.aplicarEm(corrigido);
+                estoqueConsolidadoRepository.save(corrigido);
+            }
+        }
+
+        if (corrigir && !divergencias.isEmpty()) {
+            estoqueListagemCache.limparAposCommit();
+        }
+
+        if (!divergencias.isEmpty()) {
+            log.warn("⚠️ Estoque consolidado com {} divergências (corrigir={})", divergencias.size(), corrigir);
+        }
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("codigosVerificados", codigos.size());
+        resultado.put("totalDivergencias", divergencias.size());
+        resultado.put("corrigido", corrigir);
+        resultado.put("divergencias", divergencias);
+        return resultado;
+    }
+
+    /**
+     * Reconstrói a tabela quando ela ainda não foi populada (primeira subida após a criação)
+     */
+    @Transactional
+    public void reconstruirSeVazio() {
+        if (estoqueConsolidadoRepository.count() > 0 || estoqueRepository.count() == 0) {
+            return;
+        }
+
+        Map<String, Object> resultado = verificar(true);
+        log.info("✅ Estoque consolidado reconstruído: {} códigos", resultado.get("codigosVerificados"));
+    }
+
+    private Map<String, Totais> somarPorCodigoBase(List<Object[]> linhas) {
+        Map<String, Totais> porCodigo = new HashMap<>();
+        for (Object[] linha : linhas) {
+            Totais totais = porCodigo.computeIfAbsent((String) linha[0], k -> new Totais());
+            int quantidade = linha[2] != null ? ((Number) linha[2]).intValue() : 0;
+
+            if ("branco".equals(linha[1])) {
+                totais.branco += quantidade;
+            } else {
+                totais.vermelho += quantidade;
+            }
+
+            LocalDateTime dataAtualizacao = (LocalDateTime) linha[3];
+            if (dataAtualizacao != null &&
+                    (totais.dataAtualizacao == null || dataAtualizacao.isAfter(totais.dataAtualizacao))) {
+                totais.dataAtualizacao = dataAtualizacao;
+            }
+        }
+        return porCodigo;
+    }
+
+    /**
+     * Quantidades esperadas de um código base
+     */
+    private static class Totais {
+        int vermelho = 0;
+        int branco = 0;
+        LocalDateTime dataAtualizacao;
+
+        int total() {
+            return vermelho + branco;
+        }
+
+        boolean confere(EstoqueConsolidado consolidado) {
+            return consolidado.getQuantidadeTotal() == total()
+                    && consolidado.getQuantidadeVermelho() == vermelho
+                    && consolidado.getQuantidadeBranco() == branco;
+        }
+
+        void aplicarEm(EstoqueConsolidado consolidado) {
+            consolidado.setQuantidadeTotal(total());
+            consolidado.setQuantidadeVermelho(vermelho);
+            consolidado.setQuantidadeBranco(branco);
+            consolidado.setDataAtualizacao(dataAtualizacao != null ? dataAtualizacao : LocalDateTime.now());
+        }
+    }
+}
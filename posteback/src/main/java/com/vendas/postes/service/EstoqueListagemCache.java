@@ -0,0 +1,211 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.dto.EstoqueDTO;
+import com.vendas.postes.model.Poste;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Cache LRU das listagens de estoque por tenant. Cada entrada guarda os códigos base que
+ * aparecem nela, e as alterações invalidam só as entradas desses códigos, depois do commit.
+ *
+ * Os DTOs são mutáveis: o cache guarda cópias e entrega outras cópias a cada leitura,
+ * para que quem altera a lista recebida não mude a listagem dos outros.
+ *
+ * Leituras feitas dentro de uma transação de escrita não usam o cache: veriam o estoque
+ * sem as próprias alterações ou gravariam no cache um estoque ainda não commitado.
+ */
+@Component
+public class EstoqueListagemCache {
+
+    public enum Listagem {
+        TODO_ESTOQUE,
+        COM_QUANTIDADE
+    }
+
+    // Listagem do Jefferson soma os dois caminhões, então muda com os postes de qualquer tenant
+    private static final String TENANT_CONSOLIDADO = "jefferson";
+
+    private final int maximoEntradas;
+    private final LinkedHashMap<Chave, Entrada> entradas;
+
+    // Incrementada a cada invalidação; uma leitura só grava se nada foi invalidado durante a consulta
+    private long geracao;
+
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder faltas = new LongAdder();
+    private final LongAdder despejos = new LongAdder();
+    private final LongAdder invalidacoes = new LongAdder();
+    private final LongAdder ignorados = new LongAdder();
+
+    public EstoqueListagemCache(@Value("${estoque.cache.maximo-entradas:32}") int maximoEntradas) {
+        this.maximoEntradas = maximoEntradas;
+        // Ordem de acesso: o primeiro da iteração é o menos usado recentemente
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Chave, Entrada> maisAntiga) {
+                if (size() > EstoqueListagemCache.this.maximoEntradas) {
+                    despejos.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Devolve a listagem do cache ou executa a consulta e guarda o resultado
+     */
+    public List<EstoqueDTO> obter(Listagem listagem, String tenantId, Supplier<List<EstoqueDTO>> consulta) {
+        if (!podeUsarCache()) {
+            ignorados.increment();
+            return consulta.get();
+        }
+
+        Chave chave = new Chave(listagem, tenantId);
+        long geracaoDaLeitura;
+        synchronized (this) {
+            Entrada entrada = entradas.get(chave);
+            if (entrada != null) {
+                acertos.increment();
+                return copiar(entrada.estoques);
+            }
+            geracaoDaLeitura = geracao;
+        }
+
+        faltas.increment();
+        List<EstoqueDTO> estoques = consulta.get();
+        List<EstoqueDTO> copias = copiar(estoques);
+        Set<String> codigosBase = new HashSet<>();
+        for (EstoqueDTO estoque : copias) {
+            codigosBase.add(Poste.extrairCodigoBase(estoque.getCodigoPoste()));
+        }
+
+        synchronized (this) {
+            if (geracao == geracaoDaLeitura) {
+                entradas.put(chave, new Entrada(Collections.unmodifiableList(copias), codigosBase));
+            }
+        }
+        return estoques;
+    }
+
+    /**
+     * O estoque de um poste mudou. Invalida as listagens consolidadas que mostram o código base
+     * e a listagem com quantidade do tenant do poste se ela o mostra ou se ele pode ter entrado nela.
+     */
+    public void estoqueAlterado(String tenantId, String codigoBase, int delta) {
+        invalidarAposCommit((chave, entrada) -> chave.listagem == Listagem.TODO_ESTOQUE
+                ? entrada.codigosBase.contains(codigoBase)
+                : chave.tenantId.equals(tenantId) && (delta > 0 || entrada.codigosBase.contains(codigoBase)));
+    }
+
+    /**
+     * O total consolidado de um código base foi recalculado
+     */
+    public void consolidadoRecalculado(String codigoBase) {
+        invalidarAposCommit((chave, entrada) ->
+                chave.listagem == Listagem.TODO_ESTOQUE && entrada.codigosBase.contains(codigoBase));
+    }
+
+    /**
+     * Um poste foi criado, alterado ou inativado. Muda as linhas das listagens do próprio tenant
+     * e a consolidada, e os dados do poste em qualquer listagem que mostre os códigos base.
+     */
+    public void posteAlterado(String tenantId, String... codigosBase) {
+        invalidarAposCommit((chave, entrada) -> (chave.listagem == Listagem.TODO_ESTOQUE
+                && (chave.tenantId.equals(tenantId) || TENANT_CONSOLIDADO.equals(chave.tenantId)))
+                || Arrays.stream(codigosBase).anyMatch(entrada.codigosBase::contains));
+    }
+
+    /**
+     * Descarta todas as entradas depois do commit (correções em massa do estoque)
+     */
+    public void limparAposCommit() {
+        invalidarAposCommit((chave, entrada) -> true);
+    }
+
+    public Map<String, Object> obterMetricas() {
+        long totalAcertos = acertos.sum();
+        long totalFaltas = faltas.sum();
+
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        synchronized (this) {
+            metricas.put("entradas", entradas.size());
+        }
+        metricas.put("maximoEntradas", maximoEntradas);
+        metricas.put("acertos", totalAcertos);
+        metricas.put("faltas", totalFaltas);
+        metricas.put("taxaAcerto", totalAcertos + totalFaltas > 0
+                ? totalAcertos / (double) (totalAcertos + totalFaltas) : 0.0);
+        metricas.put("despejos", despejos.sum());
+        metricas.put("invalidacoes", invalidacoes.sum());
+        metricas.put("leiturasSemCache", ignorados.sum());
+        return metricas;
+    }
+
+    private static List<EstoqueDTO> copiar(List<EstoqueDTO> estoques) {
+        List<EstoqueDTO> copias = new ArrayList<>(estoques.size());
+        for (EstoqueDTO estoque : estoques) {
+            copias.add(new EstoqueDTO(estoque));
+        }
+        return copias;
+    }
+
+    private boolean podeUsarCache() {
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private void invalidarAposCommit(BiPredicate<Chave, Entrada> afetada) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidar(afetada);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidar(afetada);
+            }
+        });
+    }
+
+    private synchronized void invalidar(BiPredicate<Chave, Entrada> afetada) {
+        geracao++;
+        // Pelo iterador, sem get(), para não mudar a ordem de uso das entradas mantidas
+        Iterator<Map.Entry<Chave, Entrada>> iterador = entradas.entrySet().iterator();
+        while (iterador.hasNext()) {
+            Map.Entry<Chave, Entrada> entrada = iterador.next();
+            if (afetada.test(entrada.getKey(), entrada.getValue())) {
+                iterador.remove();
+                invalidacoes.increment();
+            }
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class Chave {
+        private Listagem listagem;
+        private String tenantId;
+    }
+
+    private static class Entrada {
+        final List<EstoqueDTO> estoques;
+        final Set<String> codigosBase;
+
+        Entrada(List<EstoqueDTO> estoques, Set<String> codigosBase) {
+            this.estoques = estoques;
+            this.codigosBase = codigosBase;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.vendas.postes.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Locks por código base para serializar, dentro da JVM, as alterações de estoque
+ * do mesmo poste sem bloquear códigos diferentes. Usa um vetor fixo de locks
+ * e o hash do código base para escolher a posição (lock striping).
+ */
+@Component
+@Slf4j
+public class EstoqueLockManager {
+
+    private static final int NUMERO_DE_LOCKS = 64;
+    private static final long TEMPO_MAXIMO_ESPERA_MS = 10_000;
+
+    private final ReentrantLock[] locks = new ReentrantLock[NUMERO_DE_LOCKS];
+
+    private final LongAdder aquisicoes = new LongAdder();
+    private final LongAdder contencoes = new LongAdder();
+    private final LongAdder tempoEsperaNanos = new LongAdder();
+    private final AtomicLong maiorEsperaNanos = new AtomicLong();
+
+    public EstoqueLockManager() {
+        for (int i = 0; i < NUMERO_DE_LOCKS; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Bloqueia o código base até o fim da transação atual (commit ou rollback),
+     * para que a próxima alteração do mesmo código só comece depois do commit.
+     * Fora de transação o lock não é mantido.
+     */
+    public void bloquearAteFimDaTransacao(String codigoBase) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        ReentrantLock lock = adquirir(codigoBase);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Bloqueia vários códigos base até o fim da transação. Os locks são adquiridos
+     * sempre na ordem das posições do vetor, para que dois lotes com códigos em comum
+     * não fiquem esperando um pelo outro.
+     */
+    public void bloquearAteFimDaTransacao(Collection<String> codigosBase) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        TreeMap<Integer, String> codigoPorIndice = new TreeMap<>();
+        for (String codigoBase : codigosBase) {
+            codigoPorIndice.putIfAbsent(indice(codigoBase), codigoBase);
+        }
+        codigoPorIndice.values().forEach(this::bloquearAteFimDaTransacao);
+    }
+
+    /**
+     * Executa a operação com o lock do código base
+     */
+    public <T> T executarComLock(String codigoBase, Supplier<T> operacao) {
+        ReentrantLock lock = adquirir(codigoBase);
+        try {
+            return operacao.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> obterMetricas() {
+        long totalAquisicoes = aquisicoes.sum();
+        long totalContencoes = contencoes.sum();
+        long esperaTotalNanos = tempoEsperaNanos.sum();
+
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("numeroDeLocks", NUMERO_DE_LOCKS);
+        metricas.put("aquisicoes", totalAquisicoes);
+        metricas.put("contencoes", totalContencoes);
+        metricas.put("tempoEsperaTotalMs", TimeUnit.NANOSECONDS.toMillis(esperaTotalNanos));
+        metricas.put("tempoEsperaMedioMs", totalContencoes > 0
+                ? esperaTotalNanos / (double) totalContencoes / 1_000_000 : 0.0);
+        metricas.put("maiorEsperaMs", TimeUnit.NANOSECONDS.toMillis(maiorEsperaNanos.get()));
+        return metricas;
+    }
+
+    private ReentrantLock adquirir(String codigoBase) {
+        ReentrantLock lock = locks[indice(codigoBase)];
+        aquisicoes.increment();
+
+        if (lock.tryLock()) {
+            return lock;
+        }
+
+        contencoes.increment();
+        long inicio = System.nanoTime();
+        try {
+            if (!lock.tryLock(TEMPO_MAXIMO_ESPERA_MS, TimeUnit.MILLISECONDS)) {
+                throw new TempoEsgotadoException("Tempo esgotado aguardando alteração de estoque do código " + codigoBase);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TempoEsgotadoException("Interrompido aguardando alteração de estoque do código " + codigoBase, e);
+        } finally {
+            long espera = System.nanoTime() - inicio;
+            tempoEsperaNanos.add(espera);
+            maiorEsperaNanos.accumulateAndGet(espera, Math::max);
+        }
+        return lock;
+    }
+
+    private int indice(String codigoBase) {
+        int hash = codigoBase != null ? codigoBase.hashCode() : 0;
+        // Espalha os bits altos antes de aplicar a máscara
+        hash ^= (hash >>> 16);
+        return hash & (NUMERO_DE_LOCKS - 1);
+    }
+
+    /**
+     * O lock do código base não foi obtido a tempo. Quem trata falhas de estoque sem
+     * interromper a operação deve deixar esta passar: a transação precisa ser desfeita.
+     */
+    public static class TempoEsgotadoException extends RuntimeException {
+        public TempoEsgotadoException(String message) {
+            super(message);
+        }
+
+        public TempoEsgotadoException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.model.MovimentoEstoque.TipoMovimento;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.EstoqueRepository;
+import com.vendas.postes.repository.MovimentoEstoqueRepository;
+import com.vendas.postes.repository.PosteRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Estoque em memória para entradas e saídas (opcional, estoque.memoria.habilitado).
+ *
+ * O saldo de cada poste fica em um AtomicLongArray, na posição de um ordinal denso atribuído
+ * ao poste. Entradas e saídas são calculadas na memória com o lock do código base, mantido até
+ * o fim da transação, sem ler a tabela estoque, e os movimentos são gravados na transação de quem
+ * chamou: eles são o registro durável da alteração. A tabela estoque e o consolidado são atualizados depois do commit, em
+ * lotes, por uma thread de descarga, que marca os movimentos com estoque_aplicado = true.
+ *
+ * Na subida os saldos são lidos da tabela estoque e os movimentos ainda não aplicados são somados
+ * de novo e reenfileirados, então uma parada antes da descarga não deixa diferença.
+ * Com o estoque em memória a aplicação precisa rodar em uma única instância.
+ */
+@Service
+@Slf4j
+public class EstoqueMemoriaService {
+
+    private static final int CAPACIDADE_INICIAL = 1024;
+    private static final int IDS_POR_UPDATE = 1_000;
+    private static final long ESPERA_APOS_ERRO_MS = 1_000;
+
+    private final PosteRepository posteRepository;
+    private final EstoqueRepository estoqueRepository;
+    private final MovimentoEstoqueService movimentoEstoqueService;
+    private final MovimentoEstoqueRepository movimentoEstoqueRepository;
+    private final EstoqueConsolidadoService estoqueConsolidadoService;
+    private final EstoqueLockManager estoqueLockManager;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean habilitado;
+    private final int loteMaximo;
+
+    // Trocado por um maior (com o lock de escrita) quando os ordinais passam da capacidade
+    private AtomicLongArray saldos = new AtomicLongArray(CAPACIDADE_INICIAL);
+    private final ReentrantReadWriteLock crescimento = new ReentrantReadWriteLock();
+
+    private final Map<Long, PosteMemoria> postes = new ConcurrentHashMap<>();
+    // Postes ativos de cada código base, em ordem de id (a ordem em que as saídas consomem o estoque)
+    private final Map<String, List<PosteMemoria>> postesPorCodigoBase = new ConcurrentHashMap<>();
+    private int proximoOrdinal;
+
+    private final BlockingQueue<Pendente> fila = new LinkedBlockingQueue<>();
+    private final AtomicLong pendentes = new AtomicLong();
+    private volatile Thread descarga;
+    private volatile boolean encerrando;
+
+    private final LongAdder lotesDescarregados = new LongAdder();
+    private final LongAdder movimentosDescarregados = new LongAdder();
+    private final LongAdder errosDescarga = new LongAdder();
+
+    public EstoqueMemoriaService(PosteRepository posteRepository,
+                                 EstoqueRepository estoqueRepository,
+                                 MovimentoEstoqueService movimentoEstoqueService,
+                                 MovimentoEstoqueRepository movimentoEstoqueRepository,
+                                 EstoqueConsolidadoService estoqueConsolidadoService,
+                                 EstoqueLockManager estoqueLockManager,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${estoque.memoria.habilitado:false}") boolean habilitado,
+                                 @Value("${estoque.memoria.lote-maximo:500}") int loteMaximo) {
+        this.posteRepository = posteRepository;
+        this.estoqueRepository = estoqueRepository;
+        this.movimentoEstoqueService = movimentoEstoqueService;
+        this.movimentoEstoqueRepository = movimentoEstoqueRepository;
+        this.estoqueConsolidadoService = estoqueConsolidadoService;
+        this.estoqueLockManager = estoqueLockManager;
+        this.transactionTemplate = transactionTemplate;
+        this.habilitado = habilitado;
+        this.loteMaximo = loteMaximo;
+    }
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    /**
+     * Carrega os saldos da tabela estoque, reaplica os movimentos pendentes e inicia a descarga.
+     * Chamado uma vez na subida.
+     */
+    public synchronized void carregar() {
+        if (!habilitado || descarga != null) {
+            return;
+        }
+
+        TransactionTemplate leitura = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        leitura.setReadOnly(true);
+        int reaplicados = leitura.execute(status -> {
+            posteRepository.findAll().forEach(poste -> registrar(poste, 0));
+            for (Object[] linha : estoqueRepository.listarSaldosPorPoste()) {
+                PosteMemoria registro = postes.get((Long) linha[0]);
+                if (registro != null) {
+                    somar(registro.ordinal, (Integer) linha[1]);
+                }
+            }
+
+            List<Object[]> pendentesNoBanco = movimentoEstoqueRepository.findPendentesDeEstoque();
+            for (Object[] linha : pendentesNoBanco) {
+                PosteMemoria registro = postes.get((Long) linha[1]);
+                int delta = variacao((TipoMovimento) linha[2], (Integer) linha[3]);
+                somar(registro.ordinal, delta);
+                enfileirar(new Pendente((Long) linha[0], registro, delta));
+            }
+            return pendentesNoBanco.size();
+        });
+
+        descarga = new Thread(this::descarregarContinuamente, "estoque-memoria-descarga");
+        descarga.setDaemon(true);
+        descarga.start();
+
+        log.info("🧠 Estoque em memória carregado: {} postes, {} movimentos pendentes reaplicados",
+                postes.size(), reaplicados);
+    }
+
+    /**
+     * Entrada de estoque no poste. Deve ser chamada dentro da transação que grava a operação.
+     */
+    public MovimentoEstoque entrada(Poste poste, int quantidade, LocalDate data, String observacao) {
+        PosteMemoria registro = registro(poste);
+        List<Pendente> alteracoes = new ArrayList<>();
+        bloquearAteFimDaTransacao(registro.codigoBase, alteracoes);
+
+        long atual = somar(registro.ordinal, quantidade);
+        alteracoes.add(new Pendente(movimento(registro, poste, TipoMovimento.ENTRADA, quantidade,
+                data, atual - quantidade, atual, observacao), registro, quantidade));
+
+        gravar(alteracoes);
+        return alteracoes.get(0).movimento;
+    }
+
+    /**
+     * Saída de estoque com a mesma regra de EstoqueService.reduzirEstoqueComData: consome os postes
+     * ativos do código base em ordem de id e o que faltar vira estoque negativo no poste original.
+     * Deve ser chamada dentro da transação que grava a operação.
+     */
+    public List<MovimentoEstoque> saida(Poste posteOriginal, int quantidade, LocalDate data, String observacao) {
+        PosteMemoria original = registro(posteOriginal);
+        List<Pendente> alteracoes = new ArrayList<>();
+        bloquearAteFimDaTransacao(original.codigoBase, alteracoes);
+
+        int restante = quantidade;
+        for (PosteMemoria relacionado : postesPorCodigoBase.getOrDefault(original.codigoBase, List.of())) {
+            if (restante <= 0) break;
+
+            long disponivel = saldo(relacionado.ordinal);
+            if (disponivel <= 0) continue;
+
+            int reduzir = (int) Math.min(restante, disponivel);
+            long atual = somar(relacionado.ordinal, -reduzir);
+            alteracoes.add(new Pendente(movimento(relacionado, posteOriginal, TipoMovimento.SAIDA, reduzir,
+                    data, atual + reduzir, atual, observacao), relacionado, -reduzir));
+            restante -= reduzir;
+        }
+
+        if (restante > 0) {
+            long atual = somar(original.ordinal, -restante);
+            alteracoes.add(new Pendente(movimento(original, posteOriginal, TipoMovimento.SAIDA, restante,
+                    data, atual + restante, atual, observacao + " (estoque negativo)"), original, -restante));
+        }
+
+        gravar(alteracoes);
+        return alteracoes.stream().map(alteracao -> alteracao.movimento).collect(Collectors.toList());
+    }
+
+    /**
+     * Saldo do poste na memória, incluindo o que ainda não foi descarregado
+     */
+    public long saldoDoPoste(Long posteId) {
+        PosteMemoria registro = postes.get(posteId);
+        return registro != null ? saldo(registro.ordinal) : 0;
+    }
+
+    /**
+     * Acompanha o cadastro de postes: registra postes novos e atualiza código base e status dos carregados
+     */
+    public void atualizarPoste(Poste poste) {
+        if (!habilitado) {
+            return;
+        }
+
+        PosteMemoria registro = registro(poste);
+        synchronized (postesPorCodigoBase) {
+            removerDoIndice(registro);
+            registro.codigoBase = poste.getCodigoBase();
+            registro.ativo = Boolean.TRUE.equals(poste.getAtivo());
+            adicionarAoIndice(registro);
+        }
+    }
+
+    /**
+     * Espera a descarga de tudo o que já foi commitado, até o tempo limite.
+     * Retorna false se ainda havia movimentos pendentes ao fim da espera.
+     */
+    public boolean aguardarDescarga(long tempoMaximoMs) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(tempoMaximoMs);
+        synchronized (pendentes) {
+            while (pendentes.get() > 0) {
+                long restanteNanos = limite - System.nanoTime();
+                if (restanteNanos <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(pendentes, restanteNanos);
+            }
+        }
+        return true;
+    }
+
+    public Map<String, Object> obterMetricas() {
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("habilitado", habilitado);
+        metricas.put("postes", postes.size());
+        metricas.put("movimentosPendentes", pendentes.get());
+        metricas.put("lotesDescarregados", lotesDescarregados.sum());
+        metricas.put("movimentosDescarregados", movimentosDescarregados.sum());
+        metricas.put("errosDescarga", errosDescarga.sum());
+        return metricas;
+    }
+
+    @PreDestroy
+    public void encerrar() throws InterruptedException {
+        Thread thread = descarga;
+        if (thread == null) {
+            return;
+        }
+        // O que não for descarregado continua pendente no banco e é reaplicado na próxima subida
+        encerrando = true;
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        thread.interrupt();
+    }
+
+    /**
+     * Bloqueia o código base até o fim da transação atual, para que outra transação só leia os
+     * saldos depois do commit ou do rollback desta. Depois do commit as alterações entram na fila
+     * de descarga; se a transação for desfeita os saldos voltam ao que eram antes de o lock ser liberado.
+     */
+    private void bloquearAteFimDaTransacao(String codigoBase, List<Pendente> alteracoes) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Alterações do estoque em memória precisam de uma transação");
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+                // Antes da liberação do lock, registrada com a ordem padrão
+                return Ordered.HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void afterCommit() {
+                alteracoes.forEach(EstoqueMemoriaService.this::enfileirar);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    desfazer(alteracoes);
+                }
+            }
+        });
+        estoqueLockManager.bloquearAteFimDaTransacao(codigoBase);
+    }
+
+    /**
+     * Grava os movimentos na transação atual
+     */
+    private void gravar(List<Pendente> alteracoes) {
+        List<MovimentoEstoque> movimentos = alteracoes.stream()
+                .map(alteracao -> alteracao.movimento)
+                .collect(Collectors.toList());
+        movimentoEstoqueService.registrar(movimentos);
+    }
+
+    private void desfazer(List<Pendente> alteracoes) {
+        for (Pendente alteracao : alteracoes) {
+            somar(alteracao.registro.ordinal, -alteracao.delta);
+        }
+    }
+
+    private void enfileirar(Pendente pendente) {
+        pendentes.incrementAndGet();
+        fila.add(pendente);
+    }
+
+    private void descarregarContinuamente() {
+        List<Pendente> lote = new ArrayList<>();
+        while (!encerrando || !fila.isEmpty()) {
+            try {
+                Pendente primeiro = fila.poll(100, TimeUnit.MILLISECONDS);
+                if (primeiro == null) {
+                    continue;
+                }
+                // O que chegou enquanto o lote anterior era gravado vai junto neste
+                lote.add(primeiro);
+                fila.drainTo(lote, loteMaximo - 1);
+
+                while (!descarregar(lote)) {
+                    if (encerrando) {
+                        return;
+                    }
+                    Thread.sleep(ESPERA_APOS_ERRO_MS);
+                }
+
+                synchronized (pendentes) {
+                    pendentes.addAndGet(-lote.size());
+                    pendentes.notifyAll();
+                }
+                lote.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Aplica um lote à tabela estoque e ao consolidado, somado por poste, e marca os movimentos
+     * como aplicados, tudo em uma transação
+     */
+    private boolean descarregar(List<Pendente> lote) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<Long, Integer> deltaPorPoste = new LinkedHashMap<>();
+                for (Pendente pendente : lote) {
+                    deltaPorPoste.merge(pendente.registro.posteId, pendente.delta, Integer::sum);
+                }
+
+                Map<Long, Poste> postePorId = posteRepository.findAllById(deltaPorPoste.keySet()).stream()
+                        .collect(Collectors.toMap(Poste::getId, Function.identity()));
+                Map<Long, Estoque> estoquePorPoste = estoqueRepository.findByPosteIdIn(deltaPorPoste.keySet()).stream()
+                        .collect(Collectors.toMap(e -> e.getPoste().getId(), Function.identity(), (e1, e2) -> e1));
+
+                LocalDateTime agora = LocalDateTime.now();
+                deltaPorPoste.forEach((posteId, delta) -> {
+                    Poste poste = postePorId.get(posteId);
+                    Estoque estoque = estoquePorPoste.get(posteId);
+                    if (estoque == null) {
+                        estoqueRepository.save(new Estoque(poste, delta));
+                    } else if (delta != 0) {
+                        estoqueRepository.somarQuantidade(estoque.getId(), delta, agora);
+                    }
+                    estoqueConsolidadoService.aplicarDelta(poste, delta);
+                });
+
+                List<Long> ids = lote.stream().map(Pendente::getMovimentoId).collect(Collectors.toList());
+                for (int i = 0; i < ids.size(); i += IDS_POR_UPDATE) {
+                    movimentoEstoqueRepository.marcarEstoqueAplicado(ids.subList(i, Math.min(ids.size(), i + IDS_POR_UPDATE)));
+                }
+            });
+
+            lotesDescarregados.increment();
+            movimentosDescarregados.add(lote.size());
+            return true;
+        } catch (RuntimeException e) {
+            errosDescarga.increment();
+            log.error("❌ Erro ao descarregar {} movimentos do estoque em memória: ", lote.size(), e);
+            return false;
+        }
+    }
+
+    private MovimentoEstoque movimento(PosteMemoria registro, Poste conhecido, TipoMovimento tipo, int quantidade,
+                                       LocalDate data, long anterior, long atual, String observacao) {
+        // Os postes relacionados entram por referência, sem SELECT
+        Poste poste = registro.posteId.equals(conhecido.getId())
+                ? conhecido : posteRepository.getReferenceById(registro.posteId);
+
+        // Sem passar o poste ao construtor, que leria o tenant do proxy
+        MovimentoEstoque movimento = new MovimentoEstoque(null, tipo, quantidade, data,
+                (int) anterior, (int) atual, observacao);
+        movimento.setPoste(poste);
+        movimento.setTenantId(registro.tenantId);
+        movimento.setEstoqueAplicado(false);
+        return movimento;
+    }
+
+    /**
+     * Registro do poste na memória. Um poste que ainda não estava carregado entra com o saldo da tabela
+     * estoque: antes da primeira alteração pela memória não há nada pendente dele.
+     */
+    private PosteMemoria registro(Poste poste) {
+        PosteMemoria existente = postes.get(poste.getId());
+        if (existente != null) {
+            return existente;
+        }
+        return registrar(poste, estoqueRepository.findByPosteId(poste.getId())
+                .map(Estoque::getQuantidadeAtual)
+                .orElse(0));
+    }
+
+    private PosteMemoria registrar(Poste poste, int saldoInicial) {
+        synchronized (postesPorCodigoBase) {
+            return postes.computeIfAbsent(poste.getId(), id -> {
+                PosteMemoria registro = new PosteMemoria(id, proximoOrdinal++, poste.getTenantId(),
+                        poste.getCodigoBase(), Boolean.TRUE.equals(poste.getAtivo()));
+                garantirCapacidade(registro.ordinal);
+                somar(registro.ordinal, saldoInicial);
+                adicionarAoIndice(registro);
+                return registro;
+            });
+        }
+    }
+
+    // Chamado com o monitor de postesPorCodigoBase
+    private void adicionarAoIndice(PosteMemoria registro) {
+        if (!registro.ativo) {
+            return;
+        }
+        List<PosteMemoria> relacionados = new ArrayList<>(postesPorCodigoBase.getOrDefault(registro.codigoBase, List.of()));
+        relacionados.add(registro);
+        relacionados.sort(Comparator.comparing(relacionado -> relacionado.posteId));
+        postesPorCodigoBase.put(registro.codigoBase, List.copyOf(relacionados));
+    }
+
+    // Chamado com o monitor de postesPorCodigoBase
+    private void removerDoIndice(PosteMemoria registro) {
+        List<PosteMemoria> relacionados = postesPorCodigoBase.get(registro.codigoBase);
+        if (relacionados != null && relacionados.contains(registro)) {
+            List<PosteMemoria> restantes = new ArrayList<>(relacionados);
+            restantes.remove(registro);
+            postesPorCodigoBase.put(registro.codigoBase, List.copyOf(restantes));
+        }
+    }
+
+    private void garantirCapacidade(int ordinal) {
+        if (ordinal < saldos.length()) {
+            return;
+        }
+        crescimento.writeLock().lock();
+        try {
+            AtomicLongArray maior = new AtomicLongArray(Math.max(ordinal + 1, saldos.length() * 2));
+            for (int i = 0; i < saldos.length(); i++) {
+                maior.set(i, saldos.get(i));
+            }
+            saldos = maior;
+        } finally {
+            crescimento.writeLock().unlock();
+        }
+    }
+
+    private long somar(int ordinal, long delta) {
+        crescimento.readLock().lock();
+        try {
+            return saldos.addAndGet(ordinal, delta);
+        } finally {
+            crescimento.readLock().unlock();
+        }
+    }
+
+    private long saldo(int ordinal) {
+        crescimento.readLock().lock();
+        try {
+            return saldos.get(ordinal);
+        } finally {
+            crescimento.readLock().unlock();
+        }
+    }
+
+    /**
+     * Mesma regra de saldo de MovimentoEstoqueRepository: entradas e ajustes somam, saídas e vendas subtraem
+     */
+    private static int variacao(TipoMovimento tipo, int quantidade) {
+        switch (tipo) {
+            case ENTRADA:
+            case AJUSTE:
+                return quantidade;
+            case SAIDA:
+            case VENDA:
+                return -quantidade;
+            default:
+                return 0;
+        }
+    }
+
+    private static class PosteMemoria {
+        final Long posteId;
+        final int ordinal;
+        final String tenantId;
+        volatile String codigoBase;
+        volatile boolean ativo;
+
+        PosteMemoria(Long posteId, int ordinal, String tenantId, String codigoBase, boolean ativo) {
+            this.posteId = posteId;
+            this.ordinal = ordinal;
+            this.tenantId = tenantId;
+            this.codigoBase = codigoBase;
+            this.ativo = ativo;
+        }
+    }
+
+    /**
+     * Alteração de um poste e o movimento que a registra; o id do movimento existe depois de gravado
+     */
+    private static class Pendente {
+        final MovimentoEstoque movimento;
+        final Long movimentoId;
+        final PosteMemoria registro;
+        final int delta;
+
+        Pendente(MovimentoEstoque movimento, PosteMemoria registro, int delta) {
+            this.movimento = movimento;
+            this.movimentoId = null;
+            this.registro = registro;
+            this.delta = delta;
+        }
+
+        Pendente(Long movimentoId, PosteMemoria registro, int delta) {
+            this.movimento = null;
+            this.movimentoId = movimentoId;
+            this.registro = registro;
+            this.delta = delta;
+        }
+
+        Long getMovimentoId() {
+            return movimento != null ? movimento.getId() : movimentoId;
+        }
+    }
+}
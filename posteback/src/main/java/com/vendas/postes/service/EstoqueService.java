@@ -1,19 +1,25 @@
 package com.vendas.postes.service;
 
 import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.EntradaEstoqueLoteDTO;
 import com.vendas.postes.dto.EstoqueDTO;
+import com.vendas.postes.dto.ResultadoEntradaLoteDTO;
+import com.vendas.postes.dto.SaidaEstoqueLoteDTO;
 import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.EstoqueConsolidado;
 import com.vendas.postes.model.MovimentoEstoque;
 import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.EstoqueConsolidadoRepository;
 import com.vendas.postes.repository.EstoqueRepository;
-import com.vendas.postes.repository.MovimentoEstoqueRepository;
 import com.vendas.postes.repository.PosteRepository;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -24,14 +30,28 @@ public class EstoqueService {
 
     private final EstoqueRepository estoqueRepository;
     private final PosteRepository posteRepository;
-    private final MovimentoEstoqueRepository movimentoEstoqueRepository;
+    private final MovimentoEstoqueService movimentoEstoqueService;
+    private final EstoqueConsolidadoRepository estoqueConsolidadoRepository;
+    private final EstoqueConsolidadoService estoqueConsolidadoService;
+    private final EstoqueLockManager estoqueLockManager;
+    private final EstoqueListagemCache estoqueListagemCache;
+    private final EstoqueMemoriaService estoqueMemoriaService;
+    private final EntityManager entityManager;
 
     /**
      * Lista todo o estoque consolidado - busca postes de ambos os caminhões
-     * e consolida os estoques por código de poste
+     * e consolida os estoques por código de poste.
+     * As quantidades vêm da tabela estoque_consolidado em uma única consulta,
+     * e o resultado fica no cache até uma alteração dos códigos base listados.
      */
+    @Transactional(readOnly = true)
     public List<EstoqueDTO> listarTodoEstoque() {
         String tenantAtual = TenantContext.getCurrentTenantValue();
+        return estoqueListagemCache.obter(EstoqueListagemCache.Listagem.TODO_ESTOQUE, tenantAtual,
+                () -> consultarTodoEstoque(tenantAtual));
+    }
+
+    private List<EstoqueDTO> consultarTodoEstoque(String tenantAtual) {
         log.info("🔍 Listando estoque consolidado para tenant: {}", tenantAtual);
 
         // Se for Jefferson, mostrar estoque consolidado real
@@ -40,101 +60,67 @@ public class EstoqueService {
         }
 
         // Para vermelho e branco, mostrar apenas seus postes mas com estoque consolidado
-        List<Poste> postesDoTenant = posteRepository.findByTenantIdAndAtivoTrue(tenantAtual);
-
-        return postesDoTenant.stream().map(poste -> {
-            EstoqueDTO estoqueConsolidado = obterEstoqueConsolidadoPorCodigo(poste.getCodigo());
-            if (estoqueConsolidado != null) {
-                // Usar os dados do poste do tenant atual mas quantidade consolidada
-                estoqueConsolidado.setPosteId(poste.getId());
-                estoqueConsolidado.setCodigoPoste(poste.getCodigo());
-                estoqueConsolidado.setDescricaoPoste(poste.getDescricao());
-                estoqueConsolidado.setPrecoPoste(poste.getPreco());
-                estoqueConsolidado.setPosteAtivo(poste.getAtivo());
-                return estoqueConsolidado;
-            } else {
-                return criarEstoqueDTOZerado(poste);
+        List<Object[]> postesComConsolidado = estoqueConsolidadoRepository.findPostesComConsolidadoPorTenant(tenantAtual);
+
+        return postesComConsolidado.stream().map(linha -> {
+            Poste poste = (Poste) linha[0];
+            EstoqueConsolidado consolidado = (EstoqueConsolidado) linha[1];
+            if (linha[2] == null) {
+                return criarEstoqueDTOZerado(poste, consolidado != null ? consolidado.getQuantidadeTotal() : 0);
             }
+
+            // Usar os dados do poste do tenant atual mas quantidade consolidada
+            EstoqueDTO estoqueConsolidado = new EstoqueDTO();
+            estoqueConsolidado.setPosteId(poste.getId());
+            estoqueConsolidado.setCodigoPoste(poste.getCodigo());
+            estoqueConsolidado.setDescricaoPoste(poste.getDescricao());
+            estoqueConsolidado.setPrecoPoste(poste.getPreco());
+            estoqueConsolidado.setPosteAtivo(poste.getAtivo());
+            estoqueConsolidado.setQuantidadeAtual(consolidado != null ? consolidado.getQuantidadeTotal() : 0);
+            return estoqueConsolidado;
         }).collect(Collectors.toList());
     }
 
     /**
-     * Lista estoque consolidado completo - para Jefferson
+     * Poste sem registro de estoque: mínimo zero e nunca abaixo do mínimo, como antes da
+     * consolidação. A quantidade é a do código base, que pode ter estoque em outro caminhão.
      */
-    private List<EstoqueDTO> listarEstoqueConsolidadoCompleto() {
-        log.info("📦 Gerando estoque consolidado completo");
-
-        // Buscar todos os postes ativos de ambos os caminhões
-        List<Poste> postesVermelho = posteRepository.findByTenantIdAndAtivoTrue("vermelho");
-        List<Poste> postesBranco = posteRepository.findByTenantIdAndAtivoTrue("branco");
-
-        // Mapa para consolidar por código
-        Map<String, EstoqueConsolidado> consolidadoPorCodigo = new HashMap<>();
-
-        // Processar postes vermelho
-        for (Poste poste : postesVermelho) {
-            processarPosteParaConsolidacao(poste, consolidadoPorCodigo, "vermelho");
-        }
-
-        // Processar postes branco
-        for (Poste poste : postesBranco) {
-            processarPosteParaConsolidacao(poste, consolidadoPorCodigo, "branco");
-        }
-
-        // Converter para DTO
-        return consolidadoPorCodigo.values().stream()
-                .map(this::converterConsolidadoParaDTO)
-                .sorted(Comparator.comparing(EstoqueDTO::getCodigoPoste))
-                .collect(Collectors.toList());
+    private EstoqueDTO criarEstoqueDTOZerado(Poste poste, int quantidadeConsolidada) {
+        EstoqueDTO dto = new EstoqueDTO();
+        dto.setPosteId(poste.getId());
+        dto.setCodigoPoste(poste.getCodigo());
+        dto.setDescricaoPoste(poste.getDescricao());
+        dto.setPrecoPoste(poste.getPreco());
+        dto.setPosteAtivo(poste.getAtivo());
+        dto.setQuantidadeAtual(quantidadeConsolidada);
+        dto.setQuantidadeMinima(0);
+        dto.setEstoqueAbaixoMinimo(false);
+        return dto;
     }
 
     /**
-     * Processa um poste para consolidação
+     * Lista estoque consolidado completo - para Jefferson.
+     * Uma linha por código base com as quantidades de estoque_consolidado e a descrição e o
+     * preço do poste ativo de menor ID do código, em uma única consulta.
      */
-    private void processarPosteParaConsolidacao(Poste poste, Map<String, EstoqueConsolidado> consolidado, String tenant) {
-        String codigoBase = extrairCodigoBase(poste.getCodigo());
-
-        EstoqueConsolidado item = consolidado.computeIfAbsent(codigoBase, k -> new EstoqueConsolidado());
-
-        // Configurar dados básicos se ainda não foram configurados
-        if (item.codigoPoste == null) {
-            item.codigoPoste = codigoBase;
-            item.descricaoPoste = limparDescricaoParaConsolidacao(poste.getDescricao());
-            item.precoPoste = poste.getPreco();
-        }
-
-        // Buscar estoque para este poste específico
-        Optional<Estoque> estoqueOpt = estoqueRepository.findByPosteId(poste.getId());
-        int quantidade = estoqueOpt.map(Estoque::getQuantidadeAtual).orElse(0);
-
-        // Adicionar à quantidade total
-        item.quantidadeTotal += quantidade;
-
-        // Adicionar às quantidades específicas por caminhão
-        if ("vermelho".equals(tenant)) {
-            item.quantidadeVermelho += quantidade;
-        } else if ("branco".equals(tenant)) {
-            item.quantidadeBranco += quantidade;
-        }
-
-        // Atualizar data de última atualização
-        if (estoqueOpt.isPresent() && estoqueOpt.get().getDataAtualizacao() != null) {
-            if (item.dataUltimaAtualizacao == null ||
-                    estoqueOpt.get().getDataAtualizacao().isAfter(item.dataUltimaAtualizacao)) {
-                item.dataUltimaAtualizacao = estoqueOpt.get().getDataAtualizacao();
-            }
-        }
-    }
+    List<EstoqueDTO> listarEstoqueConsolidadoCompleto() {
+        log.info("📦 Gerando estoque consolidado completo");
 
-    /**
-     * Extrai o código base removendo sufixos como -B, -C, etc.
-     */
-    private String extrairCodigoBase(String codigo) {
-        if (codigo == null) return "";
+        return estoqueConsolidadoRepository.findConsolidadoComPosteRepresentativo().stream().map(linha -> {
+            Poste poste = (Poste) linha[0];
+            EstoqueConsolidado consolidado = (EstoqueConsolidado) linha[1];
+            int quantidadeTotal = consolidado != null ? consolidado.getQuantidadeTotal() : 0;
 
-        // Remover sufixos comuns como -B, -C
-        String codigoLimpo = codigo.replaceAll("-[BC]$", "");
-        return codigoLimpo;
+            EstoqueDTO dto = new EstoqueDTO();
+            dto.setCodigoPoste(poste.getCodigoBase());
+            dto.setDescricaoPoste(limparDescricaoParaConsolidacao(poste.getDescricao()));
+            dto.setPrecoPoste(poste.getPreco());
+            dto.setQuantidadeAtual(quantidadeTotal);
+            dto.setDataAtualizacao(consolidado != null ? consolidado.getDataAtualizacao() : null);
+            dto.setPosteAtivo(true);
+            dto.setEstoqueAbaixoMinimo(quantidadeTotal <= 5);
+            return dto;
+        }).collect(Collectors.toList());
     }
 
     /**
@@ -149,47 +135,6 @@ public class EstoqueService {
                 .trim();
     }
 
-    /**
-     * Obtém estoque consolidado por código de poste
-     */
-    private EstoqueDTO obterEstoqueConsolidadoPorCodigo(String codigoPoste) {
-        String codigoBase = extrairCodigoBase(codigoPoste);
-
-        // Buscar todos os postes com código similar
-        List<Poste> postesRelacionados = buscarPostesRelacionados(codigoBase);
-
-        int quantidadeTotal = 0;
-
-        for (Poste poste : postesRelacionados) {
-            Optional<Estoque> estoqueOpt = estoqueRepository.findByPosteId(poste.getId());
-            if (estoqueOpt.isPresent()) {
-                quantidadeTotal += estoqueOpt.get().getQuantidadeAtual();
-            }
-        }
-
-        if (!postesRelacionados.isEmpty()) {
-            EstoqueDTO dto = new EstoqueDTO();
-            dto.setQuantidadeAtual(quantidadeTotal);
-            return dto;
-        }
-
-        return null;
-    }
-
-    /**
-     * Busca postes relacionados por código base
-     */
-    private List<Poste> buscarPostesRelacionados(String codigoBase) {
-        List<Poste> todosPostes = posteRepository.findAll();
-
-        return todosPostes.stream()
-                .filter(poste -> {
-                    String codigoPosteBase = extrairCodigoBase(poste.getCodigo());
-                    return codigoBase.equals(codigoPosteBase) && poste.getAtivo();
-                })
-                .collect(Collectors.toList());
-    }
-
     /**
      * Adiciona estoque COM DATA - SEMPRE usa o primeiro poste encontrado com o código
      */
@@ -200,6 +145,14 @@ public class EstoqueService {
         Poste poste = posteRepository.findById(posteId)
                 .orElseThrow(() -> new RuntimeException("Poste não encontrado"));
 
+        if (estoqueMemoriaService.isHabilitado()) {
+            MovimentoEstoque movimento = estoqueMemoriaService.entrada(poste, quantidade, dataEstoque, observacao);
+            return convertToDTO(new Estoque(poste, movimento.getQuantidadeAtual()));
+        }
+
+        // Serializa alterações do mesmo código base até o commit
+        estoqueLockManager.bloquearAteFimDaTransacao(poste.getCodigoBase());
+
         // Verificar se já existe estoque para este poste específico
         Optional<Estoque> estoqueOpt = estoqueRepository.findByPosteId(posteId);
 
@@ -207,15 +160,17 @@ public class EstoqueService {
         Estoque estoque;
 
         if (estoqueOpt.isPresent()) {
+            // Soma atômica no banco para não perder atualizações concorrentes
             estoque = estoqueOpt.get();
-            quantidadeAnterior = estoque.getQuantidadeAtual();
-            estoque.adicionarQuantidade(quantidade);
+            estoqueRepository.somarQuantidade(estoque.getId(), quantidade, LocalDateTime.now());
+            entityManager.refresh(estoque);
+            quantidadeAnterior = estoque.getQuantidadeAtual() - quantidade;
         } else {
             quantidadeAnterior = 0;
-            estoque = new Estoque(poste, quantidade);
+            estoque = estoqueRepository.save(new Estoque(poste, quantidade));
         }
 
-        estoque = estoqueRepository.save(estoque);
+        estoqueConsolidadoService.aplicarDelta(poste, quantidade);
 
         // Registrar movimento de estoque
         MovimentoEstoque movimento = new MovimentoEstoque(
@@ -228,7 +183,7 @@ public class EstoqueService {
                 observacao
         );
 
-        movimentoEstoqueRepository.save(movimento);
+        movimentoEstoqueService.registrar(movimento);
 
         log.info("✅ Estoque atualizado: {} unidades para {} (anterior: {}, atual: {})",
                 quantidade, poste.getCodigo(), quantidadeAnterior, estoque.getQuantidadeAtual());
@@ -236,6 +191,141 @@ public class EstoqueService {
         return convertToDTO(estoque);
     }
 
+    /**
+     * Adiciona estoque de vários postes em uma única transação (descarga do caminhão).
+     * Postes e estoques são buscados de uma vez, os movimentos de ENTRADA são gravados
+     * em lote e itens inválidos são devolvidos como falha sem impedir os demais.
+     */
+    @Transactional
+    public List<ResultadoEntradaLoteDTO> adicionarEstoqueEmLote(List<EntradaEstoqueLoteDTO> itens) {
+        log.info("📦 Adicionando estoque em lote: {} itens", itens.size());
+
+        Set<Long> posteIds = itens.stream()
+                .map(EntradaEstoqueLoteDTO::getPosteId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        Map<Long, Poste> postePorId = posteRepository.findAllById(posteIds).stream()
+                .collect(Collectors.toMap(Poste::getId, p -> p));
+
+        // Serializa com as outras alterações dos mesmos códigos antes de ler os saldos
+        estoqueLockManager.bloquearAteFimDaTransacao(postePorId.values().stream()
+                .map(Poste::getCodigoBase)
+                .collect(Collectors.toSet()));
+
+        if (estoqueMemoriaService.isHabilitado()) {
+            return adicionarEstoqueEmLoteNaMemoria(itens, postePorId);
+        }
+
+        Map<Long, Estoque> estoquePorPoste = estoqueRepository.findByPosteIdIn(postePorId.keySet()).stream()
+                .collect(Collectors.toMap(e -> e.getPoste().getId(), e -> e, (e1, e2) -> e1));
+
+        List<ResultadoEntradaLoteDTO> resultados = new ArrayList<>();
+        List<Estoque> estoquesNovos = new ArrayList<>();
+        List<MovimentoEstoque> movimentos = new ArrayList<>();
+        Map<Long, Integer> deltaPorPoste = new LinkedHashMap<>();
+
+        for (int i = 0; i < itens.size(); i++) {
+            EntradaEstoqueLoteDTO item = itens.get(i);
+            Long posteId = item.getPosteId();
+
+            String erro = validarItemLote(item, postePorId);
+            if (erro != null) {
+                resultados.add(ResultadoEntradaLoteDTO.falha(i, posteId, erro));
+                continue;
+            }
+
+            Poste poste = postePorId.get(posteId);
+
+            Estoque estoque = estoquePorPoste.get(posteId);
+            if (estoque == null) {
+                estoque = new Estoque(poste, 0);
+                estoquePorPoste.put(posteId, estoque);
+                estoquesNovos.add(estoque);
+            }
+
+            int quantidadeAnterior = estoque.getQuantidadeAtual();
+            estoque.adicionarQuantidade(item.getQuantidade());
+            deltaPorPoste.merge(posteId, item.getQuantidade(), Integer::sum);
+
+            movimentos.add(new MovimentoEstoque(
+                    poste,
+                    MovimentoEstoque.TipoMovimento.ENTRADA,
+                    item.getQuantidade(),
+                    item.getDataEstoque() != null ? item.getDataEstoque() : LocalDate.now(),
+                    quantidadeAnterior,
+                    estoque.getQuantidadeAtual(),
+                    item.getObservacao()
+            ));
+
+            ResultadoEntradaLoteDTO resultado = new ResultadoEntradaLoteDTO();
+            resultado.setIndice(i);
+            resultado.setPosteId(posteId);
+            resultado.setCodigoPoste(poste.getCodigo());
+            resultado.setSucesso(true);
+            resultado.setQuantidadeAnterior(quantidadeAnterior);
+            resultado.setQuantidadeAtual(estoque.getQuantidadeAtual());
+            resultados.add(resultado);
+        }
+
+        estoqueRepository.saveAll(estoquesNovos);
+        movimentoEstoqueService.registrar(movimentos);
+
+        // A primeira atualização do consolidado descarrega inserts e updates acima em lote
+        estoqueConsolidadoService.aplicarDeltas(deltaPorPoste, postePorId);
+
+        log.info("✅ Lote processado: {} entradas, {} falhas",
+                movimentos.size(), resultados.size() - movimentos.size());
+
+        return resultados;
+    }
+
+    private List<ResultadoEntradaLoteDTO> adicionarEstoqueEmLoteNaMemoria(List<EntradaEstoqueLoteDTO> itens,
+                                                                          Map<Long, Poste> postePorId) {
+        List<ResultadoEntradaLoteDTO> resultados = new ArrayList<>();
+
+        for (int i = 0; i < itens.size(); i++) {
+            EntradaEstoqueLoteDTO item = itens.get(i);
+
+            String erro = validarItemLote(item, postePorId);
+            if (erro != null) {
+                resultados.add(ResultadoEntradaLoteDTO.falha(i, item.getPosteId(), erro));
+                continue;
+            }
+
+            Poste poste = postePorId.get(item.getPosteId());
+            MovimentoEstoque movimento = estoqueMemoriaService.entrada(poste, item.getQuantidade(),
+                    item.getDataEstoque() != null ? item.getDataEstoque() : LocalDate.now(), item.getObservacao());
+
+            ResultadoEntradaLoteDTO resultado = new ResultadoEntradaLoteDTO();
+            resultado.setIndice(i);
+            resultado.setPosteId(poste.getId());
+            resultado.setCodigoPoste(poste.getCodigo());
+            resultado.setSucesso(true);
+            resultado.setQuantidadeAnterior(movimento.getQuantidadeAnterior());
+            resultado.setQuantidadeAtual(movimento.getQuantidadeAtual());
+            resultados.add(resultado);
+        }
+
+        return resultados;
+    }
+
+    /**
+     * Motivo da falha de um item do lote de entrada, ou null se o item é válido
+     */
+    private String validarItemLote(EntradaEstoqueLoteDTO item, Map<Long, Poste> postePorId) {
+        if (item.getPosteId() == null || item.getPosteId() <= 0) {
+            return "ID de poste inválido";
+        }
+        if (item.getQuantidade() == null || item.getQuantidade() <= 0) {
+            return "Quantidade deve ser positiva";
+        }
+        if (!postePorId.containsKey(item.getPosteId())) {
+            return "Poste não encontrado";
+        }
+        return null;
+    }
+
     /**
      * Adiciona estoque - versão compatível (sem data)
      */
@@ -254,46 +344,52 @@ public class EstoqueService {
         Poste posteOriginal = posteRepository.findById(posteId)
                 .orElseThrow(() -> new RuntimeException("Poste não encontrado"));
 
-        String codigoBase = extrairCodigoBase(posteOriginal.getCodigo());
+        if (estoqueMemoriaService.isHabilitado()) {
+            estoqueMemoriaService.saida(posteOriginal, quantidade, dataEstoque, observacao);
+            return;
+        }
+
+        String codigoBase = posteOriginal.getCodigoBase();
+
+        // Serializa alterações do mesmo código base até o commit
+        estoqueLockManager.bloquearAteFimDaTransacao(codigoBase);
 
-        // Buscar todos os postes relacionados
-        List<Poste> postesRelacionados = buscarPostesRelacionados(codigoBase);
+        // Buscar os estoques de todos os postes relacionados de uma vez
+        List<Estoque> estoquesRelacionados = estoqueRepository.findByCodigoBase(codigoBase);
+
+        // Movimentos são gravados juntos no fim, em um único lote de inserts
+        List<MovimentoEstoque> movimentos = new ArrayList<>();
 
         // Tentar reduzir do estoque existente primeiro
         int quantidadeRestante = quantidade;
 
-        for (Poste poste : postesRelacionados) {
+        for (Estoque estoque : estoquesRelacionados) {
             if (quantidadeRestante <= 0) break;
 
-            Optional<Estoque> estoqueOpt = estoqueRepository.findByPosteId(poste.getId());
-            if (estoqueOpt.isPresent()) {
-                Estoque estoque = estoqueOpt.get();
-                int quantidadeDisponivel = estoque.getQuantidadeAtual();
-
-                if (quantidadeDisponivel > 0) {
-                    int quantidadeAReduzir = Math.min(quantidadeRestante, quantidadeDisponivel);
-                    Integer quantidadeAnterior = estoque.getQuantidadeAtual();
-
-                    estoque.removerQuantidade(quantidadeAReduzir);
-                    estoqueRepository.save(estoque);
-
-                    // Registrar movimento
-                    MovimentoEstoque movimento = new MovimentoEstoque(
-                            poste,
-                            MovimentoEstoque.TipoMovimento.SAIDA,
-                            quantidadeAReduzir,
-                            dataEstoque,
-                            quantidadeAnterior,
-                            estoque.getQuantidadeAtual(),
-                            observacao
-                    );
-                    movimentoEstoqueRepository.save(movimento);
-
-                    quantidadeRestante -= quantidadeAReduzir;
-
-                    log.info("📉 Reduzido {} unidades do poste {} (restam {} no estoque)",
-                            quantidadeAReduzir, poste.getCodigo(), estoque.getQuantidadeAtual());
-                }
+            Poste poste = estoque.getPoste();
+            int quantidadeAReduzir = subtrairDisponivel(estoque, quantidadeRestante);
+
+            if (quantidadeAReduzir > 0) {
+                entityManager.refresh(estoque);
+                Integer quantidadeAnterior = estoque.getQuantidadeAtual() + quantidadeAReduzir;
+                estoqueConsolidadoService.aplicarDelta(poste, -quantidadeAReduzir);
+
+                // Registrar movimento
+                MovimentoEstoque movimento = new MovimentoEstoque(
+                        poste,
+                        MovimentoEstoque.TipoMovimento.SAIDA,
+                        quantidadeAReduzir,
+                        dataEstoque,
+                        quantidadeAnterior,
+                        estoque.getQuantidadeAtual(),
+                        observacao
+                );
+                movimentos.add(movimento);
+
+                quantidadeRestante -= quantidadeAReduzir;
+
+                log.info("📉 Reduzido {} unidades do poste {} (restam {} no estoque)",
+                        quantidadeAReduzir, poste.getCodigo(), estoque.getQuantidadeAtual());
             }
         }
 
@@ -306,14 +402,15 @@ public class EstoqueService {
 
             if (estoqueOriginalOpt.isPresent()) {
                 estoqueOriginal = estoqueOriginalOpt.get();
-                quantidadeAnterior = estoqueOriginal.getQuantidadeAtual();
-                estoqueOriginal.removerQuantidade(quantidadeRestante);
+                estoqueRepository.somarQuantidade(estoqueOriginal.getId(), -quantidadeRestante, LocalDateTime.now());
+                entityManager.refresh(estoqueOriginal);
+                quantidadeAnterior = estoqueOriginal.getQuantidadeAtual() + quantidadeRestante;
             } else {
                 quantidadeAnterior = 0;
-                estoqueOriginal = new Estoque(posteOriginal, -quantidadeRestante);
+                estoqueOriginal = estoqueRepository.save(new Estoque(posteOriginal, -quantidadeRestante));
             }
 
-            estoqueRepository.save(estoqueOriginal);
+            estoqueConsolidadoService.aplicarDelta(posteOriginal, -quantidadeRestante);
 
             // Registrar movimento negativo
             MovimentoEstoque movimento = new MovimentoEstoque(
@@ -325,11 +422,145 @@ public class EstoqueService {
                     estoqueOriginal.getQuantidadeAtual(),
                     observacao + " (estoque negativo)"
             );
-            movimentoEstoqueRepository.save(movimento);
+            movimentos.add(movimento);
 
             log.warn("⚠️ Estoque negativo criado para {} - faltaram {} unidades",
                     posteOriginal.getCodigo(), quantidadeRestante);
         }
+
+        movimentoEstoqueService.registrar(movimentos);
+    }
+
+    /**
+     * Reduz o estoque de várias saídas em uma única transação, com a mesma regra de
+     * reduzirEstoqueComData: consome os postes relacionados pelo código base na ordem
+     * de cadastro e o que faltar vira estoque negativo no poste original.
+     * Os saldos são lidos depois de bloquear os códigos base e alterados em memória,
+     * e estoques novos e movimentos são gravados em lote.
+     */
+    @Transactional
+    public void reduzirEstoqueEmLote(List<SaidaEstoqueLoteDTO> saidas) {
+        if (saidas.isEmpty()) {
+            return;
+        }
+
+        Set<Long> posteIds = saidas.stream().map(SaidaEstoqueLoteDTO::getPosteId).collect(Collectors.toSet());
+        Map<Long, Poste> postePorId = posteRepository.findAllById(posteIds).stream()
+                .collect(Collectors.toMap(Poste::getId, p -> p));
+
+        // Todos os códigos do lote antes da primeira saída, na ordem dos locks
+        Set<String> codigosBase = postePorId.values().stream().map(Poste::getCodigoBase).collect(Collectors.toSet());
+        estoqueLockManager.bloquearAteFimDaTransacao(codigosBase);
+
+        if (estoqueMemoriaService.isHabilitado()) {
+            for (SaidaEstoqueLoteDTO saida : saidas) {
+                Poste posteOriginal = postePorId.get(saida.getPosteId());
+                if (posteOriginal == null) {
+                    throw new RuntimeException("Poste não encontrado: " + saida.getPosteId());
+                }
+                estoqueMemoriaService.saida(posteOriginal, saida.getQuantidade(),
+                        saida.getDataEstoque(), saida.getObservacao());
+            }
+            return;
+        }
+
+        // Estoques dos postes relacionados, na mesma ordem usada por reduzirEstoqueComData
+        Map<String, List<Estoque>> estoquesPorCodigoBase = new HashMap<>();
+        Map<Long, Estoque> estoquePorPoste = new HashMap<>();
+        for (Estoque estoque : estoqueRepository.findByCodigoBaseIn(codigosBase)) {
+            estoquesPorCodigoBase.computeIfAbsent(estoque.getPoste().getCodigoBase(), k -> new ArrayList<>()).add(estoque);
+            estoquePorPoste.putIfAbsent(estoque.getPoste().getId(), estoque);
+        }
+
+        // Postes inativos não entram na busca por código base, mas ainda podem receber o saldo negativo
+        Set<Long> semEstoqueCarregado = posteIds.stream()
+                .filter(id -> !estoquePorPoste.containsKey(id))
+                .collect(Collectors.toSet());
+        if (!semEstoqueCarregado.isEmpty()) {
+            estoqueRepository.findByPosteIdIn(semEstoqueCarregado)
+                    .forEach(e -> estoquePorPoste.putIfAbsent(e.getPoste().getId(), e));
+        }
+
+        List<Estoque> estoquesNovos = new ArrayList<>();
+        List<MovimentoEstoque> movimentos = new ArrayList<>();
+        Map<Long, Integer> deltaPorPoste = new LinkedHashMap<>();
+
+        for (SaidaEstoqueLoteDTO saida : saidas) {
+            Poste posteOriginal = postePorId.get(saida.getPosteId());
+            if (posteOriginal == null) {
+                throw new RuntimeException("Poste não encontrado: " + saida.getPosteId());
+            }
+
+            int quantidadeRestante = saida.getQuantidade();
+
+            for (Estoque estoque : estoquesPorCodigoBase.getOrDefault(posteOriginal.getCodigoBase(), List.of())) {
+                if (quantidadeRestante <= 0) break;
+                if (estoque.getQuantidadeAtual() <= 0) continue;
+
+                int quantidadeAReduzir = Math.min(quantidadeRestante, estoque.getQuantidadeAtual());
+                int quantidadeAnterior = estoque.getQuantidadeAtual();
+                estoque.removerQuantidade(quantidadeAReduzir);
+
+                movimentos.add(new MovimentoEstoque(estoque.getPoste(), MovimentoEstoque.TipoMovimento.SAIDA,
+                        quantidadeAReduzir, saida.getDataEstoque(), quantidadeAnterior,
+                        estoque.getQuantidadeAtual(), saida.getObservacao()));
+                deltaPorPoste.merge(estoque.getPoste().getId(), -quantidadeAReduzir, Integer::sum);
+                quantidadeRestante -= quantidadeAReduzir;
+            }
+
+            if (quantidadeRestante > 0) {
+                Estoque estoqueOriginal = estoquePorPoste.get(posteOriginal.getId());
+                if (estoqueOriginal == null) {
+                    estoqueOriginal = new Estoque(posteOriginal, 0);
+                    estoquePorPoste.put(posteOriginal.getId(), estoqueOriginal);
+                    estoquesNovos.add(estoqueOriginal);
+                    if (Boolean.TRUE.equals(posteOriginal.getAtivo())) {
+                        estoquesPorCodigoBase.computeIfAbsent(posteOriginal.getCodigoBase(), k -> new ArrayList<>())
+                                .add(estoqueOriginal);
+                    }
+                }
+
+                int quantidadeAnterior = estoqueOriginal.getQuantidadeAtual();
+                estoqueOriginal.removerQuantidade(quantidadeRestante);
+
+                movimentos.add(new MovimentoEstoque(posteOriginal, MovimentoEstoque.TipoMovimento.SAIDA,
+                        quantidadeRestante, saida.getDataEstoque(), quantidadeAnterior,
+                        estoqueOriginal.getQuantidadeAtual(), saida.getObservacao() + " (estoque negativo)"));
+                deltaPorPoste.merge(posteOriginal.getId(), -quantidadeRestante, Integer::sum);
+            }
+        }
+
+        estoqueRepository.saveAll(estoquesNovos);
+        movimentoEstoqueService.registrar(movimentos);
+
+        // A primeira atualização do consolidado descarrega inserts e updates acima em lote
+        Map<Long, Poste> postesAlterados = new HashMap<>(postePorId);
+        estoquePorPoste.values().forEach(e -> postesAlterados.putIfAbsent(e.getPoste().getId(), e.getPoste()));
+        estoqueConsolidadoService.aplicarDeltas(deltaPorPoste, postesAlterados);
+
+        log.info("📉 Saídas em lote: {} saídas, {} movimentos", saidas.size(), movimentos.size());
+    }
+
+    /**
+     * Subtrai do estoque o que estiver disponível, até a quantidade pedida, com UPDATE condicional.
+     * Se outra transação consumir o saldo entre a leitura e a atualização, relê o saldo e tenta de novo.
+     * Retorna quanto foi efetivamente subtraído (0 se não havia saldo).
+     */
+    private int subtrairDisponivel(Estoque estoque, int quantidadePedida) {
+        int quantidadeDisponivel = estoque.getQuantidadeAtual();
+
+        while (quantidadeDisponivel > 0) {
+            int quantidadeAReduzir = Math.min(quantidadePedida, quantidadeDisponivel);
+
+            if (estoqueRepository.subtrairSeDisponivel(estoque.getId(), quantidadeAReduzir, LocalDateTime.now()) == 1) {
+                return quantidadeAReduzir;
+            }
+
+            Integer quantidadeAtual = estoqueRepository.findQuantidadeAtualById(estoque.getId());
+            quantidadeDisponivel = quantidadeAtual != null ? quantidadeAtual : 0;
+        }
+
+        return 0;
     }
 
     /**
@@ -340,10 +571,11 @@ public class EstoqueService {
         reduzirEstoqueComData(posteId, quantidade, LocalDate.now(), "Saída de estoque");
     }
 
+    @Transactional(readOnly = true)
     public List<EstoqueDTO> listarEstoquesComQuantidade() {
         String tenantId = TenantContext.getCurrentTenantValue();
-        List<Estoque> estoques = estoqueRepository.findEstoquesComQuantidadePorTenant(tenantId);
-        return estoques.stream().map(this::convertToDTO).collect(Collectors.toList());
+        return estoqueListagemCache.obter(EstoqueListagemCache.Listagem.COM_QUANTIDADE, tenantId,
+                () -> estoqueRepository.listarDTOsComQuantidade(tenantId));
     }
 
     private EstoqueDTO convertToDTO(Estoque estoque) {
@@ -360,42 +592,4 @@ public class EstoqueService {
         dto.setEstoqueAbaixoMinimo(estoque.getQuantidadeAtual() <= estoque.getQuantidadeMinima());
         return dto;
     }
-
-    private EstoqueDTO converterConsolidadoParaDTO(EstoqueConsolidado consolidado) {
-        EstoqueDTO dto = new EstoqueDTO();
-        dto.setCodigoPoste(consolidado.codigoPoste);
-        dto.setDescricaoPoste(consolidado.descricaoPoste);
-        dto.setPrecoPoste(consolidado.precoPoste);
-        dto.setQuantidadeAtual(consolidado.quantidadeTotal);
-        dto.setDataAtualizacao(consolidado.dataUltimaAtualizacao);
-        dto.setPosteAtivo(true);
-        dto.setEstoqueAbaixoMinimo(consolidado.quantidadeTotal <= 5);
-        return dto;
-    }
-
-    private EstoqueDTO criarEstoqueDTOZerado(Poste poste) {
-        EstoqueDTO dto = new EstoqueDTO();
-        dto.setPosteId(poste.getId());
-        dto.setCodigoPoste(poste.getCodigo());
-        dto.setDescricaoPoste(poste.getDescricao());
-        dto.setPrecoPoste(poste.getPreco());
-        dto.setPosteAtivo(poste.getAtivo());
-        dto.setQuantidadeAtual(0);
-        dto.setQuantidadeMinima(0);
-        dto.setEstoqueAbaixoMinimo(false);
-        return dto;
-    }
-
-    /**
-     * Classe auxiliar para consolidação de estoque
-     */
-    private static class EstoqueConsolidado {
-        String codigoPoste;
-        String descricaoPoste;
-        java.math.BigDecimal precoPoste;
-        int quantidadeTotal = 0;
-        int quantidadeVermelho = 0;
-        int quantidadeBranco = 0;
-        java.time.LocalDateTime dataUltimaAtualizacao;
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,67 @@
+package com.vendas.postes.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Escreve consultas grandes como um array JSON à medida que as linhas chegam do banco.
+ * Cada entidade é convertida, escrita e descartada do contexto de persistência, então
+ * a memória usada não depende do tamanho do período exportado.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExportacaoJsonService {
+
+    private static final int ITENS_POR_FLUSH = 500;
+
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Executa a consulta em uma transação somente leitura (necessária para o cursor do banco)
+     * e escreve cada item convertido na saída. Retorna quantos itens foram escritos.
+     */
+    @Transactional(readOnly = true)
+    public <E> long escrever(Supplier<Stream<E>> consulta, Function<E, ?> conversor, OutputStream saida)
+            throws IOException {
+        long itens = 0;
+
+        try (Stream<E> linhas = consulta.get();
+             JsonGenerator json = objectMapper.getFactory().createGenerator(saida)) {
+            json.writeStartArray();
+
+            Iterator<E> iterator = linhas.iterator();
+            while (iterator.hasNext()) {
+                E entidade = iterator.next();
+                Object convertido = conversor.apply(entidade);
+                objectMapper.writeValue(json, convertido);
+                // Consultas que já devolvem DTOs não deixam nada no contexto de persistência
+                if (convertido != entidade) {
+                    entityManager.detach(entidade);
+                }
+
+                if (++itens % ITENS_POR_FLUSH == 0) {
+                    json.flush();
+                }
+            }
+
+            json.writeEndArray();
+        }
+
+        log.info("📤 Exportação concluída: {} itens", itens);
+        return itens;
+    }
+}
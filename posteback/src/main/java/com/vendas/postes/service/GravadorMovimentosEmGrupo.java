@@ -0,0 +1,253 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.repository.MovimentoEstoqueRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Grava movimentos de estoque avulsos em grupo (group commit): os pedidos que chegam juntos
+ * são reunidos por alguns milissegundos, ou até o lote máximo de linhas, e gravados em um único
+ * insert em lote e um único commit. Quem chama só volta depois do commit do seu lote.
+ *
+ * Serve para movimentos que não fazem parte de outra alteração. Os movimentos de vendas e de
+ * entradas e saídas de estoque continuam na transação da operação, para serem desfeitos com ela.
+ */
+@Component
+@Slf4j
+public class GravadorMovimentosEmGrupo {
+
+    private static final long[] LIMITES_LATENCIA_MS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000};
+    private static final long[] LIMITES_TAMANHO_LOTE = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512};
+
+    private final MovimentoEstoqueRepository movimentoEstoqueRepository;
+    private final EstoqueCheckpointService estoqueCheckpointService;
+    private final IndiceSaldoDiario indiceSaldoDiario;
+    private final TransactionTemplate transactionTemplate;
+    private final long janelaNanos;
+    private final int loteMaximo;
+
+    private final BlockingQueue<Pedido> fila = new LinkedBlockingQueue<>();
+    private volatile Thread gravacao;
+    private volatile boolean encerrando;
+
+    private final Histograma latencia = new Histograma(LIMITES_LATENCIA_MS);
+    private final Histograma tamanhoLote = new Histograma(LIMITES_TAMANHO_LOTE);
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+
+    public GravadorMovimentosEmGrupo(MovimentoEstoqueRepository movimentoEstoqueRepository,
+                                     EstoqueCheckpointService estoqueCheckpointService,
+                                     IndiceSaldoDiario indiceSaldoDiario,
+                                     TransactionTemplate transactionTemplate,
+                                     @Value("${movimentos.grupo.janela-ms:2}") long janelaMs,
+                                     @Value("${movimentos.grupo.lote-maximo:200}") int loteMaximo) {
+        this.movimentoEstoqueRepository = movimentoEstoqueRepository;
+        this.estoqueCheckpointService = estoqueCheckpointService;
+        this.indiceSaldoDiario = indiceSaldoDiario;
+        this.transactionTemplate = transactionTemplate;
+        this.janelaNanos = TimeUnit.MILLISECONDS.toNanos(janelaMs);
+        this.loteMaximo = loteMaximo;
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        gravacao = new Thread(this::gravarContinuamente, "movimentos-grupo");
+        gravacao.setDaemon(true);
+        gravacao.start();
+    }
+
+    /**
+     * Grava os movimentos no próximo lote e espera o commit. Não pode ser chamado dentro de uma
+     * transação: o movimento seria commitado mesmo que ela fosse desfeita.
+     */
+    public List<MovimentoEstoque> gravar(List<MovimentoEstoque> movimentos) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Gravação em grupo não pode participar de outra transação");
+        }
+        if (encerrando) {
+            throw new IllegalStateException("Gravação de movimentos encerrada");
+        }
+
+        Pedido pedido = new Pedido(movimentos);
+        fila.add(pedido);
+        try {
+            return pedido.resultado.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrompido aguardando gravação dos movimentos", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Erro ao gravar movimentos", e.getCause());
+        }
+    }
+
+    public Map<String, Object> obterMetricas() {
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("janelaMs", TimeUnit.NANOSECONDS.toMillis(janelaNanos));
+        metricas.put("loteMaximo", loteMaximo);
+        metricas.put("commits", commits.sum());
+        metricas.put("falhas", falhas.sum());
+        metricas.put("pedidosNaFila", fila.size());
+        metricas.put("latenciaMs", latencia.resumo("ms"));
+        metricas.put("linhasPorLote", tamanhoLote.resumo(""));
+        return metricas;
+    }
+
+    @PreDestroy
+    public void encerrar() throws InterruptedException {
+        encerrando = true;
+        Thread thread = gravacao;
+        if (thread != null) {
+            // A thread termina de gravar o que já está na fila antes de sair
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+            thread.interrupt();
+        }
+    }
+
+    private void gravarContinuamente() {
+        while (!encerrando || !fila.isEmpty()) {
+            try {
+                Pedido primeiro = fila.poll(100, TimeUnit.MILLISECONDS);
+                if (primeiro == null) {
+                    continue;
+                }
+
+                List<Pedido> lote = new ArrayList<>();
+                lote.add(primeiro);
+                int linhas = primeiro.movimentos.size();
+
+                // Espera a janela a partir do primeiro pedido, ou até completar o lote
+                long limite = System.nanoTime() + janelaNanos;
+                while (linhas < loteMaximo) {
+                    long restante = limite - System.nanoTime();
+                    Pedido proximo = restante > 0 ? fila.poll(restante, TimeUnit.NANOSECONDS) : fila.poll();
+                    if (proximo == null) {
+                        break;
+                    }
+                    lote.add(proximo);
+                    linhas += proximo.movimentos.size();
+                }
+
+                gravarLote(lote, linhas);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        Pedido restante;
+        while ((restante = fila.poll()) != null) {
+            restante.resultado.completeExceptionally(new IllegalStateException("Gravação de movimentos encerrada"));
+        }
+    }
+
+    private void gravarLote(List<Pedido> lote, int linhas) {
+        List<MovimentoEstoque> salvos;
+        try {
+            salvos = transactionTemplate.execute(status -> {
+                List<MovimentoEstoque> movimentos = new ArrayList<>(linhas);
+                lote.forEach(pedido -> movimentos.addAll(pedido.movimentos));
+                List<MovimentoEstoque> gravados = movimentoEstoqueRepository.saveAll(movimentos);
+                estoqueCheckpointService.registrarMovimentos(gravados);
+                indiceSaldoDiario.registrarAposCommit(gravados);
+                return gravados;
+            });
+        } catch (RuntimeException e) {
+            if (lote.size() > 1) {
+                // Um pedido inválido não derruba os outros: cada um é gravado sozinho. O saveAll
+                // desfeito deixou ids da sequência nas entidades; sem eles são inseridas como novas
+                log.warn("⚠️ Lote de {} movimentos falhou, gravando pedido a pedido: {}", linhas, e.getMessage());
+                lote.forEach(pedido -> pedido.movimentos.forEach(movimento -> movimento.setId(null)));
+                lote.forEach(pedido -> gravarLote(List.of(pedido), pedido.movimentos.size()));
+            } else {
+                falhas.increment();
+                lote.get(0).resultado.completeExceptionally(e);
+            }
+            return;
+        }
+
+        commits.increment();
+        tamanhoLote.registrar(linhas);
+        long agora = System.nanoTime();
+        int inicio = 0;
+        for (Pedido pedido : lote) {
+            latencia.registrar(TimeUnit.NANOSECONDS.toMillis(agora - pedido.inicioNanos));
+            // O saveAll devolve os movimentos gravados na ordem em que foram enviados
+            int fim = inicio + pedido.movimentos.size();
+            pedido.resultado.complete(new ArrayList<>(salvos.subList(inicio, fim)));
+            inicio = fim;
+        }
+    }
+
+    private static class Pedido {
+        final List<MovimentoEstoque> movimentos;
+        final long inicioNanos = System.nanoTime();
+        final CompletableFuture<List<MovimentoEstoque>> resultado = new CompletableFuture<>();
+
+        Pedido(List<MovimentoEstoque> movimentos) {
+            this.movimentos = movimentos;
+        }
+    }
+
+    /**
+     * Contagem por faixas fixas (limite superior inclusivo), com total, soma e máximo
+     */
+    private static class Histograma {
+        private final long[] limites;
+        private final LongAdder[] faixas;
+        private final LongAdder total = new LongAdder();
+        private final LongAdder soma = new LongAdder();
+        private final AtomicLong maximo = new AtomicLong();
+
+        Histograma(long[] limites) {
+            this.limites = limites;
+            this.faixas = new LongAdder[limites.length + 1];
+            for (int i = 0; i < faixas.length; i++) {
+                faixas[i] = new LongAdder();
+            }
+        }
+
+        void registrar(long valor) {
+            int faixa = 0;
+            while (faixa < limites.length && valor > limites[faixa]) {
+                faixa++;
+            }
+            faixas[faixa].increment();
+            total.increment();
+            soma.add(valor);
+            maximo.accumulateAndGet(valor, Math::max);
+        }
+
+        Map<String, Object> resumo(String unidade) {
+            long quantidade = total.sum();
+            Map<String, Object> resumo = new LinkedHashMap<>();
+            resumo.put("total", quantidade);
+            resumo.put("media", quantidade > 0 ? soma.sum() / (double) quantidade : 0.0);
+            resumo.put("maximo", maximo.get());
+
+            Map<String, Long> distribuicao = new LinkedHashMap<>();
+            for (int i = 0; i < limites.length; i++) {
+                distribuicao.put("ate" + limites[i] + unidade, faixas[i].sum());
+            }
+            distribuicao.put("acima" + limites[limites.length - 1] + unidade, faixas[limites.length].sum());
+            resumo.put("faixas", distribuicao);
+            return resumo;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.dto.EstoqueNaDataDTO;
+import com.vendas.postes.dto.VariacaoEstoqueDTO;
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.MovimentoEstoqueRepository;
+import com.vendas.postes.repository.MovimentoResumoDiarioRepository;
+import com.vendas.postes.repository.PosteRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Índice em memória do saldo de estoque por dia (opcional, movimentos.indice.habilitado).
+ *
+ * Cada poste tem uma ArvoreFenwickDiaria com a variação do saldo por data de movimento,
+ * montada na subida a partir dos movimentos do banco e dos resumos diários arquivados, e
+ * atualizada no commit de cada movimento novo. Estoque em uma data e variação entre duas
+ * datas de todos os postes saem em O(postes × log dias), sem consultar o banco.
+ *
+ * Memória: cerca de 4 bytes por dia entre o primeiro e o último movimento do poste, arredondado
+ * para a potência de 2 acima, mais uns 150 bytes do registro (3 anos de movimentos ≈ 8 KB por poste).
+ */
+@Component
+@Slf4j
+public class IndiceSaldoDiario {
+
+    private final PosteRepository posteRepository;
+    private final MovimentoEstoqueRepository movimentoEstoqueRepository;
+    private final MovimentoResumoDiarioRepository movimentoResumoDiarioRepository;
+    private final boolean habilitado;
+
+    private final Map<Long, SaldoPoste> postes = new ConcurrentHashMap<>();
+    private volatile boolean carregado;
+
+    public IndiceSaldoDiario(PosteRepository posteRepository,
+                             MovimentoEstoqueRepository movimentoEstoqueRepository,
+                             MovimentoResumoDiarioRepository movimentoResumoDiarioRepository,
+                             @Value("${movimentos.indice.habilitado:false}") boolean habilitado) {
+        this.posteRepository = posteRepository;
+        this.movimentoEstoqueRepository = movimentoEstoqueRepository;
+        this.movimentoResumoDiarioRepository = movimentoResumoDiarioRepository;
+        this.habilitado = habilitado;
+    }
+
+    /**
+     * true depois da carga da subida; até lá as consultas continuam no banco
+     */
+    public boolean isCarregado() {
+        return carregado;
+    }
+
+    /**
+     * Monta as árvores de todos os postes. Chamado uma vez na subida, antes das requisições.
+     */
+    public synchronized void carregar() {
+        if (!habilitado || carregado) {
+            return;
+        }
+
+        posteRepository.findAll().forEach(this::atualizar);
+        int dias = somarDias(movimentoEstoqueRepository.somarVariacaoPorPosteEDia())
+                + somarDias(movimentoResumoDiarioRepository.somarVariacaoPorPosteEDia());
+        carregado = true;
+
+        log.info("📈 Índice de saldo diário carregado: {} postes, {} dias com movimento, {} KB",
+                postes.size(), dias, bytes() / 1024);
+    }
+
+    /**
+     * Acompanha o cadastro de postes (código, descrição e status usados nas listagens)
+     */
+    public void atualizarPoste(Poste poste) {
+        if (carregado) {
+            atualizar(poste);
+        }
+    }
+
+    /**
+     * Soma os movimentos ao índice depois do commit da transação atual, ou já, fora de transação
+     */
+    public void registrarAposCommit(Collection<MovimentoEstoque> movimentos) {
+        if (!carregado) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            registrar(movimentos);
+            return;
+        }
+
+        List<MovimentoEstoque> copia = List.copyOf(movimentos);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                registrar(copia);
+            }
+        });
+    }
+
+    /**
+     * Estoque do poste no fim do dia informado
+     */
+    public int saldoNaData(Long posteId, String tenantId, LocalDate data) {
+        SaldoPoste saldo = postes.get(posteId);
+        return saldo != null && saldo.tenantId.equals(tenantId) ? (int) saldo.somaAte(data.toEpochDay()) : 0;
+    }
+
+    /**
+     * Estoque no fim do dia de todos os postes ativos do tenant, em ordem de código
+     */
+    public List<EstoqueNaDataDTO> estoqueNaDataTodosPostes(String tenantId, LocalDate data) {
+        long dia = data.toEpochDay();
+        return postesAtivos(tenantId).stream()
+                .map(saldo -> new EstoqueNaDataDTO(saldo.posteId, saldo.codigo, saldo.descricao, data,
+                        (int) saldo.somaAte(dia)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Variação do estoque de todos os postes ativos do tenant entre o início e o fim, inclusive
+     */
+    public List<VariacaoEstoqueDTO> variacaoEntreDatasTodosPostes(String tenantId, LocalDate inicio, LocalDate fim) {
+        long depoisDe = inicio.toEpochDay() - 1;
+        long ate = fim.toEpochDay();
+        return postesAtivos(tenantId).stream()
+                .map(saldo -> new VariacaoEstoqueDTO(saldo.posteId, saldo.codigo, saldo.descricao, inicio, fim,
+                        (int) saldo.somaEntre(depoisDe, ate)))
+                .collect(Collectors.toList());
+    }
+
+    public Map<String, Object> obterMetricas() {
+        long bytes = bytes();
+        long diasCobertos = postes.values().stream().mapToLong(SaldoPoste::capacidade).sum();
+
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("habilitado", habilitado);
+        metricas.put("carregado", carregado);
+        metricas.put("postes", postes.size());
+        metricas.put("diasCobertos", diasCobertos);
+        metricas.put("bytes", bytes);
+        metricas.put("bytesPorPoste", postes.isEmpty() ? 0 : bytes / postes.size());
+        return metricas;
+    }
+
+    private void atualizar(Poste poste) {
+        SaldoPoste saldo = postes.computeIfAbsent(poste.getId(), id -> new SaldoPoste(id, poste.getTenantId()));
+        saldo.codigo = poste.getCodigo();
+        saldo.descricao = poste.getDescricao();
+        saldo.ativo = Boolean.TRUE.equals(poste.getAtivo());
+    }
+
+    private void registrar(Collection<MovimentoEstoque> movimentos) {
+        for (MovimentoEstoque movimento : movimentos) {
+            int variacao = EstoqueCheckpointService.variacaoDoSaldo(movimento);
+            if (variacao == 0) {
+                continue;
+            }
+
+            Poste poste = movimento.getPoste();
+            // Poste cadastrado por fora do PosteController: os dados só são lidos se já estiverem carregados
+            if (!postes.containsKey(poste.getId()) && Hibernate.isInitialized(poste)) {
+                atualizar(poste);
+            }
+            SaldoPoste saldo = postes.computeIfAbsent(poste.getId(), id -> new SaldoPoste(id, movimento.getTenantId()));
+            if (saldo.tenantId.equals(movimento.getTenantId())) {
+                saldo.somar(movimento.getDataMovimento().toEpochDay(), variacao);
+            }
+        }
+    }
+
+    private int somarDias(List<Object[]> linhas) {
+        for (Object[] linha : linhas) {
+            SaldoPoste saldo = postes.get((Long) linha[0]);
+            // Movimentos com o tenant diferente do poste ficam de fora, como nas consultas do banco
+            if (saldo != null && saldo.tenantId.equals(linha[1])) {
+                saldo.somar(((LocalDate) linha[2]).toEpochDay(), ((Number) linha[3]).intValue());
+            }
+        }
+        return linhas.size();
+    }
+
+    private List<SaldoPoste> postesAtivos(String tenantId) {
+        return postes.values().stream()
+                .filter(saldo -> saldo.ativo && saldo.codigo != null && saldo.tenantId.equals(tenantId))
+                .sorted(Comparator.comparing(saldo -> saldo.codigo))
+                .collect(Collectors.toList());
+    }
+
+    private long bytes() {
+        return postes.values().stream().mapToLong(SaldoPoste::bytes).sum();
+    }
+
+    /**
+     * Árvore de um poste com os dados usados nas listagens; o acesso à árvore é sincronizado no registro
+     */
+    private static class SaldoPoste {
+        // Registro, chave e entrada do mapa, textos e a árvore ainda vazia
+        private static final long BYTES_REGISTRO = 150;
+
+        final Long posteId;
+        final String tenantId;
+        volatile String codigo;
+        volatile String descricao;
+        volatile boolean ativo;
+        private final ArvoreFenwickDiaria arvore = new ArvoreFenwickDiaria();
+
+        SaldoPoste(Long posteId, String tenantId) {
+            this.posteId = posteId;
+            this.tenantId = tenantId != null ? tenantId : "vermelho";
+        }
+
+        synchronized void somar(long dia, int variacao) {
+            arvore.somar(dia, variacao);
+        }
+
+        synchronized long somaAte(long dia) {
+            return arvore.somaAte(dia);
+        }
+
+        synchronized long somaEntre(long depoisDe, long ate) {
+            return arvore.somaEntre(depoisDe, ate);
+        }
+
+        synchronized long capacidade() {
+            return arvore.capacidade();
+        }
+
+        synchronized long bytes() {
+            return BYTES_REGISTRO + arvore.bytes();
+        }
+    }
+}
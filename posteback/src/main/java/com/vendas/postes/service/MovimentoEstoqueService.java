@@ -1,19 +1,29 @@
 package com.vendas.postes.service;
 
 import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.EstoqueNaDataDTO;
 import com.vendas.postes.dto.MovimentoEstoqueDTO;
+import com.vendas.postes.dto.PaginaDTO;
+import com.vendas.postes.dto.VariacaoEstoqueDTO;
 import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.model.EstoqueCheckpoint;
 import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.EstoqueCheckpointRepository;
 import com.vendas.postes.repository.MovimentoEstoqueRepository;
+import com.vendas.postes.repository.MovimentoResumoDiarioRepository;
 import com.vendas.postes.repository.PosteRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,94 +33,233 @@ public class MovimentoEstoqueService {
 
     private final MovimentoEstoqueRepository movimentoEstoqueRepository;
     private final PosteRepository posteRepository;
+    private final EstoqueCheckpointRepository estoqueCheckpointRepository;
+    private final EstoqueCheckpointService estoqueCheckpointService;
+    private final ExportacaoJsonService exportacaoJsonService;
+    private final ArquivoMovimentosService arquivoMovimentosService;
+    private final MovimentoResumoDiarioRepository movimentoResumoDiarioRepository;
+    private final GravadorMovimentosEmGrupo gravadorMovimentosEmGrupo;
+    private final IndiceSaldoDiario indiceSaldoDiario;
+
+    // Antes do primeiro checkpoint o saldo parte de zero e soma todos os movimentos
+    private static final LocalDate INICIO_MOVIMENTOS = LocalDate.of(1900, 1, 1);
+
+    private static final int LIMITE_ULTIMOS_MOVIMENTOS = 100;
+    private static final int LIMITE_CONSOLIDADOS = 200;
+    private static final LocalDate FIM_MOVIMENTOS = LocalDate.of(9999, 12, 31);
+
+    private static final Comparator<MovimentoEstoqueDTO> POR_DATA_DECRESCENTE =
+            Comparator.comparing(MovimentoEstoqueDTO::getDataMovimento)
+                    .thenComparing(MovimentoEstoqueDTO::getId).reversed();
+    private static final Comparator<MovimentoEstoqueDTO> POR_REGISTRO_DECRESCENTE =
+            Comparator.comparing(MovimentoEstoqueDTO::getDataRegistro)
+                    .thenComparing(MovimentoEstoqueDTO::getId).reversed();
+
+    /**
+     * Grava um movimento e corrige os checkpoints de estoque se ele for retroativo
+     */
+    @Transactional
+    public MovimentoEstoque registrar(MovimentoEstoque movimento) {
+        return registrar(List.of(movimento)).get(0);
+    }
+
+    /**
+     * Grava os movimentos em lote e corrige os checkpoints de estoque dos retroativos
+     */
+    @Transactional
+    public List<MovimentoEstoque> registrar(List<MovimentoEstoque> movimentos) {
+        List<MovimentoEstoque> salvos = movimentoEstoqueRepository.saveAll(movimentos);
+        estoqueCheckpointService.registrarMovimentos(salvos);
+        indiceSaldoDiario.registrarAposCommit(salvos);
+        return salvos;
+    }
 
     /**
      * Lista últimos movimentos do tenant atual
      */
+    @Transactional(readOnly = true)
     public List<MovimentoEstoqueDTO> listarUltimosMovimentos() {
         String tenantId = TenantContext.getCurrentTenantValue();
+        return movimentoEstoqueRepository.findUltimosMovimentos(tenantId, Limit.of(LIMITE_ULTIMOS_MOVIMENTOS));
+    }
 
-        List<MovimentoEstoque> movimentos = movimentoEstoqueRepository
-                .findByTenantIdOrderByDataRegistroDesc(tenantId)
-                .stream()
-                .limit(100) // Limitar a 100 registros
-                .collect(Collectors.toList());
+    /**
+     * Lista movimentos do tenant em páginas, do mais recente para o mais antigo.
+     * Poste e período são filtros opcionais; sem cursor começa pela primeira página.
+     */
+    @Transactional(readOnly = true)
+    public PaginaDTO<MovimentoEstoqueDTO> listarMovimentosPaginados(Long posteId, LocalDate dataInicio, LocalDate dataFim,
+                                                                    String cursor, Integer limite) {
+        String tenantId = TenantContext.getCurrentTenantValue();
+        int tamanho = PaginaDTO.limiteValido(limite);
+        LocalDate inicio = dataInicio != null ? dataInicio : LocalDate.of(1900, 1, 1);
+
+        LocalDate cursorData;
+        Long cursorId;
+        if (cursor != null) {
+            PaginaDTO.Cursor posicao = PaginaDTO.decodificarCursor(cursor);
+            cursorData = posicao.chaveComoData();
+            cursorId = posicao.getId();
+        } else {
+            // Primeira página: tudo até o fim do período
+            cursorData = dataFim != null ? dataFim : LocalDate.of(9999, 12, 31);
+            cursorId = Long.MAX_VALUE;
+        }
 
-        return movimentos.stream()
-                .map(MovimentoEstoqueDTO::new)
-                .collect(Collectors.toList());
+        List<MovimentoEstoqueDTO> movimentos = posteId != null
+                ? movimentoEstoqueRepository.buscarPaginaDoPoste(posteId, tenantId, inicio, cursorData, cursorId, Limit.of(tamanho + 1))
+                : movimentoEstoqueRepository.buscarPagina(tenantId, inicio, cursorData, cursorId, Limit.of(tamanho + 1));
+        if (arquivoMovimentosService.temArquivos(tenantId, inicio, cursorData)) {
+            movimentos = juntar(movimentos, arquivoMovimentosService.buscarPagina(
+                    tenantId, posteId, inicio, cursorData, cursorId, tamanho + 1), POR_DATA_DECRESCENTE, tamanho + 1);
+        }
+
+        return PaginaDTO.montar(movimentos, tamanho,
+                movimento -> PaginaDTO.codificarCursor(movimento.getDataMovimento(), movimento.getId()));
     }
 
     /**
      * Lista movimentos por período
      */
+    @Transactional(readOnly = true)
     public List<MovimentoEstoqueDTO> listarMovimentosPorPeriodo(LocalDate dataInicio, LocalDate dataFim) {
         String tenantId = TenantContext.getCurrentTenantValue();
 
         LocalDate inicio = dataInicio != null ? dataInicio : LocalDate.now().minusMonths(1);
         LocalDate fim = dataFim != null ? dataFim : LocalDate.now();
 
-        List<MovimentoEstoque> movimentos = movimentoEstoqueRepository
-                .findByTenantIdAndDataMovimentoBetweenOrderByDataRegistroDesc(tenantId, inicio, fim);
+        List<MovimentoEstoqueDTO> movimentos = movimentoEstoqueRepository.listarDTOsNoPeriodo(tenantId, inicio, fim);
+        if (arquivoMovimentosService.temArquivos(tenantId, inicio, fim)) {
+            movimentos = juntar(movimentos, arquivoMovimentosService.buscar(tenantId, null, inicio, fim),
+                    POR_REGISTRO_DECRESCENTE, Integer.MAX_VALUE);
+        }
+        return movimentos;
+    }
 
-        return movimentos.stream()
-                .map(MovimentoEstoqueDTO::new)
-                .collect(Collectors.toList());
+    /**
+     * Escreve os movimentos do tenant no período como array JSON, em ordem cronológica,
+     * sem carregar o período inteiro em memória
+     */
+    public long exportarMovimentos(String tenantId, LocalDate dataInicio, LocalDate dataFim, OutputStream saida)
+            throws IOException {
+        LocalDate inicio = dataInicio != null ? dataInicio : INICIO_MOVIMENTOS;
+        LocalDate fim = dataFim != null ? dataFim : FIM_MOVIMENTOS;
+
+        return exportacaoJsonService.escrever(() -> arquivoMovimentosService.mesclarEmOrdemCronologica(
+                        tenantId, inicio, fim, movimentoEstoqueRepository.streamPorPeriodo(tenantId, inicio, fim)),
+                Function.identity(), saida);
     }
 
     /**
      * Lista movimentos de um poste específico
      */
+    @Transactional(readOnly = true)
     public List<MovimentoEstoqueDTO> listarMovimentosPorPoste(Long posteId) {
         String tenantId = TenantContext.getCurrentTenantValue();
-
-        List<MovimentoEstoque> movimentos = movimentoEstoqueRepository
-                .findByPosteIdAndTenantIdOrderByDataRegistroDesc(posteId, tenantId);
-
-        return movimentos.stream()
-                .map(MovimentoEstoqueDTO::new)
-                .collect(Collectors.toList());
+        List<MovimentoEstoqueDTO> movimentos = movimentoEstoqueRepository.listarDTOsDoPoste(posteId, tenantId);
+        if (arquivoMovimentosService.temArquivos(tenantId, INICIO_MOVIMENTOS, FIM_MOVIMENTOS)) {
+            movimentos = juntar(movimentos, arquivoMovimentosService.buscar(
+                    tenantId, posteId, INICIO_MOVIMENTOS, FIM_MOVIMENTOS), POR_REGISTRO_DECRESCENTE, Integer.MAX_VALUE);
+        }
+        return movimentos;
     }
 
     /**
-     * Calcula estoque em uma data específica
+     * Calcula estoque em uma data específica: pelo índice em memória, se carregado, ou pelo saldo
+     * do checkpoint mais recente até a data mais os movimentos depois dele (do banco e, nos dias
+     * arquivados, dos resumos diários)
      */
     public Integer calcularEstoqueNaData(Long posteId, LocalDate dataReferencia) {
         String tenantId = TenantContext.getCurrentTenantValue();
+        if (indiceSaldoDiario.isCarregado()) {
+            return indiceSaldoDiario.saldoNaData(posteId, tenantId, dataReferencia);
+        }
 
-        List<MovimentoEstoque> movimentos = movimentoEstoqueRepository
-                .findByPosteIdAndTenantIdOrderByDataRegistroDesc(posteId, tenantId);
+        Optional<LocalDate> dataCheckpoint = estoqueCheckpointRepository.findUltimaDataReferenciaAte(dataReferencia);
+        int saldoCheckpoint = dataCheckpoint
+                .flatMap(data -> estoqueCheckpointRepository.findByPosteIdAndTenantIdAndDataReferencia(posteId, tenantId, data))
+                .map(EstoqueCheckpoint::getQuantidade)
+                .orElse(0);
+
+        LocalDate depoisDe = dataCheckpoint.orElse(INICIO_MOVIMENTOS);
+        int saldo = saldoCheckpoint + movimentoEstoqueRepository.calcularSaldoEntreDatas(
+                posteId, tenantId, depoisDe, dataReferencia).intValue();
+        if (arquivoMovimentosService.temArquivos(tenantId, depoisDe.plusDays(1), dataReferencia)) {
+            saldo += movimentoResumoDiarioRepository.calcularSaldoEntreDatas(
+                    posteId, tenantId, depoisDe, dataReferencia).intValue();
+        }
+        return saldo;
+    }
 
-        int quantidadeCalculada = 0;
+    /**
+     * Calcula o estoque em uma data para todos os postes ativos do tenant atual
+     */
+    public List<EstoqueNaDataDTO> calcularEstoqueNaDataTodosPostes(LocalDate dataReferencia) {
+        String tenantId = TenantContext.getCurrentTenantValue();
+        if (indiceSaldoDiario.isCarregado()) {
+            return indiceSaldoDiario.estoqueNaDataTodosPostes(tenantId, dataReferencia);
+        }
 
-        for (MovimentoEstoque movimento : movimentos) {
-            if (movimento.getDataMovimento().isAfter(dataReferencia)) {
-                continue; // Pular movimentos posteriores à data de referência
+        Optional<LocalDate> dataCheckpoint = estoqueCheckpointRepository.findUltimaDataReferenciaAte(dataReferencia);
+        Map<Long, Integer> saldosCheckpoint = dataCheckpoint
+                .map(data -> estoqueCheckpointRepository.findByTenantIdAndDataReferencia(tenantId, data).stream()
+                        .collect(Collectors.toMap(EstoqueCheckpoint::getPosteId, EstoqueCheckpoint::getQuantidade)))
+                .orElse(Collections.emptyMap());
+
+        LocalDate depoisDe = dataCheckpoint.orElse(INICIO_MOVIMENTOS);
+        Map<Long, Integer> saldosArquivados = new HashMap<>();
+        if (arquivoMovimentosService.temArquivos(tenantId, depoisDe.plusDays(1), dataReferencia)) {
+            for (Object[] linha : movimentoResumoDiarioRepository.calcularSaldosEntreDatasPorTenant(
+                    tenantId, depoisDe, dataReferencia)) {
+                saldosArquivados.put((Long) linha[0], ((Number) linha[1]).intValue());
             }
+        }
+
+        return movimentoEstoqueRepository.calcularSaldosEntreDatasPorTenant(tenantId, depoisDe, dataReferencia).stream()
+                .map(linha -> new EstoqueNaDataDTO(
+                        (Long) linha[0],
+                        (String) linha[1],
+                        (String) linha[2],
+                        dataReferencia,
+                        saldosCheckpoint.getOrDefault((Long) linha[0], 0)
+                                + saldosArquivados.getOrDefault((Long) linha[0], 0)
+                                + ((Number) linha[3]).intValue()))
+                .collect(Collectors.toList());
+    }
 
-            switch (movimento.getTipoMovimento()) {
-                case ENTRADA:
-                case AJUSTE:
-                    quantidadeCalculada += movimento.getQuantidade();
-                    break;
-                case SAIDA:
-                case VENDA:
-                    quantidadeCalculada -= movimento.getQuantidade();
-                    break;
-                case TRANSFERENCIA:
-                    // Para transferências, verificar se é entrada ou saída baseado no tenant
-                    // (implementação pode variar conforme regra de negócio)
-                    break;
+    /**
+     * Variação do estoque entre duas datas, inclusive, para todos os postes ativos do tenant atual
+     */
+    public List<VariacaoEstoqueDTO> calcularVariacaoEntreDatasTodosPostes(LocalDate dataInicio, LocalDate dataFim) {
+        String tenantId = TenantContext.getCurrentTenantValue();
+        if (indiceSaldoDiario.isCarregado()) {
+            return indiceSaldoDiario.variacaoEntreDatasTodosPostes(tenantId, dataInicio, dataFim);
+        }
+
+        LocalDate depoisDe = dataInicio.minusDays(1);
+        Map<Long, Integer> variacoesArquivadas = new HashMap<>();
+        if (arquivoMovimentosService.temArquivos(tenantId, dataInicio, dataFim)) {
+            for (Object[] linha : movimentoResumoDiarioRepository.calcularSaldosEntreDatasPorTenant(
+                    tenantId, depoisDe, dataFim)) {
+                variacoesArquivadas.put((Long) linha[0], ((Number) linha[1]).intValue());
             }
         }
 
-        return quantidadeCalculada;
+        return movimentoEstoqueRepository.calcularSaldosEntreDatasPorTenant(tenantId, depoisDe, dataFim).stream()
+                .map(linha -> new VariacaoEstoqueDTO(
+                        (Long) linha[0],
+                        (String) linha[1],
+                        (String) linha[2],
+                        dataInicio,
+                        dataFim,
+                        variacoesArquivadas.getOrDefault((Long) linha[0], 0) + ((Number) linha[3]).intValue()))
+                .collect(Collectors.toList());
     }
 
     /**
-     * Registra movimento manual de estoque
+     * Registra movimento manual de estoque. Sem transação própria: o movimento vai para a
+     * gravação em grupo, junto com os que chegarem ao mesmo tempo, e volta depois do commit.
      */
-    @Transactional
     public MovimentoEstoqueDTO registrarMovimentoManual(Long posteId, String tipoMovimentoStr,
                                                         Integer quantidade, LocalDate dataMovimento, String observacao) {
 
@@ -145,7 +294,7 @@ public class MovimentoEstoqueService {
                 quantidadeAnterior, quantidadeAtual, observacao
         );
 
-        movimento = movimentoEstoqueRepository.save(movimento);
+        gravadorMovimentosEmGrupo.gravar(List.of(movimento));
 
         log.info("✅ Movimento manual registrado: {} {} unidades do poste {}",
                 tipoMovimento, quantidade, poste.getCodigo());
@@ -156,59 +305,23 @@ public class MovimentoEstoqueService {
     /**
      * Gera relatório de movimentos por período
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> gerarRelatorioMovimentos(LocalDate dataInicio, LocalDate dataFim) {
         String tenantId = TenantContext.getCurrentTenantValue();
-
-        List<MovimentoEstoque> movimentos = movimentoEstoqueRepository
-                .findByTenantIdAndDataMovimentoBetweenOrderByDataRegistroDesc(tenantId, dataInicio, dataFim);
+        AcumuladorMovimentos acumulador = acumularMovimentos(tenantId, dataInicio, dataFim);
 
         Map<String, Object> relatorio = new HashMap<>();
 
         // Estatísticas gerais
-        relatorio.put("totalMovimentos", movimentos.size());
+        relatorio.put("totalMovimentos", acumulador.getTotalMovimentos());
         relatorio.put("periodoInicio", dataInicio);
         relatorio.put("periodoFim", dataFim);
         relatorio.put("tenantId", tenantId);
 
-        // Agrupamento por tipo de movimento
-        Map<MovimentoEstoque.TipoMovimento, Long> porTipo = movimentos.stream()
-                .collect(Collectors.groupingBy(
-                        MovimentoEstoque::getTipoMovimento,
-                        Collectors.counting()
-                ));
-        relatorio.put("movimentosPorTipo", porTipo);
-
-        // Agrupamento por data
-        Map<LocalDate, Long> porData = movimentos.stream()
-                .collect(Collectors.groupingBy(
-                        MovimentoEstoque::getDataMovimento,
-                        Collectors.counting()
-                ));
-        relatorio.put("movimentosPorData", porData);
-
-        // Valor total dos movimentos
-        BigDecimal valorTotal = movimentos.stream()
-                .filter(m -> m.getPoste().getPreco() != null)
-                .map(m -> m.getPoste().getPreco().multiply(BigDecimal.valueOf(m.getQuantidade())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        relatorio.put("valorTotalMovimentos", valorTotal);
-
-        // Top 5 postes com mais movimentos
-        Map<String, Long> topPostes = movimentos.stream()
-                .collect(Collectors.groupingBy(
-                        m -> m.getPoste().getCodigo(),
-                        Collectors.counting()
-                ))
-                .entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .limit(5)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
-        relatorio.put("topPostesMovimento", topPostes);
+        relatorio.put("movimentosPorTipo", acumulador.getMovimentosPorTipo());
+        relatorio.put("movimentosPorData", acumulador.getMovimentosPorData());
+        relatorio.put("valorTotalMovimentos", acumulador.getValorTotal());
+        relatorio.put("topPostesMovimento", acumulador.getTopPostes(5));
 
         return relatorio;
     }
@@ -216,75 +329,46 @@ public class MovimentoEstoqueService {
     /**
      * Lista movimentos consolidados (para Jefferson)
      */
+    @Transactional(readOnly = true)
     public List<MovimentoEstoqueDTO> listarMovimentosConsolidados(LocalDate dataInicio, LocalDate dataFim, Integer limite) {
-        List<MovimentoEstoque> movimentos;
+        int quantidade = limite != null ? Math.max(1, limite) : LIMITE_CONSOLIDADOS;
 
         if (dataInicio != null || dataFim != null) {
             LocalDate inicio = dataInicio != null ? dataInicio : LocalDate.now().minusMonths(3);
             LocalDate fim = dataFim != null ? dataFim : LocalDate.now();
 
-            movimentos = movimentoEstoqueRepository.findAllMovimentosConsolidados()
-                    .stream()
-                    .filter(m -> !m.getDataMovimento().isBefore(inicio) && !m.getDataMovimento().isAfter(fim))
-                    .limit(limite != null ? limite : 200)
-                    .collect(Collectors.toList());
-        } else {
-            movimentos = movimentoEstoqueRepository.findAllMovimentosConsolidados()
-                    .stream()
-                    .limit(limite != null ? limite : 200)
-                    .collect(Collectors.toList());
+            List<MovimentoEstoqueDTO> movimentos = movimentoEstoqueRepository.findUltimosMovimentosConsolidadosNoPeriodo(
+                    inicio, fim, Limit.of(quantidade));
+            if (arquivoMovimentosService.temArquivos(null, inicio, fim)) {
+                movimentos = juntar(movimentos, arquivoMovimentosService.buscarUltimosRegistrados(inicio, fim, quantidade),
+                        POR_REGISTRO_DECRESCENTE, quantidade);
+            }
+            return movimentos;
         }
 
-        return movimentos.stream()
-                .map(MovimentoEstoqueDTO::new)
-                .collect(Collectors.toList());
+        // Sem período são os registrados por último, que nunca estão em um ano arquivado
+        return movimentoEstoqueRepository.findUltimosMovimentosConsolidados(Limit.of(quantidade));
     }
 
     /**
      * Obtém estatísticas de movimentos
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> obterEstatisticasMovimentos(LocalDate dataInicio, LocalDate dataFim) {
         String tenantId = TenantContext.getCurrentTenantValue();
-
-        List<MovimentoEstoque> movimentos = movimentoEstoqueRepository
-                .findByTenantIdAndDataMovimentoBetweenOrderByDataRegistroDesc(tenantId, dataInicio, dataFim);
+        AcumuladorMovimentos acumulador = acumularMovimentos(tenantId, dataInicio, dataFim);
 
         Map<String, Object> estatisticas = new HashMap<>();
 
-        // Contadores básicos
-        long totalEntradas = movimentos.stream()
-                .filter(m -> m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.ENTRADA)
-                .count();
-
-        long totalSaidas = movimentos.stream()
-                .filter(m -> m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.SAIDA)
-                .count();
-
-        long totalVendas = movimentos.stream()
-                .filter(m -> m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.VENDA)
-                .count();
-
-        long totalAjustes = movimentos.stream()
-                .filter(m -> m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.AJUSTE)
-                .count();
-
-        // Quantidades
-        int quantidadeEntradas = movimentos.stream()
-                .filter(m -> m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.ENTRADA)
-                .mapToInt(MovimentoEstoque::getQuantidade)
-                .sum();
-
-        int quantidadeSaidas = movimentos.stream()
-                .filter(m -> m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.SAIDA ||
-                        m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.VENDA)
-                .mapToInt(MovimentoEstoque::getQuantidade)
-                .sum();
-
-        estatisticas.put("totalMovimentos", movimentos.size());
-        estatisticas.put("totalEntradas", totalEntradas);
-        estatisticas.put("totalSaidas", totalSaidas);
-        estatisticas.put("totalVendas", totalVendas);
-        estatisticas.put("totalAjustes", totalAjustes);
+        long quantidadeEntradas = acumulador.getQuantidade(MovimentoEstoque.TipoMovimento.ENTRADA);
+        long quantidadeSaidas = acumulador.getQuantidade(MovimentoEstoque.TipoMovimento.SAIDA)
+                + acumulador.getQuantidade(MovimentoEstoque.TipoMovimento.VENDA);
+
+        estatisticas.put("totalMovimentos", acumulador.getTotalMovimentos());
+        estatisticas.put("totalEntradas", acumulador.getMovimentos(MovimentoEstoque.TipoMovimento.ENTRADA));
+        estatisticas.put("totalSaidas", acumulador.getMovimentos(MovimentoEstoque.TipoMovimento.SAIDA));
+        estatisticas.put("totalVendas", acumulador.getMovimentos(MovimentoEstoque.TipoMovimento.VENDA));
+        estatisticas.put("totalAjustes", acumulador.getMovimentos(MovimentoEstoque.TipoMovimento.AJUSTE));
         estatisticas.put("quantidadeEntradas", quantidadeEntradas);
         estatisticas.put("quantidadeSaidas", quantidadeSaidas);
         estatisticas.put("saldoQuantidade", quantidadeEntradas - quantidadeSaidas);
@@ -293,4 +377,34 @@ public class MovimentoEstoqueService {
 
         return estatisticas;
     }
-}
\ No newline at end of file
+
+    /**
+     * Agrupa os movimentos do período no banco (tipo, data e poste) e acumula os grupos
+     * em uma passada, sem carregar entidades. Os dias arquivados entram pelos resumos diários.
+     */
+    private AcumuladorMovimentos acumularMovimentos(String tenantId, LocalDate dataInicio, LocalDate dataFim) {
+        AcumuladorMovimentos acumulador = AcumuladorMovimentos.deLinhas(
+                movimentoEstoqueRepository.agruparParaRelatorio(tenantId, dataInicio, dataFim));
+        if (arquivoMovimentosService.temArquivos(tenantId, dataInicio, dataFim)) {
+            acumulador.adicionarLinhas(
+                    movimentoResumoDiarioRepository.agruparParaRelatorio(tenantId, dataInicio, dataFim));
+        }
+        return acumulador;
+    }
+
+    /**
+     * Junta os movimentos do banco com os arquivados na ordem da consulta, até o limite
+     */
+    private static List<MovimentoEstoqueDTO> juntar(List<MovimentoEstoqueDTO> doBanco,
+                                                    List<MovimentoEstoqueDTO> arquivados,
+                                                    Comparator<MovimentoEstoqueDTO> ordem, int limite) {
+        if (arquivados.isEmpty()) {
+            return doBanco;
+        }
+        List<MovimentoEstoqueDTO> movimentos = new ArrayList<>(doBanco.size() + arquivados.size());
+        movimentos.addAll(doBanco);
+        movimentos.addAll(arquivados);
+        movimentos.sort(ordem);
+        return movimentos.size() > limite ? new ArrayList<>(movimentos.subList(0, limite)) : movimentos;
+    }
+}
@@ -0,0 +1,140 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.PosteRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Alteração e inativação de postes. O poste, a consolidação do estoque e o custo no resumo
+ * mensal de vendas mudam na mesma transação; as estruturas em memória só depois do commit.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PosteService {
+
+    private final PosteRepository posteRepository;
+    private final EstoqueConsolidadoService estoqueConsolidadoService;
+    private final EstoqueLockManager estoqueLockManager;
+    private final EstoqueListagemCache estoqueListagemCache;
+    private final EstoqueMemoriaService estoqueMemoriaService;
+    private final IndiceSaldoDiario indiceSaldoDiario;
+    private final VendaResumoMensalService vendaResumoMensalService;
+    private final VendasColunares vendasColunares;
+
+    /**
+     * Atualiza os campos não nulos do poste do tenant. Vazio se o poste não existe no tenant.
+     */
+    @Transactional
+    public Optional<Poste> atualizar(Long id, String tenantId, Poste posteAtualizado) {
+        // Os locks das vendas e do estoque dos códigos base antigo e novo, antes de ler o poste:
+        // o que ainda não foi commitado nesses códigos termina antes, e o ajuste do custo no resumo
+        // mensal e o recálculo do consolidado já veem essas alterações
+        Set<String> codigosBase = new HashSet<>();
+        posteRepository.findCodigoBaseById(id).ifPresent(codigosBase::add);
+        if (posteAtualizado.getCodigo() != null) {
+            codigosBase.add(Poste.extrairCodigoBase(posteAtualizado.getCodigo()));
+        }
+        estoqueLockManager.bloquearAteFimDaTransacao(codigosBase);
+
+        Optional<Poste> posteOpt = posteRepository.findByIdAndTenantId(id, tenantId);
+        if (posteOpt.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Poste poste = posteOpt.get();
+        String codigoBaseAnterior = poste.getCodigoBase();
+        Boolean ativoAnterior = poste.getAtivo();
+        BigDecimal precoAnterior = poste.getPreco();
+
+        // Atualizar apenas campos não nulos
+        if (posteAtualizado.getCodigo() != null) {
+            poste.setCodigo(posteAtualizado.getCodigo());
+        }
+        if (posteAtualizado.getDescricao() != null) {
+            poste.setDescricao(posteAtualizado.getDescricao());
+        }
+        if (posteAtualizado.getPreco() != null) {
+            poste.setPreco(posteAtualizado.getPreco());
+        }
+        if (posteAtualizado.getAtivo() != null) {
+            poste.setAtivo(posteAtualizado.getAtivo());
+        }
+
+        Poste savedPoste = posteRepository.save(poste);
+        estoqueListagemCache.posteAlterado(tenantId, codigoBaseAnterior, savedPoste.getCodigoBase());
+
+        // Mudança de código ou de status altera a consolidação dos códigos envolvidos
+        boolean mudouCodigoBase = !savedPoste.getCodigoBase().equals(codigoBaseAnterior);
+        if (mudouCodigoBase || !savedPoste.getAtivo().equals(ativoAnterior)) {
+            estoqueConsolidadoService.recalcularCodigoBase(codigoBaseAnterior);
+            if (mudouCodigoBase) {
+                estoqueConsolidadoService.recalcularCodigoBase(savedPoste.getCodigoBase());
+            }
+        }
+
+        // O custo dos postes no resumo mensal de vendas usa o preço atual
+        vendaResumoMensalService.ajustarCustoPoste(savedPoste.getId(), precoAnterior, savedPoste.getPreco());
+
+        aposCommit(() -> {
+            estoqueMemoriaService.atualizarPoste(savedPoste);
+            indiceSaldoDiario.atualizarPoste(savedPoste);
+            vendasColunares.atualizarPoste(savedPoste);
+        });
+
+        log.info("Poste atualizado com sucesso: ID={}, tenant={}", id, tenantId);
+        return Optional.of(savedPoste);
+    }
+
+    /**
+     * Inativa o poste do tenant e tira o seu estoque da consolidação. False se o poste não existe no tenant.
+     */
+    @Transactional
+    public boolean inativar(Long id, String tenantId) {
+        // O recálculo do consolidado precisa ver as alterações de estoque do código ainda não commitadas
+        posteRepository.findCodigoBaseById(id).ifPresent(estoqueLockManager::bloquearAteFimDaTransacao);
+
+        Optional<Poste> posteOpt = posteRepository.findByIdAndTenantId(id, tenantId);
+        if (posteOpt.isEmpty()) {
+            return false;
+        }
+
+        Poste poste = posteOpt.get();
+        poste.setAtivo(false);
+        posteRepository.save(poste);
+        estoqueListagemCache.posteAlterado(tenantId, poste.getCodigoBase());
+        estoqueConsolidadoService.recalcularCodigoBase(poste.getCodigoBase());
+
+        aposCommit(() -> {
+            estoqueMemoriaService.atualizarPoste(poste);
+            indiceSaldoDiario.atualizarPoste(poste);
+        });
+
+        log.info("Poste inativado com sucesso: ID={}, tenant={}", id, tenantId);
+        return true;
+    }
+
+    private void aposCommit(Runnable acao) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            acao.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                acao.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,511 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.model.MovimentoEstoque.TipoMovimento;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Arquivo imutável com os movimentos de um tenant em um ano fechado, gravado em colunas.
+ * As linhas ficam em ordem de data do movimento e id, divididas em grupos de até
+ * LINHAS_POR_GRUPO. Cada coluna de cada grupo é comprimida separadamente e o cabeçalho
+ * guarda o intervalo de datas de cada grupo: uma consulta por período só descomprime os
+ * grupos que cruzam o período, e só descomprime as demais colunas de um grupo se as
+ * colunas de filtro (data e poste) encontrarem alguma linha. A leitura é feita sobre o
+ * arquivo mapeado em memória.
+ */
+public class SegmentoMovimentos {
+
+    static final int LINHAS_POR_GRUPO = 65_536;
+
+    private static final int MAGICO = 0x504D5331; // "PMS1"
+    private static final int VERSAO = 1;
+    private static final int NULO = Integer.MIN_VALUE;
+
+    private static final int ID = 0;
+    private static final int POSTE = 1;
+    private static final int TIPO = 2;
+    private static final int QUANTIDADE = 3;
+    private static final int DATA = 4;
+    private static final int REGISTRO = 5;
+    private static final int ANTERIOR = 6;
+    private static final int ATUAL = 7;
+    private static final int OBSERVACAO = 8;
+    private static final int COLUNAS = 9;
+
+    private final Path arquivo;
+    private final String tenantId;
+    private final int ano;
+    private final int linhas;
+    private final TipoMovimento[] tipos;
+    private final Grupo[] grupos;
+    private final ByteBuffer dados;
+
+    private SegmentoMovimentos(Path arquivo, String tenantId, int ano, int linhas, TipoMovimento[] tipos,
+                               Grupo[] grupos, ByteBuffer dados) {
+        this.arquivo = arquivo;
+        this.tenantId = tenantId;
+        this.ano = ano;
+        this.linhas = linhas;
+        this.tipos = tipos;
+        this.grupos = grupos;
+        this.dados = dados;
+    }
+
+    /**
+     * Mapeia o arquivo em memória e lê o cabeçalho. Os dados só são descomprimidos nas consultas.
+     */
+    public static SegmentoMovimentos abrir(Path arquivo) throws IOException {
+        MappedByteBuffer mapa;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+
+        if (mapa.getInt() != MAGICO || mapa.getInt() != VERSAO) {
+            throw new IOException("Arquivo não é um segmento de movimentos: " + arquivo);
+        }
+        String tenantId = lerTexto(mapa);
+        int ano = mapa.getInt();
+        int linhas = mapa.getInt();
+
+        // Os tipos são gravados pelo nome, para o arquivo não depender da ordem do enum
+        TipoMovimento[] tipos = new TipoMovimento[mapa.getInt()];
+        for (int i = 0; i < tipos.length; i++) {
+            tipos[i] = TipoMovimento.valueOf(lerTexto(mapa));
+        }
+
+        Grupo[] grupos = new Grupo[mapa.getInt()];
+        for (int g = 0; g < grupos.length; g++) {
+            Grupo grupo = new Grupo(mapa.getInt(), mapa.getInt(), mapa.getInt());
+            for (int c = 0; c < COLUNAS; c++) {
+                grupo.inicio[c] = mapa.getInt();
+                grupo.comprimido[c] = mapa.getInt();
+                grupo.original[c] = mapa.getInt();
+            }
+            grupos[g] = grupo;
+        }
+
+        return new SegmentoMovimentos(arquivo, tenantId, ano, linhas, tipos, grupos, mapa.slice());
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public int getAno() {
+        return ano;
+    }
+
+    public int getLinhas() {
+        return linhas;
+    }
+
+    /**
+     * Entrega, em ordem de data e id, as linhas com data entre inicio e fim (inclusive)
+     * e do poste informado, se houver
+     */
+    public void ler(Long posteId, LocalDate inicio, LocalDate fim, Consumer<Linha> consumidor) {
+        iterar(posteId, inicio, fim).forEachRemaining(consumidor);
+    }
+
+    /**
+     * Mesmas linhas de ler, descomprimindo um grupo de cada vez à medida que são consumidas
+     */
+    public Iterator<Linha> iterar(Long posteId, LocalDate inicio, LocalDate fim) {
+        long de = inicio.toEpochDay();
+        long ate = fim.toEpochDay();
+
+        return new Iterator<>() {
+            private final ArrayDeque<Linha> pendentes = new ArrayDeque<>();
+            private int proximoGrupo;
+
+            @Override
+            public boolean hasNext() {
+                while (pendentes.isEmpty() && proximoGrupo < grupos.length) {
+                    lerGrupo(grupos[proximoGrupo++], posteId, de, ate, pendentes::add);
+                }
+                return !pendentes.isEmpty();
+            }
+
+            @Override
+            public Linha next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return pendentes.poll();
+            }
+        };
+    }
+
+    private void lerGrupo(Grupo grupo, Long posteId, long de, long ate, Consumer<Linha> consumidor) {
+        if (grupo.dataMaxima < de || grupo.dataMinima > ate) {
+            return;
+        }
+
+        ByteBuffer datas = coluna(grupo, DATA);
+        ByteBuffer postes = posteId != null ? coluna(grupo, POSTE) : null;
+        int[] selecionadas = new int[grupo.linhas];
+        int encontradas = 0;
+        for (int i = 0; i < grupo.linhas; i++) {
+            int data = datas.getInt(i * Integer.BYTES);
+            if (data >= de && data <= ate
+                    && (postes == null || postes.getLong(i * Long.BYTES) == posteId)) {
+                selecionadas[encontradas++] = i;
+            }
+        }
+        if (encontradas == 0) {
+            return;
+        }
+
+        ByteBuffer ids = coluna(grupo, ID);
+        if (postes == null) {
+            postes = coluna(grupo, POSTE);
+        }
+        ByteBuffer tiposDoGrupo = coluna(grupo, TIPO);
+        ByteBuffer quantidades = coluna(grupo, QUANTIDADE);
+        ByteBuffer registros = coluna(grupo, REGISTRO);
+        ByteBuffer anteriores = coluna(grupo, ANTERIOR);
+        ByteBuffer atuais = coluna(grupo, ATUAL);
+        String[] observacoes = observacoes(coluna(grupo, OBSERVACAO), selecionadas, encontradas);
+
+        for (int s = 0; s < encontradas; s++) {
+            int i = selecionadas[s];
+            consumidor.accept(new Linha(
+                    ids.getLong(i * Long.BYTES),
+                    postes.getLong(i * Long.BYTES),
+                    tenantId,
+                    tipos[tiposDoGrupo.get(i)],
+                    quantidades.getInt(i * Integer.BYTES),
+                    LocalDate.ofEpochDay(datas.getInt(i * Integer.BYTES)),
+                    paraDataHora(registros.getLong(i * Long.BYTES)),
+                    observacoes[s],
+                    paraInteiro(anteriores.getInt(i * Integer.BYTES)),
+                    paraInteiro(atuais.getInt(i * Integer.BYTES))));
+        }
+    }
+
+    /**
+     * Lê as observações (texto de tamanho variável) só das linhas selecionadas
+     */
+    private static String[] observacoes(ByteBuffer coluna, int[] selecionadas, int encontradas) {
+        String[] textos = new String[encontradas];
+        int proxima = 0;
+        for (int i = 0; proxima < encontradas; i++) {
+            int tamanho = coluna.getInt();
+            boolean selecionada = selecionadas[proxima] == i;
+            if (tamanho >= 0) {
+                if (selecionada) {
+                    textos[proxima] = new String(coluna.array(), coluna.position(), tamanho, StandardCharsets.UTF_8);
+                }
+                coluna.position(coluna.position() + tamanho);
+            }
+            if (selecionada) {
+                proxima++;
+            }
+        }
+        return textos;
+    }
+
+    private ByteBuffer coluna(Grupo grupo, int coluna) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(dados.slice(grupo.inicio[coluna], grupo.comprimido[coluna]));
+            byte[] saida = new byte[grupo.original[coluna]];
+            int lidos = 0;
+            while (lidos < saida.length && !inflater.finished()) {
+                int n = inflater.inflate(saida, lidos, saida.length - lidos);
+                if (n == 0 && inflater.needsInput()) {
+                    break;
+                }
+                lidos += n;
+            }
+            if (lidos != saida.length) {
+                throw new IllegalStateException("Segmento de movimentos corrompido: " + arquivo);
+            }
+            return ByteBuffer.wrap(saida);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Segmento de movimentos corrompido: " + arquivo, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static Integer paraInteiro(int valor) {
+        return valor == NULO ? null : valor;
+    }
+
+    private static long paraMicros(LocalDateTime dataHora) {
+        return dataHora.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + dataHora.getNano() / 1_000;
+    }
+
+    private static LocalDateTime paraDataHora(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static String lerTexto(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void escreverTexto(ByteBuffer buffer, String texto) {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Um movimento lido do segmento
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Linha {
+        private long id;
+        private long posteId;
+        private String tenantId;
+        private TipoMovimento tipoMovimento;
+        private int quantidade;
+        private LocalDate dataMovimento;
+        private LocalDateTime dataRegistro;
+        private String observacao;
+        private Integer quantidadeAnterior;
+        private Integer quantidadeAtual;
+    }
+
+    private static class Grupo {
+        private final int linhas;
+        private final int dataMinima;
+        private final int dataMaxima;
+        private final int[] inicio = new int[COLUNAS];
+        private final int[] comprimido = new int[COLUNAS];
+        private final int[] original = new int[COLUNAS];
+
+        private Grupo(int linhas, int dataMinima, int dataMaxima) {
+            this.linhas = linhas;
+            this.dataMinima = dataMinima;
+            this.dataMaxima = dataMaxima;
+        }
+    }
+
+    /**
+     * Monta um segmento em memória, coluna a coluna. As linhas devem chegar em ordem de data e id.
+     */
+    public static class Escritor {
+
+        private final String tenantId;
+        private final int ano;
+
+        private int linhas;
+        private long[] ids = new long[1024];
+        private long[] postes = new long[1024];
+        private byte[] tipos = new byte[1024];
+        private int[] quantidades = new int[1024];
+        private int[] datas = new int[1024];
+        private long[] registros = new long[1024];
+        private int[] anteriores = new int[1024];
+        private int[] atuais = new int[1024];
+        private final List<byte[]> observacoes = new ArrayList<>();
+
+        public Escritor(String tenantId, int ano) {
+            this.tenantId = tenantId;
+            this.ano = ano;
+        }
+
+        public int getLinhas() {
+            return linhas;
+        }
+
+        public long[] getIds() {
+            return Arrays.copyOf(ids, linhas);
+        }
+
+        public LocalDate getDataInicial() {
+            return LocalDate.ofEpochDay(datas[0]);
+        }
+
+        public LocalDate getDataFinal() {
+            return LocalDate.ofEpochDay(datas[linhas - 1]);
+        }
+
+        public void adicionar(long id, long posteId, TipoMovimento tipo, int quantidade, LocalDate dataMovimento,
+                              LocalDateTime dataRegistro, String observacao,
+                              Integer quantidadeAnterior, Integer quantidadeAtual) {
+            int data = (int) dataMovimento.toEpochDay();
+            if (linhas > 0 && (data < datas[linhas - 1] || (data == datas[linhas - 1] && id <= ids[linhas - 1]))) {
+                throw new IllegalStateException("Movimentos fora de ordem de data e id no segmento " + tenantId + "/" + ano);
+            }
+            if (linhas == ids.length) {
+                crescer();
+            }
+
+            ids[linhas] = id;
+            postes[linhas] = posteId;
+            tipos[linhas] = (byte) tipo.ordinal();
+            quantidades[linhas] = quantidade;
+            datas[linhas] = data;
+            registros[linhas] = paraMicros(dataRegistro);
+            anteriores[linhas] = quantidadeAnterior != null ? quantidadeAnterior : NULO;
+            atuais[linhas] = quantidadeAtual != null ? quantidadeAtual : NULO;
+            observacoes.add(observacao != null ? observacao.getBytes(StandardCharsets.UTF_8) : null);
+            linhas++;
+        }
+
+        /**
+         * Grava em um arquivo temporário, força para o disco e só então renomeia para o nome final
+         */
+        public void gravar(Path destino) throws IOException {
+            int quantidadeGrupos = (linhas + LINHAS_POR_GRUPO - 1) / LINHAS_POR_GRUPO;
+            byte[][][] colunas = new byte[quantidadeGrupos][][];
+            int[][] originais = new int[quantidadeGrupos][COLUNAS];
+            for (int g = 0; g < quantidadeGrupos; g++) {
+                int de = g * LINHAS_POR_GRUPO;
+                int ate = Math.min(linhas, de + LINHAS_POR_GRUPO);
+                byte[][] brutas = colunasDoGrupo(de, ate);
+                colunas[g] = new byte[COLUNAS][];
+                for (int c = 0; c < COLUNAS; c++) {
+                    originais[g][c] = brutas[c].length;
+                    colunas[g][c] = comprimir(brutas[c]);
+                }
+            }
+
+            TipoMovimento[] todosTipos = TipoMovimento.values();
+            ByteBuffer cabecalho = ByteBuffer.allocate(1024 + quantidadeGrupos * (12 + COLUNAS * 12)
+                    + todosTipos.length * 64);
+            cabecalho.putInt(MAGICO).putInt(VERSAO);
+            escreverTexto(cabecalho, tenantId);
+            cabecalho.putInt(ano).putInt(linhas);
+            cabecalho.putInt(todosTipos.length);
+            for (TipoMovimento tipo : todosTipos) {
+                escreverTexto(cabecalho, tipo.name());
+            }
+            cabecalho.putInt(quantidadeGrupos);
+            int inicio = 0;
+            for (int g = 0; g < quantidadeGrupos; g++) {
+                int de = g * LINHAS_POR_GRUPO;
+                int ate = Math.min(linhas, de + LINHAS_POR_GRUPO);
+                cabecalho.putInt(ate - de).putInt(datas[de]).putInt(datas[ate - 1]);
+                for (int c = 0; c < COLUNAS; c++) {
+                    cabecalho.putInt(inicio).putInt(colunas[g][c].length).putInt(originais[g][c]);
+                    inicio += colunas[g][c].length;
+                }
+            }
+            cabecalho.flip();
+
+            Path temporario = destino.resolveSibling(destino.getFileName() + ".tmp");
+            try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                escreverTudo(canal, cabecalho);
+                for (byte[][] grupo : colunas) {
+                    for (byte[] coluna : grupo) {
+                        escreverTudo(canal, ByteBuffer.wrap(coluna));
+                    }
+                }
+                canal.force(true);
+            }
+            Files.move(temporario, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private byte[][] colunasDoGrupo(int de, int ate) {
+            int n = ate - de;
+            ByteBuffer ids = ByteBuffer.allocate(n * Long.BYTES);
+            ByteBuffer postes = ByteBuffer.allocate(n * Long.BYTES);
+            ByteBuffer quantidades = ByteBuffer.allocate(n * Integer.BYTES);
+            ByteBuffer datas = ByteBuffer.allocate(n * Integer.BYTES);
+            ByteBuffer registros = ByteBuffer.allocate(n * Long.BYTES);
+            ByteBuffer anteriores = ByteBuffer.allocate(n * Integer.BYTES);
+            ByteBuffer atuais = ByteBuffer.allocate(n * Integer.BYTES);
+            int tamanhoObservacoes = 0;
+            for (int i = de; i < ate; i++) {
+                tamanhoObservacoes += Integer.BYTES + (observacoes.get(i) != null ? observacoes.get(i).length : 0);
+            }
+            ByteBuffer textos = ByteBuffer.allocate(tamanhoObservacoes);
+
+            for (int i = de; i < ate; i++) {
+                ids.putLong(this.ids[i]);
+                postes.putLong(this.postes[i]);
+                quantidades.putInt(this.quantidades[i]);
+                datas.putInt(this.datas[i]);
+                registros.putLong(this.registros[i]);
+                anteriores.putInt(this.anteriores[i]);
+                atuais.putInt(this.atuais[i]);
+                byte[] observacao = observacoes.get(i);
+                textos.putInt(observacao != null ? observacao.length : -1);
+                if (observacao != null) {
+                    textos.put(observacao);
+                }
+            }
+
+            byte[][] colunas = new byte[COLUNAS][];
+            colunas[ID] = ids.array();
+            colunas[POSTE] = postes.array();
+            colunas[TIPO] = Arrays.copyOfRange(tipos, de, ate);
+            colunas[QUANTIDADE] = quantidades.array();
+            colunas[DATA] = datas.array();
+            colunas[REGISTRO] = registros.array();
+            colunas[ANTERIOR] = anteriores.array();
+            colunas[ATUAL] = atuais.array();
+            colunas[OBSERVACAO] = textos.array();
+            return colunas;
+        }
+
+        private static byte[] comprimir(byte[] bruto) {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try {
+                deflater.setInput(bruto);
+                deflater.finish();
+                byte[] buffer = new byte[Math.max(64, bruto.length / 4)];
+                int tamanho = 0;
+                while (!deflater.finished()) {
+                    if (tamanho == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                    tamanho += deflater.deflate(buffer, tamanho, buffer.length - tamanho);
+                }
+                return Arrays.copyOf(buffer, tamanho);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private static void escreverTudo(FileChannel canal, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+        }
+
+        private void crescer() {
+            int tamanho = ids.length * 2;
+            ids = Arrays.copyOf(ids, tamanho);
+            postes = Arrays.copyOf(postes, tamanho);
+            tipos = Arrays.copyOf(tipos, tamanho);
+            quantidades = Arrays.copyOf(quantidades, tamanho);
+            datas = Arrays.copyOf(datas, tamanho);
+            registros = Arrays.copyOf(registros, tamanho);
+            anteriores = Arrays.copyOf(anteriores, tamanho);
+            atuais = Arrays.copyOf(atuais, tamanho);
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.ImportacaoVendasDTO;
+import com.vendas.postes.dto.SaidaEstoqueLoteDTO;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.repository.PosteRepository;
+import com.vendas.postes.repository.VendaRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Importação de vendas históricas a partir de CSV. O arquivo é lido linha a linha e as
+ * vendas válidas são gravadas em lotes de {@value #TAMANHO_LOTE}, cada lote em sua própria
+ * transação junto com as baixas de estoque. A memória usada depende do tamanho do lote e
+ * do cadastro de postes, não do tamanho do arquivo.
+ *
+ * Colunas (cabeçalho obrigatório, em qualquer ordem, separadas por ; ou ,):
+ * dataVenda, tipoVenda, codigoPoste, quantidade, valorVenda, freteEletrons, valorExtra, observacoes
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VendaImportacaoService {
+
+    private static final int TAMANHO_LOTE = 500;
+    private static final int MAXIMO_ERROS_GUARDADOS = 1000;
+    private static final int MAXIMO_IMPORTACOES_GUARDADAS = 20;
+
+    private static final List<DateTimeFormatter> FORMATOS_DATA_HORA = List.of(
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME,
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm[:ss]"),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm[:ss]"));
+    private static final List<DateTimeFormatter> FORMATOS_DATA = List.of(
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+
+    private final PosteRepository posteRepository;
+    private final VendaRepository vendaRepository;
+    private final EstoqueService estoqueService;
+    private final VendaResumoMensalService vendaResumoMensalService;
+    private final VendasColunares vendasColunares;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+
+    // Uma importação por vez para não disputar os mesmos códigos de estoque
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "importacao-vendas");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, ImportacaoVendasDTO> importacoes = Collections.synchronizedMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ImportacaoVendasDTO> maisAntiga) {
+                    return size() > MAXIMO_IMPORTACOES_GUARDADAS;
+                }
+            });
+
+    private Boolean postgres;
+
+    /**
+     * Agenda a importação do arquivo (já salvo em disco) para o tenant atual.
+     * O arquivo é apagado ao final.
+     */
+    public ImportacaoVendasDTO iniciarImportacao(Path arquivo, String nomeArquivo) throws IOException {
+        ImportacaoVendasDTO importacao = new ImportacaoVendasDTO();
+        importacao.setId(UUID.randomUUID().toString());
+        importacao.setNomeArquivo(nomeArquivo);
+        importacao.setTenantId(TenantContext.getCurrentTenantValue());
+        importacao.setTamanhoArquivo(Files.size(arquivo));
+        importacoes.put(importacao.getId(), importacao);
+
+        log.info("📥 Importação {} agendada: {} ({} bytes, tenant: {})",
+                importacao.getId(), nomeArquivo, importacao.getTamanhoArquivo(), importacao.getTenantId());
+
+        executor.submit(() -> {
+            TenantContext.setCurrentTenant(importacao.getTenantId());
+            try {
+                processar(arquivo, importacao);
+            } finally {
+                TenantContext.clear();
+            }
+        });
+
+        return importacao.copiar();
+    }
+
+    /**
+     * Cópia do progresso atual: a importação em andamento continua sendo alterada pela sua thread
+     */
+    public Optional<ImportacaoVendasDTO> buscarImportacao(String id) {
+        return Optional.ofNullable(importacoes.get(id)).map(ImportacaoVendasDTO::copiar);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+
+    private void processar(Path arquivo, ImportacaoVendasDTO importacao) {
+        ImportacaoVendasDTO.Status resultado = ImportacaoVendasDTO.Status.FALHOU;
+        String mensagem = null;
+        try (BufferedReader leitor = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8)) {
+            String cabecalho = leitor.readLine();
+            if (cabecalho == null) {
+                throw new IllegalArgumentException("Arquivo vazio");
+            }
+            cabecalho = cabecalho.replace("\uFEFF", "");
+            importacao.adicionarBytesLidos(cabecalho.length() + 1);
+
+            char separador = cabecalho.indexOf(';') >= 0 ? ';' : ',';
+            Map<String, Integer> colunas = lerCabecalho(cabecalho, separador);
+            Map<String, Long> postePorCodigo = carregarCodigosDePostes(importacao.getTenantId());
+
+            List<LinhaVenda> lote = new ArrayList<>(TAMANHO_LOTE);
+            long numeroLinha = 1;
+            String linha;
+
+            while ((linha = leitor.readLine()) != null) {
+                numeroLinha++;
+                importacao.adicionarBytesLidos(linha.length() + 1);
+                if (linha.isBlank()) {
+                    continue;
+                }
+                importacao.contarLinhaLida();
+
+                try {
+                    lote.add(converterLinha(numeroLinha, dividir(linha, separador), colunas, postePorCodigo));
+                } catch (IllegalArgumentException e) {
+                    importacao.registrarErro(numeroLinha, e.getMessage(), MAXIMO_ERROS_GUARDADOS);
+                }
+
+                if (lote.size() == TAMANHO_LOTE) {
+                    gravarLote(lote, importacao);
+                    lote.clear();
+                }
+            }
+
+            if (!lote.isEmpty()) {
+                gravarLote(lote, importacao);
+            }
+
+            resultado = ImportacaoVendasDTO.Status.CONCLUIDA;
+            ImportacaoVendasDTO situacao = importacao.copiar();
+            mensagem = String.format("%d vendas importadas, %d linhas com erro",
+                    situacao.getVendasImportadas(), situacao.getLinhasComErro());
+            log.info("✅ Importação {} concluída: {}", importacao.getId(), mensagem);
+
+        } catch (Exception e) {
+            mensagem = e.getMessage();
+            log.error("❌ Importação {} falhou: ", importacao.getId(), e);
+        } finally {
+            try {
+                Files.deleteIfExists(arquivo);
+            } catch (IOException e) {
+                log.warn("⚠️ Não foi possível apagar o arquivo temporário {}: {}", arquivo, e.getMessage());
+            }
+            importacao.finalizar(resultado, mensagem);
+        }
+    }
+
+    /**
+     * Grava as vendas do lote, as baixas de estoque e o resumo mensal na mesma transação.
+     * Se o lote falhar, todas as suas linhas são contadas como erro e a importação continua.
+     */
+    private void gravarLote(List<LinhaVenda> lote, ImportacaoVendasDTO importacao) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Long> ids = isPostgres() ? inserirComCopy(lote, importacao.getTenantId()) : inserirComJpa(lote, importacao.getTenantId());
+
+                List<SaidaEstoqueLoteDTO> saidas = new ArrayList<>();
+                for (int i = 0; i < lote.size(); i++) {
+                    LinhaVenda venda = lote.get(i);
+                    if (venda.posteId != null && venda.quantidade != null && venda.quantidade > 0) {
+                        saidas.add(new SaidaEstoqueLoteDTO(venda.posteId, venda.quantidade, venda.dataVenda.toLocalDate(),
+                                String.format("Venda %s - ID: %d (importação)", venda.tipoVenda.name(), ids.get(i))));
+                    }
+                }
+                estoqueService.reduzirEstoqueEmLote(saidas);
+                vendaResumoMensalService.registrarVendas(ids);
+                vendasColunares.registrarVendasAposCommit(ids);
+            });
+            importacao.adicionarVendasImportadas(lote.size());
+
+        } catch (Exception e) {
+            log.error("❌ Erro ao gravar lote da importação {}: {}", importacao.getId(), e.getMessage());
+            String mensagem = "Lote não gravado: " + e.getMessage();
+            lote.forEach(venda -> importacao.registrarErro(venda.numeroLinha, mensagem, MAXIMO_ERROS_GUARDADOS));
+        }
+    }
+
+    private List<Long> inserirComJpa(List<LinhaVenda> lote, String tenantId) {
+        List<Venda> vendas = new ArrayList<>(lote.size());
+        for (LinhaVenda linha : lote) {
+            Venda venda = new Venda();
+            venda.setDataVenda(linha.dataVenda);
+            venda.setTipoVenda(linha.tipoVenda);
+            venda.setPoste(linha.posteId != null ? entityManager.getReference(Poste.class, linha.posteId) : null);
+            venda.setQuantidade(linha.quantidade);
+            venda.setValorVenda(linha.valorVenda);
+            venda.setFreteEletrons(linha.freteEletrons);
+            venda.setValorExtra(linha.valorExtra);
+            venda.setObservacoes(linha.observacoes);
+            venda.setTenantId(tenantId);
+            vendas.add(venda);
+        }
+
+        return vendaRepository.saveAll(vendas).stream().map(Venda::getId).toList();
+    }
+
+    /**
+     * No PostgreSQL as vendas entram por COPY. Os IDs vêm da mesma sequence usada pelo
+     * Hibernate: com o otimizador pooled-lo cada nextval reserva um bloco de 50 IDs.
+     */
+    private List<Long> inserirComCopy(List<LinhaVenda> lote, String tenantId) {
+        int blocos = (lote.size() + 49) / 50;
+        List<Long> inicioDosBlocos = jdbcTemplate.queryForList(
+                "SELECT nextval('vendas_seq') FROM generate_series(1, ?)", Long.class, blocos);
+
+        List<Long> ids = new ArrayList<>(lote.size());
+        StringBuilder csv = new StringBuilder(lote.size() * 96);
+        for (int i = 0; i < lote.size(); i++) {
+            LinhaVenda venda = lote.get(i);
+            long id = inicioDosBlocos.get(i / 50) + (i % 50);
+            ids.add(id);
+
+            csv.append(id).append(',')
+                    .append(venda.dataVenda).append(',')
+                    .append(venda.tipoVenda.name()).append(',')
+                    .append(valorCsv(venda.posteId)).append(',')
+                    .append(valorCsv(venda.quantidade)).append(',')
+                    .append(valorCsv(venda.freteEletrons)).append(',')
+                    .append(valorCsv(venda.valorVenda)).append(',')
+                    .append(valorCsv(venda.valorExtra)).append(',')
+                    .append(textoCsv(venda.observacoes)).append(',')
+                    .append(tenantId).append('\n');
+        }
+
+        Connection conexao = DataSourceUtils.getConnection(jdbcTemplate.getDataSource());
+        try {
+            conexao.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                    "COPY vendas (id, data_venda, tipo_venda, poste_id, quantidade, frete_eletrons, " +
+                            "valor_venda, valor_extra, observacoes, tenant_id) FROM STDIN WITH (FORMAT csv)",
+                    new StringReader(csv.toString()));
+        } catch (Exception e) {
+            throw new RuntimeException("Erro no COPY de vendas: " + e.getMessage(), e);
+        } finally {
+            DataSourceUtils.releaseConnection(conexao, jdbcTemplate.getDataSource());
+        }
+        return ids;
+    }
+
+    private Map<String, Long> carregarCodigosDePostes(String tenantId) {
+        Map<String, Long> postePorCodigo = new HashMap<>();
+        for (Object[] linha : posteRepository.findCodigosPorTenant(tenantId)) {
+            String codigo = ((String) linha[0]).trim().toUpperCase();
+            Long id = (Long) linha[1];
+            // Com códigos repetidos, o poste ativo tem preferência
+            if (Boolean.TRUE.equals(linha[2]) || !postePorCodigo.containsKey(codigo)) {
+                postePorCodigo.put(codigo, id);
+            }
+        }
+        return postePorCodigo;
+    }
+
+    private Map<String, Integer> lerCabecalho(String cabecalho, char separador) {
+        Map<String, Integer> colunas = new HashMap<>();
+        List<String> nomes = dividir(cabecalho, separador);
+        for (int i = 0; i < nomes.size(); i++) {
+            colunas.put(nomes.get(i).trim().toLowerCase(), i);
+        }
+
+        for (String obrigatoria : List.of("datavenda", "tipovenda")) {
+            if (!colunas.containsKey(obrigatoria)) {
+                throw new IllegalArgumentException("Cabeçalho sem a coluna obrigatória " + obrigatoria);
+            }
+        }
+        return colunas;
+    }
+
+    private LinhaVenda converterLinha(long numeroLinha, List<String> campos, Map<String, Integer> colunas,
+                                      Map<String, Long> postePorCodigo) {
+        LinhaVenda venda = new LinhaVenda();
+        venda.numeroLinha = numeroLinha;
+        venda.dataVenda = converterData(campo(campos, colunas, "datavenda"));
+
+        String tipo = campo(campos, colunas, "tipovenda");
+        try {
+            venda.tipoVenda = Venda.TipoVenda.valueOf(tipo.toUpperCase());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Tipo de venda inválido: " + tipo);
+        }
+
+        String codigoPoste = campo(campos, colunas, "codigoposte");
+        if (codigoPoste != null) {
+            venda.posteId = postePorCodigo.get(codigoPoste.toUpperCase());
+            if (venda.posteId == null) {
+                throw new IllegalArgumentException("Poste não encontrado: " + codigoPoste);
+            }
+        } else if (venda.tipoVenda != Venda.TipoVenda.E) {
+            throw new IllegalArgumentException("Venda do tipo " + venda.tipoVenda + " exige codigoPoste");
+        }
+
+        String quantidade = campo(campos, colunas, "quantidade");
+        if (quantidade != null) {
+            try {
+                venda.quantidade = Integer.valueOf(quantidade);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Quantidade inválida: " + quantidade);
+            }
+        }
+        if (venda.posteId != null && (venda.quantidade == null || venda.quantidade <= 0)) {
+            throw new IllegalArgumentException("Quantidade deve ser positiva para vendas com poste");
+        }
+
+        venda.valorVenda = converterValor(campo(campos, colunas, "valorvenda"));
+        venda.freteEletrons = converterValor(campo(campos, colunas, "freteeletrons"));
+        venda.valorExtra = converterValor(campo(campos, colunas, "valorextra"));
+        venda.observacoes = campo(campos, colunas, "observacoes");
+        if (venda.observacoes != null && venda.observacoes.length() > 1000) {
+            throw new IllegalArgumentException("Observação maior que 1000 caracteres");
+        }
+        return venda;
+    }
+
+    private String campo(List<String> campos, Map<String, Integer> colunas, String nome) {
+        Integer indice = colunas.get(nome);
+        if (indice == null || indice >= campos.size()) {
+            return null;
+        }
+        String valor = campos.get(indice).trim();
+        return valor.isEmpty() ? null : valor;
+    }
+
+    private LocalDateTime converterData(String valor) {
+        if (valor == null) {
+            throw new IllegalArgumentException("Data da venda não informada");
+        }
+        for (DateTimeFormatter formato : FORMATOS_DATA_HORA) {
+            try {
+                return LocalDateTime.parse(valor, formato);
+            } catch (DateTimeParseException ignored) {
+                // tenta o próximo formato
+            }
+        }
+        for (DateTimeFormatter formato : FORMATOS_DATA) {
+            try {
+                return LocalDate.parse(valor, formato).atStartOfDay();
+            } catch (DateTimeParseException ignored) {
+                // tenta o próximo formato
+            }
+        }
+        throw new IllegalArgumentException("Data inválida: " + valor);
+    }
+
+    /**
+     * Aceita 1234.56, 1234,56 e 1.234,56 (com ou sem R$)
+     */
+    private BigDecimal converterValor(String valor) {
+        if (valor == null) {
+            return null;
+        }
+        String normalizado = valor.replace("R$", "").replace(" ", "");
+        if (normalizado.contains(",")) {
+            normalizado = normalizado.replace(".", "").replace(',', '.');
+        }
+        try {
+            return new BigDecimal(normalizado);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor inválido: " + valor);
+        }
+    }
+
+    /**
+     * Divide uma linha CSV respeitando campos entre aspas ("a;b" e aspas duplicadas "")
+     */
+    private static List<String> dividir(String linha, char separador) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder atual = new StringBuilder();
+        boolean entreAspas = false;
+
+        for (int i = 0; i < linha.length(); i++) {
+            char c = linha.charAt(i);
+            if (c == '"') {
+                if (entreAspas && i + 1 < linha.length() && linha.charAt(i + 1) == '"') {
+                    atual.append('"');
+                    i++;
+                } else {
+                    entreAspas = !entreAspas;
+                }
+            } else if (c == separador && !entreAspas) {
+                campos.add(atual.toString());
+                atual.setLength(0);
+            } else {
+                atual.append(c);
+            }
+        }
+        campos.add(atual.toString());
+        return campos;
+    }
+
+    private static String valorCsv(Object valor) {
+        return valor != null ? valor.toString() : "";
+    }
+
+    private static String textoCsv(String valor) {
+        return valor != null ? "\"" + valor.replace("\"", "\"\"") + "\"" : "";
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            try {
+                String banco = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(),
+                        DatabaseMetaData::getDatabaseProductName);
+                postgres = "PostgreSQL".equalsIgnoreCase(banco);
+            } catch (Exception e) {
+                log.warn("⚠️ Não foi possível identificar o banco, usando inserts em lote: {}", e.getMessage());
+                postgres = false;
+            }
+        }
+        return postgres;
+    }
+
+    /**
+     * Venda já validada, aguardando a gravação do lote
+     */
+    private static class LinhaVenda {
+        long numeroLinha;
+        LocalDateTime dataVenda;
+        Venda.TipoVenda tipoVenda;
+        Long posteId;
+        Integer quantidade;
+        BigDecimal valorVenda;
+        BigDecimal freteEletrons;
+        BigDecimal valorExtra;
+        String observacoes;
+    }
+}
@@ -0,0 +1,259 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.model.VendaResumoMensal;
+import com.vendas.postes.repository.VendaRepository;
+import com.vendas.postes.repository.VendaResumoMensalRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.DatabaseMetaData;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Mantém a tabela venda_resumo_mensal, com os totais de vendas por tenant, mês e tipo.
+ * Resumos de meses inteiros leem só essa tabela; meses parciais nas pontas do período
+ * são somados direto das vendas.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VendaResumoMensalService {
+
+    private final VendaResumoMensalRepository vendaResumoMensalRepository;
+    private final VendaRepository vendaRepository;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Boolean postgres;
+
+    /**
+     * Soma (sinal = 1) ou subtrai (sinal = -1) a venda do resumo do seu mês.
+     * Deve ser chamado na mesma transação que gravou a venda.
+     */
+    @Transactional
+    public void registrarVenda(Venda venda, int sinal) {
+        BigDecimal fator = BigDecimal.valueOf(sinal);
+        BigDecimal custo = venda.getPoste() != null && venda.getQuantidade() != null
+                ? venda.getPoste().getPreco().multiply(BigDecimal.valueOf(venda.getQuantidade()))
+                : null;
+
+        aplicarDelta(venda.getTenantId(), YearMonth.from(venda.getDataVenda()), venda.getTipoVenda(), sinal,
+                multiplicar(venda.getValorVenda(), fator),
+                multiplicar(venda.getFreteEletrons(), fator),
+                multiplicar(venda.getValorExtra(), fator),
+                multiplicar(custo, fator));
+    }
+
+    /**
+     * Troca a venda anterior pela atual no resumo, quando uma venda é alterada.
+     * Os meses são atualizados sempre em ordem cronológica para que duas alterações
+     * simultâneas não travem uma esperando a outra.
+     */
+    @Transactional
+    public void substituirVenda(Venda anterior, Venda atual) {
+        if (anterior.getDataVenda().isAfter(atual.getDataVenda())) {
+            registrarVenda(atual, 1);
+            registrarVenda(anterior, -1);
+        } else {
+            registrarVenda(anterior, -1);
+            registrarVenda(atual, 1);
+        }
+    }
+
+    /**
+     * Soma ao resumo vendas gravadas em lote, com uma consulta agrupada por mês e tipo
+     */
+    @Transactional
+    public void registrarVendas(Collection<Long> vendaIds) {
+        if (vendaIds.isEmpty()) {
+            return;
+        }
+
+        for (Object[] linha : vendaRepository.calcularResumoMensalDasVendas(vendaIds)) {
+            aplicarLinhaMensal(linha);
+        }
+    }
+
+    /**
+     * Corrige o custo dos postes no resumo quando o preço de um poste muda,
+     * para manter o custo igual ao preço atual × quantidade
+     */
+    @Transactional
+    public void ajustarCustoPoste(Long posteId, BigDecimal precoAnterior, BigDecimal precoNovo) {
+        if (precoAnterior == null || precoNovo == null || precoAnterior.compareTo(precoNovo) == 0) {
+            return;
+        }
+
+        BigDecimal diferenca = precoNovo.subtract(precoAnterior);
+        for (Object[] linha : vendaRepository.somarQuantidadeMensalDoPoste(posteId)) {
+            BigDecimal quantidade = BigDecimal.valueOf(((Number) linha[4]).longValue());
+            aplicarDelta((String) linha[0], YearMonth.of(((Number) linha[1]).intValue(), ((Number) linha[2]).intValue()),
+                    (Venda.TipoVenda) linha[3], 0, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
+                    diferenca.multiply(quantidade));
+        }
+    }
+
+    /**
+     * Totais por tipo das vendas do tenant a partir de inicio e antes de fim, no formato de
+     * VendaRepository.calcularResumoPorTipoNoPeriodo. Pode ter mais de uma linha por tipo.
+     */
+    public List<Object[]> somarPeriodo(String tenantId, LocalDateTime inicio, LocalDateTime fim) {
+        YearMonth primeiroMesInteiro = YearMonth.from(inicio);
+        if (!inicio.equals(primeiroMesInteiro.atDay(1).atStartOfDay())) {
+            primeiroMesInteiro = primeiroMesInteiro.plusMonths(1);
+        }
+        YearMonth ultimoMesInteiro = YearMonth.from(fim).minusMonths(1);
+
+        if (primeiroMesInteiro.isAfter(ultimoMesInteiro)) {
+            return vendaRepository.calcularResumoPorTipoNoPeriodo(tenantId, inicio, fim);
+        }
+
+        List<Object[]> totais = new ArrayList<>(vendaResumoMensalRepository.somarPorTipoEntreMeses(
+                tenantId, primeiroMesInteiro.atDay(1), ultimoMesInteiro.atDay(1)));
+
+        LocalDateTime inicioDosMesesInteiros = primeiroMesInteiro.atDay(1).atStartOfDay();
+        if (inicio.isBefore(inicioDosMesesInteiros)) {
+            totais.addAll(vendaRepository.calcularResumoPorTipoNoPeriodo(tenantId, inicio, inicioDosMesesInteiros));
+        }
+
+        LocalDateTime fimDosMesesInteiros = ultimoMesInteiro.plusMonths(1).atDay(1).atStartOfDay();
+        if (fimDosMesesInteiros.isBefore(fim)) {
+            totais.addAll(vendaRepository.calcularResumoPorTipoNoPeriodo(tenantId, fimDosMesesInteiros, fim));
+        }
+
+        return totais;
+    }
+
+    /**
+     * Totais por tipo de todas as vendas do tenant
+     */
+    public List<Object[]> somarTudo(String tenantId) {
+        return vendaResumoMensalRepository.somarPorTipo(tenantId);
+    }
+
+    public List<VendaResumoMensal> listarMeses(String tenantId) {
+        return vendaResumoMensalRepository.findByTenantIdOrderByMesReferenciaAscTipoVendaAsc(tenantId);
+    }
+
+    /**
+     * Recalcula toda a tabela a partir das vendas
+     */
+    @Transactional
+    public void reconstruir() {
+        vendaResumoMensalRepository.deleteAllInBatch();
+
+        List<VendaResumoMensal> resumos = new ArrayList<>();
+        for (Object[] linha : vendaRepository.calcularResumoMensal()) {
+            VendaResumoMensal resumo = new VendaResumoMensal((String) linha[0],
+                    YearMonth.of(((Number) linha[1]).intValue(), ((Number) linha[2]).intValue()).atDay(1),
+                    (Venda.TipoVenda) linha[3]);
+            resumo.setQuantidadeVendas(((Number) linha[4]).longValue());
+            resumo.setValorVenda(valorOuZero(linha[5]));
+            resumo.setFreteEletrons(valorOuZero(linha[6]));
+            resumo.setValorExtra(valorOuZero(linha[7]));
+            resumo.setCustoPostes(valorOuZero(linha[8]));
+            resumos.add(resumo);
+        }
+        vendaResumoMensalRepository.saveAll(resumos);
+        vendaResumoMensalRepository.flush();
+        resumos.forEach(entityManager::detach);
+
+        log.info("✅ Resumo mensal de vendas reconstruído: {} linhas", resumos.size());
+    }
+
+    /**
+     * Reconstrói a tabela na subida se ela estiver vazia e já houver vendas
+     */
+    @Transactional
+    public void reconstruirSeVazio() {
+        if (vendaResumoMensalRepository.count() > 0 || vendaRepository.count() == 0) {
+            return;
+        }
+        reconstruir();
+    }
+
+    private void aplicarLinhaMensal(Object[] linha) {
+        aplicarDelta((String) linha[0], YearMonth.of(((Number) linha[1]).intValue(), ((Number) linha[2]).intValue()),
+                (Venda.TipoVenda) linha[3], ((Number) linha[4]).longValue(),
+                valorOuZero(linha[5]), valorOuZero(linha[6]), valorOuZero(linha[7]), valorOuZero(linha[8]));
+    }
+
+    private void aplicarDelta(String tenantId, YearMonth mes, Venda.TipoVenda tipoVenda, long deltaQuantidade,
+                              BigDecimal deltaValorVenda, BigDecimal deltaFrete, BigDecimal deltaExtra,
+                              BigDecimal deltaCusto) {
+        LocalDate mesReferencia = mes.atDay(1);
+        int atualizados = vendaResumoMensalRepository.aplicarDelta(tenantId, mesReferencia, tipoVenda,
+                deltaQuantidade, deltaValorVenda, deltaFrete, deltaExtra, deltaCusto, LocalDateTime.now());
+
+        if (atualizados > 0) {
+            return;
+        }
+
+        // Primeira venda do mês e tipo: a linha é criada zerada e recebe a variação pelo mesmo UPDATE
+        criarLinhaZerada(tenantId, mesReferencia, tipoVenda);
+        vendaResumoMensalRepository.aplicarDelta(tenantId, mesReferencia, tipoVenda,
+                deltaQuantidade, deltaValorVenda, deltaFrete, deltaExtra, deltaCusto, LocalDateTime.now());
+    }
+
+    /**
+     * Cria a linha do tenant, mês e tipo se ainda não existe, sem falhar quando outra
+     * transação cria a mesma linha ao mesmo tempo
+     */
+    private void criarLinhaZerada(String tenantId, LocalDate mesReferencia, Venda.TipoVenda tipoVenda) {
+        if (isPostgres()) {
+            jdbcTemplate.update("INSERT INTO venda_resumo_mensal (id, tenant_id, mes_referencia, tipo_venda, " +
+                            "quantidade_vendas, valor_venda, frete_eletrons, valor_extra, custo_postes, data_atualizacao) " +
+                            "VALUES (nextval('venda_resumo_mensal_seq'), ?, ?, ?, 0, 0, 0, 0, 0, ?) " +
+                            "ON CONFLICT (tenant_id, mes_referencia, tipo_venda) DO NOTHING",
+                    tenantId, mesReferencia, tipoVenda.name(), LocalDateTime.now());
+            return;
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO venda_resumo_mensal (id, tenant_id, mes_referencia, tipo_venda, " +
+                            "quantidade_vendas, valor_venda, frete_eletrons, valor_extra, custo_postes, data_atualizacao) " +
+                            "SELECT nextval('venda_resumo_mensal_seq'), ?, ?, ?, 0, 0, 0, 0, 0, ? " +
+                            "WHERE NOT EXISTS (SELECT 1 FROM venda_resumo_mensal WHERE tenant_id = ? " +
+                            "AND mes_referencia = ? AND tipo_venda = ?)",
+                    tenantId, mesReferencia, tipoVenda.name(), LocalDateTime.now(),
+                    tenantId, mesReferencia, tipoVenda.name());
+        } catch (DuplicateKeyException e) {
+            // Criada por outra transação depois da verificação; no H2 o erro não desfaz a transação
+            log.debug("Resumo de {} {} do tenant {} criado por outra transação", mesReferencia, tipoVenda, tenantId);
+        }
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            try {
+                String banco = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(),
+                        DatabaseMetaData::getDatabaseProductName);
+                postgres = "PostgreSQL".equalsIgnoreCase(banco);
+            } catch (Exception e) {
+                log.warn("⚠️ Não foi possível identificar o banco: {}", e.getMessage());
+                postgres = false;
+            }
+        }
+        return postgres;
+    }
+
+    private BigDecimal multiplicar(BigDecimal valor, BigDecimal fator) {
+        return valor != null ? valor.multiply(fator) : BigDecimal.ZERO;
+    }
+
+    private BigDecimal valorOuZero(Object valor) {
+        return valor != null ? (BigDecimal) valor : BigDecimal.ZERO;
+    }
+}
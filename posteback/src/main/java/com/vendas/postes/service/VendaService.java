@@ -4,19 +4,25 @@ import com.vendas.postes.config.TenantContext;
 import com.vendas.postes.dto.*;
 import com.vendas.postes.model.Poste;
 import com.vendas.postes.model.Venda;
+import com.vendas.postes.model.VendaResumoMensal;
 import com.vendas.postes.repository.PosteRepository;
 import com.vendas.postes.repository.VendaRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -26,20 +32,65 @@ public class VendaService {
     private final VendaRepository vendaRepository;
     private final PosteRepository posteRepository;
     private final EstoqueService estoqueService;
+    private final EstoqueLockManager estoqueLockManager;
+    private final VendaResumoMensalService vendaResumoMensalService;
+    private final ExportacaoJsonService exportacaoJsonService;
+    private final VendasColunares vendasColunares;
 
+    @Transactional(readOnly = true)
     public List<VendaDTO> listarTodasVendas() {
         String tenantId = TenantContext.getCurrentTenantValue();
-        List<Venda> vendas = vendaRepository.findByTenantIdOrderByDataVendaDesc(tenantId);
-        return vendas.stream().map(this::convertToDTO).collect(Collectors.toList());
+        return vendaRepository.listarDTOs(tenantId);
     }
 
+    @Transactional(readOnly = true)
     public List<VendaDTO> listarVendasPorPeriodo(LocalDate dataInicio, LocalDate dataFim) {
         String tenantId = TenantContext.getCurrentTenantValue();
         LocalDateTime inicio = dataInicio != null ? dataInicio.atStartOfDay() : LocalDateTime.of(1900, 1, 1, 0, 0);
         LocalDateTime fim = dataFim != null ? dataFim.atTime(23, 59, 59) : LocalDateTime.now();
 
-        List<Venda> vendas = vendaRepository.findByTenantIdAndDataVendaBetween(tenantId, inicio, fim);
-        return vendas.stream().map(this::convertToDTO).collect(Collectors.toList());
+        return vendaRepository.listarDTOsNoPeriodo(tenantId, inicio, fim);
+    }
+
+    /**
+     * Lista as vendas do tenant em páginas, da mais recente para a mais antiga.
+     * Sem cursor começa pela primeira página; o período é opcional.
+     */
+    @Transactional(readOnly = true)
+    public PaginaDTO<VendaDTO> listarVendasPaginadas(LocalDate dataInicio, LocalDate dataFim, String cursor, Integer limite) {
+        String tenantId = TenantContext.getCurrentTenantValue();
+        int tamanho = PaginaDTO.limiteValido(limite);
+        LocalDateTime inicio = dataInicio != null ? dataInicio.atStartOfDay() : LocalDateTime.of(1900, 1, 1, 0, 0);
+
+        LocalDateTime cursorData;
+        Long cursorId;
+        if (cursor != null) {
+            PaginaDTO.Cursor posicao = PaginaDTO.decodificarCursor(cursor);
+            cursorData = posicao.chaveComoDataHora();
+            cursorId = posicao.getId();
+        } else {
+            // Primeira página: tudo antes do fim do período
+            cursorData = dataFim != null ? dataFim.plusDays(1).atStartOfDay() : LocalDateTime.of(9999, 12, 31, 0, 0);
+            cursorId = Long.MIN_VALUE;
+        }
+
+        List<VendaDTO> vendas = vendaRepository.buscarPagina(tenantId, inicio, cursorData, cursorId, Limit.of(tamanho + 1));
+
+        return PaginaDTO.montar(vendas, tamanho, venda -> PaginaDTO.codificarCursor(venda.getDataVenda(), venda.getId()));
+    }
+
+    /**
+     * Escreve as vendas do tenant no período como array JSON, em ordem cronológica, sem
+     * carregar o período inteiro em memória. Recebe o tenant porque costuma rodar fora
+     * da thread da requisição.
+     */
+    public long exportarVendas(String tenantId, LocalDate dataInicio, LocalDate dataFim, OutputStream saida)
+            throws IOException {
+        LocalDateTime inicio = dataInicio != null ? dataInicio.atStartOfDay() : LocalDateTime.of(1900, 1, 1, 0, 0);
+        LocalDateTime fim = dataFim != null ? dataFim.plusDays(1).atStartOfDay() : LocalDateTime.of(9999, 12, 31, 0, 0);
+
+        return exportacaoJsonService.escrever(() -> vendaRepository.streamPorPeriodo(tenantId, inicio, fim),
+                this::convertToDTO, saida);
     }
 
     public Optional<VendaDTO> buscarVendaPorId(Long id) {
@@ -74,6 +125,7 @@ public class VendaService {
         venda.setTenantId(tenantId);
 
         if (vendaCreateDTO.getPosteId() != null) {
+            bloquearCodigoBaseDoPoste(vendaCreateDTO.getPosteId());
             Poste poste = posteRepository.findById(vendaCreateDTO.getPosteId())
                     .orElseThrow(() -> new RuntimeException("Poste não encontrado"));
             venda.setPoste(poste);
@@ -93,6 +145,8 @@ public class VendaService {
             try {
                 estoqueService.reduzirEstoqueComData(venda.getPoste().getId(), venda.getQuantidade(), dataVenda, observacao);
                 log.info("✅ Estoque consolidado atualizado com sucesso");
+            } catch (EstoqueLockManager.TempoEsgotadoException e) {
+                throw e;
             } catch (Exception e) {
                 log.error("❌ Erro ao atualizar estoque consolidado: {}", e.getMessage());
                 // Continue mesmo se o estoque falhar - não queremos perder a venda
@@ -101,6 +155,10 @@ public class VendaService {
             log.info("ℹ️ Venda tipo {} não afeta estoque", venda.getTipoVenda());
         }
 
+        // Por último, para segurar a linha do mês o menor tempo possível
+        vendaResumoMensalService.registrarVenda(venda, 1);
+        vendasColunares.registrarAposCommit(venda);
+
         log.info("✅ Venda criada com sucesso: ID {} para tenant {}", venda.getId(), tenantId);
         return convertToDTO(venda);
     }
@@ -119,6 +177,26 @@ public class VendaService {
             throw new RuntimeException("Não é possível editar venda de outro caminhão");
         }
 
+        // Bloqueia os códigos base antigo e novo juntos, na ordem do lock manager, para que
+        // duas edições trocando os postes entre si não esperem uma pela outra. Os postes só são
+        // lidos depois, com o preço que uma alteração de preço concorrente já commitou
+        Set<String> codigosBase = new HashSet<>();
+        if (vendaExistente.getPoste() != null) {
+            posteRepository.findCodigoBaseById(vendaExistente.getPoste().getId()).ifPresent(codigosBase::add);
+        }
+        if (vendaUpdateDTO.getPosteId() != null) {
+            posteRepository.findCodigoBaseById(vendaUpdateDTO.getPosteId()).ifPresent(codigosBase::add);
+        }
+        estoqueLockManager.bloquearAteFimDaTransacao(codigosBase);
+
+        Venda vendaAnterior = copiarParaResumo(vendaExistente);
+
+        Poste novoPoste = null;
+        if (vendaUpdateDTO.getPosteId() != null) {
+            novoPoste = posteRepository.findById(vendaUpdateDTO.getPosteId())
+                    .orElseThrow(() -> new RuntimeException("Poste não encontrado"));
+        }
+
         // Reverter estoque da venda original se necessário COM DATA ORIGINAL
         if (vendaExistente.getPoste() != null && vendaExistente.getQuantidade() != null) {
             LocalDate dataOriginal = vendaExistente.getDataVenda().toLocalDate();
@@ -138,9 +216,7 @@ public class VendaService {
         vendaExistente.setObservacoes(vendaUpdateDTO.getObservacoes());
 
         // Atualizar poste se necessário
-        if (vendaUpdateDTO.getPosteId() != null) {
-            Poste novoPoste = posteRepository.findById(vendaUpdateDTO.getPosteId())
-                    .orElseThrow(() -> new RuntimeException("Poste não encontrado"));
+        if (novoPoste != null) {
             vendaExistente.setPoste(novoPoste);
         }
 
@@ -156,6 +232,9 @@ public class VendaService {
                     vendaExistente.getQuantidade(), novaData, observacaoNova);
         }
 
+        vendaResumoMensalService.substituirVenda(vendaAnterior, vendaExistente);
+        vendasColunares.registrarAposCommit(vendaExistente);
+
         return convertToDTO(vendaExistente);
     }
 
@@ -174,6 +253,10 @@ public class VendaService {
 
         log.info("🗑️ Excluindo venda ID: {} do tenant: {}", id, tenantAtual);
 
+        if (venda.getPoste() != null) {
+            bloquearCodigoBaseDoPoste(venda.getPoste().getId());
+        }
+
         // ⚡ REVERTER ESTOQUE CONSOLIDADO COM DATA DA VENDA ⚡
         if (venda.getPoste() != null && venda.getQuantidade() != null && venda.getQuantidade() > 0) {
             LocalDate dataVenda = venda.getDataVenda().toLocalDate();
@@ -187,6 +270,8 @@ public class VendaService {
                 estoqueService.adicionarEstoqueComData(venda.getPoste().getId(),
                         venda.getQuantidade(), dataVenda, observacao);
                 log.info("✅ Estoque consolidado revertido com sucesso");
+            } catch (EstoqueLockManager.TempoEsgotadoException e) {
+                throw e;
             } catch (Exception e) {
                 log.error("❌ Erro ao reverter estoque: {}", e.getMessage());
                 // Continue mesmo se falhar - não queremos impedir a exclusão
@@ -194,54 +279,82 @@ public class VendaService {
         }
 
         vendaRepository.delete(venda);
+        vendaResumoMensalService.registrarVenda(venda, -1);
+        vendasColunares.removerAposCommit(venda.getId());
         log.info("✅ Venda excluída com sucesso");
     }
 
     public ResumoVendasDTO obterResumoVendas() {
         String tenantId = TenantContext.getCurrentTenantValue();
-        List<Venda> vendas = vendaRepository.findByTenantId(tenantId);
-        return calcularResumo(vendas);
+        if (vendasColunares.isCarregado()) {
+            return calcularResumo(vendasColunares.somarPorTipo(tenantId, null, null));
+        }
+        return calcularResumo(vendaResumoMensalService.somarTudo(tenantId));
     }
 
     public ResumoVendasDTO obterResumoVendasPorPeriodo(LocalDate dataInicio, LocalDate dataFim) {
         String tenantId = TenantContext.getCurrentTenantValue();
+        if (vendasColunares.isCarregado()) {
+            return calcularResumo(vendasColunares.somarPorTipo(tenantId, dataInicio,
+                    dataFim != null ? dataFim : LocalDate.now()));
+        }
+
         LocalDateTime inicio = dataInicio != null ? dataInicio.atStartOfDay() : LocalDateTime.of(1900, 1, 1, 0, 0);
-        LocalDateTime fim = dataFim != null ? dataFim.atTime(23, 59, 59) : LocalDateTime.now();
+        LocalDateTime fim = dataFim != null ? dataFim.plusDays(1).atStartOfDay() : LocalDateTime.now();
+
+        return calcularResumo(vendaResumoMensalService.somarPeriodo(tenantId, inicio, fim));
+    }
+
+    /**
+     * Totais das vendas agrupados por tipo, semana, poste ou tenant, lidos do armazém colunar.
+     * Com consolidado=true soma os dois caminhões; os demais filtros são opcionais.
+     */
+    public List<TotalVendasDTO> agregarVendas(VendasColunares.Agrupamento agrupamento, LocalDate dataInicio,
+                                              LocalDate dataFim, Venda.TipoVenda tipoVenda, Long posteId,
+                                              boolean consolidado) {
+        if (!vendasColunares.isCarregado()) {
+            throw new IllegalStateException("Armazém colunar de vendas desligado (vendas.colunar.habilitado)");
+        }
+
+        String tenantId = consolidado ? null : TenantContext.getCurrentTenantValue();
+        return vendasColunares.agregar(tenantId, dataInicio, dataFim, tipoVenda, posteId, agrupamento);
+    }
 
-        List<Venda> vendas = vendaRepository.findByTenantIdAndDataVendaBetween(tenantId, inicio, fim);
-        return calcularResumo(vendas);
+    public Map<String, Object> obterMetricasColunares() {
+        return vendasColunares.obterMetricas();
     }
 
-    private ResumoVendasDTO calcularResumo(List<Venda> vendas) {
+    public List<VendaResumoMensal> listarResumoMensal() {
+        String tenantId = TenantContext.getCurrentTenantValue();
+        return vendaResumoMensalService.listarMeses(tenantId);
+    }
+
+    /**
+     * Monta o resumo a partir dos totais por tipo de venda (pode haver mais de uma linha por tipo).
+     * Cada tipo só contribui com o seu valor: E com extras, V com vendas e custo dos postes, L com frete.
+     */
+    private ResumoVendasDTO calcularResumo(List<Object[]> totaisPorTipo) {
         BigDecimal totalVendaPostes = BigDecimal.ZERO;
         BigDecimal valorTotalVendas = BigDecimal.ZERO;
         BigDecimal totalFreteEletrons = BigDecimal.ZERO;
         BigDecimal valorTotalExtras = BigDecimal.ZERO;
         long totalE = 0, totalV = 0, totalL = 0;
 
-        for (Venda venda : vendas) {
-            switch (venda.getTipoVenda()) {
+        for (Object[] linha : totaisPorTipo) {
+            long quantidade = ((Number) linha[1]).longValue();
+            switch ((Venda.TipoVenda) linha[0]) {
                 case E:
-                    totalE++;
-                    if (venda.getValorExtra() != null) {
-                        valorTotalExtras = valorTotalExtras.add(venda.getValorExtra());
-                    }
+                    totalE += quantidade;
+                    valorTotalExtras = valorTotalExtras.add(valorOuZero(linha[4]));
                     break;
                 case V:
-                    totalV++;
-                    if (venda.getValorVenda() != null) {
-                        valorTotalVendas = valorTotalVendas.add(venda.getValorVenda());
-                    }
-                    if (venda.getPoste() != null && venda.getQuantidade() != null) {
-                        BigDecimal custo = venda.getPoste().getPreco().multiply(BigDecimal.valueOf(venda.getQuantidade()));
-                        totalVendaPostes = totalVendaPostes.add(custo);
-                    }
+                    totalV += quantidade;
+                    valorTotalVendas = valorTotalVendas.add(valorOuZero(linha[2]));
+                    totalVendaPostes = totalVendaPostes.add(valorOuZero(linha[5]));
                     break;
                 case L:
-                    totalL++;
-                    if (venda.getFreteEletrons() != null) {
-                        totalFreteEletrons = totalFreteEletrons.add(venda.getFreteEletrons());
-                    }
+                    totalL += quantidade;
+                    totalFreteEletrons = totalFreteEletrons.add(valorOuZero(linha[3]));
                     break;
             }
         }
@@ -250,6 +363,34 @@ public class VendaService {
                 valorTotalExtras, totalE, totalV, totalL);
     }
 
+    /**
+     * Valores da venda que entram no resumo mensal, antes de uma alteração
+     */
+    /**
+     * Bloqueia o código base do poste até o fim da transação antes de o poste ser lido: o preço
+     * usado no resumo mensal é o mesmo que uma alteração de preço concorrente vê (PosteService)
+     */
+    private void bloquearCodigoBaseDoPoste(Long posteId) {
+        posteRepository.findCodigoBaseById(posteId).ifPresent(estoqueLockManager::bloquearAteFimDaTransacao);
+    }
+
+    private Venda copiarParaResumo(Venda venda) {
+        Venda copia = new Venda();
+        copia.setTenantId(venda.getTenantId());
+        copia.setDataVenda(venda.getDataVenda());
+        copia.setTipoVenda(venda.getTipoVenda());
+        copia.setPoste(venda.getPoste());
+        copia.setQuantidade(venda.getQuantidade());
+        copia.setValorVenda(venda.getValorVenda());
+        copia.setFreteEletrons(venda.getFreteEletrons());
+        copia.setValorExtra(venda.getValorExtra());
+        return copia;
+    }
+
+    private BigDecimal valorOuZero(Object valor) {
+        return valor != null ? (BigDecimal) valor : BigDecimal.ZERO;
+    }
+
     private VendaDTO convertToDTO(Venda venda) {
         VendaDTO dto = new VendaDTO();
         dto.setId(venda.getId());
@@ -0,0 +1,760 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.TotalVendasDTO;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.repository.VendaRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Cópia colunar das vendas em memória, para totais agrupados sem consultar o banco
+ * (opcional, vendas.colunar.habilitado).
+ *
+ * Cada campo usado nos totais é um vetor primitivo com uma posição por venda, em ordem de ID:
+ * dia (epoch day), tipo e tenant (ordinal), poste (ordinal no cadastro do armazém), quantidade
+ * e valores em centavos. O custo dos postes usa o preço atual de cada poste, como no resumo mensal.
+ *
+ * As vendas são divididas em blocos de 4096 posições, cada um com as somas por poste, semana,
+ * tipo e tenant das suas vendas e as mesmas somas sem o poste. Como o ID acompanha a data da
+ * venda, um período cobre blocos inteiros, somados pelo resumo, e só os blocos das pontas são
+ * lidos venda a venda.
+ *
+ * Carregado na subida; vendas criadas, alteradas e excluídas entram no commit da transação,
+ * refazendo o resumo dos blocos alterados. Exclusões só marcam a posição, que é reaproveitada
+ * na compactação.
+ */
+@Component
+@Slf4j
+public class VendasColunares {
+
+    public enum Agrupamento {
+        TIPO, SEMANA, POSTE, TENANT
+    }
+
+    private static final int CAPACIDADE_INICIAL = 1024;
+    private static final int TAMANHO_BLOCO = 4096;
+    // Semanas distintas que a chave de uma célula comporta (3 bits)
+    private static final int SEMANAS_POR_BLOCO = 8;
+    // Somas de cada célula: vendas, quantidade de postes, valor de venda, frete e extra
+    private static final int MEDIDAS = 5;
+    // Somas sem o poste, por semana, tipo e tenant (os 6 bits baixos da chave): as MEDIDAS e o custo
+    private static final int CHAVES_SEM_POSTE = 64;
+    private static final int MEDIDAS_SEM_POSTE = MEDIDAS + 1;
+    private static final byte REMOVIDA = -1;
+    private static final int SEM_POSTE = -1;
+    // id, dia, tipo, tenant, poste, quantidade e três valores
+    private static final int BYTES_POR_VENDA = 8 + 4 + 1 + 1 + 4 + 4 + 3 * 8;
+
+    private static final Venda.TipoVenda[] TIPOS = Venda.TipoVenda.values();
+    private static final TenantContext.TenantType[] TENANTS = TenantContext.TenantType.values();
+
+    private final VendaRepository vendaRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean habilitado;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean carregado;
+
+    // Colunas das vendas; as posições a partir de tamanho não são usadas
+    private long[] ids = new long[CAPACIDADE_INICIAL];
+    private int[] dias = new int[CAPACIDADE_INICIAL];
+    private byte[] tipos = new byte[CAPACIDADE_INICIAL];
+    private byte[] tenants = new byte[CAPACIDADE_INICIAL];
+    private int[] postes = new int[CAPACIDADE_INICIAL];
+    private int[] quantidades = new int[CAPACIDADE_INICIAL];
+    private long[] valoresVenda = new long[CAPACIDADE_INICIAL];
+    private long[] fretes = new long[CAPACIDADE_INICIAL];
+    private long[] extras = new long[CAPACIDADE_INICIAL];
+    private int tamanho;
+    private int removidas;
+    private int diaMinimo = Integer.MAX_VALUE;
+    private int diaMaximo = Integer.MIN_VALUE;
+
+    // Resumo de cada bloco de TAMANHO_BLOCO posições
+    private Bloco[] blocos = new Bloco[CAPACIDADE_INICIAL / TAMANHO_BLOCO + 1];
+    private final BitSet blocosAlterados = new BitSet();
+    // Célula de cada chave durante o resumo de um bloco (-1 sem célula)
+    private int[] celulaPorChave = new int[0];
+
+    // Postes por ordinal, com o preço atual em centavos
+    private final Map<Long, Integer> ordinalPorPoste = new HashMap<>();
+    private long[] idsPostes = new long[64];
+    private long[] precosPostes = new long[64];
+    private int totalPostes;
+
+    public VendasColunares(VendaRepository vendaRepository,
+                           TransactionTemplate transactionTemplate,
+                           @Value("${vendas.colunar.habilitado:false}") boolean habilitado) {
+        this.vendaRepository = vendaRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.habilitado = habilitado;
+    }
+
+    /**
+     * true depois da carga da subida; até lá os resumos continuam no banco
+     */
+    public boolean isCarregado() {
+        return carregado;
+    }
+
+    /**
+     * Lê todas as vendas do banco. Chamado uma vez na subida, antes das requisições.
+     */
+    public void carregar() {
+        if (!habilitado || carregado) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Object[]> linhas = vendaRepository.streamColunas()) {
+                    linhas.forEach(linha -> gravar(Linha.doBanco(linha)));
+                }
+            });
+            resumirBlocosAlterados();
+            carregado = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("📊 Vendas colunares carregadas: {} vendas, {} postes, {} KB", tamanho, totalPostes, bytes() / 1024);
+    }
+
+    /**
+     * Acompanha o preço dos postes, usado no custo dos postes vendidos
+     */
+    public void atualizarPoste(Poste poste) {
+        if (!carregado) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            alterarPreco(ordinalDoPoste(poste.getId()), centavos(poste.getPreco()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Grava a venda criada ou alterada no commit da transação atual, ou já, fora de transação.
+     * Os valores são copiados agora, da venda como está.
+     */
+    public void registrarAposCommit(Venda venda) {
+        if (carregado) {
+            aposCommit(List.of(Linha.daVenda(venda)), List.of());
+        }
+    }
+
+    /**
+     * Grava as vendas criadas em lote (importação) no commit; os campos são lidos do banco
+     * agora, dentro da transação que as gravou
+     */
+    public void registrarVendasAposCommit(Collection<Long> vendaIds) {
+        if (carregado && !vendaIds.isEmpty()) {
+            aposCommit(vendaRepository.listarColunasDasVendas(vendaIds).stream().map(Linha::doBanco).toList(), List.of());
+        }
+    }
+
+    /**
+     * Remove a venda no commit da transação atual, ou já, fora de transação
+     */
+    public void removerAposCommit(Long vendaId) {
+        if (carregado) {
+            aposCommit(List.of(), List.of(vendaId));
+        }
+    }
+
+    /**
+     * Totais das vendas que passam nos filtros, por grupo (postes na ordem em que entraram no
+     * armazém). Filtros nulos não restringem; tenantId nulo soma todos os tenants. Grupos sem
+     * vendas ficam de fora.
+     */
+    public List<TotalVendasDTO> agregar(String tenantId, LocalDate inicio, LocalDate fim, Venda.TipoVenda tipo,
+                                        Long posteId, Agrupamento agrupamento) {
+        lock.readLock().lock();
+        try {
+            Totais totais = somar(tenantId, inicio, fim, tipo, posteId, agrupamento);
+            if (totais == null) {
+                return List.of();
+            }
+
+            List<TotalVendasDTO> resultado = new ArrayList<>();
+            for (int grupo = 0; grupo < totais.contagem.length; grupo++) {
+                if (totais.contagem[grupo] > 0) {
+                    resultado.add(new TotalVendasDTO(chave(agrupamento, grupo, totais.semanaBase),
+                            totais.contagem[grupo], totais.quantidade[grupo], reais(totais.valorVenda[grupo]),
+                            reais(totais.frete[grupo]), reais(totais.extra[grupo]), reais(totais.custo[grupo])));
+                }
+            }
+            return resultado;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Totais por tipo das vendas do tenant entre inicio e fim (dias inclusive, nulos sem limite),
+     * no formato de VendaRepository.calcularResumoPorTipoNoPeriodo
+     */
+    public List<Object[]> somarPorTipo(String tenantId, LocalDate inicio, LocalDate fim) {
+        return agregar(tenantId, inicio, fim, null, null, Agrupamento.TIPO).stream()
+                .map(total -> new Object[]{Venda.TipoVenda.valueOf(total.getChave()), total.getQuantidadeVendas(),
+                        total.getValorVenda(), total.getFreteEletrons(), total.getValorExtra(), total.getCustoPostes()})
+                .toList();
+    }
+
+    public Map<String, Object> obterMetricas() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> metricas = new LinkedHashMap<>();
+            metricas.put("habilitado", habilitado);
+            metricas.put("carregado", carregado);
+            metricas.put("vendas", tamanho - removidas);
+            metricas.put("removidas", removidas);
+            metricas.put("capacidade", ids.length);
+            metricas.put("postes", totalPostes);
+            metricas.put("bytes", bytes());
+            return metricas;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void aposCommit(List<Linha> gravar, List<Long> remover) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            aplicar(gravar, remover);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                aplicar(gravar, remover);
+            }
+        });
+    }
+
+    private void aplicar(List<Linha> gravar, List<Long> remover) {
+        lock.writeLock().lock();
+        try {
+            gravar.forEach(this::gravar);
+            remover.forEach(this::remover);
+            resumirBlocosAlterados();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Grava a venda na posição do seu ID: substitui a existente ou abre espaço deslocando as
+     * seguintes. Os IDs vêm da sequence, então uma venda nova quase sempre entra no fim.
+     */
+    private void gravar(Linha linha) {
+        int posicao = Arrays.binarySearch(ids, 0, tamanho, linha.id);
+        if (posicao >= 0) {
+            if (tipos[posicao] == REMOVIDA) {
+                removidas--;
+            }
+            blocosAlterados.set(posicao / TAMANHO_BLOCO);
+        } else {
+            posicao = -posicao - 1;
+            garantirCapacidade(tamanho + 1);
+            deslocar(posicao, posicao + 1, tamanho - posicao);
+            tamanho++;
+            // As vendas seguintes mudaram de posição
+            blocosAlterados.set(posicao / TAMANHO_BLOCO, totalBlocos());
+        }
+
+        ids[posicao] = linha.id;
+        dias[posicao] = linha.dia;
+        tipos[posicao] = linha.tipo;
+        tenants[posicao] = linha.tenant;
+        postes[posicao] = linha.posteId != null ? ordinalDoPoste(linha.posteId) : SEM_POSTE;
+        quantidades[posicao] = linha.quantidade;
+        valoresVenda[posicao] = linha.valorVenda;
+        fretes[posicao] = linha.frete;
+        extras[posicao] = linha.extra;
+        if (linha.posteId != null) {
+            alterarPreco(postes[posicao], linha.precoPoste);
+        }
+
+        diaMinimo = Math.min(diaMinimo, linha.dia);
+        diaMaximo = Math.max(diaMaximo, linha.dia);
+    }
+
+    private void remover(Long vendaId) {
+        int posicao = Arrays.binarySearch(ids, 0, tamanho, vendaId);
+        if (posicao < 0 || tipos[posicao] == REMOVIDA) {
+            return;
+        }
+
+        tipos[posicao] = REMOVIDA;
+        removidas++;
+        blocosAlterados.set(posicao / TAMANHO_BLOCO);
+        if (removidas > CAPACIDADE_INICIAL && removidas > tamanho / 4) {
+            compactar();
+        }
+    }
+
+    /**
+     * Tira as posições removidas, mantendo a ordem de ID
+     */
+    private void compactar() {
+        int destino = 0;
+        for (int origem = 0; origem < tamanho; origem++) {
+            if (tipos[origem] != REMOVIDA) {
+                if (destino != origem) {
+                    deslocar(origem, destino, 1);
+                }
+                destino++;
+            }
+        }
+        log.info("🧹 Vendas colunares compactadas: {} posições removidas", tamanho - destino);
+        tamanho = destino;
+        removidas = 0;
+        blocosAlterados.set(0, totalBlocos());
+    }
+
+    private Totais somar(String tenantId, LocalDate inicio, LocalDate fim, Venda.TipoVenda tipo, Long posteId,
+                         Agrupamento agrupamento) {
+        if (tamanho == removidas) {
+            return null;
+        }
+
+        Consulta consulta = new Consulta();
+        consulta.agrupamento = agrupamento;
+        consulta.tenant = tenantId != null ? TenantContext.TenantType.fromValue(tenantId).ordinal() : -1;
+        consulta.tipo = tipo != null ? tipo.ordinal() : -1;
+        if (posteId != null) {
+            Integer ordinal = ordinalPorPoste.get(posteId);
+            if (ordinal == null) {
+                return null;
+            }
+            consulta.filtrarPoste = true;
+            consulta.poste = ordinal;
+        }
+        consulta.primeiroDia = Math.max(diaMinimo, inicio != null ? (int) inicio.toEpochDay() : Integer.MIN_VALUE);
+        consulta.ultimoDia = Math.min(diaMaximo, fim != null ? (int) fim.toEpochDay() : Integer.MAX_VALUE);
+        if (consulta.primeiroDia > consulta.ultimoDia) {
+            return null;
+        }
+
+        consulta.semanaBase = segundaFeira(consulta.primeiroDia);
+        int grupos = switch (agrupamento) {
+            case TIPO -> TIPOS.length;
+            case TENANT -> TENANTS.length;
+            case POSTE -> totalPostes + 1;
+            case SEMANA -> (segundaFeira(consulta.ultimoDia) - consulta.semanaBase) / 7 + 1;
+        };
+        Totais totais = new Totais(grupos, consulta.semanaBase);
+
+        // Blocos inteiros dentro do período saem do resumo; os das pontas são lidos venda a venda
+        for (int bloco = 0; bloco < totalBlocos(); bloco++) {
+            Bloco resumo = blocos[bloco];
+            if (resumo.ultimoDia < consulta.primeiroDia || resumo.primeiroDia > consulta.ultimoDia) {
+                continue;
+            }
+            if (resumo.primeiroDia >= consulta.primeiroDia && resumo.ultimoDia <= consulta.ultimoDia
+                    && (agrupamento != Agrupamento.SEMANA || resumo.porSemana)) {
+                if (consulta.filtrarPoste || agrupamento == Agrupamento.POSTE) {
+                    somarResumo(resumo, consulta, totais);
+                } else {
+                    somarResumoSemPoste(resumo, consulta, totais);
+                }
+            } else {
+                somarVendas(bloco * TAMANHO_BLOCO, Math.min(tamanho, (bloco + 1) * TAMANHO_BLOCO), consulta, totais);
+            }
+        }
+        return totais;
+    }
+
+    private void somarResumo(Bloco resumo, Consulta consulta, Totais totais) {
+        int[] chaves = resumo.chaves;
+        long[] somas = resumo.somas;
+        for (int celula = 0; celula < resumo.celulas; celula++) {
+            int chave = chaves[celula];
+            int tenant = chave & 1;
+            int tipo = (chave >> 1) & 3;
+            int poste = (chave >>> 6) - 1;
+            if (!consulta.aceita(tipo, tenant, poste)) {
+                continue;
+            }
+
+            int semana = resumo.primeiraSegunda + 7 * ((chave >> 3) & 7);
+            int soma = celula * MEDIDAS;
+            long quantidade = somas[soma + 1];
+            totais.somar(consulta.grupo(tipo, tenant, poste, semana), somas[soma], quantidade, somas[soma + 2],
+                    somas[soma + 3], somas[soma + 4], poste != SEM_POSTE ? precosPostes[poste] * quantidade : 0);
+        }
+    }
+
+    private void somarResumoSemPoste(Bloco resumo, Consulta consulta, Totais totais) {
+        long[] somas = resumo.somasSemPoste;
+        for (int chave = 0; chave < CHAVES_SEM_POSTE; chave++) {
+            int soma = chave * MEDIDAS_SEM_POSTE;
+            int tenant = chave & 1;
+            int tipo = (chave >> 1) & 3;
+            if (somas[soma] == 0 || !consulta.aceita(tipo, tenant, SEM_POSTE)) {
+                continue;
+            }
+
+            int semana = resumo.primeiraSegunda + 7 * (chave >> 3);
+            totais.somar(consulta.grupo(tipo, tenant, SEM_POSTE, semana), somas[soma], somas[soma + 1],
+                    somas[soma + 2], somas[soma + 3], somas[soma + 4], somas[soma + 5]);
+        }
+    }
+
+    private void somarVendas(int de, int ate, Consulta consulta, Totais totais) {
+        for (int i = de; i < ate; i++) {
+            int tipo = tipos[i];
+            int dia = dias[i];
+            int poste = postes[i];
+            if (tipo == REMOVIDA || dia < consulta.primeiroDia || dia > consulta.ultimoDia
+                    || !consulta.aceita(tipo, tenants[i], poste)) {
+                continue;
+            }
+
+            long quantidade = poste != SEM_POSTE ? quantidades[i] : 0;
+            totais.somar(consulta.grupo(tipo, tenants[i], poste, segundaFeira(dia)), 1, quantidade, valoresVenda[i],
+                    fretes[i], extras[i], poste != SEM_POSTE ? precosPostes[poste] * quantidade : 0);
+        }
+    }
+
+    /**
+     * Refaz o resumo dos blocos alterados. Chamado com a trava de escrita, antes de liberá-la.
+     */
+    private void resumirBlocosAlterados() {
+        for (int bloco = blocosAlterados.nextSetBit(0); bloco >= 0 && bloco < totalBlocos();
+             bloco = blocosAlterados.nextSetBit(bloco + 1)) {
+            blocos[bloco] = resumirBloco(bloco * TAMANHO_BLOCO, Math.min(tamanho, (bloco + 1) * TAMANHO_BLOCO));
+        }
+        blocosAlterados.clear();
+    }
+
+    /**
+     * Soma as vendas do bloco por poste, semana, tipo e tenant; só as combinações presentes
+     * viram células
+     */
+    private Bloco resumirBloco(int de, int ate) {
+        Bloco resumo = new Bloco();
+        for (int i = de; i < ate; i++) {
+            if (tipos[i] != REMOVIDA) {
+                resumo.primeiroDia = Math.min(resumo.primeiroDia, dias[i]);
+                resumo.ultimoDia = Math.max(resumo.ultimoDia, dias[i]);
+            }
+        }
+        if (resumo.primeiroDia > resumo.ultimoDia) {
+            return resumo;
+        }
+
+        resumo.primeiraSegunda = segundaFeira(resumo.primeiroDia);
+        resumo.porSemana = (segundaFeira(resumo.ultimoDia) - resumo.primeiraSegunda) / 7 < SEMANAS_POR_BLOCO;
+
+        int chavesPossiveis = (totalPostes + 1) << 6;
+        if (celulaPorChave.length < chavesPossiveis) {
+            celulaPorChave = new int[chavesPossiveis];
+            Arrays.fill(celulaPorChave, -1);
+        }
+
+        int[] chaves = new int[64];
+        long[] somas = new long[64 * MEDIDAS];
+        int celulas = 0;
+        for (int i = de; i < ate; i++) {
+            if (tipos[i] == REMOVIDA) {
+                continue;
+            }
+
+            int semana = resumo.porSemana ? (segundaFeira(dias[i]) - resumo.primeiraSegunda) / 7 : 0;
+            int chave = ((postes[i] + 1) << 6) | (semana << 3) | (tipos[i] << 1) | tenants[i];
+            int celula = celulaPorChave[chave];
+            if (celula < 0) {
+                if (celulas == chaves.length) {
+                    chaves = Arrays.copyOf(chaves, celulas * 2);
+                    somas = Arrays.copyOf(somas, celulas * 2 * MEDIDAS);
+                }
+                celula = celulas++;
+                chaves[celula] = chave;
+                celulaPorChave[chave] = celula;
+            }
+
+            int soma = celula * MEDIDAS;
+            somas[soma]++;
+            somas[soma + 1] += postes[i] != SEM_POSTE ? quantidades[i] : 0;
+            somas[soma + 2] += valoresVenda[i];
+            somas[soma + 3] += fretes[i];
+            somas[soma + 4] += extras[i];
+        }
+        long[] somasSemPoste = new long[CHAVES_SEM_POSTE * MEDIDAS_SEM_POSTE];
+        for (int celula = 0; celula < celulas; celula++) {
+            celulaPorChave[chaves[celula]] = -1;
+
+            int poste = (chaves[celula] >>> 6) - 1;
+            int soma = celula * MEDIDAS;
+            int destino = (chaves[celula] & (CHAVES_SEM_POSTE - 1)) * MEDIDAS_SEM_POSTE;
+            for (int medida = 0; medida < MEDIDAS; medida++) {
+                somasSemPoste[destino + medida] += somas[soma + medida];
+            }
+            somasSemPoste[destino + MEDIDAS] += poste != SEM_POSTE ? precosPostes[poste] * somas[soma + 1] : 0;
+        }
+
+        resumo.celulas = celulas;
+        resumo.chaves = Arrays.copyOf(chaves, celulas);
+        resumo.somas = Arrays.copyOf(somas, celulas * MEDIDAS);
+        resumo.somasSemPoste = somasSemPoste;
+        return resumo;
+    }
+
+    /**
+     * Troca o preço do poste e corrige o custo já somado nos resumos sem poste pela diferença
+     * × quantidade do poste em cada célula
+     */
+    private void alterarPreco(int poste, long preco) {
+        long diferenca = preco - precosPostes[poste];
+        if (diferenca == 0) {
+            return;
+        }
+
+        precosPostes[poste] = preco;
+        int chavePoste = poste + 1;
+        for (int bloco = 0; bloco < totalBlocos(); bloco++) {
+            Bloco resumo = blocos[bloco];
+            // Blocos ainda não resumidos (carga ou alteração em andamento) saem com o preço novo
+            if (resumo == null) {
+                continue;
+            }
+            for (int celula = 0; celula < resumo.celulas; celula++) {
+                if (resumo.chaves[celula] >>> 6 == chavePoste) {
+                    int destino = (resumo.chaves[celula] & (CHAVES_SEM_POSTE - 1)) * MEDIDAS_SEM_POSTE;
+                    resumo.somasSemPoste[destino + MEDIDAS] += diferenca * resumo.somas[celula * MEDIDAS + 1];
+                }
+            }
+        }
+    }
+
+    private int totalBlocos() {
+        return (tamanho + TAMANHO_BLOCO - 1) / TAMANHO_BLOCO;
+    }
+
+    private String chave(Agrupamento agrupamento, int grupo, int semanaBase) {
+        return switch (agrupamento) {
+            case TIPO -> TIPOS[grupo].name();
+            case TENANT -> TENANTS[grupo].getValue();
+            case POSTE -> grupo == 0 ? "sem-poste" : String.valueOf(idsPostes[grupo - 1]);
+            case SEMANA -> LocalDate.ofEpochDay(semanaBase + 7L * grupo).toString();
+        };
+    }
+
+    private int ordinalDoPoste(Long posteId) {
+        Integer ordinal = ordinalPorPoste.get(posteId);
+        if (ordinal != null) {
+            return ordinal;
+        }
+
+        if (totalPostes == idsPostes.length) {
+            idsPostes = Arrays.copyOf(idsPostes, totalPostes * 2);
+            precosPostes = Arrays.copyOf(precosPostes, totalPostes * 2);
+        }
+        idsPostes[totalPostes] = posteId;
+        ordinalPorPoste.put(posteId, totalPostes);
+        return totalPostes++;
+    }
+
+    private void garantirCapacidade(int necessaria) {
+        if (necessaria <= ids.length) {
+            return;
+        }
+
+        int capacidade = Math.max(necessaria, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacidade);
+        dias = Arrays.copyOf(dias, capacidade);
+        tipos = Arrays.copyOf(tipos, capacidade);
+        tenants = Arrays.copyOf(tenants, capacidade);
+        postes = Arrays.copyOf(postes, capacidade);
+        quantidades = Arrays.copyOf(quantidades, capacidade);
+        valoresVenda = Arrays.copyOf(valoresVenda, capacidade);
+        fretes = Arrays.copyOf(fretes, capacidade);
+        extras = Arrays.copyOf(extras, capacidade);
+        blocos = Arrays.copyOf(blocos, capacidade / TAMANHO_BLOCO + 1);
+    }
+
+    private void deslocar(int origem, int destino, int quantidade) {
+        System.arraycopy(ids, origem, ids, destino, quantidade);
+        System.arraycopy(dias, origem, dias, destino, quantidade);
+        System.arraycopy(tipos, origem, tipos, destino, quantidade);
+        System.arraycopy(tenants, origem, tenants, destino, quantidade);
+        System.arraycopy(postes, origem, postes, destino, quantidade);
+        System.arraycopy(quantidades, origem, quantidades, destino, quantidade);
+        System.arraycopy(valoresVenda, origem, valoresVenda, destino, quantidade);
+        System.arraycopy(fretes, origem, fretes, destino, quantidade);
+        System.arraycopy(extras, origem, extras, destino, quantidade);
+    }
+
+    private long bytes() {
+        long bytes = (long) ids.length * BYTES_POR_VENDA + 16L * idsPostes.length;
+        for (int bloco = 0; bloco < totalBlocos(); bloco++) {
+            bytes += 64 + 4L * blocos[bloco].chaves.length + 8L * (blocos[bloco].somas.length
+                    + blocos[bloco].somasSemPoste.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Epoch day da segunda-feira da semana do dia (o dia 0, 01/01/1970, é uma quinta)
+     */
+    private static int segundaFeira(int dia) {
+        return dia - Math.floorMod(dia + 3, 7);
+    }
+
+    private static long centavos(BigDecimal valor) {
+        return valor != null ? valor.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact() : 0;
+    }
+
+    private static BigDecimal reais(long centavos) {
+        return BigDecimal.valueOf(centavos, 2);
+    }
+
+    /**
+     * Campos de uma venda já convertidos para as colunas
+     */
+    private static class Linha {
+        long id;
+        int dia;
+        byte tipo;
+        byte tenant;
+        Long posteId;
+        long precoPoste;
+        int quantidade;
+        long valorVenda;
+        long frete;
+        long extra;
+
+        static Linha daVenda(Venda venda) {
+            Linha linha = new Linha();
+            linha.id = venda.getId();
+            linha.dia = (int) venda.getDataVenda().toLocalDate().toEpochDay();
+            linha.tipo = (byte) venda.getTipoVenda().ordinal();
+            linha.tenant = (byte) TenantContext.TenantType.fromValue(venda.getTenantId()).ordinal();
+            if (venda.getPoste() != null) {
+                linha.posteId = venda.getPoste().getId();
+                linha.precoPoste = centavos(venda.getPoste().getPreco());
+            }
+            linha.quantidade = venda.getQuantidade() != null ? venda.getQuantidade() : 0;
+            linha.valorVenda = centavos(venda.getValorVenda());
+            linha.frete = centavos(venda.getFreteEletrons());
+            linha.extra = centavos(venda.getValorExtra());
+            return linha;
+        }
+
+        /**
+         * Linha no formato de VendaRepository.streamColunas
+         */
+        static Linha doBanco(Object[] campos) {
+            Linha linha = new Linha();
+            linha.id = (Long) campos[0];
+            linha.dia = (int) ((LocalDateTime) campos[1]).toLocalDate().toEpochDay();
+            linha.tipo = (byte) ((Venda.TipoVenda) campos[2]).ordinal();
+            linha.posteId = (Long) campos[3];
+            linha.precoPoste = centavos((BigDecimal) campos[4]);
+            linha.tenant = (byte) TenantContext.TenantType.fromValue((String) campos[5]).ordinal();
+            linha.quantidade = campos[6] != null ? (Integer) campos[6] : 0;
+            linha.valorVenda = centavos((BigDecimal) campos[7]);
+            linha.frete = centavos((BigDecimal) campos[8]);
+            linha.extra = centavos((BigDecimal) campos[9]);
+            return linha;
+        }
+    }
+
+    /**
+     * Filtros e agrupamento de uma consulta, já em ordinais e epoch days
+     */
+    private static class Consulta {
+        Agrupamento agrupamento;
+        int tenant;
+        int tipo;
+        boolean filtrarPoste;
+        int poste;
+        int primeiroDia;
+        int ultimoDia;
+        int semanaBase;
+
+        boolean aceita(int tipoVenda, int tenantVenda, int posteVenda) {
+            return (tipo < 0 || tipoVenda == tipo)
+                    && (tenant < 0 || tenantVenda == tenant)
+                    && (!filtrarPoste || posteVenda == poste);
+        }
+
+        int grupo(int tipoVenda, int tenantVenda, int posteVenda, int segundaFeira) {
+            return switch (agrupamento) {
+                case TIPO -> tipoVenda;
+                case TENANT -> tenantVenda;
+                case POSTE -> posteVenda + 1;
+                case SEMANA -> (segundaFeira - semanaBase) / 7;
+            };
+        }
+    }
+
+    /**
+     * Resumo de um bloco: dias cobertos e somas por célula. A chave da célula junta o poste
+     * (ordinal + 1), a semana a partir da primeiraSegunda (3 bits), o tipo (2 bits) e o tenant (1 bit).
+     * Se o bloco cobre mais de SEMANAS_POR_BLOCO semanas, porSemana é false e a semana fica 0.
+     */
+    private static class Bloco {
+        int primeiroDia = Integer.MAX_VALUE;
+        int ultimoDia = Integer.MIN_VALUE;
+        int primeiraSegunda;
+        boolean porSemana;
+        int celulas;
+        int[] chaves = new int[0];
+        long[] somas = new long[0];
+        long[] somasSemPoste = new long[CHAVES_SEM_POSTE * MEDIDAS_SEM_POSTE];
+    }
+
+    /**
+     * Somas por grupo de uma consulta
+     */
+    private static class Totais {
+        final int semanaBase;
+        final long[] contagem;
+        final long[] quantidade;
+        final long[] valorVenda;
+        final long[] frete;
+        final long[] extra;
+        final long[] custo;
+
+        Totais(int grupos, int semanaBase) {
+            this.semanaBase = semanaBase;
+            this.contagem = new long[grupos];
+            this.quantidade = new long[grupos];
+            this.valorVenda = new long[grupos];
+            this.frete = new long[grupos];
+            this.extra = new long[grupos];
+            this.custo = new long[grupos];
+        }
+
+        void somar(int grupo, long vendas, long quantidadePostes, long venda, long valorFrete, long valorExtra,
+                   long valorCusto) {
+            contagem[grupo] += vendas;
+            quantidade[grupo] += quantidadePostes;
+            valorVenda[grupo] += venda;
+            frete[grupo] += valorFrete;
+            extra[grupo] += valorExtra;
+            custo[grupo] += valorCusto;
+        }
+    }
+}
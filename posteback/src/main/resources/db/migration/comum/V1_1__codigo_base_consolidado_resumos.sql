@@ -0,0 +1,62 @@
+-- Objetos criados depois do esquema inicial: código base dos postes, sequences dos IDs,
+-- estoque consolidado, checkpoints de estoque, resumo mensal de vendas e índices das
+-- consultas. IF NOT EXISTS porque bancos vindos do ddl-auto=update podem já ter parte deles.
+-- Os postes antigos recebem o código base e as sequences passam do maior ID na subida
+-- (InicializacaoDados).
+
+ALTER TABLE postes ADD COLUMN IF NOT EXISTS codigo_base VARCHAR(255);
+
+CREATE SEQUENCE IF NOT EXISTS postes_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS estoque_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS estoque_consolidado_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS estoque_checkpoint_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS movimento_estoque_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS vendas_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS venda_resumo_mensal_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS despesas_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS estoque_consolidado (
+    id                  BIGINT       NOT NULL,
+    codigo_base         VARCHAR(255) NOT NULL UNIQUE,
+    quantidade_total    INTEGER      NOT NULL,
+    quantidade_vermelho INTEGER      NOT NULL,
+    quantidade_branco   INTEGER      NOT NULL,
+    data_atualizacao    TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS estoque_checkpoint (
+    id              BIGINT       NOT NULL,
+    poste_id        BIGINT       NOT NULL,
+    tenant_id       VARCHAR(20)  NOT NULL,
+    data_referencia DATE         NOT NULL,
+    quantidade      INTEGER      NOT NULL,
+    data_calculo    TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_checkpoint_poste_tenant_data UNIQUE (poste_id, tenant_id, data_referencia)
+);
+
+CREATE TABLE IF NOT EXISTS venda_resumo_mensal (
+    id                BIGINT        NOT NULL,
+    tenant_id         VARCHAR(20)   NOT NULL,
+    mes_referencia    DATE          NOT NULL,
+    tipo_venda        VARCHAR(255)  NOT NULL CHECK (tipo_venda IN ('E', 'V', 'L')),
+    quantidade_vendas BIGINT        NOT NULL,
+    valor_venda       NUMERIC(15,2) NOT NULL,
+    frete_eletrons    NUMERIC(15,2) NOT NULL,
+    valor_extra       NUMERIC(15,2) NOT NULL,
+    custo_postes      NUMERIC(15,2) NOT NULL,
+    data_atualizacao  TIMESTAMP(6)  NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_venda_resumo_tenant_mes_tipo UNIQUE (tenant_id, mes_referencia, tipo_venda)
+);
+
+CREATE INDEX IF NOT EXISTS idx_postes_codigo_base ON postes (codigo_base);
+CREATE INDEX IF NOT EXISTS idx_postes_tenant_codigo_id ON postes (tenant_id, codigo, id);
+CREATE INDEX IF NOT EXISTS idx_checkpoint_tenant_data ON estoque_checkpoint (tenant_id, data_referencia);
+CREATE INDEX IF NOT EXISTS idx_movimento_poste_tenant_data_id ON movimento_estoque (poste_id, tenant_id, data_movimento, id);
+CREATE INDEX IF NOT EXISTS idx_movimento_tenant_data_id ON movimento_estoque (tenant_id, data_movimento, id);
+CREATE INDEX IF NOT EXISTS idx_movimento_tenant_registro_id ON movimento_estoque (tenant_id, data_registro DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_movimento_registro_id ON movimento_estoque (data_registro DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_venda_tenant_data_id ON vendas (tenant_id, data_venda, id);
+CREATE INDEX IF NOT EXISTS idx_despesa_tenant_data_id ON despesas (tenant_id, data_despesa, id);
@@ -0,0 +1,34 @@
+-- Movimentos de anos fechados vão para segmentos em disco; no banco ficam o registro de
+-- cada segmento e os movimentos somados por poste, dia e tipo.
+
+CREATE SEQUENCE movimento_resumo_diario_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE movimento_arquivo_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE movimento_resumo_diario (
+    id             BIGINT       NOT NULL,
+    tenant_id      VARCHAR(20)  NOT NULL,
+    poste_id       BIGINT       NOT NULL,
+    data_movimento DATE         NOT NULL,
+    tipo_movimento VARCHAR(255) NOT NULL
+        CHECK (tipo_movimento IN ('ENTRADA', 'SAIDA', 'VENDA', 'AJUSTE', 'TRANSFERENCIA')),
+    movimentos     BIGINT       NOT NULL,
+    quantidade     BIGINT       NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_resumo_diario_tenant_poste_data_tipo UNIQUE (tenant_id, poste_id, data_movimento, tipo_movimento),
+    CONSTRAINT fk_resumo_diario_poste FOREIGN KEY (poste_id) REFERENCES postes (id)
+);
+
+-- Relatório do tenant por período; o saldo de um poste usa a constraint única (tenant, poste, data)
+CREATE INDEX idx_resumo_diario_tenant_data ON movimento_resumo_diario (tenant_id, data_movimento);
+
+CREATE TABLE movimento_arquivo (
+    id                BIGINT       NOT NULL,
+    tenant_id         VARCHAR(20)  NOT NULL,
+    ano               INTEGER      NOT NULL,
+    arquivo           VARCHAR(255) NOT NULL UNIQUE,
+    linhas            BIGINT       NOT NULL,
+    data_inicial      DATE         NOT NULL,
+    data_final        DATE         NOT NULL,
+    data_arquivamento TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,27 @@
+-- Mesmos índices da versão PostgreSQL. O H2 não tem índices parciais, então a
+-- condição (ativo, quantidade) entra como coluna do índice.
+
+-- Bancos anteriores ao índice podem ter mais de um registro de estoque por poste: as quantidades
+-- são somadas no registro de menor id e os outros são apagados antes de criar o índice único
+UPDATE estoque e SET
+    quantidade_atual = (SELECT SUM(d.quantidade_atual) FROM estoque d WHERE d.poste_id = e.poste_id),
+    data_atualizacao = (SELECT MAX(d.data_atualizacao) FROM estoque d WHERE d.poste_id = e.poste_id)
+WHERE e.id IN (SELECT MIN(id) FROM estoque GROUP BY poste_id HAVING COUNT(*) > 1);
+
+DELETE FROM estoque WHERE id NOT IN (SELECT MIN(id) FROM estoque GROUP BY poste_id);
+
+CREATE UNIQUE INDEX uk_estoque_poste ON estoque (poste_id);
+
+CREATE INDEX idx_estoque_tenant_com_quantidade ON estoque (tenant_id, quantidade_atual);
+
+CREATE INDEX idx_postes_tenant_ativos ON postes (tenant_id, ativo, codigo, id);
+
+CREATE INDEX idx_postes_codigo_base_ativos ON postes (codigo_base, ativo, id);
+
+CREATE INDEX idx_movimento_poste_tenant_registro ON movimento_estoque (poste_id, tenant_id, data_registro DESC);
+
+CREATE INDEX idx_movimento_data ON movimento_estoque (data_movimento);
+
+CREATE INDEX idx_venda_poste_data ON vendas (poste_id, data_venda);
+
+CREATE INDEX idx_checkpoint_data ON estoque_checkpoint (data_referencia);
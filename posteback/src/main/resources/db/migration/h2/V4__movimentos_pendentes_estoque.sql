@@ -0,0 +1,5 @@
+-- Mesma coluna da versão PostgreSQL. O H2 não tem índices parciais, então a
+-- condição entra como coluna do índice.
+ALTER TABLE movimento_estoque ADD COLUMN estoque_aplicado BOOLEAN DEFAULT TRUE NOT NULL;
+
+CREATE INDEX idx_movimento_estoque_pendente ON movimento_estoque (estoque_aplicado, id);
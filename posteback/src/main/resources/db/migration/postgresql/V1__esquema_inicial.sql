@@ -0,0 +1,67 @@
+-- Esquema que o ddl-auto=update criou em produção a partir das entidades originais
+-- (IDs IDENTITY/bigserial, sem código base nem tabelas derivadas). Em produção esta versão
+-- é registrada como baseline (spring.flyway.baseline-version=1) e não é executada; o que
+-- veio depois está na V1.1.
+
+CREATE TABLE despesas (
+    data_despesa DATE          NOT NULL,
+    valor        NUMERIC(10,2) NOT NULL,
+    id           BIGSERIAL     NOT NULL,
+    tenant_id    VARCHAR(20),
+    descricao    VARCHAR(500)  NOT NULL,
+    tipo         VARCHAR(255)  NOT NULL CHECK (tipo IN ('FUNCIONARIO', 'OUTRAS')),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE estoque (
+    quantidade_atual  INTEGER      NOT NULL,
+    quantidade_minima INTEGER,
+    data_atualizacao  TIMESTAMP(6) NOT NULL,
+    id                BIGSERIAL     NOT NULL,
+    poste_id          BIGINT       NOT NULL,
+    tenant_id         VARCHAR(20),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE movimento_estoque (
+    data_movimento      DATE         NOT NULL,
+    quantidade          INTEGER      NOT NULL,
+    quantidade_anterior INTEGER,
+    quantidade_atual    INTEGER,
+    data_registro       TIMESTAMP(6) NOT NULL,
+    id                  BIGSERIAL     NOT NULL,
+    poste_id            BIGINT       NOT NULL,
+    tenant_id           VARCHAR(20),
+    observacao          VARCHAR(500),
+    tipo_movimento      VARCHAR(255) NOT NULL
+        CHECK (tipo_movimento IN ('ENTRADA', 'SAIDA', 'VENDA', 'AJUSTE', 'TRANSFERENCIA')),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE postes (
+    ativo     BOOLEAN       NOT NULL,
+    preco     NUMERIC(10,2) NOT NULL,
+    id        BIGSERIAL     NOT NULL,
+    tenant_id VARCHAR(20),
+    descricao VARCHAR(500)  NOT NULL,
+    codigo    VARCHAR(255)  NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE vendas (
+    frete_eletrons NUMERIC(10,2),
+    quantidade     INTEGER,
+    valor_extra    NUMERIC(10,2),
+    valor_venda    NUMERIC(10,2),
+    data_venda     TIMESTAMP(6)  NOT NULL,
+    id             BIGSERIAL     NOT NULL,
+    poste_id       BIGINT,
+    tenant_id      VARCHAR(20),
+    observacoes    VARCHAR(1000),
+    tipo_venda     VARCHAR(255)  NOT NULL CHECK (tipo_venda IN ('E', 'V', 'L')),
+    PRIMARY KEY (id)
+);
+
+ALTER TABLE estoque ADD CONSTRAINT FKgv4lk1usb3y454q7hd6nnrdd0 FOREIGN KEY (poste_id) REFERENCES postes;
+ALTER TABLE movimento_estoque ADD CONSTRAINT FKh0dhni938wvj23px4pyerxhdu FOREIGN KEY (poste_id) REFERENCES postes;
+ALTER TABLE vendas ADD CONSTRAINT FKl62w8iud0qqbbv96vp2sbvy1a FOREIGN KEY (poste_id) REFERENCES postes;
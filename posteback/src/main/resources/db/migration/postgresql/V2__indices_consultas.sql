@@ -0,0 +1,39 @@
+-- Índices compostos na ordem das colunas de cada consulta dos repositórios.
+-- IF NOT EXISTS porque bancos vindos do ddl-auto=update podem já ter parte deles.
+
+-- Bancos anteriores ao índice podem ter mais de um registro de estoque por poste: as quantidades
+-- são somadas no registro de menor id e os outros são apagados antes de criar o índice único
+UPDATE estoque e SET
+    quantidade_atual = (SELECT SUM(d.quantidade_atual) FROM estoque d WHERE d.poste_id = e.poste_id),
+    data_atualizacao = (SELECT MAX(d.data_atualizacao) FROM estoque d WHERE d.poste_id = e.poste_id)
+WHERE e.id IN (SELECT MIN(id) FROM estoque GROUP BY poste_id HAVING COUNT(*) > 1);
+
+DELETE FROM estoque WHERE id NOT IN (SELECT MIN(id) FROM estoque GROUP BY poste_id);
+
+-- Um registro de estoque por poste (EstoqueRepository.findByPosteId / findByPosteIdIn)
+CREATE UNIQUE INDEX IF NOT EXISTS uk_estoque_poste ON estoque (poste_id);
+
+-- listarDTOsComQuantidade: estoque do tenant com quantidade > 0
+CREATE INDEX IF NOT EXISTS idx_estoque_tenant_com_quantidade
+    ON estoque (tenant_id, poste_id) WHERE quantidade_atual > 0;
+
+-- findByTenantIdAndAtivoTrue, saldos por tenant e estoque consolidado: só postes ativos, por código
+CREATE INDEX IF NOT EXISTS idx_postes_tenant_ativos
+    ON postes (tenant_id, codigo, id) WHERE ativo = true;
+
+-- findByCodigoBaseAndAtivoTrue e consultas de estoque por código base
+CREATE INDEX IF NOT EXISTS idx_postes_codigo_base_ativos
+    ON postes (codigo_base, id) WHERE ativo = true;
+
+-- listarDTOsDoPoste: histórico do poste, mais recente primeiro
+CREATE INDEX IF NOT EXISTS idx_movimento_poste_tenant_registro
+    ON movimento_estoque (poste_id, tenant_id, data_registro DESC);
+
+-- calcularVariacaoPorPosteETenant, findPrimeiraDataMovimento e consolidados no período (sem tenant)
+CREATE INDEX IF NOT EXISTS idx_movimento_data ON movimento_estoque (data_movimento);
+
+-- somarQuantidadeMensalDoPoste; também evita varrer vendas ao apagar um poste
+CREATE INDEX IF NOT EXISTS idx_venda_poste_data ON vendas (poste_id, data_venda);
+
+-- findByDataReferencia, findUltimaDataReferencia e findDatasReferenciaAPartirDe (sem tenant)
+CREATE INDEX IF NOT EXISTS idx_checkpoint_data ON estoque_checkpoint (data_referencia);
@@ -0,0 +1,5 @@
+-- Movimentos gravados pelo estoque em memória antes da tabela estoque ser atualizada.
+-- A descarga marca estoque_aplicado = true; na subida os que ficaram false são reaplicados.
+ALTER TABLE movimento_estoque ADD COLUMN estoque_aplicado BOOLEAN DEFAULT TRUE NOT NULL;
+
+CREATE INDEX idx_movimento_estoque_pendente ON movimento_estoque (id) WHERE estoque_aplicado = false;
@@ -0,0 +1,76 @@
+package com.vendas.postes;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Banco como o de produção: criado pelo ddl-auto=update a partir das entidades do baseline e
+ * com dados, inclusive estoque duplicado de um poste. A V1 vira baseline, a V1.1 em diante cria o que falta e a aplicação sobe com
+ * ddl-auto=validate.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + MigracaoBaselineTest.URL,
+        "spring.flyway.baseline-on-migrate=true",
+        "spring.flyway.baseline-version=1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class MigracaoBaselineTest {
+
+    static final String URL = "jdbc:h2:mem:baseline-producao;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void criarBancoDoBaseline() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("db/esquema-baseline-h2.sql")).execute(dataSource);
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("INSERT INTO postes (id, codigo, descricao, preco, ativo, tenant_id) VALUES " +
+                "(1, '4199', 'Poste 4199', 100.00, TRUE, 'vermelho'), (2, '4199-B', 'Poste 4199', 90.00, TRUE, 'branco')");
+        jdbc.update("INSERT INTO estoque (id, poste_id, quantidade_atual, quantidade_minima, data_atualizacao, tenant_id) " +
+                "VALUES (1, 1, 10, 0, TIMESTAMP '2024-05-01 10:00:00', 'vermelho'), " +
+                "(2, 2, 4, 0, TIMESTAMP '2024-05-01 10:00:00', 'branco'), " +
+                "(3, 1, 5, 0, TIMESTAMP '2024-05-03 08:00:00', 'vermelho')");
+        jdbc.update("INSERT INTO vendas (id, data_venda, tipo_venda, poste_id, quantidade, valor_venda, tenant_id) " +
+                "VALUES (1, TIMESTAMP '2024-05-02 09:00:00', 'V', 1, 2, 500.00, 'vermelho')");
+    }
+
+    @Test
+    void bancoDoBaselineMigraESobeComValidate() {
+        List<Map<String, Object>> historico = jdbcTemplate.queryForList(
+                "SELECT \"version\", \"type\", \"success\" FROM \"flyway_schema_history\" " +
+                "WHERE \"version\" IS NOT NULL ORDER BY \"installed_rank\"");
+        assertEquals("1", historico.get(0).get("version"));
+        assertEquals("BASELINE", historico.get(0).get("type"));
+        assertEquals("1.1", historico.get(1).get("version"));
+        historico.forEach(migracao -> assertEquals(true, migracao.get("success")));
+
+        // Código base preenchido, consolidado e resumo mensal montados a partir dos dados existentes
+        assertEquals(List.of("4199", "4199"),
+                jdbcTemplate.queryForList("SELECT codigo_base FROM postes ORDER BY id", String.class));
+        assertEquals(19, jdbcTemplate.queryForObject(
+                "SELECT quantidade_total FROM estoque_consolidado WHERE codigo_base = '4199'", Integer.class));
+        assertEquals(1L, jdbcTemplate.queryForObject(
+                "SELECT SUM(quantidade_vendas) FROM venda_resumo_mensal", Long.class));
+
+        // Estoque duplicado do poste somado no registro mais antigo antes do índice único
+        assertEquals(List.of(Map.of("ID", 1L, "POSTE_ID", 1L, "QUANTIDADE_ATUAL", 15),
+                        Map.of("ID", 2L, "POSTE_ID", 2L, "QUANTIDADE_ATUAL", 4)),
+                jdbcTemplate.queryForList("SELECT id, poste_id, quantidade_atual FROM estoque ORDER BY id"));
+    }
+}
@@ -0,0 +1,91 @@
+package com.vendas.postes.benchmark;
+
+import com.vendas.postes.service.EstoqueLockManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vazão de alterações de estoque com e sem o lock por código base, com 1, 4 e 16 threads.
+ * A seção crítica simula a leitura e escrita do saldo de um código sorteado entre 32.
+ *
+ * Para rodar:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main EstoqueLockManagerBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EstoqueLockManagerBenchmark {
+
+    private static final int CODIGOS = 32;
+
+    private EstoqueLockManager estoqueLockManager;
+    private String[] codigosBase;
+    private int[] saldos;
+
+    @Setup
+    public void preparar() {
+        estoqueLockManager = new EstoqueLockManager();
+        codigosBase = new String[CODIGOS];
+        saldos = new int[CODIGOS];
+        for (int i = 0; i < CODIGOS; i++) {
+            codigosBase[i] = String.valueOf(4100 + i);
+            saldos[i] = 1_000_000;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int semLock_1Thread() {
+        return alterarSaldo(ThreadLocalRandom.current().nextInt(CODIGOS));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int semLock_4Threads() {
+        return alterarSaldo(ThreadLocalRandom.current().nextInt(CODIGOS));
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int semLock_16Threads() {
+        return alterarSaldo(ThreadLocalRandom.current().nextInt(CODIGOS));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int comLock_1Thread() {
+        return alterarSaldoComLock(ThreadLocalRandom.current().nextInt(CODIGOS));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int comLock_4Threads() {
+        return alterarSaldoComLock(ThreadLocalRandom.current().nextInt(CODIGOS));
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int comLock_16Threads() {
+        return alterarSaldoComLock(ThreadLocalRandom.current().nextInt(CODIGOS));
+    }
+
+    private int alterarSaldoComLock(int indice) {
+        return estoqueLockManager.executarComLock(codigosBase[indice], () -> alterarSaldo(indice));
+    }
+
+    private int alterarSaldo(int indice) {
+        int saldo = saldos[indice];
+        Blackhole.consumeCPU(64);
+        saldos[indice] = saldo - 1;
+        return saldo;
+    }
+}
@@ -0,0 +1,111 @@
+package com.vendas.postes.benchmark;
+
+import com.vendas.postes.VendasPostesApplication;
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.VendaCreateDTO;
+import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.repository.EstoqueRepository;
+import com.vendas.postes.repository.PosteRepository;
+import com.vendas.postes.service.EstoqueMemoriaService;
+import com.vendas.postes.service.VendaService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vendas concorrentes do mesmo código base com e sem o estoque em memória.
+ * Sem ele cada venda segura o lock do código base até o commit; com ele o lock cobre
+ * só a conta na memória e a tabela estoque é atualizada depois, em lotes.
+ *
+ * Para rodar:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main EstoqueMemoriaBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class EstoqueMemoriaBenchmark {
+
+    @Param({"false", "true"})
+    public boolean memoria;
+
+    private ConfigurableApplicationContext contexto;
+    private VendaService vendaService;
+    private EstoqueMemoriaService estoqueMemoriaService;
+    private Long posteId;
+
+    @Setup(Level.Trial)
+    public void iniciar() {
+        // Como argumentos: as propriedades do builder são só padrões e perderiam para o application.properties
+        contexto = new SpringApplicationBuilder(VendasPostesApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark-estoque-memoria;LOCK_TIMEOUT=30000",
+                        "--spring.jpa.show-sql=false",
+                        "--estoque.memoria.habilitado=" + memoria,
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.vendas.postes=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN");
+
+        vendaService = contexto.getBean(VendaService.class);
+        estoqueMemoriaService = contexto.getBean(EstoqueMemoriaService.class);
+
+        PosteRepository posteRepository = contexto.getBean(PosteRepository.class);
+        EstoqueRepository estoqueRepository = contexto.getBean(EstoqueRepository.class);
+        for (String codigo : new String[]{"4199", "4199-B", "4199-C"}) {
+            Poste poste = new Poste();
+            poste.setCodigo(codigo);
+            poste.setDescricao("Poste " + codigo);
+            poste.setPreco(new BigDecimal("100.00"));
+            poste.setTenantId("vermelho");
+            poste = posteRepository.save(poste);
+            // Saldo grande o bastante para o benchmark inteiro, sem repor entre as vendas
+            estoqueRepository.save(new Estoque(poste, 100_000_000));
+            estoqueMemoriaService.atualizarPoste(poste);
+            if (posteId == null) {
+                posteId = poste.getId();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Tenant {
+        @Setup(Level.Trial)
+        public void definir() {
+            TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+        }
+    }
+
+    @Benchmark
+    public Long criarVenda(Tenant tenant) {
+        VendaCreateDTO venda = new VendaCreateDTO();
+        venda.setDataVenda(LocalDateTime.now());
+        venda.setTipoVenda(Venda.TipoVenda.V);
+        venda.setPosteId(posteId);
+        venda.setQuantidade(1);
+        venda.setValorVenda(new BigDecimal("150.00"));
+        return vendaService.criarVenda(venda).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() throws InterruptedException {
+        if (memoria) {
+            estoqueMemoriaService.aguardarDescarga(60_000);
+            System.out.printf("%nEstoque em memória: %s%n", estoqueMemoriaService.obterMetricas());
+        }
+        contexto.close();
+    }
+}
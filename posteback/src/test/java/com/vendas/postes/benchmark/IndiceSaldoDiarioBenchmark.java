@@ -0,0 +1,112 @@
+package com.vendas.postes.benchmark;
+
+import com.vendas.postes.VendasPostesApplication;
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.EstoqueNaDataDTO;
+import com.vendas.postes.dto.VariacaoEstoqueDTO;
+import com.vendas.postes.repository.MovimentoEstoqueRepository;
+import com.vendas.postes.repository.MovimentoResumoDiarioRepository;
+import com.vendas.postes.repository.PosteRepository;
+import com.vendas.postes.service.IndiceSaldoDiario;
+import com.vendas.postes.service.MovimentoEstoqueService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estoque na data e variação entre datas de todos os postes pelo índice de saldo diário
+ * (árvores de Fenwick) e pelas consultas no banco, com um movimento por poste por dia em 3 anos.
+ * Imprime a memória do índice por poste estimada pelo próprio índice.
+ *
+ * Para rodar:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main IndiceSaldoDiarioBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class IndiceSaldoDiarioBenchmark {
+
+    private static final LocalDate INICIO = LocalDate.of(2023, 1, 1);
+    private static final int DIAS = 3 * 365;
+
+    @Param({"100", "1000"})
+    public int postes;
+
+    private ConfigurableApplicationContext contexto;
+    private MovimentoEstoqueService movimentoEstoqueService;
+    private IndiceSaldoDiario indice;
+    private final LocalDate data = INICIO.plusDays(DIAS / 2);
+    private final LocalDate fim = data.plusDays(30);
+
+    @Setup(Level.Trial)
+    public void iniciar() {
+        // Índice desligado no contexto: o MovimentoEstoqueService consulta o banco
+        contexto = new SpringApplicationBuilder(VendasPostesApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark-indice-" + postes,
+                        "--spring.jpa.show-sql=false",
+                        "--movimentos.indice.habilitado=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.vendas.postes=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN");
+
+        JdbcTemplate jdbcTemplate = contexto.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("INSERT INTO postes (id, codigo, codigo_base, descricao, preco, ativo, tenant_id) " +
+                "SELECT X, 'P' || X, 'P' || X, 'Poste ' || X, 100, TRUE, 'vermelho' FROM SYSTEM_RANGE(1, CAST(? AS BIGINT))", postes);
+        jdbcTemplate.update("INSERT INTO movimento_estoque (id, poste_id, tipo_movimento, quantidade, data_movimento, " +
+                "data_registro, tenant_id, estoque_aplicado) " +
+                "SELECT X, MOD(X, CAST(? AS BIGINT)) + 1, CASE WHEN MOD(X, 3) = 0 THEN 'SAIDA' ELSE 'ENTRADA' END, " +
+                "1 + MOD(X, 7), DATEADD('DAY', (X - 1) / CAST(? AS BIGINT), CAST(? AS DATE)), CURRENT_TIMESTAMP, " +
+                "'vermelho', TRUE FROM SYSTEM_RANGE(1, CAST(? AS BIGINT))",
+                postes, postes, INICIO, (long) postes * DIAS);
+
+        movimentoEstoqueService = contexto.getBean(MovimentoEstoqueService.class);
+        TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+
+        indice = new IndiceSaldoDiario(contexto.getBean(PosteRepository.class),
+                contexto.getBean(MovimentoEstoqueRepository.class),
+                contexto.getBean(MovimentoResumoDiarioRepository.class), true);
+        indice.carregar();
+
+        System.out.printf("%nÍndice com %d postes e %d dias: %s bytes por poste%n",
+                postes, DIAS, indice.obterMetricas().get("bytesPorPoste"));
+    }
+
+    @Benchmark
+    public List<EstoqueNaDataDTO> estoqueNaDataIndice() {
+        return indice.estoqueNaDataTodosPostes("vermelho", data);
+    }
+
+    @Benchmark
+    public List<EstoqueNaDataDTO> estoqueNaDataBanco() {
+        return movimentoEstoqueService.calcularEstoqueNaDataTodosPostes(data);
+    }
+
+    @Benchmark
+    public List<VariacaoEstoqueDTO> variacaoEntreDatasIndice() {
+        return indice.variacaoEntreDatasTodosPostes("vermelho", data, fim);
+    }
+
+    @Benchmark
+    public List<VariacaoEstoqueDTO> variacaoEntreDatasBanco() {
+        return movimentoEstoqueService.calcularVariacaoEntreDatasTodosPostes(data, fim);
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() {
+        TenantContext.clear();
+        contexto.close();
+    }
+}
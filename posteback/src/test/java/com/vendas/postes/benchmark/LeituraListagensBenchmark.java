@@ -0,0 +1,147 @@
+package com.vendas.postes.benchmark;
+
+import com.vendas.postes.VendasPostesApplication;
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.VendaDTO;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.repository.PosteRepository;
+import com.vendas.postes.repository.VendaRepository;
+import com.vendas.postes.service.VendaService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memória alocada por requisição de listagem: entidades gerenciadas convertidas em DTO
+ * (forma antiga) contra DTOs montados direto pela consulta em transação somente leitura.
+ * Rodar com o profiler de GC e comparar gc.alloc.rate.norm (bytes por operação).
+ *
+ * Para rodar:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main LeituraListagensBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LeituraListagensBenchmark {
+
+    private static final int POSTES = 100;
+    private static final int VENDAS = 2_000;
+
+    private ConfigurableApplicationContext contexto;
+    private VendaService vendaService;
+    private VendaRepository vendaRepository;
+    private PosteRepository posteRepository;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void iniciar() {
+        contexto = new SpringApplicationBuilder(VendasPostesApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:benchmark-leitura",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=WARN",
+                        "logging.level.com.vendas.postes=WARN",
+                        "logging.level.org.hibernate.SQL=WARN",
+                        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN")
+                .run();
+
+        vendaService = contexto.getBean(VendaService.class);
+        vendaRepository = contexto.getBean(VendaRepository.class);
+        posteRepository = contexto.getBean(PosteRepository.class);
+        // Como as listagens rodavam antes: transação comum, com snapshots para dirty checking
+        transactionTemplate = new TransactionTemplate(contexto.getBean(PlatformTransactionManager.class));
+
+        List<Poste> postes = new ArrayList<>();
+        for (int i = 0; i < POSTES; i++) {
+            Poste poste = new Poste();
+            poste.setCodigo("B" + i);
+            poste.setDescricao("Poste B" + i);
+            poste.setPreco(new BigDecimal("100.00"));
+            poste.setTenantId("vermelho");
+            postes.add(poste);
+        }
+        postes = posteRepository.saveAll(postes);
+
+        List<Venda> vendas = new ArrayList<>();
+        LocalDateTime data = LocalDateTime.of(2024, 1, 1, 9, 0);
+        for (int i = 0; i < VENDAS; i++) {
+            Venda venda = new Venda();
+            venda.setTipoVenda(Venda.TipoVenda.V);
+            venda.setPoste(postes.get(i % POSTES));
+            venda.setQuantidade(1);
+            venda.setValorVenda(new BigDecimal("150.00"));
+            venda.setDataVenda(data.plusHours(i));
+            venda.setTenantId("vermelho");
+            vendas.add(venda);
+        }
+        vendaRepository.saveAll(vendas);
+
+        TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+    }
+
+    @Benchmark
+    public List<VendaDTO> vendasComEntidades() {
+        return transactionTemplate.execute(status -> vendaRepository.findByTenantId("vermelho").stream()
+                .map(LeituraListagensBenchmark::converter)
+                .toList());
+    }
+
+    @Benchmark
+    public List<VendaDTO> vendasComProjecao() {
+        return vendaService.listarTodasVendas();
+    }
+
+    @Benchmark
+    public Object postesComEntidades() {
+        return transactionTemplate.execute(status -> posteRepository.findByTenantIdAndAtivoTrue("vermelho"));
+    }
+
+    @Benchmark
+    public Object postesComProjecao() {
+        return posteRepository.listarDTOs("vermelho");
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() {
+        TenantContext.clear();
+        contexto.close();
+    }
+
+    /**
+     * Mesma conversão que VendaService fazia em cada linha antes das projeções
+     */
+    private static VendaDTO converter(Venda venda) {
+        VendaDTO dto = new VendaDTO();
+        dto.setId(venda.getId());
+        dto.setDataVenda(venda.getDataVenda());
+        dto.setTipoVenda(venda.getTipoVenda());
+        dto.setQuantidade(venda.getQuantidade());
+        dto.setFreteEletrons(venda.getFreteEletrons());
+        dto.setValorVenda(venda.getValorVenda());
+        dto.setValorExtra(venda.getValorExtra());
+        dto.setObservacoes(venda.getObservacoes());
+        if (venda.getPoste() != null) {
+            dto.setPosteId(venda.getPoste().getId());
+            dto.setCodigoPoste(venda.getPoste().getCodigo());
+            dto.setDescricaoPoste(venda.getPoste().getDescricao());
+        }
+        return dto;
+    }
+}
@@ -0,0 +1,179 @@
+package com.vendas.postes.benchmark;
+
+import com.vendas.postes.VendasPostesApplication;
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.MovimentoEstoqueRepository;
+import com.vendas.postes.repository.PosteRepository;
+import com.vendas.postes.service.MovimentoEstoqueService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Relatório e estatísticas de movimentos de um ano com 10 mil, 100 mil e 1 milhão de movimentos.
+ * Compara a forma antiga (carregar as entidades e percorrer a lista uma vez por estatística,
+ * carregando o Poste de cada linha) com o agrupamento no banco + AcumuladorMovimentos.
+ *
+ * Para rodar:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main RelatorioMovimentosBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class RelatorioMovimentosBenchmark {
+
+    private static final LocalDate INICIO = LocalDate.of(2024, 1, 1);
+    private static final LocalDate FIM = LocalDate.of(2024, 12, 31);
+    private static final int POSTES = 200;
+
+    @Param({"10000", "100000", "1000000"})
+    private int movimentos;
+
+    private ConfigurableApplicationContext contexto;
+    private MovimentoEstoqueService movimentoEstoqueService;
+    private MovimentoEstoqueRepository movimentoEstoqueRepository;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void iniciar() {
+        contexto = new SpringApplicationBuilder(VendasPostesApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:benchmark-relatorio",
+                        "spring.jpa.show-sql=false",
+                        "estoque.checkpoint.atraso-inicial=PT24H",
+                        "logging.level.root=WARN",
+                        "logging.level.com.vendas.postes=WARN",
+                        "logging.level.org.hibernate.SQL=WARN",
+                        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN")
+                .run();
+
+        movimentoEstoqueService = contexto.getBean(MovimentoEstoqueService.class);
+        movimentoEstoqueRepository = contexto.getBean(MovimentoEstoqueRepository.class);
+        transactionTemplate = new TransactionTemplate(contexto.getBean(PlatformTransactionManager.class));
+        transactionTemplate.setReadOnly(true);
+
+        PosteRepository posteRepository = contexto.getBean(PosteRepository.class);
+        List<Long> posteIds = new ArrayList<>();
+        for (int i = 0; i < POSTES; i++) {
+            Poste poste = new Poste();
+            poste.setCodigo("P" + i);
+            poste.setDescricao("Poste " + i);
+            poste.setPreco(new BigDecimal("100.00"));
+            poste.setTenantId("vermelho");
+            posteIds.add(posteRepository.save(poste).getId());
+        }
+
+        // Direto por JDBC, em lotes, para a carga de 1 milhão não dominar o tempo do benchmark
+        JdbcTemplate jdbcTemplate = contexto.getBean(JdbcTemplate.class);
+        MovimentoEstoque.TipoMovimento[] tipos = MovimentoEstoque.TipoMovimento.values();
+        Timestamp registro = Timestamp.valueOf(LocalDateTime.of(2024, 1, 1, 8, 0));
+        List<Object[]> lote = new ArrayList<>();
+        for (int i = 0; i < movimentos; i++) {
+            lote.add(new Object[]{(long) i + 1, posteIds.get(i % POSTES), tipos[i % tipos.length].name(), 1 + i % 7,
+                    Date.valueOf(INICIO.plusDays(i % 366)), registro});
+            if (lote.size() == 5_000 || i == movimentos - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO movimento_estoque " +
+                        "(id, poste_id, tipo_movimento, quantidade, data_movimento, data_registro, tenant_id) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, 'vermelho')", lote);
+                lote.clear();
+            }
+        }
+
+        TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+    }
+
+    @Benchmark
+    public void agrupadoNoBanco(Blackhole blackhole) {
+        blackhole.consume(movimentoEstoqueService.gerarRelatorioMovimentos(INICIO, FIM));
+        blackhole.consume(movimentoEstoqueService.obterEstatisticasMovimentos(INICIO, FIM));
+    }
+
+    @Benchmark
+    public void carregandoEntidades(Blackhole blackhole) {
+        transactionTemplate.executeWithoutResult(status -> {
+            blackhole.consume(relatorioAntigo());
+            blackhole.consume(estatisticasAntigas());
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() {
+        TenantContext.clear();
+        contexto.close();
+    }
+
+    /**
+     * Cópia do relatório como era antes do acumulador: quatro passadas sobre as entidades
+     */
+    private Map<String, Object> relatorioAntigo() {
+        List<MovimentoEstoque> lista = movimentoEstoqueRepository
+                .findByTenantIdAndDataMovimentoBetweenOrderByDataRegistroDesc("vermelho", INICIO, FIM);
+
+        Map<String, Object> relatorio = new LinkedHashMap<>();
+        relatorio.put("totalMovimentos", lista.size());
+        relatorio.put("movimentosPorTipo", lista.stream()
+                .collect(Collectors.groupingBy(MovimentoEstoque::getTipoMovimento, Collectors.counting())));
+        relatorio.put("movimentosPorData", lista.stream()
+                .collect(Collectors.groupingBy(MovimentoEstoque::getDataMovimento, Collectors.counting())));
+        relatorio.put("valorTotalMovimentos", lista.stream()
+                .filter(m -> m.getPoste().getPreco() != null)
+                .map(m -> m.getPoste().getPreco().multiply(BigDecimal.valueOf(m.getQuantidade())))
+                .reduce(BigDecimal.ZERO, BigDecimal::add));
+        relatorio.put("topPostesMovimento", lista.stream()
+                .collect(Collectors.groupingBy(m -> m.getPoste().getCodigo(), Collectors.counting()))
+                .entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(5)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e1, LinkedHashMap::new)));
+        return relatorio;
+    }
+
+    /**
+     * Cópia das estatísticas como eram antes do acumulador: seis passadas filtradas
+     */
+    private Map<String, Object> estatisticasAntigas() {
+        List<MovimentoEstoque> lista = movimentoEstoqueRepository
+                .findByTenantIdAndDataMovimentoBetweenOrderByDataRegistroDesc("vermelho", INICIO, FIM);
+
+        Map<String, Object> estatisticas = new LinkedHashMap<>();
+        for (MovimentoEstoque.TipoMovimento tipo : List.of(MovimentoEstoque.TipoMovimento.ENTRADA,
+                MovimentoEstoque.TipoMovimento.SAIDA, MovimentoEstoque.TipoMovimento.VENDA,
+                MovimentoEstoque.TipoMovimento.AJUSTE)) {
+            estatisticas.put("total" + tipo, lista.stream().filter(m -> m.getTipoMovimento() == tipo).count());
+        }
+        estatisticas.put("quantidadeEntradas", lista.stream()
+                .filter(m -> m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.ENTRADA)
+                .mapToInt(MovimentoEstoque::getQuantidade).sum());
+        estatisticas.put("quantidadeSaidas", lista.stream()
+                .filter(m -> m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.SAIDA
+                        || m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.VENDA)
+                .mapToInt(MovimentoEstoque::getQuantidade).sum());
+        return estatisticas;
+    }
+}
@@ -0,0 +1,120 @@
+package com.vendas.postes.benchmark;
+
+import com.vendas.postes.VendasPostesApplication;
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.VendaCreateDTO;
+import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.repository.EstoqueRepository;
+import com.vendas.postes.repository.PosteRepository;
+import com.vendas.postes.service.VendaService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo de uma venda que baixa estoque de três variantes do mesmo código
+ * (uma Venda e três MovimentoEstoque). Além do tempo médio, imprime ao final
+ * quantos comandos JDBC o Hibernate preparou por venda (idas ao banco).
+ *
+ * Para rodar:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main VendaRoundTripsBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VendaRoundTripsBenchmark {
+
+    private ConfigurableApplicationContext contexto;
+    private VendaService vendaService;
+    private JdbcTemplate jdbcTemplate;
+    private Statistics statistics;
+    private final List<Long> estoqueIds = new ArrayList<>();
+    private Long posteId;
+    private long vendas;
+
+    @Setup(Level.Trial)
+    public void iniciar() {
+        contexto = new SpringApplicationBuilder(VendasPostesApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:benchmark-vendas",
+                        "spring.jpa.show-sql=false",
+                        "spring.jpa.properties.hibernate.generate_statistics=true",
+                        "logging.level.root=WARN",
+                        "logging.level.com.vendas.postes=WARN",
+                        "logging.level.org.hibernate.SQL=WARN",
+                        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN")
+                .run();
+
+        vendaService = contexto.getBean(VendaService.class);
+        jdbcTemplate = contexto.getBean(JdbcTemplate.class);
+        statistics = contexto.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+
+        PosteRepository posteRepository = contexto.getBean(PosteRepository.class);
+        EstoqueRepository estoqueRepository = contexto.getBean(EstoqueRepository.class);
+        for (String codigo : new String[]{"4199", "4199-B", "4199-C"}) {
+            Poste poste = new Poste();
+            poste.setCodigo(codigo);
+            poste.setDescricao("Poste " + codigo);
+            poste.setPreco(new BigDecimal("100.00"));
+            poste.setTenantId("vermelho");
+            poste = posteRepository.save(poste);
+            estoqueIds.add(estoqueRepository.save(new Estoque(poste, 1)).getId());
+            if (posteId == null) {
+                posteId = poste.getId();
+            }
+        }
+
+        TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+        statistics.clear();
+    }
+
+    @Setup(Level.Invocation)
+    public void reporEstoque() {
+        // Fora do Hibernate, para não entrar na contagem de comandos
+        for (Long estoqueId : estoqueIds) {
+            jdbcTemplate.update("UPDATE estoque SET quantidade_atual = 1 WHERE id = ?", estoqueId);
+        }
+    }
+
+    @Benchmark
+    public Long criarVendaComTresMovimentos() {
+        VendaCreateDTO venda = new VendaCreateDTO();
+        venda.setDataVenda(LocalDateTime.now());
+        venda.setTipoVenda(Venda.TipoVenda.V);
+        venda.setPosteId(posteId);
+        venda.setQuantidade(3);
+        venda.setValorVenda(new BigDecimal("450.00"));
+        vendas++;
+        return vendaService.criarVenda(venda).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() {
+        System.out.printf("%nComandos JDBC preparados por venda: %.2f (inserts por venda: %.2f, vendas: %d)%n",
+                statistics.getPrepareStatementCount() / (double) vendas,
+                statistics.getEntityInsertCount() / (double) vendas,
+                vendas);
+        TenantContext.clear();
+        contexto.close();
+    }
+}
@@ -0,0 +1,139 @@
+package com.vendas.postes.benchmark;
+
+import com.vendas.postes.VendasPostesApplication;
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.ResumoVendasDTO;
+import com.vendas.postes.dto.TotalVendasDTO;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.repository.VendaRepository;
+import com.vendas.postes.service.VendaResumoMensalService;
+import com.vendas.postes.service.VendaService;
+import com.vendas.postes.service.VendasColunares;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resumo de vendas por tipo em um período com meses parciais nas pontas: pelo VendaService
+ * (resumo mensal mais as vendas dos meses parciais), pela varredura das vendas no banco e pelo
+ * armazém colunar. Também mede totais agrupados por semana, poste e tenant no armazém colunar.
+ * Imprime o tempo de carga e a memória do armazém.
+ *
+ * Para rodar:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main VendasColunaresBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+@State(Scope.Benchmark)
+public class VendasColunaresBenchmark {
+
+    private static final LocalDate INICIO = LocalDate.of(2023, 1, 1);
+    private static final int DIAS = 3 * 365;
+    private static final int POSTES = 200;
+
+    @Param({"1000000"})
+    public int vendas;
+
+    private ConfigurableApplicationContext contexto;
+    private VendaService vendaService;
+    private VendaRepository vendaRepository;
+    private VendasColunares vendasColunares;
+    private final LocalDate dataInicio = LocalDate.of(2023, 2, 15);
+    private final LocalDate dataFim = LocalDate.of(2025, 6, 20);
+
+    @Setup(Level.Trial)
+    public void iniciar() {
+        // Armazém desligado no contexto: o VendaService resume pelo banco
+        contexto = new SpringApplicationBuilder(VendasPostesApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark-vendas-colunares",
+                        "--spring.jpa.show-sql=false",
+                        "--vendas.colunar.habilitado=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.vendas.postes=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN");
+
+        JdbcTemplate jdbcTemplate = contexto.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("INSERT INTO postes (id, codigo, codigo_base, descricao, preco, ativo, tenant_id) " +
+                "SELECT X, 'P' || X, 'P' || X, 'Poste ' || X, 100 + X, TRUE, " +
+                "CASE WHEN MOD(X, 2) = 0 THEN 'vermelho' ELSE 'branco' END FROM SYSTEM_RANGE(1, CAST(? AS BIGINT))",
+                POSTES);
+        // Tipos E, V e L em rodízio; só V e L têm poste. O tenant da venda é o do poste.
+        // As datas andam com o ID ao longo dos 3 anos, como nas vendas lançadas no dia.
+        jdbcTemplate.update("INSERT INTO vendas (id, data_venda, tipo_venda, poste_id, quantidade, frete_eletrons, " +
+                "valor_venda, valor_extra, tenant_id) " +
+                "SELECT X, DATEADD('MINUTE', (X - 1) * CAST(? AS BIGINT) * 1440 / CAST(? AS BIGINT), CAST(? AS TIMESTAMP)), " +
+                "CASE MOD(X, 3) WHEN 0 THEN 'E' WHEN 1 THEN 'V' ELSE 'L' END, " +
+                "CASE WHEN MOD(X, 3) = 0 THEN NULL ELSE MOD(X, CAST(? AS BIGINT)) + 1 END, " +
+                "CASE WHEN MOD(X, 3) = 0 THEN NULL ELSE 1 + MOD(X, 5) END, " +
+                "CASE WHEN MOD(X, 3) = 2 THEN MOD(X, 9000) / 100.0 END, " +
+                "CASE WHEN MOD(X, 3) = 1 THEN MOD(X, 90000) / 100.0 END, " +
+                "CASE WHEN MOD(X, 3) = 0 THEN MOD(X, 5000) / 100.0 END, " +
+                "CASE WHEN MOD(MOD(X, CAST(? AS BIGINT)) + 1, 2) = 0 THEN 'vermelho' ELSE 'branco' END " +
+                "FROM SYSTEM_RANGE(1, CAST(? AS BIGINT))",
+                DIAS, vendas, INICIO.atStartOfDay(), POSTES, POSTES, vendas);
+        contexto.getBean(VendaResumoMensalService.class).reconstruir();
+
+        vendaService = contexto.getBean(VendaService.class);
+        vendaRepository = contexto.getBean(VendaRepository.class);
+        TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+
+        long inicioCarga = System.nanoTime();
+        vendasColunares = new VendasColunares(vendaRepository, contexto.getBean(TransactionTemplate.class), true);
+        vendasColunares.carregar();
+        System.out.printf("%nArmazém colunar com %d vendas: carga em %d ms, %s bytes%n", vendas,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioCarga),
+                vendasColunares.obterMetricas().get("bytes"));
+    }
+
+    @Benchmark
+    public ResumoVendasDTO resumoPeriodoVendaService() {
+        return vendaService.obterResumoVendasPorPeriodo(dataInicio, dataFim);
+    }
+
+    @Benchmark
+    public List<Object[]> resumoPeriodoVarreduraBanco() {
+        return vendaRepository.calcularResumoPorTipoNoPeriodo("vermelho", dataInicio.atStartOfDay(),
+                dataFim.plusDays(1).atStartOfDay());
+    }
+
+    @Benchmark
+    public List<Object[]> resumoPeriodoColunar() {
+        return vendasColunares.somarPorTipo("vermelho", dataInicio, dataFim);
+    }
+
+    @Benchmark
+    public List<TotalVendasDTO> totaisPorSemanaColunar() {
+        return vendasColunares.agregar("vermelho", dataInicio, dataFim, null, null, VendasColunares.Agrupamento.SEMANA);
+    }
+
+    @Benchmark
+    public List<TotalVendasDTO> totaisPorPosteColunar() {
+        return vendasColunares.agregar("vermelho", dataInicio, dataFim, Venda.TipoVenda.V, null,
+                VendasColunares.Agrupamento.POSTE);
+    }
+
+    @Benchmark
+    public List<TotalVendasDTO> totaisPorTenantColunar() {
+        return vendasColunares.agregar(null, null, null, null, null, VendasColunares.Agrupamento.TENANT);
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() {
+        TenantContext.clear();
+        contexto.close();
+    }
+}
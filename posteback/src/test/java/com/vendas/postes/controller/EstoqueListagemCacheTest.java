@@ -0,0 +1,212 @@
+package com.vendas.postes.controller;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.EstoqueRepository;
+import com.vendas.postes.repository.PosteRepository;
+import com.vendas.postes.service.EstoqueConsolidadoService;
+import com.vendas.postes.service.EstoqueListagemCache;
+import com.vendas.postes.service.EstoqueService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * As listagens de estoque vêm do cache enquanto nada muda e refletem cada alteração
+ * commitada na leitura seguinte, invalidando só as entradas dos códigos base alterados.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:estoque-listagem-cache",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "estoque.cache.maximo-entradas=3",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+@AutoConfigureMockMvc
+class EstoqueListagemCacheTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PosteRepository posteRepository;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private EstoqueConsolidadoService estoqueConsolidadoService;
+
+    @Autowired
+    private EstoqueService estoqueService;
+
+    @Autowired
+    private EstoqueListagemCache estoqueListagemCache;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Cada teste usa códigos novos: o banco é compartilhado entre os testes da classe
+    private static int proximoCodigo = 4100;
+
+    private String codigo;
+    private Poste vermelho;
+    private Poste branco;
+    private Poste outroCodigo;
+
+    @BeforeEach
+    void criarDados() {
+        codigo = String.valueOf(proximoCodigo++);
+        vermelho = criarPoste(codigo, "vermelho", 10);
+        branco = criarPoste(codigo + "-B", "branco", 5);
+        outroCodigo = criarPoste("X" + codigo, "branco", 2);
+        transactionTemplate.executeWithoutResult(status -> estoqueConsolidadoService.verificar(true));
+        // Os dados acima foram gravados direto pelos repositórios, sem passar pelas invalidações
+        estoqueListagemCache.limparAposCommit();
+    }
+
+    @AfterEach
+    void limparTenant() {
+        TenantContext.clear();
+    }
+
+    @Test
+    void listagemRepetidaVemDoCacheEAlteracaoCommitadaAparece() throws Exception {
+        assertQuantidade("vermelho", "/api/estoque", vermelho, 15);
+        assertEquals(0, consultasDe("vermelho", "/api/estoque"));
+        assertQuantidade("vermelho", "/api/estoque/com-quantidade", vermelho, 10);
+
+        // Entrada no poste branco muda o consolidado do código base, visto pelo vermelho
+        adicionar(branco, 3);
+        assertQuantidade("vermelho", "/api/estoque", vermelho, 18);
+
+        // O estoque do vermelho não mudou: a listagem com quantidade continua no cache
+        assertEquals(0, consultasDe("vermelho", "/api/estoque/com-quantidade"));
+
+        // Outro código base do branco não afeta a listagem do vermelho
+        assertQuantidade("vermelho", "/api/estoque", vermelho, 18);
+        adicionar(outroCodigo, 1);
+        assertEquals(0, consultasDe("vermelho", "/api/estoque"));
+
+        // Poste novo aparece na listagem do próprio tenant
+        mockMvc.perform(post("/api/postes").header("X-Tenant-ID", "vermelho")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"codigo\":\"N" + codigo + "\",\"descricao\":\"Poste novo\",\"preco\":100.00}"))
+                .andExpect(status().isCreated());
+        listar("vermelho", "/api/estoque")
+                .andExpect(jsonPath("$[?(@.codigoPoste == 'N" + codigo + "')].quantidadeAtual").value(0));
+    }
+
+    @Test
+    void alteracaoDesfeitaNaoChegaAoCache() throws Exception {
+        assertQuantidade("vermelho", "/api/estoque", vermelho, 15);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+            estoqueService.adicionarEstoqueComData(vermelho.getId(), 50, LocalDate.now(), "Desfeita");
+            // Dentro da transação de escrita a leitura vai ao banco e não grava no cache
+            assertEquals(65, estoqueService.listarTodoEstoque().stream()
+                    .filter(estoque -> vermelho.getId().equals(estoque.getPosteId()))
+                    .findFirst().orElseThrow().getQuantidadeAtual());
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, consultasDe("vermelho", "/api/estoque"));
+        assertQuantidade("vermelho", "/api/estoque", vermelho, 15);
+    }
+
+    @Test
+    void alterarListagemRecebidaNaoMudaOCache() throws Exception {
+        TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+        estoqueService.listarTodoEstoque().stream()
+                .filter(estoque -> vermelho.getId().equals(estoque.getPosteId()))
+                .forEach(estoque -> estoque.setQuantidadeAtual(99));
+        estoqueService.listarTodoEstoque().stream()
+                .filter(estoque -> vermelho.getId().equals(estoque.getPosteId()))
+                .forEach(estoque -> estoque.setQuantidadeAtual(98));
+
+        assertEquals(0, consultasDe("vermelho", "/api/estoque"));
+        assertQuantidade("vermelho", "/api/estoque", vermelho, 15);
+    }
+
+    @Test
+    void metricasContamAcertosFaltasEDespejos() throws Exception {
+        Map<String, Object> antes = estoqueListagemCache.obterMetricas();
+
+        // Quatro listagens diferentes com espaço para três: a menos usada sai
+        listar("vermelho", "/api/estoque");
+        listar("vermelho", "/api/estoque");
+        listar("vermelho", "/api/estoque/com-quantidade");
+        listar("branco", "/api/estoque");
+        listar("branco", "/api/estoque/com-quantidade");
+
+        Map<String, Object> depois = estoqueListagemCache.obterMetricas();
+        assertEquals(1L, (Long) depois.get("acertos") - (Long) antes.get("acertos"));
+        assertEquals(4L, (Long) depois.get("faltas") - (Long) antes.get("faltas"));
+        assertEquals(1L, (Long) depois.get("despejos") - (Long) antes.get("despejos"));
+        assertEquals(3, depois.get("entradas"));
+
+        mockMvc.perform(get("/api/estoque/cache/metricas").header("X-Tenant-ID", "vermelho"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.maximoEntradas").value(3));
+    }
+
+    private void adicionar(Poste poste, int quantidade) throws Exception {
+        mockMvc.perform(post("/api/estoque/adicionar").header("X-Tenant-ID", poste.getTenantId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"posteId\":" + poste.getId() + ",\"quantidade\":" + quantidade + "}"))
+                .andExpect(status().isOk());
+    }
+
+    private void assertQuantidade(String tenant, String url, Poste poste, int quantidade) throws Exception {
+        listar(tenant, url).andExpect(
+                jsonPath("$[?(@.posteId == " + poste.getId() + ")].quantidadeAtual").value(quantidade));
+    }
+
+    private long consultasDe(String tenant, String url) throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        listar(tenant, url);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private ResultActions listar(String tenant, String url) throws Exception {
+        return mockMvc.perform(get(url).header("X-Tenant-ID", tenant)).andExpect(status().isOk());
+    }
+
+    private Poste criarPoste(String codigo, String tenantId, int quantidade) {
+        Poste poste = new Poste();
+        poste.setCodigo(codigo);
+        poste.setDescricao("Poste " + codigo);
+        poste.setPreco(new BigDecimal("100.00"));
+        poste.setTenantId(tenantId);
+        poste = posteRepository.save(poste);
+        estoqueRepository.save(new Estoque(poste, quantidade));
+        return poste;
+    }
+}
@@ -0,0 +1,160 @@
+package com.vendas.postes.controller;
+
+import com.vendas.postes.dto.PaginaDTO;
+import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.repository.EstoqueRepository;
+import com.vendas.postes.repository.MovimentoEstoqueRepository;
+import com.vendas.postes.repository.PosteRepository;
+import com.vendas.postes.repository.VendaRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Garante que as listagens não voltem a carregar o poste de cada linha com um SELECT próprio (N+1):
+ * cada endpoint tem um limite fixo de comandos SQL, qualquer que seja o número de postes.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:listagens-consultas",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ListagensConsultasTest {
+
+    private static final int POSTES = 30;
+    private static final int LIMITE_CONSULTAS = 2;
+    private static final LocalDate DATA = LocalDate.of(2024, 3, 10);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PosteRepository posteRepository;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private VendaRepository vendaRepository;
+
+    @Autowired
+    private MovimentoEstoqueRepository movimentoEstoqueRepository;
+
+    private Long primeiroPosteId;
+
+    @BeforeAll
+    void criarDados() {
+        for (int i = 0; i < POSTES; i++) {
+            Poste poste = new Poste();
+            poste.setCodigo("L" + i);
+            poste.setDescricao("Poste L" + i);
+            poste.setPreco(new BigDecimal("100.00"));
+            poste.setTenantId("vermelho");
+            poste = posteRepository.save(poste);
+            if (primeiroPosteId == null) {
+                primeiroPosteId = poste.getId();
+            }
+
+            estoqueRepository.save(new Estoque(poste, 10));
+            movimentoEstoqueRepository.save(new MovimentoEstoque(poste, MovimentoEstoque.TipoMovimento.ENTRADA,
+                    10, DATA, 0, 10, null));
+
+            Venda venda = new Venda();
+            venda.setTipoVenda(Venda.TipoVenda.V);
+            venda.setPoste(poste);
+            venda.setQuantidade(1);
+            venda.setValorVenda(new BigDecimal("150.00"));
+            venda.setDataVenda(DATA.atTime(9, 0));
+            venda.setTenantId("vermelho");
+            vendaRepository.save(venda);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "/api/vendas",
+            "/api/vendas?todos=true",
+            "/api/vendas?todos=true&dataInicio=2024-03-01&dataFim=2024-03-31",
+            "/api/movimento-estoque",
+            "/api/movimento-estoque?todos=true",
+            "/api/movimento-estoque?todos=true&dataInicio=2024-03-01&dataFim=2024-03-31",
+            "/api/estoque",
+            "/api/estoque/com-quantidade",
+            "/api/postes",
+            "/api/postes?todos=true",
+            "/api/despesas?todos=true"
+    })
+    void listagemFicaDentroDoLimiteDeConsultas(String url) throws Exception {
+        assertDentroDoLimite(url);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"/api/movimento-estoque/poste/%d", "/api/movimento-estoque/poste/%d?todos=true"})
+    void historicoDoPosteFicaDentroDoLimiteDeConsultas(String url) throws Exception {
+        assertDentroDoLimite(String.format(url, primeiroPosteId));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"/api/vendas", "/api/movimento-estoque", "/api/postes", "/api/despesas"})
+    void cursorInvalidoRespondeBadRequest(String url) throws Exception {
+        mockMvc.perform(get(url).param("cursor", "###").header("X-Tenant-ID", "vermelho"))
+                .andExpect(status().isBadRequest());
+        // Formato válido, mas a chave não é a data que a listagem espera
+        String cursorSemData = PaginaDTO.codificarCursor("nao-e-data", 1L);
+        if (!url.equals("/api/postes")) {
+            mockMvc.perform(get(url).param("cursor", cursorSemData).header("X-Tenant-ID", "vermelho"))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    @Test
+    void postesLidosPorProjecaoMantemOsCamposDaEntidade() throws Exception {
+        mockMvc.perform(get("/api/postes/" + primeiroPosteId).header("X-Tenant-ID", "vermelho"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(6))
+                .andExpect(jsonPath("$.codigo").value("L0"))
+                .andExpect(jsonPath("$.descricao").value("Poste L0"))
+                .andExpect(jsonPath("$.preco").value(100.0))
+                .andExpect(jsonPath("$.ativo").value(true))
+                .andExpect(jsonPath("$.tenantId").value("vermelho"))
+                .andExpect(jsonPath("$.codigoBase").doesNotExist());
+    }
+
+    private void assertDentroDoLimite(String url) throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        mockMvc.perform(get(url).header("X-Tenant-ID", "vermelho")).andExpect(status().isOk());
+
+        long consultas = statistics.getPrepareStatementCount();
+        assertTrue(consultas <= LIMITE_CONSULTAS,
+                url + " executou " + consultas + " comandos SQL (limite " + LIMITE_CONSULTAS + ")");
+    }
+}
@@ -0,0 +1,97 @@
+package com.vendas.postes.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Locks por código base: mantidos até o fim da transação, liberados também no rollback,
+ * adquiridos em ordem fixa quando são vários e contados nas métricas quando há espera.
+ */
+class EstoqueLockManagerTest {
+
+    // Códigos em posições diferentes do vetor de locks
+    private static final String CODIGO_A = "4199";
+    private static final String CODIGO_B = "4200";
+
+    private final EstoqueLockManager lockManager = new EstoqueLockManager();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void encerrar() {
+        executor.shutdownNow();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void lockMantidoAteORollbackEContadoComoContencao() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        lockManager.bloquearAteFimDaTransacao(CODIGO_A);
+
+        Future<String> concorrente = executor.submit(() -> lockManager.executarComLock(CODIGO_A, () -> "liberado"));
+        assertThrows(TimeoutException.class, () -> concorrente.get(200, TimeUnit.MILLISECONDS));
+
+        concluirTransacao(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals("liberado", concorrente.get(5, TimeUnit.SECONDS));
+        Map<String, Object> metricas = lockManager.obterMetricas();
+        assertEquals(2L, metricas.get("aquisicoes"));
+        assertEquals(1L, metricas.get("contencoes"));
+        assertTrue((Long) metricas.get("tempoEsperaTotalMs") >= 100);
+        assertTrue((Long) metricas.get("maiorEsperaMs") >= 100);
+    }
+
+    @Test
+    void variosCodigosSaoAdquiridosEmOrdemSemEsperaCircular() throws Exception {
+        CountDownLatch inicio = new CountDownLatch(1);
+        Future<?> primeiro = executor.submit(() -> bloquearRepetidamente(inicio, List.of(CODIGO_A, CODIGO_B)));
+        Future<?> segundo = executor.submit(() -> bloquearRepetidamente(inicio, List.of(CODIGO_B, CODIGO_A)));
+        inicio.countDown();
+
+        // Com aquisição fora de ordem as duas threads ficariam presas até o tempo máximo de espera
+        primeiro.get(5, TimeUnit.SECONDS);
+        segundo.get(5, TimeUnit.SECONDS);
+        assertEquals(2000L, lockManager.obterMetricas().get("aquisicoes"));
+    }
+
+    @Test
+    void semTransacaoNaoMantemLock() throws Exception {
+        lockManager.bloquearAteFimDaTransacao(CODIGO_A);
+
+        Future<String> outraThread = executor.submit(() -> lockManager.executarComLock(CODIGO_A, () -> "livre"));
+        assertEquals("livre", outraThread.get(1, TimeUnit.SECONDS));
+        assertEquals(0L, lockManager.obterMetricas().get("contencoes"));
+    }
+
+    private Void bloquearRepetidamente(CountDownLatch inicio, List<String> codigos) throws InterruptedException {
+        inicio.await();
+        for (int i = 0; i < 500; i++) {
+            TransactionSynchronizationManager.initSynchronization();
+            try {
+                lockManager.bloquearAteFimDaTransacao(codigos);
+                Thread.yield();
+            } finally {
+                concluirTransacao(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Faz o papel do gerenciador de transações ao fim do commit ou rollback
+     */
+    private void concluirTransacao(int status) {
+        List<TransactionSynchronization> sincronizacoes = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        sincronizacoes.forEach(sincronizacao -> sincronizacao.afterCompletion(status));
+    }
+}
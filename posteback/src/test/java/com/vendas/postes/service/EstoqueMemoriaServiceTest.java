@@ -0,0 +1,287 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.VendaCreateDTO;
+import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.repository.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Com o estoque em memória, entradas e saídas aparecem na memória no commit e chegam
+ * à tabela estoque e ao consolidado pela descarga, sem diferença nem depois de uma parada.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:estoque-memoria;LOCK_TIMEOUT=30000",
+        "spring.jpa.show-sql=false",
+        "estoque.memoria.habilitado=true",
+        "estoque.memoria.lote-maximo=50",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class EstoqueMemoriaServiceTest {
+
+    private static final int VENDAS = 400;
+    private static final int THREADS = 16;
+
+    @Autowired
+    private EstoqueMemoriaService estoqueMemoriaService;
+
+    @Autowired
+    private EstoqueService estoqueService;
+
+    @Autowired
+    private VendaService vendaService;
+
+    @Autowired
+    private EstoqueConsolidadoService estoqueConsolidadoService;
+
+    @Autowired
+    private MovimentoEstoqueService movimentoEstoqueService;
+
+    @Autowired
+    private EstoqueLockManager estoqueLockManager;
+
+    @Autowired
+    private PosteRepository posteRepository;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private VendaRepository vendaRepository;
+
+    @Autowired
+    private MovimentoEstoqueRepository movimentoEstoqueRepository;
+
+    @Autowired
+    private EstoqueConsolidadoRepository estoqueConsolidadoRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void limparBase() throws InterruptedException {
+        assertTrue(estoqueMemoriaService.aguardarDescarga(10_000));
+        TenantContext.clear();
+        movimentoEstoqueRepository.deleteAll();
+        vendaRepository.deleteAll();
+        estoqueRepository.deleteAll();
+        estoqueConsolidadoRepository.deleteAll();
+        posteRepository.deleteAll();
+    }
+
+    @Test
+    void vendasParalelasChegamATabelaEstoqueDepoisDaDescarga() throws Exception {
+        Poste vermelho = criarPosteComEstoque("4199", "vermelho", 250);
+        Poste branco = criarPosteComEstoque("4199-B", "branco", 250);
+        estoqueConsolidadoService.verificar(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> resultados = new ArrayList<>();
+
+        for (int i = 0; i < VENDAS; i++) {
+            Long posteId = i % 2 == 0 ? vermelho.getId() : branco.getId();
+            String tenant = i % 2 == 0 ? "vermelho" : "branco";
+            resultados.add(executor.submit(() -> {
+                largada.await();
+                TenantContext.setCurrentTenant(tenant);
+                try {
+                    vendaService.criarVenda(criarVenda(posteId));
+                } finally {
+                    TenantContext.clear();
+                }
+                return null;
+            }));
+        }
+
+        largada.countDown();
+        for (Future<?> resultado : resultados) {
+            resultado.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        // Na memória o saldo já é o final; a tabela acompanha depois da descarga
+        assertEquals(500 - VENDAS, estoqueMemoriaService.saldoDoPoste(vermelho.getId())
+                + estoqueMemoriaService.saldoDoPoste(branco.getId()));
+        assertTrue(estoqueMemoriaService.aguardarDescarga(10_000));
+
+        int estoqueFinal = estoqueRepository.findAll().stream().mapToInt(Estoque::getQuantidadeAtual).sum();
+        assertEquals(500 - VENDAS, estoqueFinal);
+        assertEquals(estoqueMemoriaService.saldoDoPoste(vermelho.getId()),
+                (long) estoqueRepository.findByPosteId(vermelho.getId()).orElseThrow().getQuantidadeAtual());
+        assertEquals(0, movimentoEstoqueRepository.findPendentesDeEstoque().size());
+
+        Map<String, Object> verificacao = estoqueConsolidadoService.verificar(false);
+        assertEquals(0, verificacao.get("totalDivergencias"));
+    }
+
+    @Test
+    void saidaSemSaldoConsomeRelacionadosENegativaOPosteOriginal() throws Exception {
+        Poste vermelho = criarPosteComEstoque("4300", "vermelho", 2);
+        Poste branco = criarPosteComEstoque("4300-B", "branco", 1);
+        estoqueConsolidadoService.verificar(true);
+
+        TenantContext.setCurrentTenant(TenantContext.TenantType.BRANCO);
+        estoqueService.reduzirEstoqueComData(branco.getId(), 5, LocalDate.now(), "Saída");
+        assertTrue(estoqueMemoriaService.aguardarDescarga(10_000));
+
+        assertEquals(0, estoqueRepository.findByPosteId(vermelho.getId()).orElseThrow().getQuantidadeAtual());
+        assertEquals(-2, estoqueRepository.findByPosteId(branco.getId()).orElseThrow().getQuantidadeAtual());
+        List<MovimentoEstoque> movimentos = movimentoEstoqueRepository.findAll();
+        assertEquals(3, movimentos.size());
+        assertTrue(movimentos.stream().anyMatch(m -> m.getObservacao().endsWith("(estoque negativo)")
+                && m.getQuantidade() == 2 && m.getQuantidadeAtual() == -2));
+        assertEquals(0, estoqueConsolidadoService.verificar(false).get("totalDivergencias"));
+    }
+
+    @Test
+    void transacaoDesfeitaDevolveOSaldoDaMemoria() throws Exception {
+        Poste vermelho = criarPosteComEstoque("4400", "vermelho", 10);
+        estoqueConsolidadoService.verificar(true);
+
+        TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+        transactionTemplate.executeWithoutResult(status -> {
+            estoqueService.reduzirEstoqueComData(vermelho.getId(), 4, LocalDate.now(), "Desfeita");
+            assertEquals(6, estoqueMemoriaService.saldoDoPoste(vermelho.getId()));
+            status.setRollbackOnly();
+        });
+
+        assertEquals(10, estoqueMemoriaService.saldoDoPoste(vermelho.getId()));
+        assertTrue(estoqueMemoriaService.aguardarDescarga(10_000));
+        assertEquals(10, estoqueRepository.findByPosteId(vermelho.getId()).orElseThrow().getQuantidadeAtual());
+        assertEquals(0, movimentoEstoqueRepository.count());
+    }
+
+    @Test
+    void vendaConcorrenteEsperaATransacaoDesfeitaDoMesmoCodigoBase() throws Exception {
+        Poste vermelho = criarPosteComEstoque("4600", "vermelho", 10);
+        Poste branco = criarPosteComEstoque("4600-B", "branco", 0);
+        estoqueConsolidadoService.verificar(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch reduziu = new CountDownLatch(1);
+        CountDownLatch desfazer = new CountDownLatch(1);
+        Future<?> desfeita = executor.submit(() -> {
+            TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    estoqueService.reduzirEstoqueComData(vermelho.getId(), 4, LocalDate.now(), "Desfeita");
+                    reduziu.countDown();
+                    try {
+                        desfazer.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    status.setRollbackOnly();
+                });
+            } finally {
+                TenantContext.clear();
+            }
+            return null;
+        });
+
+        assertTrue(reduziu.await(10, TimeUnit.SECONDS));
+        long contencoesAntes = (Long) estoqueLockManager.obterMetricas().get("contencoes");
+        Future<?> concorrente = executor.submit(() -> {
+            TenantContext.setCurrentTenant(TenantContext.TenantType.BRANCO);
+            try {
+                estoqueService.reduzirEstoqueComData(branco.getId(), 3, LocalDate.now(), "Concorrente");
+            } finally {
+                TenantContext.clear();
+            }
+            return null;
+        });
+
+        // A venda concorrente fica esperando o lock do código base até o rollback
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((Long) estoqueLockManager.obterMetricas().get("contencoes") == contencoesAntes
+                && System.nanoTime() < limite) {
+            Thread.sleep(10);
+        }
+        desfazer.countDown();
+        desfeita.get(10, TimeUnit.SECONDS);
+        concorrente.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // Os movimentos commitados partem do saldo commitado, não do saldo da transação desfeita
+        List<MovimentoEstoque> movimentos = movimentoEstoqueRepository.findAll();
+        assertEquals(1, movimentos.size());
+        assertEquals(vermelho.getId(), movimentos.get(0).getPoste().getId());
+        assertEquals(10, movimentos.get(0).getQuantidadeAnterior());
+        assertEquals(7, movimentos.get(0).getQuantidadeAtual());
+        assertEquals(7, estoqueMemoriaService.saldoDoPoste(vermelho.getId()));
+        assertTrue(estoqueMemoriaService.aguardarDescarga(10_000));
+        assertEquals(7, estoqueRepository.findByPosteId(vermelho.getId()).orElseThrow().getQuantidadeAtual());
+        assertEquals(0, estoqueConsolidadoService.verificar(false).get("totalDivergencias"));
+    }
+
+    @Test
+    void movimentosPendentesSaoReaplicadosNaSubida() throws Exception {
+        Poste vermelho = criarPosteComEstoque("4500", "vermelho", 10);
+        estoqueConsolidadoService.verificar(true);
+
+        // Movimento commitado que não chegou a ser descarregado antes da parada
+        MovimentoEstoque pendente = new MovimentoEstoque(vermelho, MovimentoEstoque.TipoMovimento.SAIDA, 3,
+                LocalDate.now(), 10, 7, "Antes da parada");
+        pendente.setEstoqueAplicado(false);
+        movimentoEstoqueRepository.save(pendente);
+
+        EstoqueMemoriaService aposParada = new EstoqueMemoriaService(posteRepository, estoqueRepository,
+                movimentoEstoqueService, movimentoEstoqueRepository, estoqueConsolidadoService,
+                estoqueLockManager, transactionTemplate, true, 50);
+        try {
+            aposParada.carregar();
+            assertEquals(7, aposParada.saldoDoPoste(vermelho.getId()));
+            assertTrue(aposParada.aguardarDescarga(10_000));
+        } finally {
+            aposParada.encerrar();
+        }
+
+        assertEquals(7, estoqueRepository.findByPosteId(vermelho.getId()).orElseThrow().getQuantidadeAtual());
+        assertEquals(0, movimentoEstoqueRepository.findPendentesDeEstoque().size());
+        assertEquals(0, estoqueConsolidadoService.verificar(false).get("totalDivergencias"));
+    }
+
+    private VendaCreateDTO criarVenda(Long posteId) {
+        VendaCreateDTO venda = new VendaCreateDTO();
+        venda.setDataVenda(LocalDateTime.now());
+        venda.setTipoVenda(Venda.TipoVenda.V);
+        venda.setPosteId(posteId);
+        venda.setQuantidade(1);
+        venda.setValorVenda(new BigDecimal("150.00"));
+        return venda;
+    }
+
+    private Poste criarPosteComEstoque(String codigo, String tenantId, int quantidade) {
+        Poste poste = new Poste();
+        poste.setCodigo(codigo);
+        poste.setDescricao("Poste " + codigo);
+        poste.setPreco(new BigDecimal("100.00"));
+        poste.setTenantId(tenantId);
+        poste = posteRepository.save(poste);
+
+        estoqueRepository.save(new Estoque(poste, quantidade));
+        // Como o cadastro pelo PosteController faz
+        estoqueMemoriaService.atualizarPoste(poste);
+        return poste;
+    }
+}
@@ -0,0 +1,237 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.EntradaEstoqueLoteDTO;
+import com.vendas.postes.dto.EstoqueDTO;
+import com.vendas.postes.dto.ResultadoEntradaLoteDTO;
+import com.vendas.postes.dto.SaidaEstoqueLoteDTO;
+import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.Poste;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({EstoqueService.class, EstoqueConsolidadoService.class, EstoqueLockManager.class, EstoqueListagemCache.class,
+        EstoqueMemoriaService.class, MovimentoEstoqueService.class, EstoqueCheckpointService.class, ExportacaoJsonService.class,
+        ArquivoMovimentosService.class, GravadorMovimentosEmGrupo.class, IndiceSaldoDiario.class, JacksonAutoConfiguration.class})
+class EstoqueServiceTest {
+
+    @Autowired
+    private EstoqueService estoqueService;
+
+    @Autowired
+    private EstoqueConsolidadoService estoqueConsolidadoService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private int proximoCodigo = 1000;
+
+    @BeforeEach
+    void definirTenant() {
+        TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+    }
+
+    @AfterEach
+    void limparTenant() {
+        TenantContext.clear();
+    }
+
+    @Test
+    void listarTodoEstoqueConsolidaVariantesDeAmbosOsCaminhoes() {
+        Poste vermelho = criarPoste("4199", "vermelho", 10);
+        criarPoste("4199-B", "branco", 5);
+        criarPoste("4199-C", "branco", 2);
+        Poste semEstoque = criarPoste("5000", "vermelho", null);
+        reconstruirConsolidado();
+
+        List<EstoqueDTO> estoque = estoqueService.listarTodoEstoque();
+
+        assertEquals(2, estoque.size());
+        EstoqueDTO consolidado = buscarPorPoste(estoque, vermelho.getId());
+        assertEquals(17, consolidado.getQuantidadeAtual());
+        assertEquals("4199", consolidado.getCodigoPoste());
+        EstoqueDTO zerado = buscarPorPoste(estoque, semEstoque.getId());
+        assertEquals(0, zerado.getQuantidadeAtual());
+        assertEquals(0, zerado.getQuantidadeMinima());
+        assertEquals(false, zerado.getEstoqueAbaixoMinimo());
+    }
+
+    @Test
+    void listarEstoqueConsolidadoCompletoLeUmaLinhaPorCodigoBaseEmUmaConsulta() {
+        criarPoste("5000", "vermelho", null);
+        criarPoste("4199", "vermelho", 10);
+        criarPoste("4199-B", "branco", 5);
+        reconstruirConsolidado();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<EstoqueDTO> estoque = estoqueService.listarEstoqueConsolidadoCompleto();
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(List.of("4199", "5000"), estoque.stream().map(EstoqueDTO::getCodigoPoste).toList());
+        assertEquals(15, estoque.get(0).getQuantidadeAtual());
+        assertEquals("Poste 4199", estoque.get(0).getDescricaoPoste());
+        assertEquals(0, estoque.get(1).getQuantidadeAtual());
+    }
+
+    @Test
+    void entradasESaidasMantemEstoqueConsolidadoSemDivergencias() {
+        Poste vermelho = criarPoste("4199", "vermelho", 10);
+        Poste branco = criarPoste("4199-B", "branco", 5);
+        reconstruirConsolidado();
+
+        estoqueService.adicionarEstoqueComData(branco.getId(), 3, LocalDate.now(), "Entrada");
+        estoqueService.reduzirEstoqueComData(vermelho.getId(), 20, LocalDate.now(), "Venda");
+        estoqueService.adicionarEstoqueComData(criarPoste("7000", "branco", null).getId(), 4, LocalDate.now(), "Entrada");
+
+        Map<String, Object> verificacao = estoqueConsolidadoService.verificar(false);
+        assertEquals(0, verificacao.get("totalDivergencias"));
+        assertEquals(-2, buscarPorPoste(estoqueService.listarTodoEstoque(), vermelho.getId()).getQuantidadeAtual());
+    }
+
+    @Test
+    void adicionarEstoqueEmLoteAplicaItensValidosEReportaFalhas() {
+        Poste vermelho = criarPoste("4199", "vermelho", 10);
+        Poste branco = criarPoste("4199-B", "branco", null);
+        reconstruirConsolidado();
+
+        List<ResultadoEntradaLoteDTO> resultados = estoqueService.adicionarEstoqueEmLote(List.of(
+                entradaLote(vermelho.getId(), 5),
+                entradaLote(branco.getId(), 3),
+                entradaLote(999_999L, 2),
+                entradaLote(vermelho.getId(), 0),
+                entradaLote(vermelho.getId(), 1)));
+
+        assertEquals(List.of(true, true, false, false, true),
+                resultados.stream().map(ResultadoEntradaLoteDTO::getSucesso).toList());
+        assertEquals("Poste não encontrado", resultados.get(2).getErro());
+        assertEquals(15, resultados.get(0).getQuantidadeAtual());
+        assertEquals(15, resultados.get(4).getQuantidadeAnterior());
+        assertEquals(16, resultados.get(4).getQuantidadeAtual());
+
+        Map<String, Object> verificacao = estoqueConsolidadoService.verificar(false);
+        assertEquals(0, verificacao.get("totalDivergencias"));
+        assertEquals(19, buscarPorPoste(estoqueService.listarTodoEstoque(), vermelho.getId()).getQuantidadeAtual());
+    }
+
+    @Test
+    void adicionarEstoqueEmLoteCriaConsolidadoDoCodigoBaseUmaVez() {
+        // Postes cadastrados depois da subida: o código base ainda não tem linha consolidada
+        Poste vermelho = criarPoste("4199", "vermelho", 10);
+        Poste branco = criarPoste("4199-B", "branco", null);
+        entityManager.flush();
+        entityManager.clear();
+
+        estoqueService.adicionarEstoqueEmLote(List.of(
+                entradaLote(vermelho.getId(), 5),
+                entradaLote(branco.getId(), 3)));
+        entityManager.flush();
+        entityManager.clear();
+
+        Map<String, Object> verificacao = estoqueConsolidadoService.verificar(false);
+        assertEquals(0, verificacao.get("totalDivergencias"));
+        assertEquals(18, buscarPorPoste(estoqueService.listarTodoEstoque(), vermelho.getId()).getQuantidadeAtual());
+    }
+
+    @Test
+    void reduzirEstoqueEmLoteCriaConsolidadoDoCodigoBaseUmaVez() {
+        Poste vermelho = criarPoste("4199", "vermelho", 2);
+        criarPoste("4199-B", "branco", 5);
+        entityManager.flush();
+        entityManager.clear();
+
+        // A saída consome os dois postes do código base
+        estoqueService.reduzirEstoqueEmLote(List.of(
+                new SaidaEstoqueLoteDTO(vermelho.getId(), 4, LocalDate.now(), "Venda")));
+        entityManager.flush();
+        entityManager.clear();
+
+        Map<String, Object> verificacao = estoqueConsolidadoService.verificar(false);
+        assertEquals(0, verificacao.get("totalDivergencias"));
+        assertEquals(3, buscarPorPoste(estoqueService.listarTodoEstoque(), vermelho.getId()).getQuantidadeAtual());
+    }
+
+    @Test
+    void listarTodoEstoqueUsaNumeroFixoDeConsultas() {
+        criarCatalogo(5);
+        long consultasCatalogoPequeno = contarConsultasDaListagem();
+
+        criarCatalogo(50);
+        long consultasCatalogoGrande = contarConsultasDaListagem();
+
+        assertEquals(consultasCatalogoPequeno, consultasCatalogoGrande);
+    }
+
+    private long contarConsultasDaListagem() {
+        reconstruirConsolidado();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        estoqueService.listarTodoEstoque();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void reconstruirConsolidado() {
+        entityManager.flush();
+        estoqueConsolidadoService.verificar(true);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private void criarCatalogo(int quantidadePostes) {
+        for (int i = 0; i < quantidadePostes; i++) {
+            String codigo = String.valueOf(proximoCodigo++);
+            criarPoste(codigo, "vermelho", i);
+            criarPoste(codigo + "-B", "branco", i);
+        }
+    }
+
+    private Poste criarPoste(String codigo, String tenantId, Integer quantidade) {
+        Poste poste = new Poste();
+        poste.setCodigo(codigo);
+        poste.setDescricao("Poste " + codigo);
+        poste.setPreco(new BigDecimal("100.00"));
+        poste.setTenantId(tenantId);
+        entityManager.persist(poste);
+
+        if (quantidade != null) {
+            entityManager.persist(new Estoque(poste, quantidade));
+        }
+        return poste;
+    }
+
+    private EntradaEstoqueLoteDTO entradaLote(Long posteId, int quantidade) {
+        EntradaEstoqueLoteDTO entrada = new EntradaEstoqueLoteDTO();
+        entrada.setPosteId(posteId);
+        entrada.setQuantidade(quantidade);
+        entrada.setObservacao("Descarga");
+        return entrada;
+    }
+
+    private EstoqueDTO buscarPorPoste(List<EstoqueDTO> estoque, Long posteId) {
+        return estoque.stream()
+                .filter(dto -> posteId.equals(dto.getPosteId()))
+                .findFirst()
+                .orElseThrow();
+    }
+}
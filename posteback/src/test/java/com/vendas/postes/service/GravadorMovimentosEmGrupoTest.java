@@ -0,0 +1,158 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.MovimentoEstoqueDTO;
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.MovimentoEstoqueRepository;
+import com.vendas.postes.repository.PosteRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Movimentos avulsos enviados ao mesmo tempo saem em poucos commits, cada chamada volta com o
+ * seu movimento já gravado, e um pedido inválido não impede a gravação dos outros do lote.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:movimentos-grupo",
+        "spring.jpa.show-sql=false",
+        "movimentos.grupo.janela-ms=50",
+        "movimentos.grupo.lote-maximo=1000",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class GravadorMovimentosEmGrupoTest {
+
+    private static final int PEDIDOS = 64;
+
+    @Autowired
+    private GravadorMovimentosEmGrupo gravadorMovimentosEmGrupo;
+
+    @Autowired
+    private MovimentoEstoqueService movimentoEstoqueService;
+
+    @Autowired
+    private MovimentoEstoqueRepository movimentoEstoqueRepository;
+
+    @Autowired
+    private PosteRepository posteRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void limparBase() {
+        movimentoEstoqueRepository.deleteAll();
+        posteRepository.deleteAll();
+    }
+
+    @Test
+    void pedidosSimultaneosSaoGravadosEmPoucosCommits() throws Exception {
+        Poste poste = criarPoste("4199");
+        long commitsAntes = commits();
+
+        List<MovimentoEstoqueDTO> gravados = executarJuntos(PEDIDOS, i -> {
+            TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+            try {
+                return movimentoEstoqueService.registrarMovimentoManual(poste.getId(), "ENTRADA", 1,
+                        LocalDate.now(), "Manual " + i);
+            } finally {
+                TenantContext.clear();
+            }
+        });
+
+        // Ao voltar, cada movimento já está commitado
+        assertTrue(gravados.stream().allMatch(movimento -> movimento.getId() != null));
+        assertEquals(PEDIDOS, movimentoEstoqueRepository.count());
+        assertTrue(commits() - commitsAntes < PEDIDOS);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> linhasPorLote = (Map<String, Object>) gravadorMovimentosEmGrupo.obterMetricas().get("linhasPorLote");
+        assertTrue((Long) linhasPorLote.get("maximo") > 1);
+    }
+
+    @Test
+    void pedidoInvalidoFalhaSozinho() throws Exception {
+        Poste poste = criarPoste("4300");
+
+        // Id devolvido a cada pedido, ou null se o pedido falhou
+        List<Long> resultados = executarJuntos(8, i -> {
+            // Sem poste o insert viola a coluna obrigatória
+            MovimentoEstoque movimento = new MovimentoEstoque(i == 0 ? null : poste,
+                    MovimentoEstoque.TipoMovimento.ENTRADA, 1, LocalDate.now(), 0, 1, "Lote " + i);
+            try {
+                return gravadorMovimentosEmGrupo.gravar(List.of(movimento)).get(0).getId();
+            } catch (RuntimeException e) {
+                return null;
+            }
+        });
+
+        assertNull(resultados.get(0));
+        assertEquals(7, movimentoEstoqueRepository.count());
+        // Depois de refazer pedido a pedido, os ids devolvidos são os dos movimentos gravados
+        Set<Long> gravados = movimentoEstoqueRepository.findAll().stream()
+                .map(MovimentoEstoque::getId)
+                .collect(Collectors.toSet());
+        assertEquals(gravados, resultados.stream().filter(Objects::nonNull).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void naoGravaDentroDeOutraTransacao() {
+        Poste poste = criarPoste("4400");
+        MovimentoEstoque movimento = new MovimentoEstoque(poste, MovimentoEstoque.TipoMovimento.ENTRADA, 1,
+                LocalDate.now(), 0, 1, "Dentro da transação");
+
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(
+                status -> gravadorMovimentosEmGrupo.gravar(List.of(movimento))));
+        assertEquals(0, movimentoEstoqueRepository.count());
+    }
+
+    private <T> List<T> executarJuntos(int quantidade, Tarefa<T> tarefa) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(quantidade);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<T>> futuros = new ArrayList<>();
+        for (int i = 0; i < quantidade; i++) {
+            int indice = i;
+            futuros.add(executor.submit(() -> {
+                largada.await();
+                return tarefa.executar(indice);
+            }));
+        }
+
+        largada.countDown();
+        List<T> resultados = new ArrayList<>();
+        for (Future<T> futuro : futuros) {
+            resultados.add(futuro.get(1, TimeUnit.MINUTES));
+        }
+        executor.shutdown();
+        return resultados;
+    }
+
+    private long commits() {
+        return (Long) gravadorMovimentosEmGrupo.obterMetricas().get("commits");
+    }
+
+    private Poste criarPoste(String codigo) {
+        Poste poste = new Poste();
+        poste.setCodigo(codigo);
+        poste.setDescricao("Poste " + codigo);
+        poste.setPreco(new BigDecimal("100.00"));
+        poste.setTenantId("vermelho");
+        return posteRepository.save(poste);
+    }
+
+    private interface Tarefa<T> {
+        T executar(int indice) throws Exception;
+    }
+}
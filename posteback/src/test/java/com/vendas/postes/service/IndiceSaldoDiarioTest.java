@@ -0,0 +1,151 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.EstoqueNaDataDTO;
+import com.vendas.postes.dto.VariacaoEstoqueDTO;
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.MovimentoEstoqueRepository;
+import com.vendas.postes.repository.MovimentoResumoDiarioRepository;
+import com.vendas.postes.repository.PosteRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * O índice de saldo diário responde estoque na data e variação entre datas igual à soma
+ * dos movimentos, inclusive com movimentos retroativos e depois de montado a partir do banco.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:indice-saldo-diario",
+        "spring.jpa.show-sql=false",
+        "movimentos.indice.habilitado=true",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class IndiceSaldoDiarioTest {
+
+    private static final LocalDate INICIO = LocalDate.of(2022, 1, 1);
+    private static final int DIAS = 4 * 365;
+
+    @Autowired
+    private IndiceSaldoDiario indiceSaldoDiario;
+
+    @Autowired
+    private MovimentoEstoqueService movimentoEstoqueService;
+
+    @Autowired
+    private PosteRepository posteRepository;
+
+    @Autowired
+    private MovimentoEstoqueRepository movimentoEstoqueRepository;
+
+    @Autowired
+    private MovimentoResumoDiarioRepository movimentoResumoDiarioRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final List<MovimentoEstoque> registrados = new ArrayList<>();
+
+    @BeforeEach
+    void definirTenant() {
+        TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+    }
+
+    @AfterEach
+    void limparBase() {
+        TenantContext.clear();
+        movimentoEstoqueRepository.deleteAll();
+        posteRepository.deleteAll();
+    }
+
+    @Test
+    void consultasDoIndiceBatemComASomaDosMovimentos() {
+        Random aleatorio = new Random(42);
+        List<Poste> postes = List.of(criarPoste("4199", "vermelho"), criarPoste("4300", "vermelho"),
+                criarPoste("4400", "vermelho"), criarPoste("4199-B", "branco"));
+
+        // Lotes em ordem aleatória de data: a árvore cresce para frente e é remontada para trás
+        for (int lote = 0; lote < 20; lote++) {
+            List<MovimentoEstoque> movimentos = new ArrayList<>();
+            for (int i = 0; i < 15; i++) {
+                Poste poste = postes.get(aleatorio.nextInt(postes.size()));
+                MovimentoEstoque.TipoMovimento tipo = MovimentoEstoque.TipoMovimento.values()[aleatorio.nextInt(5)];
+                movimentos.add(new MovimentoEstoque(poste, tipo, 1 + aleatorio.nextInt(20),
+                        INICIO.plusDays(aleatorio.nextInt(DIAS)), 0, 0, "Lote " + lote));
+            }
+            transactionTemplate.executeWithoutResult(status -> movimentoEstoqueService.registrar(movimentos));
+            registrados.addAll(movimentos);
+        }
+
+        // Desfeitos não entram no índice
+        transactionTemplate.executeWithoutResult(status -> {
+            movimentoEstoqueService.registrar(List.of(new MovimentoEstoque(postes.get(0),
+                    MovimentoEstoque.TipoMovimento.ENTRADA, 1000, INICIO, 0, 1000, "Desfeito")));
+            status.setRollbackOnly();
+        });
+
+        IndiceSaldoDiario montadoDoBanco = new IndiceSaldoDiario(posteRepository, movimentoEstoqueRepository,
+                movimentoResumoDiarioRepository, true);
+        montadoDoBanco.carregar();
+
+        for (int i = 0; i < 30; i++) {
+            LocalDate data = INICIO.minusDays(10).plusDays(aleatorio.nextInt(DIAS + 20));
+            List<EstoqueNaDataDTO> estoques = movimentoEstoqueService.calcularEstoqueNaDataTodosPostes(data);
+
+            assertEquals(List.of("4199", "4300", "4400"),
+                    estoques.stream().map(EstoqueNaDataDTO::getCodigoPoste).collect(Collectors.toList()));
+            for (EstoqueNaDataDTO estoque : estoques) {
+                int esperado = somar(estoque.getPosteId(), INICIO.minusYears(1), data);
+                assertEquals(esperado, estoque.getQuantidadeCalculada());
+                assertEquals(esperado, movimentoEstoqueService.calcularEstoqueNaData(estoque.getPosteId(), data));
+                assertEquals(esperado, montadoDoBanco.saldoNaData(estoque.getPosteId(), "vermelho", data));
+            }
+
+            LocalDate fim = data.plusDays(aleatorio.nextInt(120));
+            for (VariacaoEstoqueDTO variacao : movimentoEstoqueService.calcularVariacaoEntreDatasTodosPostes(data, fim)) {
+                assertEquals(somar(variacao.getPosteId(), data, fim), variacao.getVariacao());
+            }
+        }
+
+        // Postes de outro tenant não aparecem
+        assertEquals(0, movimentoEstoqueService.calcularEstoqueNaData(postes.get(3).getId(), INICIO.plusDays(DIAS)));
+        assertTrue((Long) indiceSaldoDiario.obterMetricas().get("bytesPorPoste") > 0);
+    }
+
+    /**
+     * Soma direta dos movimentos do poste com data entre inicio e fim, inclusive
+     */
+    private int somar(Long posteId, LocalDate inicio, LocalDate fim) {
+        return registrados.stream()
+                .filter(movimento -> movimento.getPoste().getId().equals(posteId))
+                .filter(movimento -> !movimento.getDataMovimento().isBefore(inicio)
+                        && !movimento.getDataMovimento().isAfter(fim))
+                .mapToInt(EstoqueCheckpointService::variacaoDoSaldo)
+                .sum();
+    }
+
+    private Poste criarPoste(String codigo, String tenantId) {
+        Poste poste = new Poste();
+        poste.setCodigo(codigo);
+        poste.setDescricao("Poste " + codigo);
+        poste.setPreco(new BigDecimal("100.00"));
+        poste.setTenantId(tenantId);
+        poste = posteRepository.save(poste);
+        // Como o cadastro pelo PosteController faz
+        indiceSaldoDiario.atualizarPoste(poste);
+        return poste;
+    }
+}
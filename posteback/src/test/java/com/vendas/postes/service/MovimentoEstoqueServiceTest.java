@@ -0,0 +1,382 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.EstoqueNaDataDTO;
+import com.vendas.postes.dto.MovimentoEstoqueDTO;
+import com.vendas.postes.dto.PaginaDTO;
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.model.MovimentoEstoque.TipoMovimento;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.EstoqueCheckpointRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Import({MovimentoEstoqueService.class, EstoqueCheckpointService.class, ExportacaoJsonService.class,
+        ArquivoMovimentosService.class, GravadorMovimentosEmGrupo.class, IndiceSaldoDiario.class, JacksonAutoConfiguration.class})
+class MovimentoEstoqueServiceTest {
+
+    private static final LocalDate REFERENCIA = LocalDate.of(2024, 6, 30);
+
+    @TempDir
+    static Path diretorioArquivo;
+
+    @DynamicPropertySource
+    static void propriedades(DynamicPropertyRegistry registry) {
+        registry.add("movimentos.arquivo.diretorio", () -> diretorioArquivo.toString());
+    }
+
+    @Autowired
+    private MovimentoEstoqueService movimentoEstoqueService;
+
+    @Autowired
+    private EstoqueCheckpointService estoqueCheckpointService;
+
+    @Autowired
+    private EstoqueCheckpointRepository estoqueCheckpointRepository;
+
+    @Autowired
+    private ArquivoMovimentosService arquivoMovimentosService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void definirTenant() {
+        TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+    }
+
+    @AfterEach
+    void limparTenant() {
+        TenantContext.clear();
+    }
+
+    @Test
+    void calculaEstoqueNaDataSomandoMovimentosAteAData() {
+        Poste poste = criarPoste("4199", "vermelho");
+        movimentar(poste, TipoMovimento.ENTRADA, 50, REFERENCIA.minusMonths(2));
+        movimentar(poste, TipoMovimento.SAIDA, 8, REFERENCIA.minusMonths(1));
+        movimentar(poste, TipoMovimento.VENDA, 2, REFERENCIA);
+        movimentar(poste, TipoMovimento.AJUSTE, 1, REFERENCIA);
+        movimentar(poste, TipoMovimento.TRANSFERENCIA, 5, REFERENCIA);
+        movimentar(poste, TipoMovimento.SAIDA, 30, REFERENCIA.plusDays(1));
+
+        assertEquals(41, movimentoEstoqueService.calcularEstoqueNaData(poste.getId(), REFERENCIA));
+        assertEquals(0, movimentoEstoqueService.calcularEstoqueNaData(poste.getId(), REFERENCIA.minusYears(1)));
+    }
+
+    @Test
+    void calculaEstoqueNaDataDeTodosOsPostesDoTenant() {
+        Poste comMovimentos = criarPoste("4199", "vermelho");
+        Poste semMovimentos = criarPoste("5000", "vermelho");
+        Poste outroTenant = criarPoste("4199-B", "branco");
+        movimentar(comMovimentos, TipoMovimento.ENTRADA, 10, REFERENCIA.minusDays(3));
+        movimentar(comMovimentos, TipoMovimento.SAIDA, 4, REFERENCIA.plusDays(3));
+        movimentar(outroTenant, TipoMovimento.ENTRADA, 7, REFERENCIA.minusDays(3));
+
+        List<EstoqueNaDataDTO> estoques = movimentoEstoqueService.calcularEstoqueNaDataTodosPostes(REFERENCIA);
+
+        assertEquals(2, estoques.size());
+        assertEquals(comMovimentos.getId(), estoques.get(0).getPosteId());
+        assertEquals(10, estoques.get(0).getQuantidadeCalculada());
+        assertEquals(semMovimentos.getId(), estoques.get(1).getPosteId());
+        assertEquals(0, estoques.get(1).getQuantidadeCalculada());
+        assertEquals(REFERENCIA, estoques.get(1).getDataReferencia());
+    }
+
+    @Test
+    void usaCheckpointsMensaisComOMesmoResultadoDaSomaCompleta() {
+        Poste poste = criarPoste("4199", "vermelho");
+        Poste outroTenant = criarPoste("4199-B", "branco");
+        movimentar(poste, TipoMovimento.ENTRADA, 50, LocalDate.of(2024, 3, 10));
+        movimentar(poste, TipoMovimento.SAIDA, 8, LocalDate.of(2024, 3, 31));
+        movimentar(poste, TipoMovimento.VENDA, 2, LocalDate.of(2024, 5, 2));
+        movimentar(poste, TipoMovimento.ENTRADA, 5, LocalDate.of(2024, 6, 15));
+        movimentar(outroTenant, TipoMovimento.ENTRADA, 7, LocalDate.of(2024, 4, 1));
+
+        assertEquals(3, estoqueCheckpointService.gerarCheckpointsPendentes(YearMonth.of(2024, 5)));
+        assertEquals(0, estoqueCheckpointService.gerarCheckpointsPendentes(YearMonth.of(2024, 5)));
+        assertEquals(40, estoqueCheckpointRepository
+                .findByPosteIdAndTenantIdAndDataReferencia(poste.getId(), "vermelho", LocalDate.of(2024, 5, 31))
+                .orElseThrow().getQuantidade());
+
+        assertEquals(42, movimentoEstoqueService.calcularEstoqueNaData(poste.getId(), LocalDate.of(2024, 4, 30)));
+        assertEquals(45, movimentoEstoqueService.calcularEstoqueNaData(poste.getId(), REFERENCIA));
+        assertEquals(0, movimentoEstoqueService.calcularEstoqueNaData(poste.getId(), LocalDate.of(2024, 3, 9)));
+
+        List<EstoqueNaDataDTO> estoques = movimentoEstoqueService.calcularEstoqueNaDataTodosPostes(REFERENCIA);
+        assertEquals(1, estoques.size());
+        assertEquals(45, estoques.get(0).getQuantidadeCalculada());
+    }
+
+    @Test
+    void movimentoRetroativoAjustaCheckpointsSeguintes() {
+        Poste poste = criarPoste("4199", "vermelho");
+        Poste semCheckpoint = criarPoste("5000", "vermelho");
+        movimentar(poste, TipoMovimento.ENTRADA, 50, LocalDate.of(2024, 3, 10));
+        estoqueCheckpointService.gerarCheckpointsPendentes(YearMonth.of(2024, 5));
+
+        movimentoEstoqueService.registrar(List.of(
+                new MovimentoEstoque(poste, TipoMovimento.SAIDA, 10, LocalDate.of(2024, 4, 20), null, null, null),
+                new MovimentoEstoque(semCheckpoint, TipoMovimento.ENTRADA, 3, LocalDate.of(2024, 3, 5), null, null, null),
+                new MovimentoEstoque(poste, TipoMovimento.SAIDA, 1, LocalDate.of(2024, 6, 1), null, null, null)));
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(50, quantidadeNoCheckpoint(poste, LocalDate.of(2024, 3, 31)));
+        assertEquals(40, quantidadeNoCheckpoint(poste, LocalDate.of(2024, 4, 30)));
+        assertEquals(40, quantidadeNoCheckpoint(poste, LocalDate.of(2024, 5, 31)));
+        assertEquals(3, quantidadeNoCheckpoint(semCheckpoint, LocalDate.of(2024, 5, 31)));
+
+        assertEquals(40, movimentoEstoqueService.calcularEstoqueNaData(poste.getId(), LocalDate.of(2024, 5, 31)));
+        assertEquals(39, movimentoEstoqueService.calcularEstoqueNaData(poste.getId(), REFERENCIA));
+        assertEquals(3, movimentoEstoqueService.calcularEstoqueNaData(semCheckpoint.getId(), REFERENCIA));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void movimentosRetroativosSimultaneosDoMesmoPosteSomamNoCheckpoint() throws Exception {
+        Poste poste = transactionTemplate.execute(status -> {
+            Poste comCheckpoint = criarPoste("4199", "vermelho");
+            movimentar(comCheckpoint, TipoMovimento.ENTRADA, 50, LocalDate.of(2024, 3, 10));
+            return criarPoste("5000", "vermelho");
+        });
+        estoqueCheckpointService.gerarCheckpointsPendentes(YearMonth.of(2024, 5));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch registrou = new CountDownLatch(1);
+        CountDownLatch commitar = new CountDownLatch(1);
+        try {
+            // Os dois criam os checkpoints que faltam ao poste; o primeiro só commita depois do segundo começar
+            Future<?> primeiro = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+                movimentoEstoqueService.registrar(List.of(
+                        new MovimentoEstoque(poste, TipoMovimento.ENTRADA, 2, LocalDate.of(2024, 4, 10), null, null, null)));
+                registrou.countDown();
+                try {
+                    commitar.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertTrue(registrou.await(10, TimeUnit.SECONDS));
+            Future<?> segundo = executor.submit(() -> transactionTemplate.executeWithoutResult(status ->
+                    movimentoEstoqueService.registrar(List.of(
+                            new MovimentoEstoque(poste, TipoMovimento.ENTRADA, 3, LocalDate.of(2024, 4, 20), null, null, null)))));
+            Thread.sleep(200);
+            commitar.countDown();
+            primeiro.get(10, TimeUnit.SECONDS);
+            segundo.get(10, TimeUnit.SECONDS);
+
+            assertEquals(5, quantidadeNoCheckpoint(poste, LocalDate.of(2024, 4, 30)));
+            assertEquals(5, quantidadeNoCheckpoint(poste, LocalDate.of(2024, 5, 31)));
+            assertTrue(estoqueCheckpointRepository.findByPosteIdAndTenantIdAndDataReferencia(
+                    poste.getId(), "vermelho", LocalDate.of(2024, 3, 31)).isEmpty());
+        } finally {
+            executor.shutdownNow();
+            transactionTemplate.executeWithoutResult(status -> {
+                entityManager.createQuery("DELETE FROM MovimentoEstoque").executeUpdate();
+                entityManager.createQuery("DELETE FROM EstoqueCheckpoint").executeUpdate();
+                entityManager.createQuery("DELETE FROM Poste").executeUpdate();
+            });
+        }
+    }
+
+    @Test
+    void listaUltimosMovimentosComLimiteEPeriodoNaConsulta() {
+        Poste poste = criarPoste("4199", "vermelho");
+        Poste posteBranco = criarPoste("4199-B", "branco");
+        LocalDateTime registro = REFERENCIA.atTime(8, 0);
+        for (int i = 0; i < 120; i++) {
+            registrarEm(poste, REFERENCIA.minusDays(i % 10), registro.plusMinutes(i));
+        }
+        registrarEm(posteBranco, REFERENCIA, registro.plusDays(1));
+        registrarEm(posteBranco, REFERENCIA.minusMonths(6), registro.plusDays(2));
+
+        List<MovimentoEstoqueDTO> ultimos = movimentoEstoqueService.listarUltimosMovimentos();
+        assertEquals(100, ultimos.size());
+        assertEquals(registro.plusMinutes(119), ultimos.get(0).getDataRegistro());
+        assertEquals(registro.plusMinutes(20), ultimos.get(99).getDataRegistro());
+        assertTrue(ultimos.stream().allMatch(m -> "vermelho".equals(m.getTenantId())));
+
+        List<MovimentoEstoqueDTO> consolidados = movimentoEstoqueService.listarMovimentosConsolidados(null, null, 5);
+        assertEquals(5, consolidados.size());
+        assertEquals("branco", consolidados.get(0).getTenantId());
+
+        // O movimento de seis meses atrás fica fora do período mesmo sendo o último registrado
+        List<MovimentoEstoqueDTO> doPeriodo = movimentoEstoqueService.listarMovimentosConsolidados(
+                REFERENCIA.minusDays(1), REFERENCIA, 3);
+        assertEquals(3, doPeriodo.size());
+        assertEquals(registro.plusDays(1), doPeriodo.get(0).getDataRegistro());
+        assertTrue(doPeriodo.stream().noneMatch(m -> m.getDataMovimento().isBefore(REFERENCIA.minusDays(1))));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void geraRelatorioEEstatisticasAgrupandoNoBanco() {
+        Poste poste = criarPoste("4199", "vermelho");
+        Poste outro = criarPoste("5000", "vermelho");
+        Poste posteBranco = criarPoste("4199-B", "branco");
+        movimentar(poste, TipoMovimento.ENTRADA, 50, REFERENCIA.minusDays(2));
+        movimentar(poste, TipoMovimento.ENTRADA, 10, REFERENCIA.minusDays(2));
+        movimentar(poste, TipoMovimento.VENDA, 3, REFERENCIA);
+        movimentar(outro, TipoMovimento.SAIDA, 4, REFERENCIA);
+        movimentar(outro, TipoMovimento.AJUSTE, 1, REFERENCIA);
+        movimentar(poste, TipoMovimento.ENTRADA, 99, REFERENCIA.plusDays(1));
+        movimentar(posteBranco, TipoMovimento.ENTRADA, 7, REFERENCIA);
+
+        LocalDate inicio = REFERENCIA.minusDays(7);
+        Map<String, Object> relatorio = movimentoEstoqueService.gerarRelatorioMovimentos(inicio, REFERENCIA);
+        assertEquals(5L, relatorio.get("totalMovimentos"));
+        assertEquals(Map.of(TipoMovimento.ENTRADA, 2L, TipoMovimento.VENDA, 1L, TipoMovimento.SAIDA, 1L,
+                TipoMovimento.AJUSTE, 1L), relatorio.get("movimentosPorTipo"));
+        assertEquals(Map.of(REFERENCIA.minusDays(2), 2L, REFERENCIA, 3L), relatorio.get("movimentosPorData"));
+        // (50 + 10 + 3 + 4 + 1) × 100.00
+        assertEquals(0, new BigDecimal("6800.00").compareTo((BigDecimal) relatorio.get("valorTotalMovimentos")));
+        assertEquals(List.of("4199", "5000"),
+                List.copyOf(((Map<String, Long>) relatorio.get("topPostesMovimento")).keySet()));
+
+        Map<String, Object> estatisticas = movimentoEstoqueService.obterEstatisticasMovimentos(inicio, REFERENCIA);
+        assertEquals(2L, estatisticas.get("totalEntradas"));
+        assertEquals(1L, estatisticas.get("totalSaidas"));
+        assertEquals(1L, estatisticas.get("totalVendas"));
+        assertEquals(1L, estatisticas.get("totalAjustes"));
+        assertEquals(60L, estatisticas.get("quantidadeEntradas"));
+        assertEquals(7L, estatisticas.get("quantidadeSaidas"));
+        assertEquals(53L, estatisticas.get("saldoQuantidade"));
+    }
+
+    @Test
+    void consultasDevolvemOMesmoResultadoDepoisDeArquivarUmAnoFechado() throws Exception {
+        Poste poste = criarPoste("4199", "vermelho");
+        Poste outro = criarPoste("5000", "vermelho");
+        Poste posteBranco = criarPoste("4199-B", "branco");
+        LocalDateTime registro = LocalDateTime.of(2024, 7, 1, 8, 0);
+        TipoMovimento[] tipos = {TipoMovimento.ENTRADA, TipoMovimento.ENTRADA, TipoMovimento.SAIDA,
+                TipoMovimento.VENDA, TipoMovimento.AJUSTE, TipoMovimento.TRANSFERENCIA};
+        for (int i = 0; i < 60; i++) {
+            movimentarEm(i % 3 == 0 ? outro : poste, tipos[i % tipos.length], 1 + i % 7,
+                    LocalDate.of(2023, 1, 1).plusDays(i * 6), registro.plusMinutes(i), "mov " + i);
+        }
+        movimentarEm(posteBranco, TipoMovimento.ENTRADA, 9, LocalDate.of(2023, 5, 5), registro.plusHours(3), null);
+        movimentarEm(poste, TipoMovimento.ENTRADA, 20, LocalDate.of(2024, 1, 10), registro.plusHours(4), null);
+        movimentarEm(poste, TipoMovimento.VENDA, 2, LocalDate.of(2024, 2, 3), registro.plusHours(5), null);
+        estoqueCheckpointService.gerarCheckpointsPendentes(YearMonth.of(2023, 12));
+
+        LocalDate inicio = LocalDate.of(2023, 1, 1);
+        LocalDate meioDoAno = LocalDate.of(2023, 6, 15);
+        List<MovimentoEstoqueDTO> doPoste = movimentoEstoqueService.listarMovimentosPorPoste(poste.getId());
+        List<MovimentoEstoqueDTO> doPeriodo = movimentoEstoqueService.listarMovimentosPorPeriodo(inicio, REFERENCIA);
+        List<MovimentoEstoqueDTO> paginas = todasAsPaginas(null);
+        List<MovimentoEstoqueDTO> paginasDoPoste = todasAsPaginas(outro.getId());
+        List<MovimentoEstoqueDTO> consolidados = movimentoEstoqueService.listarMovimentosConsolidados(inicio, REFERENCIA, 10);
+        Map<String, Object> relatorio = movimentoEstoqueService.gerarRelatorioMovimentos(inicio, REFERENCIA);
+        Map<String, Object> estatisticas = movimentoEstoqueService.obterEstatisticasMovimentos(meioDoAno, REFERENCIA);
+        int estoqueNoMeioDoAno = movimentoEstoqueService.calcularEstoqueNaData(poste.getId(), meioDoAno);
+        int estoqueAtual = movimentoEstoqueService.calcularEstoqueNaData(poste.getId(), REFERENCIA);
+        List<EstoqueNaDataDTO> estoquesNoMeioDoAno = movimentoEstoqueService.calcularEstoqueNaDataTodosPostes(meioDoAno);
+        String exportado = exportar();
+
+        assertEquals(61, arquivoMovimentosService.arquivarAnosFechados());
+        assertEquals(0, arquivoMovimentosService.arquivarAnosFechados());
+        assertEquals(2L, entityManager.createQuery("SELECT COUNT(m) FROM MovimentoEstoque m", Long.class)
+                .getSingleResult());
+
+        assertEquals(doPoste, movimentoEstoqueService.listarMovimentosPorPoste(poste.getId()));
+        assertEquals(doPeriodo, movimentoEstoqueService.listarMovimentosPorPeriodo(inicio, REFERENCIA));
+        assertEquals(paginas, todasAsPaginas(null));
+        assertEquals(paginasDoPoste, todasAsPaginas(outro.getId()));
+        assertEquals(consolidados, movimentoEstoqueService.listarMovimentosConsolidados(inicio, REFERENCIA, 10));
+        assertEquals(relatorio, movimentoEstoqueService.gerarRelatorioMovimentos(inicio, REFERENCIA));
+        assertEquals(estatisticas, movimentoEstoqueService.obterEstatisticasMovimentos(meioDoAno, REFERENCIA));
+        assertEquals(estoqueNoMeioDoAno, movimentoEstoqueService.calcularEstoqueNaData(poste.getId(), meioDoAno));
+        assertEquals(estoqueAtual, movimentoEstoqueService.calcularEstoqueNaData(poste.getId(), REFERENCIA));
+        assertEquals(estoquesNoMeioDoAno, movimentoEstoqueService.calcularEstoqueNaDataTodosPostes(meioDoAno));
+        assertEquals(exportado, exportar());
+    }
+
+    private List<MovimentoEstoqueDTO> todasAsPaginas(Long posteId) {
+        List<MovimentoEstoqueDTO> movimentos = new ArrayList<>();
+        String cursor = null;
+        do {
+            PaginaDTO<MovimentoEstoqueDTO> pagina = movimentoEstoqueService.listarMovimentosPaginados(
+                    posteId, null, null, cursor, 7);
+            movimentos.addAll(pagina.getItens());
+            cursor = pagina.getProximoCursor();
+        } while (cursor != null);
+        return movimentos;
+    }
+
+    private String exportar() throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        movimentoEstoqueService.exportarMovimentos("vermelho", null, null, saida);
+        return saida.toString(StandardCharsets.UTF_8);
+    }
+
+    private int quantidadeNoCheckpoint(Poste poste, LocalDate data) {
+        return estoqueCheckpointRepository
+                .findByPosteIdAndTenantIdAndDataReferencia(poste.getId(), poste.getTenantId(), data)
+                .orElseThrow().getQuantidade();
+    }
+
+    private Poste criarPoste(String codigo, String tenantId) {
+        Poste poste = new Poste();
+        poste.setCodigo(codigo);
+        poste.setDescricao("Poste " + codigo);
+        poste.setPreco(new BigDecimal("100.00"));
+        poste.setTenantId(tenantId);
+        entityManager.persist(poste);
+        return poste;
+    }
+
+    private void registrarEm(Poste poste, LocalDate dataMovimento, LocalDateTime dataRegistro) {
+        MovimentoEstoque movimento = new MovimentoEstoque(poste, TipoMovimento.ENTRADA, 1, dataMovimento, null, null, null);
+        movimento.setDataRegistro(dataRegistro);
+        entityManager.persist(movimento);
+    }
+
+    private void movimentarEm(Poste poste, TipoMovimento tipo, int quantidade, LocalDate dataMovimento,
+                              LocalDateTime dataRegistro, String observacao) {
+        MovimentoEstoque movimento = new MovimentoEstoque(poste, tipo, quantidade, dataMovimento, null, null, observacao);
+        movimento.setDataRegistro(dataRegistro);
+        entityManager.persist(movimento);
+    }
+
+    private void movimentar(Poste poste, TipoMovimento tipo, int quantidade, LocalDate data) {
+        entityManager.persist(new MovimentoEstoque(poste, tipo, quantidade, data, null, null, null));
+    }
+}
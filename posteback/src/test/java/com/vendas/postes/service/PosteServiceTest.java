@@ -0,0 +1,243 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.VendaCreateDTO;
+import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.model.VendaResumoMensal;
+import com.vendas.postes.repository.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A mudança de preço do poste e o ajuste do custo no resumo mensal são gravados juntos,
+ * e o armazém colunar só vê o preço novo depois do commit.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:postes",
+        "spring.jpa.show-sql=false",
+        "vendas.colunar.habilitado=true",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class PosteServiceTest {
+
+    @Autowired
+    private PosteService posteService;
+
+    @Autowired
+    private VendaService vendaService;
+
+    @Autowired
+    private VendaResumoMensalService vendaResumoMensalService;
+
+    @Autowired
+    private EstoqueConsolidadoService estoqueConsolidadoService;
+
+    @Autowired
+    private VendasColunares vendasColunares;
+
+    @Autowired
+    private PosteRepository posteRepository;
+
+    @Autowired
+    private VendaRepository vendaRepository;
+
+    @Autowired
+    private VendaResumoMensalRepository vendaResumoMensalRepository;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private EstoqueConsolidadoRepository estoqueConsolidadoRepository;
+
+    @Autowired
+    private MovimentoEstoqueRepository movimentoEstoqueRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void limparBase() {
+        TenantContext.clear();
+        movimentoEstoqueRepository.deleteAll();
+        vendaRepository.deleteAll();
+        vendaResumoMensalRepository.deleteAll();
+        estoqueRepository.deleteAll();
+        estoqueConsolidadoRepository.deleteAll();
+        posteRepository.deleteAll();
+    }
+
+    @Test
+    void precoEResumoMensalMudamNaMesmaTransacao() {
+        TenantContext.setCurrentTenant("vermelho");
+        Poste poste = new Poste();
+        poste.setCodigo("4199");
+        poste.setDescricao("Poste 4199");
+        poste.setPreco(new BigDecimal("100.00"));
+        poste.setTenantId("vermelho");
+        poste = posteRepository.save(poste);
+
+        VendaCreateDTO venda = new VendaCreateDTO();
+        venda.setTipoVenda(Venda.TipoVenda.V);
+        venda.setDataVenda(LocalDateTime.of(2024, 3, 10, 9, 0));
+        venda.setPosteId(poste.getId());
+        venda.setQuantidade(2);
+        vendaService.criarVenda(venda);
+
+        Poste reajuste = new Poste();
+        reajuste.setPreco(new BigDecimal("150.00"));
+        Long posteId = poste.getId();
+
+        // Desfeita: nada muda, nem no banco nem no armazém em memória
+        transactionTemplate.executeWithoutResult(status -> {
+            posteService.atualizar(posteId, "vermelho", reajuste);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, new BigDecimal("100.00").compareTo(posteRepository.findById(posteId).orElseThrow().getPreco()));
+        assertCusto("200.00", posteId);
+
+        posteService.atualizar(posteId, "vermelho", reajuste);
+
+        assertEquals(0, new BigDecimal("150.00").compareTo(posteRepository.findById(posteId).orElseThrow().getPreco()));
+        assertCusto("300.00", posteId);
+    }
+
+    @Test
+    void reajusteEsperaAVendaNaoCommitadaDoPoste() throws Exception {
+        Poste poste = new Poste();
+        poste.setCodigo("4300");
+        poste.setDescricao("Poste 4300");
+        poste.setPreco(new BigDecimal("100.00"));
+        poste.setTenantId("vermelho");
+        Long posteId = posteRepository.save(poste).getId();
+
+        Poste reajuste = new Poste();
+        reajuste.setPreco(new BigDecimal("150.00"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch vendeu = new CountDownLatch(1);
+        CountDownLatch commitar = new CountDownLatch(1);
+        try {
+            // A venda foi calculada com o preço antigo e ainda não foi commitada
+            Future<?> venda = executor.submit(() -> {
+                TenantContext.setCurrentTenant("vermelho");
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        VendaCreateDTO dto = new VendaCreateDTO();
+                        dto.setTipoVenda(Venda.TipoVenda.V);
+                        dto.setDataVenda(LocalDateTime.of(2024, 3, 10, 9, 0));
+                        dto.setPosteId(posteId);
+                        dto.setQuantidade(2);
+                        vendaService.criarVenda(dto);
+                        vendeu.countDown();
+                        try {
+                            commitar.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                } finally {
+                    TenantContext.clear();
+                }
+                return null;
+            });
+            assertTrue(vendeu.await(10, TimeUnit.SECONDS));
+
+            Future<?> alteracao = executor.submit(() -> posteService.atualizar(posteId, "vermelho", reajuste));
+            Thread.sleep(200);
+            commitar.countDown();
+            venda.get(10, TimeUnit.SECONDS);
+            alteracao.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // O custo da venda também passou para o preço novo
+        assertCusto("300.00", posteId);
+    }
+
+    @Test
+    void inativacaoEsperaAVendaNaoCommitadaDoCodigoBase() throws Exception {
+        Poste vermelho = criarPosteComEstoque("4400", "vermelho", 10);
+        Poste branco = criarPosteComEstoque("4400-B", "branco", 5);
+        estoqueConsolidadoService.verificar(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch vendeu = new CountDownLatch(1);
+        CountDownLatch commitar = new CountDownLatch(1);
+        try {
+            Future<?> venda = executor.submit(() -> {
+                TenantContext.setCurrentTenant("vermelho");
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        VendaCreateDTO dto = new VendaCreateDTO();
+                        dto.setTipoVenda(Venda.TipoVenda.V);
+                        dto.setDataVenda(LocalDateTime.now());
+                        dto.setPosteId(vermelho.getId());
+                        dto.setQuantidade(3);
+                        vendaService.criarVenda(dto);
+                        vendeu.countDown();
+                        try {
+                            commitar.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                } finally {
+                    TenantContext.clear();
+                }
+                return null;
+            });
+            assertTrue(vendeu.await(10, TimeUnit.SECONDS));
+
+            // O recálculo do código base não pode sobrescrever a baixa da venda
+            Future<?> inativacao = executor.submit(() -> posteService.inativar(branco.getId(), "branco"));
+            Thread.sleep(200);
+            commitar.countDown();
+            venda.get(10, TimeUnit.SECONDS);
+            inativacao.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, estoqueConsolidadoService.verificar(false).get("totalDivergencias"));
+        assertEquals(7, estoqueConsolidadoRepository.findByCodigoBase("4400").orElseThrow().getQuantidadeTotal());
+    }
+
+    private Poste criarPosteComEstoque(String codigo, String tenantId, int quantidade) {
+        Poste poste = new Poste();
+        poste.setCodigo(codigo);
+        poste.setDescricao("Poste " + codigo);
+        poste.setPreco(new BigDecimal("100.00"));
+        poste.setTenantId(tenantId);
+        poste = posteRepository.save(poste);
+
+        estoqueRepository.save(new Estoque(poste, quantidade));
+        return poste;
+    }
+
+    private void assertCusto(String esperado, Long posteId) {
+        BigDecimal custoResumo = vendaResumoMensalService.listarMeses("vermelho").stream()
+                .map(VendaResumoMensal::getCustoPostes)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal custoColunar = vendasColunares.agregar("vermelho", null, null, null, posteId,
+                VendasColunares.Agrupamento.POSTE).get(0).getCustoPostes();
+
+        assertEquals(0, new BigDecimal(esperado).compareTo(custoResumo), "resumo mensal: " + custoResumo);
+        assertEquals(0, new BigDecimal(esperado).compareTo(custoColunar), "armazém colunar: " + custoColunar);
+    }
+}
@@ -0,0 +1,139 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.ImportacaoVendasDTO;
+import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.repository.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:importacao",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class VendaImportacaoServiceTest {
+
+    private static final int VENDAS_VALIDAS = 1_203;
+
+    @Autowired
+    private VendaImportacaoService vendaImportacaoService;
+
+    @Autowired
+    private EstoqueConsolidadoService estoqueConsolidadoService;
+
+    @Autowired
+    private PosteRepository posteRepository;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private VendaRepository vendaRepository;
+
+    @Autowired
+    private MovimentoEstoqueRepository movimentoEstoqueRepository;
+
+    @Autowired
+    private EstoqueConsolidadoRepository estoqueConsolidadoRepository;
+
+    @AfterEach
+    void limparBase() {
+        TenantContext.clear();
+        movimentoEstoqueRepository.deleteAll();
+        vendaRepository.deleteAll();
+        estoqueRepository.deleteAll();
+        estoqueConsolidadoRepository.deleteAll();
+        posteRepository.deleteAll();
+    }
+
+    @Test
+    void importaCsvEmLotesBaixandoEstoqueEReportandoErrosPorLinha() throws Exception {
+        criarPosteComEstoque("4199", "vermelho", 1_000);
+        criarPosteComEstoque("4199-B", "branco", 100);
+        criarPosteComEstoque("5000", "vermelho", 0);
+        estoqueConsolidadoService.verificar(true);
+
+        StringBuilder csv = new StringBuilder("dataVenda;tipoVenda;codigoPoste;quantidade;valorVenda;freteEletrons;valorExtra;observacoes\n");
+        for (int i = 0; i < VENDAS_VALIDAS - 3; i++) {
+            csv.append("2023-03-15;V;4199;1;1.250,00;;;\"Venda; antiga\"\n");
+        }
+        csv.append("15/03/2023 10:30;L;5000;2;;80,00;;\n");
+        csv.append("2023-03-16;E;;;;;35.5;Extra\n");
+        csv.append("2023-03-16T08:00;v;4199;3;300;;;\n");
+        csv.append("2023-13-40;V;4199;1;100;;;\n");
+        csv.append("2023-03-16;V;9999;1;100;;;\n");
+        csv.append("2023-03-16;X;4199;1;100;;;\n");
+        csv.append("2023-03-16;V;4199;0;100;;;\n");
+
+        Path arquivo = Files.createTempFile("importacao-teste-", ".csv");
+        Files.writeString(arquivo, csv, StandardCharsets.UTF_8);
+
+        TenantContext.setCurrentTenant("vermelho");
+        ImportacaoVendasDTO importacao = vendaImportacaoService.iniciarImportacao(arquivo, "historico.csv");
+        importacao = aguardarConclusao(importacao.getId());
+
+        assertEquals(ImportacaoVendasDTO.Status.CONCLUIDA, importacao.getStatus(), importacao.getMensagem());
+        assertEquals(VENDAS_VALIDAS + 4, importacao.getLinhasLidas());
+        assertEquals(VENDAS_VALIDAS, importacao.getVendasImportadas());
+        assertEquals(4, importacao.getLinhasComErro());
+        assertEquals(VENDAS_VALIDAS + 2, importacao.getErros().get(0).getLinha());
+        assertTrue(importacao.getErros().get(1).getMensagem().contains("9999"));
+        assertEquals(VENDAS_VALIDAS + " vendas importadas, 4 linhas com erro", importacao.getMensagem());
+        // Cada consulta recebe uma cópia, não a situação que a thread da importação altera
+        assertNotSame(importacao, vendaImportacaoService.buscarImportacao(importacao.getId()).orElseThrow());
+        assertFalse(Files.exists(arquivo));
+
+        assertEquals(VENDAS_VALIDAS, vendaRepository.count());
+        assertEquals(new BigDecimal("1250.00"), vendaRepository.findAll().get(0).getValorVenda());
+
+        // 1.203 unidades do código 4199: 1.000 do vermelho, 100 do branco e 103 negativas;
+        // 2 unidades do 5000, que não tinha saldo
+        int estoqueFinal = estoqueRepository.findAll().stream().mapToInt(Estoque::getQuantidadeAtual).sum();
+        int quantidadeBaixada = movimentoEstoqueRepository.findAll().stream()
+                .filter(m -> m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.SAIDA)
+                .mapToInt(MovimentoEstoque::getQuantidade)
+                .sum();
+        assertEquals(1_100 - VENDAS_VALIDAS - 2, estoqueFinal);
+        assertEquals(VENDAS_VALIDAS + 2, quantidadeBaixada);
+
+        Map<String, Object> verificacao = estoqueConsolidadoService.verificar(false);
+        assertEquals(0, verificacao.get("totalDivergencias"));
+    }
+
+    private ImportacaoVendasDTO aguardarConclusao(String id) throws InterruptedException {
+        for (int tentativa = 0; tentativa < 600; tentativa++) {
+            ImportacaoVendasDTO importacao = vendaImportacaoService.buscarImportacao(id).orElseThrow();
+            if (importacao.getStatus() != ImportacaoVendasDTO.Status.PROCESSANDO) {
+                return importacao;
+            }
+            Thread.sleep(100);
+        }
+        fail("Importação não terminou a tempo");
+        return null;
+    }
+
+    private void criarPosteComEstoque(String codigo, String tenantId, int quantidade) {
+        Poste poste = new Poste();
+        poste.setCodigo(codigo);
+        poste.setDescricao("Poste " + codigo);
+        poste.setPreco(new BigDecimal("100.00"));
+        poste.setTenantId(tenantId);
+        poste = posteRepository.save(poste);
+
+        estoqueRepository.save(new Estoque(poste, quantidade));
+    }
+}
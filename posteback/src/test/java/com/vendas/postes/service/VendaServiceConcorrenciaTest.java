@@ -0,0 +1,196 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.VendaCreateDTO;
+import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.MovimentoEstoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.model.VendaResumoMensal;
+import com.vendas.postes.repository.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:concorrencia;LOCK_TIMEOUT=30000",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class VendaServiceConcorrenciaTest {
+
+    private static final int VENDAS = 400;
+    private static final int THREADS = 16;
+
+    @Autowired
+    private VendaService vendaService;
+
+    @Autowired
+    private EstoqueConsolidadoService estoqueConsolidadoService;
+
+    @Autowired
+    private PosteRepository posteRepository;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private VendaRepository vendaRepository;
+
+    @Autowired
+    private MovimentoEstoqueRepository movimentoEstoqueRepository;
+
+    @Autowired
+    private EstoqueConsolidadoRepository estoqueConsolidadoRepository;
+
+    @Autowired
+    private VendaResumoMensalRepository vendaResumoMensalRepository;
+
+    @Autowired
+    private EstoqueLockManager estoqueLockManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void limparBase() {
+        movimentoEstoqueRepository.deleteAll();
+        vendaRepository.deleteAll();
+        vendaResumoMensalRepository.deleteAll();
+        estoqueRepository.deleteAll();
+        estoqueConsolidadoRepository.deleteAll();
+        posteRepository.deleteAll();
+    }
+
+    @Test
+    void vendasParalelasNaoPerdemBaixasDeEstoque() throws Exception {
+        Poste vermelho = criarPosteComEstoque("4199", "vermelho", 250);
+        Poste branco = criarPosteComEstoque("4199-B", "branco", 250);
+        estoqueConsolidadoService.verificar(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> resultados = new ArrayList<>();
+
+        for (int i = 0; i < VENDAS; i++) {
+            Long posteId = i % 2 == 0 ? vermelho.getId() : branco.getId();
+            String tenant = i % 2 == 0 ? "vermelho" : "branco";
+            resultados.add(executor.submit(() -> {
+                largada.await();
+                TenantContext.setCurrentTenant(tenant);
+                try {
+                    vendaService.criarVenda(criarVenda(posteId));
+                } finally {
+                    TenantContext.clear();
+                }
+                return null;
+            }));
+        }
+
+        largada.countDown();
+        for (Future<?> resultado : resultados) {
+            resultado.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        int estoqueFinal = estoqueRepository.findAll().stream().mapToInt(Estoque::getQuantidadeAtual).sum();
+        int quantidadeBaixada = movimentoEstoqueRepository.findAll().stream()
+                .filter(m -> m.getTipoMovimento() == MovimentoEstoque.TipoMovimento.SAIDA)
+                .mapToInt(MovimentoEstoque::getQuantidade)
+                .sum();
+
+        assertEquals(VENDAS, vendaRepository.count());
+        assertEquals(500 - VENDAS, estoqueFinal);
+        assertEquals(VENDAS, quantidadeBaixada);
+
+        Map<String, Object> verificacao = estoqueConsolidadoService.verificar(false);
+        assertEquals(0, verificacao.get("totalDivergencias"));
+    }
+
+    @Test
+    void primeirasVendasDoMesEmCodigosDiferentesNaoEsperamPelosLocksDeEstoque() throws Exception {
+        // Códigos em posições diferentes do vetor de locks
+        Poste primeiro = criarPosteComEstoque("4199", "vermelho", 10);
+        Poste segundo = criarPosteComEstoque("4200", "vermelho", 10);
+        estoqueConsolidadoService.verificar(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch vendeu = new CountDownLatch(1);
+        CountDownLatch commitar = new CountDownLatch(1);
+        try {
+            // A primeira venda cria a linha do mês no resumo e segura o commit
+            Future<?> primeiraVenda = executor.submit(() -> vender("vermelho", () ->
+                    transactionTemplate.executeWithoutResult(status -> {
+                        vendaService.criarVenda(criarVenda(primeiro.getId()));
+                        vendeu.countDown();
+                        try {
+                            commitar.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    })));
+            assertTrue(vendeu.await(10, TimeUnit.SECONDS));
+
+            long contencoesAntes = (Long) estoqueLockManager.obterMetricas().get("contencoes");
+            Future<?> segundaVenda = executor.submit(() -> vender("vermelho", () ->
+                    vendaService.criarVenda(criarVenda(segundo.getId()))));
+            Thread.sleep(200);
+            commitar.countDown();
+            primeiraVenda.get(10, TimeUnit.SECONDS);
+            segundaVenda.get(10, TimeUnit.SECONDS);
+
+            assertEquals(contencoesAntes, estoqueLockManager.obterMetricas().get("contencoes"));
+            List<VendaResumoMensal> resumos = vendaResumoMensalRepository.findAll();
+            assertEquals(1, resumos.size());
+            assertEquals(2L, resumos.get(0).getQuantidadeVendas());
+            assertEquals(0, new BigDecimal("300.00").compareTo(resumos.get(0).getValorVenda()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Void vender(String tenant, Runnable venda) {
+        TenantContext.setCurrentTenant(tenant);
+        try {
+            venda.run();
+        } finally {
+            TenantContext.clear();
+        }
+        return null;
+    }
+
+    private VendaCreateDTO criarVenda(Long posteId) {
+        VendaCreateDTO venda = new VendaCreateDTO();
+        venda.setDataVenda(LocalDateTime.now());
+        venda.setTipoVenda(Venda.TipoVenda.V);
+        venda.setPosteId(posteId);
+        venda.setQuantidade(1);
+        venda.setValorVenda(new BigDecimal("150.00"));
+        return venda;
+    }
+
+    private Poste criarPosteComEstoque(String codigo, String tenantId, int quantidade) {
+        Poste poste = new Poste();
+        poste.setCodigo(codigo);
+        poste.setDescricao("Poste " + codigo);
+        poste.setPreco(new BigDecimal("100.00"));
+        poste.setTenantId(tenantId);
+        poste = posteRepository.save(poste);
+
+        estoqueRepository.save(new Estoque(poste, quantidade));
+        return poste;
+    }
+}
@@ -0,0 +1,237 @@
+package com.vendas.postes.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.PaginaDTO;
+import com.vendas.postes.dto.ResumoVendasDTO;
+import com.vendas.postes.dto.VendaCreateDTO;
+import com.vendas.postes.dto.VendaDTO;
+import com.vendas.postes.model.Estoque;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.model.VendaResumoMensal;
+import com.vendas.postes.model.Venda.TipoVenda;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({VendaService.class, VendaResumoMensalService.class, EstoqueService.class, EstoqueConsolidadoService.class,
+        EstoqueLockManager.class, EstoqueListagemCache.class, EstoqueMemoriaService.class, MovimentoEstoqueService.class,
+        EstoqueCheckpointService.class, ExportacaoJsonService.class, ArquivoMovimentosService.class,
+        GravadorMovimentosEmGrupo.class, IndiceSaldoDiario.class, VendasColunares.class, JacksonAutoConfiguration.class})
+class VendaServiceTest {
+
+    @Autowired
+    private VendaService vendaService;
+
+    @Autowired
+    private VendaResumoMensalService vendaResumoMensalService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void definirTenant() {
+        TenantContext.setCurrentTenant(TenantContext.TenantType.VERMELHO);
+    }
+
+    @AfterEach
+    void limparTenant() {
+        TenantContext.clear();
+    }
+
+    @Test
+    void calculaResumoAgrupandoPorTipoNoBanco() {
+        Poste poste = criarPoste("4199", "vermelho", "150.00");
+        Poste posteBranco = criarPoste("4199-B", "branco", "90.00");
+        LocalDateTime marco = LocalDate.of(2024, 3, 10).atStartOfDay();
+
+        vender(TipoVenda.V, poste, 2, "400.00", null, null, marco, "vermelho");
+        vender(TipoVenda.V, poste, 1, "180.00", null, null, marco.plusMonths(1), "vermelho");
+        // Valores de outro tipo não entram no total do tipo
+        vender(TipoVenda.V, null, null, null, "10.00", "5.00", marco, "vermelho");
+        vender(TipoVenda.L, poste, 3, null, "80.00", null, marco, "vermelho");
+        vender(TipoVenda.E, null, null, null, null, "35.50", marco.plusMonths(1), "vermelho");
+        vender(TipoVenda.V, posteBranco, 5, "999.00", null, null, marco, "branco");
+        vendaResumoMensalService.reconstruir();
+
+        ResumoVendasDTO resumo = vendaService.obterResumoVendas();
+        assertEquals(new BigDecimal("450.00"), resumo.getTotalVendaPostes());
+        assertEquals(new BigDecimal("580.00"), resumo.getValorTotalVendas());
+        assertEquals(new BigDecimal("80.00"), resumo.getTotalFreteEletrons());
+        assertEquals(new BigDecimal("35.50"), resumo.getValorTotalExtras());
+        assertEquals(1L, resumo.getTotalVendasE());
+        assertEquals(3L, resumo.getTotalVendasV());
+        assertEquals(1L, resumo.getTotalVendasL());
+
+        ResumoVendasDTO marcoApenas = vendaService.obterResumoVendasPorPeriodo(
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31));
+        assertEquals(new BigDecimal("300.00"), marcoApenas.getTotalVendaPostes());
+        assertEquals(new BigDecimal("400.00"), marcoApenas.getValorTotalVendas());
+        assertEquals(BigDecimal.ZERO, marcoApenas.getValorTotalExtras());
+        assertEquals(0L, marcoApenas.getTotalVendasE());
+        assertEquals(2L, marcoApenas.getTotalVendasV());
+    }
+
+    @Test
+    void mantemResumoMensalAoCriarAlterarEExcluirVendas() {
+        Poste poste = criarPoste("4199", "vermelho", "150.00");
+        entityManager.persist(new Estoque(poste, 100));
+        LocalDateTime marco = LocalDate.of(2024, 3, 10).atTime(9, 0);
+
+        VendaDTO primeira = vendaService.criarVenda(novaVenda(TipoVenda.V, poste, 2, "400.00", marco));
+        VendaDTO segunda = vendaService.criarVenda(novaVenda(TipoVenda.V, poste, 1, "180.00", marco.plusDays(5)));
+        VendaDTO extra = vendaService.criarVenda(novaVenda(TipoVenda.E, null, null, null, marco.plusMonths(1)));
+
+        // Move a segunda venda para abril e exclui a extra
+        vendaService.atualizarVenda(segunda.getId(), novaVenda(TipoVenda.V, poste, 3, "500.00", marco.plusMonths(1)));
+        vendaService.deletarVenda(extra.getId());
+
+        List<VendaResumoMensal> meses = vendaService.listarResumoMensal();
+        assertEquals(3, meses.size());
+        assertEquals(LocalDate.of(2024, 3, 1), meses.get(0).getMesReferencia());
+        assertEquals(1L, meses.get(0).getQuantidadeVendas());
+        assertEquals(new BigDecimal("300.00"), meses.get(0).getCustoPostes());
+        assertEquals(LocalDate.of(2024, 4, 1), meses.get(1).getMesReferencia());
+        assertEquals(TipoVenda.E, meses.get(1).getTipoVenda());
+        assertEquals(0L, meses.get(1).getQuantidadeVendas());
+        assertEquals(1L, meses.get(2).getQuantidadeVendas());
+        assertEquals(new BigDecimal("500.00"), meses.get(2).getValorVenda());
+
+        // Período com pontas parciais soma o resumo de março com as vendas de 1 a 10 de abril
+        ResumoVendasDTO resumo = vendaService.obterResumoVendasPorPeriodo(
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 4, 10));
+        assertEquals(2L, resumo.getTotalVendasV());
+        assertEquals(new BigDecimal("900.00"), resumo.getValorTotalVendas());
+        assertEquals(0L, resumo.getTotalVendasE());
+
+        // A tabela mantida venda a venda confere com a reconstruída a partir das vendas
+        ResumoVendasDTO antesDaReconstrucao = vendaService.obterResumoVendas();
+        vendaResumoMensalService.reconstruir();
+        ResumoVendasDTO reconstruido = vendaService.obterResumoVendas();
+        assertEquals(antesDaReconstrucao.getTotalVendasV(), reconstruido.getTotalVendasV());
+        assertEquals(antesDaReconstrucao.getTotalVendasE(), reconstruido.getTotalVendasE());
+        assertEquals(antesDaReconstrucao.getValorTotalVendas(), reconstruido.getValorTotalVendas());
+        assertEquals(antesDaReconstrucao.getTotalVendaPostes(), reconstruido.getTotalVendaPostes());
+        assertEquals(primeira.getValorVenda(), vendaService.obterResumoVendasPorPeriodo(
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31)).getValorTotalVendas());
+    }
+
+    @Test
+    void listaVendasEmPaginasPorCursor() {
+        Poste poste = criarPoste("4199", "vermelho", "150.00");
+        LocalDateTime marco = LocalDate.of(2024, 3, 10).atTime(9, 0);
+        // Duas vendas no mesmo horário: o ID desempata a ordem
+        for (LocalDateTime data : List.of(marco, marco, marco.plusDays(1), marco.plusDays(2), marco.minusMonths(1))) {
+            vender(TipoVenda.V, poste, 1, "100.00", null, null, data, "vermelho");
+        }
+        vender(TipoVenda.V, poste, 1, "100.00", null, null, marco, "branco");
+        entityManager.flush();
+
+        List<VendaDTO> todas = new ArrayList<>();
+        String cursor = null;
+        int paginas = 0;
+        do {
+            PaginaDTO<VendaDTO> pagina = vendaService.listarVendasPaginadas(null, null, cursor, 2);
+            todas.addAll(pagina.getItens());
+            cursor = pagina.getProximoCursor();
+            paginas++;
+        } while (cursor != null);
+
+        assertEquals(3, paginas);
+        assertEquals(5, todas.size());
+        assertEquals(5, todas.stream().map(VendaDTO::getId).distinct().count());
+        for (int i = 1; i < todas.size(); i++) {
+            VendaDTO anterior = todas.get(i - 1);
+            VendaDTO atual = todas.get(i);
+            assertTrue(anterior.getDataVenda().isAfter(atual.getDataVenda())
+                    || (anterior.getDataVenda().equals(atual.getDataVenda()) && anterior.getId() > atual.getId()));
+        }
+
+        PaginaDTO<VendaDTO> marcoApenas = vendaService.listarVendasPaginadas(
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 11), null, 10);
+        assertEquals(3, marcoApenas.getItens().size());
+        assertFalse(marcoApenas.isTemMais());
+    }
+
+    @Test
+    void exportaVendasDoPeriodoComoArrayJson() throws Exception {
+        Poste poste = criarPoste("4199", "vermelho", "150.00");
+        LocalDateTime marco = LocalDate.of(2024, 3, 10).atTime(9, 0);
+        vender(TipoVenda.V, poste, 2, "400.00", null, null, marco.plusDays(1), "vermelho");
+        vender(TipoVenda.E, null, null, null, null, "35.50", marco, "vermelho");
+        vender(TipoVenda.V, poste, 1, "100.00", null, null, marco.plusMonths(1), "vermelho");
+        vender(TipoVenda.V, poste, 1, "100.00", null, null, marco, "branco");
+
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        long exportadas = vendaService.exportarVendas("vermelho",
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31), saida);
+
+        JsonNode vendas = objectMapper.readTree(saida.toByteArray());
+        assertEquals(2, exportadas);
+        assertTrue(vendas.isArray());
+        assertEquals(2, vendas.size());
+        // Ordem cronológica, com os dados do poste
+        assertEquals("E", vendas.get(0).get("tipoVenda").asText());
+        assertEquals("4199", vendas.get(1).get("codigoPoste").asText());
+        assertEquals(400.00, vendas.get(1).get("valorVenda").asDouble());
+
+        ByteArrayOutputStream vazia = new ByteArrayOutputStream();
+        vendaService.exportarVendas("vermelho", LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 31), vazia);
+        assertEquals("[]", vazia.toString());
+    }
+
+    private VendaCreateDTO novaVenda(TipoVenda tipo, Poste poste, Integer quantidade, String valorVenda,
+                                     LocalDateTime data) {
+        VendaCreateDTO venda = new VendaCreateDTO();
+        venda.setTipoVenda(tipo);
+        venda.setPosteId(poste != null ? poste.getId() : null);
+        venda.setQuantidade(quantidade);
+        venda.setValorVenda(valorVenda != null ? new BigDecimal(valorVenda) : null);
+        venda.setDataVenda(data);
+        return venda;
+    }
+
+    private Poste criarPoste(String codigo, String tenantId, String preco) {
+        Poste poste = new Poste();
+        poste.setCodigo(codigo);
+        poste.setDescricao("Poste " + codigo);
+        poste.setPreco(new BigDecimal(preco));
+        poste.setTenantId(tenantId);
+        entityManager.persist(poste);
+        return poste;
+    }
+
+    private void vender(TipoVenda tipo, Poste poste, Integer quantidade, String valorVenda, String frete,
+                        String extra, LocalDateTime data, String tenantId) {
+        Venda venda = new Venda();
+        venda.setTipoVenda(tipo);
+        venda.setPoste(poste);
+        venda.setQuantidade(quantidade);
+        venda.setValorVenda(valorVenda != null ? new BigDecimal(valorVenda) : null);
+        venda.setFreteEletrons(frete != null ? new BigDecimal(frete) : null);
+        venda.setValorExtra(extra != null ? new BigDecimal(extra) : null);
+        venda.setDataVenda(data);
+        venda.setTenantId(tenantId);
+        entityManager.persist(venda);
+    }
+}
@@ -0,0 +1,362 @@
+package com.vendas.postes.service;
+
+import com.vendas.postes.config.TenantContext;
+import com.vendas.postes.dto.TotalVendasDTO;
+import com.vendas.postes.dto.VendaCreateDTO;
+import com.vendas.postes.model.Poste;
+import com.vendas.postes.model.Venda;
+import com.vendas.postes.repository.*;
+import lombok.AllArgsConstructor;
+import lombok.ToString;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Os totais do armazém colunar batem com a soma das vendas do banco depois de criações,
+ * alterações, exclusões, transações desfeitas e mudança de preço de poste.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:vendas-colunares",
+        "spring.jpa.show-sql=false",
+        "vendas.colunar.habilitado=true",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class VendasColunaresTest {
+
+    private static final LocalDate INICIO = LocalDate.of(2023, 1, 1);
+
+    @Autowired
+    private VendasColunares vendasColunares;
+
+    @Autowired
+    private VendaService vendaService;
+
+    @Autowired
+    private PosteService posteService;
+
+    @Autowired
+    private VendaRepository vendaRepository;
+
+    @Autowired
+    private PosteRepository posteRepository;
+
+    @Autowired
+    private EstoqueRepository estoqueRepository;
+
+    @Autowired
+    private EstoqueConsolidadoRepository estoqueConsolidadoRepository;
+
+    @Autowired
+    private MovimentoEstoqueRepository movimentoEstoqueRepository;
+
+    @Autowired
+    private VendaResumoMensalRepository vendaResumoMensalRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void limparBase() {
+        TenantContext.clear();
+        movimentoEstoqueRepository.deleteAll();
+        vendaRepository.deleteAll();
+        vendaResumoMensalRepository.deleteAll();
+        estoqueRepository.deleteAll();
+        estoqueConsolidadoRepository.deleteAll();
+        posteRepository.deleteAll();
+    }
+
+    @Test
+    void totaisBatemComAsVendasDoBanco() {
+        Random aleatorio = new Random(7);
+        Map<String, List<Poste>> postesPorTenant = Map.of(
+                "vermelho", List.of(criarPoste("4199", "vermelho", "150.00"), criarPoste("4300", "vermelho", "80.50")),
+                "branco", List.of(criarPoste("4199-B", "branco", "90.00")));
+
+        List<Long> vendaIds = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            String tenant = aleatorio.nextInt(3) == 0 ? "branco" : "vermelho";
+            TenantContext.setCurrentTenant(tenant);
+            vendaIds.add(vendaService.criarVenda(novaVenda(aleatorio, postesPorTenant.get(tenant))).getId());
+        }
+
+        // Alterações e exclusões no tenant de cada venda
+        for (int i = 0; i < 40; i++) {
+            Long id = vendaIds.remove(aleatorio.nextInt(vendaIds.size()));
+            Venda atual = vendaRepository.findById(id).orElseThrow();
+            TenantContext.setCurrentTenant(atual.getTenantId());
+            if (i % 2 == 0) {
+                VendaCreateDTO alteracao = novaVenda(aleatorio, postesPorTenant.get(atual.getTenantId()));
+                // O tipo não muda na alteração
+                alteracao.setTipoVenda(atual.getTipoVenda());
+                vendaService.atualizarVenda(id, alteracao);
+                vendaIds.add(id);
+            } else {
+                vendaService.deletarVenda(id);
+            }
+        }
+
+        // Desfeita não entra
+        TenantContext.setCurrentTenant("vermelho");
+        transactionTemplate.executeWithoutResult(status -> {
+            vendaService.criarVenda(novaVenda(aleatorio, postesPorTenant.get("vermelho")));
+            status.setRollbackOnly();
+        });
+
+        // O custo dos postes usa o preço atual
+        Poste reajustado = postesPorTenant.get("vermelho").get(0);
+        Poste reajuste = new Poste();
+        reajuste.setPreco(new BigDecimal("175.25"));
+        posteService.atualizar(reajustado.getId(), "vermelho", reajuste);
+
+        VendasColunares montadoDoBanco = new VendasColunares(vendaRepository, transactionTemplate, true);
+        montadoDoBanco.carregar();
+
+        List<VendaSimples> vendas = lerVendasDoBanco();
+        assertEquals(vendaIds.size(), vendas.size());
+
+        LocalDate meio = INICIO.plusDays(300);
+        List<Filtro> filtros = List.of(
+                new Filtro(null, null, null, null, null),
+                new Filtro("vermelho", null, null, null, null),
+                new Filtro("branco", INICIO.plusDays(100), meio, null, null),
+                new Filtro(null, meio, null, Venda.TipoVenda.V, null),
+                new Filtro("vermelho", null, meio, null, reajustado.getId()),
+                new Filtro(null, meio.plusYears(5), null, null, null));
+
+        for (Filtro filtro : filtros) {
+            for (VendasColunares.Agrupamento agrupamento : VendasColunares.Agrupamento.values()) {
+                Map<String, TotalVendasDTO> esperado = somar(vendas, filtro, agrupamento);
+                assertEquals(esperado, porChave(vendasColunares.agregar(filtro.tenantId, filtro.inicio, filtro.fim,
+                        filtro.tipo, filtro.posteId, agrupamento)), agrupamento + " " + filtro);
+                assertEquals(esperado, porChave(montadoDoBanco.agregar(filtro.tenantId, filtro.inicio, filtro.fim,
+                        filtro.tipo, filtro.posteId, agrupamento)), agrupamento + " " + filtro);
+            }
+        }
+
+        // Mesmo formato e mesmos totais da consulta por tipo no banco
+        List<Object[]> doBanco = vendaRepository.calcularResumoPorTipoNoPeriodo("vermelho",
+                INICIO.plusDays(30).atStartOfDay(), meio.plusDays(1).atStartOfDay());
+        Map<Object, List<Object>> colunar = vendasColunares.somarPorTipo("vermelho", INICIO.plusDays(30), meio).stream()
+                .collect(Collectors.toMap(linha -> linha[0], Arrays::asList));
+        assertEquals(doBanco.size(), colunar.size());
+        for (Object[] linha : doBanco) {
+            List<Object> total = colunar.get(linha[0]);
+            assertEquals(((Number) linha[1]).longValue(), total.get(1));
+            for (int i = 2; i < linha.length; i++) {
+                BigDecimal valor = linha[i] != null ? (BigDecimal) linha[i] : BigDecimal.ZERO;
+                assertEquals(0, valor.compareTo((BigDecimal) total.get(i)), "coluna " + i + " de " + linha[0]);
+            }
+        }
+
+        assertTrue((Long) vendasColunares.obterMetricas().get("bytes") > 0);
+    }
+
+    @Test
+    void blocosResumidosAcompanhamAlteracoesForaDeOrdem() {
+        Random aleatorio = new Random(11);
+        VendasColunares armazem = new VendasColunares(vendaRepository, transactionTemplate, true);
+        armazem.carregar();
+
+        List<Poste> postes = new ArrayList<>();
+        for (long id = 1; id <= 30; id++) {
+            Poste poste = new Poste();
+            poste.setId(id);
+            poste.setPreco(BigDecimal.valueOf(5000 + id * 37, 2));
+            poste.setTenantId(id % 2 == 0 ? "vermelho" : "branco");
+            postes.add(poste);
+        }
+
+        // IDs em ordem com a data andando junto, vários blocos, e alguns IDs atrasados no meio
+        Map<Long, Venda> vendas = new LinkedHashMap<>();
+        for (long id = 1; id <= 20_000; id++) {
+            long idVenda = id % 97 == 0 ? id * 1_000 : id * 10;
+            Venda venda = vendaAleatoria(aleatorio, idVenda, INICIO.plusDays(id / 25), postes);
+            vendas.put(idVenda, venda);
+            armazem.registrarAposCommit(venda);
+        }
+        for (int i = 0; i < 300; i++) {
+            long idVenda = 10L * (1 + aleatorio.nextInt(20_000)) + 5;
+            Venda venda = vendaAleatoria(aleatorio, idVenda, INICIO.plusDays(aleatorio.nextInt(800)), postes);
+            vendas.put(idVenda, venda);
+            armazem.registrarAposCommit(venda);
+        }
+
+        // Alterações e exclusões suficientes para compactar
+        List<Long> ids = new ArrayList<>(vendas.keySet());
+        for (int i = 0; i < 12_000; i++) {
+            Long idVenda = ids.get(aleatorio.nextInt(ids.size()));
+            if (i % 3 == 0 && vendas.containsKey(idVenda)) {
+                Venda alterada = vendaAleatoria(aleatorio, idVenda, vendas.get(idVenda).getDataVenda().toLocalDate(), postes);
+                vendas.put(idVenda, alterada);
+                armazem.registrarAposCommit(alterada);
+            } else {
+                vendas.remove(idVenda);
+                armazem.removerAposCommit(idVenda);
+            }
+        }
+        Poste reajustado = postes.get(3);
+        reajustado.setPreco(new BigDecimal("999.99"));
+        armazem.atualizarPoste(reajustado);
+
+        List<VendaSimples> esperadas = vendas.values().stream()
+                .map(venda -> new VendaSimples(venda.getTenantId(), venda.getDataVenda().toLocalDate(),
+                        venda.getTipoVenda(), venda.getPoste() != null ? venda.getPoste().getId() : null,
+                        venda.getPoste() != null ? venda.getPoste().getPreco() : null,
+                        venda.getQuantidade() != null ? venda.getQuantidade() : 0,
+                        valorOuZero(venda.getValorVenda()), valorOuZero(venda.getFreteEletrons()),
+                        valorOuZero(venda.getValorExtra())))
+                .collect(Collectors.toList());
+        assertEquals((long) esperadas.size(), ((Number) armazem.obterMetricas().get("vendas")).longValue());
+        // Houve compactação: nem todas as excluídas continuam marcadas
+        assertTrue((Integer) armazem.obterMetricas().get("removidas") < ids.size() - vendas.size());
+
+        for (int i = 0; i < 40; i++) {
+            LocalDate inicio = aleatorio.nextInt(4) == 0 ? null : INICIO.plusDays(aleatorio.nextInt(700));
+            LocalDate fim = aleatorio.nextInt(4) == 0 ? null : INICIO.plusDays(100 + aleatorio.nextInt(800));
+            Filtro filtro = new Filtro(aleatorio.nextBoolean() ? null : "vermelho", inicio, fim,
+                    aleatorio.nextInt(3) == 0 ? Venda.TipoVenda.L : null,
+                    aleatorio.nextInt(4) == 0 ? reajustado.getId() : null);
+            for (VendasColunares.Agrupamento agrupamento : VendasColunares.Agrupamento.values()) {
+                assertEquals(somar(esperadas, filtro, agrupamento), porChave(armazem.agregar(filtro.tenantId,
+                        filtro.inicio, filtro.fim, filtro.tipo, filtro.posteId, agrupamento)), agrupamento + " " + filtro);
+            }
+        }
+    }
+
+    private Venda vendaAleatoria(Random aleatorio, long id, LocalDate data, List<Poste> postes) {
+        Venda venda = new Venda();
+        venda.setId(id);
+        venda.setDataVenda(data.atTime(aleatorio.nextInt(24), 0));
+        venda.setTipoVenda(Venda.TipoVenda.values()[aleatorio.nextInt(3)]);
+        venda.setTenantId(aleatorio.nextBoolean() ? "vermelho" : "branco");
+        if (venda.getTipoVenda() != Venda.TipoVenda.E) {
+            venda.setPoste(postes.get(aleatorio.nextInt(postes.size())));
+            venda.setQuantidade(1 + aleatorio.nextInt(5));
+        }
+        venda.setValorVenda(aleatorio.nextBoolean() ? centavos(aleatorio) : null);
+        venda.setFreteEletrons(aleatorio.nextBoolean() ? centavos(aleatorio) : null);
+        venda.setValorExtra(aleatorio.nextBoolean() ? centavos(aleatorio) : null);
+        return venda;
+    }
+
+    private Map<String, TotalVendasDTO> somar(List<VendaSimples> vendas, Filtro filtro,
+                                              VendasColunares.Agrupamento agrupamento) {
+        Function<VendaSimples, String> chave = switch (agrupamento) {
+            case TIPO -> venda -> venda.tipo.name();
+            case SEMANA -> venda -> venda.dia.with(DayOfWeek.MONDAY).toString();
+            case POSTE -> venda -> venda.posteId != null ? venda.posteId.toString() : "sem-poste";
+            case TENANT -> venda -> venda.tenantId;
+        };
+
+        Map<String, TotalVendasDTO> totais = new HashMap<>();
+        for (VendaSimples venda : vendas) {
+            if ((filtro.tenantId != null && !filtro.tenantId.equals(venda.tenantId))
+                    || (filtro.inicio != null && venda.dia.isBefore(filtro.inicio))
+                    || (filtro.fim != null && venda.dia.isAfter(filtro.fim))
+                    || (filtro.tipo != null && filtro.tipo != venda.tipo)
+                    || (filtro.posteId != null && !filtro.posteId.equals(venda.posteId))) {
+                continue;
+            }
+
+            TotalVendasDTO total = totais.computeIfAbsent(chave.apply(venda), k -> new TotalVendasDTO(k, 0L, 0L,
+                    zero(), zero(), zero(), zero()));
+            total.setQuantidadeVendas(total.getQuantidadeVendas() + 1);
+            total.setValorVenda(total.getValorVenda().add(venda.valorVenda));
+            total.setFreteEletrons(total.getFreteEletrons().add(venda.frete));
+            total.setValorExtra(total.getValorExtra().add(venda.extra));
+            if (venda.posteId != null) {
+                total.setQuantidadePostes(total.getQuantidadePostes() + venda.quantidade);
+                total.setCustoPostes(total.getCustoPostes().add(venda.preco.multiply(BigDecimal.valueOf(venda.quantidade))));
+            }
+        }
+        return totais;
+    }
+
+    private Map<String, TotalVendasDTO> porChave(List<TotalVendasDTO> totais) {
+        return totais.stream().collect(Collectors.toMap(TotalVendasDTO::getChave, total -> total));
+    }
+
+    private List<VendaSimples> lerVendasDoBanco() {
+        return transactionTemplate.execute(status -> vendaRepository.findAll().stream()
+                .map(venda -> new VendaSimples(venda.getTenantId(), venda.getDataVenda().toLocalDate(),
+                        venda.getTipoVenda(), venda.getPoste() != null ? venda.getPoste().getId() : null,
+                        venda.getPoste() != null ? venda.getPoste().getPreco() : null,
+                        venda.getQuantidade() != null ? venda.getQuantidade() : 0,
+                        valorOuZero(venda.getValorVenda()), valorOuZero(venda.getFreteEletrons()),
+                        valorOuZero(venda.getValorExtra())))
+                .collect(Collectors.toList()));
+    }
+
+    private VendaCreateDTO novaVenda(Random aleatorio, List<Poste> postes) {
+        VendaCreateDTO venda = new VendaCreateDTO();
+        venda.setTipoVenda(Venda.TipoVenda.values()[aleatorio.nextInt(3)]);
+        venda.setDataVenda(INICIO.plusDays(aleatorio.nextInt(730)).atTime(aleatorio.nextInt(24), 0));
+        if (venda.getTipoVenda() != Venda.TipoVenda.E) {
+            venda.setPosteId(postes.get(aleatorio.nextInt(postes.size())).getId());
+            venda.setQuantidade(1 + aleatorio.nextInt(5));
+        }
+        venda.setValorVenda(aleatorio.nextBoolean() ? centavos(aleatorio) : null);
+        venda.setFreteEletrons(aleatorio.nextBoolean() ? centavos(aleatorio) : null);
+        venda.setValorExtra(aleatorio.nextBoolean() ? centavos(aleatorio) : null);
+        return venda;
+    }
+
+    private BigDecimal centavos(Random aleatorio) {
+        return BigDecimal.valueOf(aleatorio.nextInt(200_000), 2);
+    }
+
+    private Poste criarPoste(String codigo, String tenantId, String preco) {
+        Poste poste = new Poste();
+        poste.setCodigo(codigo);
+        poste.setDescricao("Poste " + codigo);
+        poste.setPreco(new BigDecimal(preco));
+        poste.setTenantId(tenantId);
+        return posteRepository.save(poste);
+    }
+
+    private static BigDecimal valorOuZero(BigDecimal valor) {
+        return valor != null ? valor : zero();
+    }
+
+    private static BigDecimal zero() {
+        return BigDecimal.ZERO.setScale(2);
+    }
+
+    @AllArgsConstructor
+    @ToString
+    private static class Filtro {
+        final String tenantId;
+        final LocalDate inicio;
+        final LocalDate fim;
+        final Venda.TipoVenda tipo;
+        final Long posteId;
+    }
+
+    @AllArgsConstructor
+    private static class VendaSimples {
+        final String tenantId;
+        final LocalDate dia;
+        final Venda.TipoVenda tipo;
+        final Long posteId;
+        final BigDecimal preco;
+        final int quantidade;
+        final BigDecimal valorVenda;
+        final BigDecimal frete;
+        final BigDecimal extra;
+    }
+}
@@ -0,0 +1,75 @@
+-- Cópia do esquema que o ddl-auto=update gerava no H2 a partir das entidades do baseline
+-- (saída do Hibernate 6.3 para as entidades antes do código base e das sequences).
+
+    create table despesas (
+        data_despesa date not null,
+        valor numeric(10,2) not null,
+        id bigint generated by default as identity,
+        tenant_id varchar(20),
+        descricao varchar(500) not null,
+        tipo varchar(255) not null check (tipo in ('FUNCIONARIO','OUTRAS')),
+        primary key (id)
+    );
+
+    create table estoque (
+        quantidade_atual integer not null,
+        quantidade_minima integer,
+        data_atualizacao timestamp(6) not null,
+        id bigint generated by default as identity,
+        poste_id bigint not null,
+        tenant_id varchar(20),
+        primary key (id)
+    );
+
+    create table movimento_estoque (
+        data_movimento date not null,
+        quantidade integer not null,
+        quantidade_anterior integer,
+        quantidade_atual integer,
+        data_registro timestamp(6) not null,
+        id bigint generated by default as identity,
+        poste_id bigint not null,
+        tenant_id varchar(20),
+        observacao varchar(500),
+        tipo_movimento varchar(255) not null check (tipo_movimento in ('ENTRADA','SAIDA','VENDA','AJUSTE','TRANSFERENCIA')),
+        primary key (id)
+    );
+
+    create table postes (
+        ativo boolean not null,
+        preco numeric(10,2) not null,
+        id bigint generated by default as identity,
+        tenant_id varchar(20),
+        descricao varchar(500) not null,
+        codigo varchar(255) not null,
+        primary key (id)
+    );
+
+    create table vendas (
+        frete_eletrons numeric(10,2),
+        quantidade integer,
+        valor_extra numeric(10,2),
+        valor_venda numeric(10,2),
+        data_venda timestamp(6) not null,
+        id bigint generated by default as identity,
+        poste_id bigint,
+        tenant_id varchar(20),
+        observacoes varchar(1000),
+        tipo_venda varchar(255) not null check (tipo_venda in ('E','V','L')),
+        primary key (id)
+    );
+
+    alter table if exists estoque
+       add constraint FKgv4lk1usb3y454q7hd6nnrdd0
+       foreign key (poste_id)
+       references postes;
+
+    alter table if exists movimento_estoque
+       add constraint FKh0dhni938wvj23px4pyerxhdu
+       foreign key (poste_id)
+       references postes;
+
+    alter table if exists vendas
+       add constraint FKl62w8iud0qqbbv96vp2sbvy1a
+       foreign key (poste_id)
+       references postes;